@@ -0,0 +1,94 @@
+package main;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Debit de l'assembleur de bout en bout, en lignes par seconde,
+ * sur des programmes produits par {@link SourceGenerator}.
+ * <p>
+ * Un programme ne depasse pas la ROM : chaque appel assemble {@value #PROGRAMS} programmes
+ * de {@value Simulator#ROM_SIZE} instructions, chacun avec sa propre graine.
+ * A cette taille, l'assembleur parallele ne decoupe guere la source et mesure surtout son surcout.
+ * <p>
+ * Le debit d'allocation s'obtient avec le profileur GC de JMH :
+ * <pre>
+ * java -jar target/benchmarks.jar AssemblerBenchmark -prof gc
+ * </pre>
+ *
+ * @see Assembler
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AssemblerBenchmark
+{
+    /**
+     * Nombre de programmes assembles par appel.
+     */
+    static final int PROGRAMS = 400;
+    /**
+     * Nombre d'instructions assemblees par appel.
+     */
+    static final int LINES = PROGRAMS * Simulator.ROM_SIZE;
+    /**
+     * Graine commune a tous les benchmarks.
+     */
+    static final long SEED = 42;
+
+    @Param({"regex", "descent"})
+    public String parser;
+    @Param({"1", "4"})
+    public int threads;
+    @Param({"0.0", "0.5"})
+    public double comments;
+
+    private Source[] sources;
+    private int[] starts;
+    private Supplier<Parser> parsers;
+    private ParallelAssembler parallel;
+
+    @Setup(Level.Trial)
+    public void setUp()
+    {
+        sources = new Source[PROGRAMS];
+        starts = new int[PROGRAMS];
+        for (int i = 0; i < PROGRAMS; i++)
+        {
+            sources[i] = Source.of(new SourceGenerator(SEED + i).commentNoise(comments).generate(Simulator.ROM_SIZE));
+            starts[i] = sources[i].mark();
+        }
+        parsers = Assembler.parsers(parser);
+        if (threads > 1)
+            parallel = new ParallelAssembler(ParallelAssembler.pool(threads), parsers);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(LINES)
+    public void assemble(Blackhole blackhole)
+    {
+        for (int i = 0; i < PROGRAMS; i++)
+        {
+            sources[i].reset(starts[i]);
+            blackhole.consume(parallel == null ? Assembler.assemble(sources[i], parsers, 1) : parallel.assemble(sources[i]));
+        }
+    }
+}
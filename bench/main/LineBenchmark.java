@@ -0,0 +1,107 @@
+package main;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Cout par ligne de chaque etape de l'assembleur, en nanosecondes :
+ * analyse de la ligne ({@link Parser}), choix de l'instruction ({@link Instructions#getEnum(ParsedLine)})
+ * et codage ({@link Instructions#encode(ParsedLine)}).
+ * <p>
+ * Chaque etape est mesuree sur des lignes deja traitees par les etapes precedentes.
+ *
+ * @see AssemblerBenchmark
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LineBenchmark
+{
+    /**
+     * Nombre de lignes traitees par appel.
+     */
+    static final int LINES = 10_000;
+
+    @Param({"regex", "descent"})
+    public String parser;
+
+    private String[] lines;
+    private ParsedLine[] parsed;
+    private Instructions[] instructions;
+    private Parser analyser;
+    private ParsedLine scratch;
+
+    @Setup
+    public void setUp()
+    {
+        analyser = Assembler.parsers(parser).get();
+        scratch = new ParsedLine();
+        // Seules les lignes reconnues sont gardees : il en faut exactement LINES, le nombre d'operations annonce
+        lines = new String[LINES];
+        parsed = new ParsedLine[LINES];
+        int count = 0;
+        for (long seed = AssemblerBenchmark.SEED; count < LINES; seed++)
+        {
+            for (String line : new SourceGenerator(seed).commentNoise(0).generate(LINES).split("\n"))
+            {
+                ParsedLine result = new ParsedLine();
+                if (count < LINES && analyser.parse(line, result))
+                {
+                    lines[count] = line;
+                    parsed[count++] = result;
+                }
+            }
+        }
+        instructions = new Instructions[parsed.length];
+        for (int i = 0; i < parsed.length; i++)
+        {
+            instructions[i] = Instructions.getEnum(parsed[i]);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(LINES)
+    public void parse(Blackhole blackhole)
+    {
+        for (String line : lines)
+        {
+            blackhole.consume(analyser.parse(line, scratch));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(LINES)
+    public void dispatch(Blackhole blackhole)
+    {
+        for (ParsedLine line : parsed)
+        {
+            blackhole.consume(Instructions.getEnum(line));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(LINES)
+    public void encode(Blackhole blackhole)
+    {
+        for (int i = 0; i < parsed.length; i++)
+        {
+            blackhole.consume(instructions[i].encode(parsed[i]));
+        }
+    }
+}
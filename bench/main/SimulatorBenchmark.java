@@ -0,0 +1,61 @@
+package main;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Vitesse du {@link Simulator}, en instructions executees par microseconde (soit en MIPS),
+ * sur une boucle melant calculs, comparaison et branchements.
+ *
+ * @see Simulator
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SimulatorBenchmark
+{
+    /**
+     * Nombre d'instructions executees par appel.
+     */
+    static final int INSTRUCTIONS = 1_000_000;
+    private static final String PROGRAM = String.join("\n",
+            "      MOV R0, #0",
+            "      MOV R1, #1",
+            "loop: ADD R0, R0, R1",
+            "      EOR R2, R0",
+            "      STR R2, [R7, #4]",
+            "      CMP R2, R1",
+            "      BNE next",
+            "      LSL R3, R2, #1",
+            "next: ADD R1, R1, #1",
+            "      B loop");
+
+    private int[] rom;
+
+    @Setup
+    public void setUp()
+    {
+        rom = Assembler.assemble(Source.of(PROGRAM), PatternParser::new, 1);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(INSTRUCTIONS)
+    public Simulator.Status run()
+    {
+        return new Simulator(rom).run(INSTRUCTIONS);
+    }
+}
@@ -1,16 +1,28 @@
 package main;
 
-import java.io.FileWriter;
+import java.io.BufferedOutputStream;
 import java.io.IOException;
-import java.io.RandomAccessFile;
-import java.io.Writer;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
-import java.util.regex.Matcher;
+import java.util.function.Supplier;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
-import java.util.stream.IntStream;
+
+import main.Metrics.Counter;
+import main.Metrics.Phase;
 
 /**
  * Convertie un programme ARM assembleur en fichier binaire d'initiation memoire logisim.
@@ -21,14 +33,14 @@ import java.util.stream.IntStream;
  * @see Instructions
  * @see InstructionType
  * @see Condition
- * @see Opcode
+ * @see Encoding
  */
 public class Assembler
 {
 
     // Constantes representant les groupes du patterne
 
-    private static final int LABEL_GROUP = 1;
+    static final int LABEL_GROUP = 1;
     static final int INSTRUCTION_GROUP = 2;
     static final int CHANGE_LABEL_GROUP = 3;
     static final int CONDITION_GROUP = 4;
@@ -43,6 +55,8 @@ public class Assembler
     static final int ADDRESSING_SHIFT_OFFSET = 13;
     static final int THIRD_OPERAND = 14;
     static final int TWO_OPERAND_OFFSET = 15;
+    static final int LITERAL_GROUP = 16;
+    static final int DATA_LABEL_GROUP = 17;
 
     // Sous-parties du patterne
 
@@ -55,6 +69,8 @@ public class Assembler
     private static final String ADDRESSING = "(?:\\[\\s*(?:R(\\d+)\\s*(?:,\\s*(?:(?:R(\\d+))|(?:#(\\d+)))\\s*(?:,\\s*" + SHIFT + "(?:\\s+#(\\d+))?)?)?)\\s*])";                 // Recupere l'adresse contenue entre '[' ']'
     private static final String OPERAND_2 = "(?:\\s*,\\s*(?:(?:R(\\d+))|#(\\d+)|" + ADDRESSING + "))?";                                                                         // Recupere l'operande 2
     private static final String OPERAND_3 = "(?:\\s*,\\s*(?:(?:R(\\d+))|#(\\d+)))?";                                                                                            // Recupere l'operande 3
+    private static final String LITERAL = "(?:\\s*,\\s*=(-?(?:0x[0-9a-f]+|\\d+)))?";                                                                                           // Recupere la constante de LDR Rd, =valeur
+    private static final String DATA_LABEL = "(?:\\s*,\\s*(\\w+))?";                                                                                                                // Recupere le label de donnee de LDR Rt, label
     /**
      * Pattern pour recuperer les instructions.
      * <pre>
@@ -88,6 +104,10 @@ public class Assembler
      *          ADD R1, R2, <u>R3</u>
      * Group15: Offset a deux operandes.
      *          LSL R1, R2, <u>#2</u>
+     * Group16: Constante chargee par la pseudo-instruction LDR, en decimal ou en hexadecimal, voir {@link LiteralPool}.
+     *          LDR R1, =<u>0x1234</u>
+     * Group17: Label de la section de donnees, adresse de LDR ou STR, voir {@link DataSection}.
+     *          LDR R1, <u>table</u>
      * </pre>
      * <blockquote><pre>
      * exemples:
@@ -107,21 +127,66 @@ public class Assembler
      * </pre></blockquote>
      */
     // On ordonne toutes les sous-partie du patterne et on le rend insensible à la casse
-    private static final Pattern PATTERN = Pattern.compile(LABEL + INSTRUCTIONS + CONDITIONS + OPERAND_1 + OPERAND_2 + OPERAND_3 + COMMENT, Pattern.CASE_INSENSITIVE);
+    static final Pattern PATTERN = Pattern.compile(LABEL + INSTRUCTIONS + CONDITIONS + OPERAND_1 + OPERAND_2 + OPERAND_3 + LITERAL + DATA_LABEL + COMMENT, Pattern.CASE_INSENSITIVE);
     /**
-     * Entete du fichier binaire.
+     * Nom par defaut du fichier binaire {@value}.
      */
-    private static final String HEADER = "v2.0 raw\n";
+    static final String OUT_FILE = "rom.ini";
     /**
-     * Nom du fichier binaire {@value}.
+     * Nom par defaut de l'image {@value} de la RAM contenant la section de donnees et la reserve des constantes.
      */
-    private static final String OUT_FILE = "rom.ini";
+    static final String RAM_FILE = "ram.ini";
     /**
      * Table liant un label a l'instruction correspondante.
      */
     private final Map<String, Long> link;
-    private final RandomAccessFile file;
-    private final Writer memory;
+    /**
+     * Table liant un label pas encore defini aux instructions de branchement qui l'attendent.
+     */
+    private final Map<String, List<Integer>> fixups;
+    private final Source source;
+    private final Supplier<Parser> parsers;
+    /**
+     * Assembleur parallele, ou <tt>null</tt> pour assembler le programme sur un seul thread.
+     */
+    private final ParallelAssembler parallel;
+    /**
+     * Fichier binaire produit.
+     */
+    private final Path output;
+    /**
+     * Format du fichier binaire produit.
+     */
+    private final Image.Serializer format;
+    /**
+     * Mesures de l'assemblage, {@link Metrics#DISABLED} si elles ne sont ni affichees ni enregistrees.
+     */
+    private final Metrics metrics;
+    /**
+     * Passe d'optimisation, ou <tt>null</tt> pour coder les instructions telles qu'elles sont ecrites.
+     */
+    private final Optimizer optimizer;
+    /**
+     * Reserve des constantes chargees par <tt>LDR Rd, =valeur</tt>.
+     */
+    private final LiteralPool pool;
+    /**
+     * Constante de chaque chargement depuis la reserve, par numero d'instruction, pour les fichiers objets.
+     */
+    private final Map<Integer, Integer> literals;
+    /**
+     * Section de donnees du programme, ecrite dans l'image de la RAM.
+     */
+    private final DataSection data;
+    /**
+     * Table liant un label de donnee aux instructions qui y accedent, resolues une fois toute la source lue.
+     */
+    private final Map<String, List<Integer>> accesses;
+    /**
+     * Codage des instructions deja traitees, indexe par numero d'instruction.
+     * Les branchements vers un label pas encore defini y sont ecrits avec une adresse nulle puis corriges.
+     */
+    private int[] image;
     /**
      * Numero de l'instruction en cours de traitement.
      * (appartient a [0...n] avec n le nombre total d'instruction contenue dans le programme)
@@ -130,70 +195,310 @@ public class Assembler
 
     /**
      * Initialise l'input et l'output de l'assembleur.
-     * <p>
-     * Creer un fichier {@value OUT_FILE} contenant les donnees d'initialisation memoire
      *
-     * @param filename le nom du fichier contenant le programme
-     * @throws IOException si le fichier n'existe pas
+     * @param source la source du programme
+     * @param parsers fournit l'analyseur des lignes du programme
+     * @param threads le nombre de threads assemblant le programme
+     * @param output le fichier contenant les donnees d'initialisation memoire
+     * @param format le format de ce fichier
+     * @param metrics les mesures de l'assemblage
+     * @param optimizer la passe d'optimisation, ou <tt>null</tt> ; le programme est alors assemble sur un seul thread
+     * @param pool la reserve des constantes
      */
-    private Assembler(String filename) throws IOException
+    private Assembler(Source source, Supplier<Parser> parsers, int threads, Path output, Image.Serializer format, Metrics metrics, Optimizer optimizer, LiteralPool pool)
     {
-        file = new RandomAccessFile(filename, "r");
+        this.source = source;
+        this.parsers = parsers;
+        this.data = new DataSection();
+        this.parallel = threads > 1 && optimizer == null ? new ParallelAssembler(ParallelAssembler.pool(threads), parsers, metrics, pool, data) : null;
+        this.output = output;
+        this.format = format;
+        this.metrics = metrics;
+        this.optimizer = optimizer;
+        this.pool = pool;
+        literals = new HashMap<>();
+        accesses = new HashMap<>();
         link = new HashMap<>();
-        memory = new FileWriter(OUT_FILE);
-        memory.write(HEADER);
+        fixups = new HashMap<>();
+        image = new int[256];
+    }
+
+    /**
+     * Assemble un programme sans ecrire de fichier.
+     *
+     * @param source la source du programme
+     * @param parsers fournit l'analyseur des lignes du programme
+     * @param threads le nombre de threads assemblant le programme
+     * @return le codage de chaque instruction du programme
+     * @throws IllegalArgumentException si une instruction ne peut pas etre codee, si un label n'est pas defini
+     *                                  ou si le programme ne tient pas dans la ROM
+     */
+    static int[] assemble(Source source, Supplier<Parser> parsers, int threads)
+    {
+        Metrics metrics = Metrics.of(false);
+        metrics.begin();
+        int[] program = new Assembler(source, parsers, threads, null, null, metrics, null, new LiteralPool()).program();
+        metrics.end();
+        return program;
+    }
+
+    /**
+     * Assemble un programme sans ecrire de fichier et ecrit l'image de la RAM s'il utilise des donnees ou la reserve,
+     * comme l'option <tt>--ram</tt>.
+     *
+     * @param source la source du programme
+     * @param parsers fournit l'analyseur des lignes du programme
+     * @param ram recoit l'image de la RAM, rien si le programme n'a ni donnees ni constantes dans la reserve
+     * @return le codage de chaque instruction du programme
+     * @throws IOException si l'image de la RAM ne peut pas etre ecrite
+     * @throws IllegalArgumentException si une instruction ne peut pas etre codee, si un label n'est pas defini
+     *                                  ou si le programme ne tient pas dans la ROM
+     */
+    static int[] assemble(Source source, Supplier<Parser> parsers, OutputStream ram) throws IOException
+    {
+        Metrics metrics = Metrics.of(false);
+        metrics.begin();
+        LiteralPool pool = new LiteralPool();
+        Assembler assembler = new Assembler(source, parsers, 1, null, null, metrics, null, pool);
+        int[] program = assembler.program();
+        metrics.end();
+        if (!assembler.data.isEmpty() || !pool.isEmpty())
+            assembler.data.write(ram, pool);
+        return program;
+    }
+
+    /**
+     * Assemble un programme sur le thread courant sans ecrire de fichier, en relevant ses labels.
+     *
+     * @param source la source du programme
+     * @param parsers fournit l'analyseur des lignes du programme
+     * @param labels recoit le numero de l'instruction de chaque label
+     * @return le codage de chaque instruction du programme
+     * @throws IllegalArgumentException si une instruction ne peut pas etre codee, si un label n'est pas defini
+     *                                  ou si le programme ne tient pas dans la ROM
+     */
+    static int[] assemble(Source source, Supplier<Parser> parsers, Map<String, Long> labels)
+    {
+        Metrics metrics = Metrics.of(false);
+        metrics.begin();
+        Assembler assembler = new Assembler(source, parsers, 1, null, null, metrics, null, new LiteralPool());
+        int[] program = assembler.program();
+        metrics.end();
+        labels.putAll(assembler.link);
+        return program;
+    }
+
+    /**
+     * Assemble un programme en fichier objet relogeable, sans resoudre les labels definis dans d'autres fichiers.
+     * Les chargements depuis la reserve des constantes sont reloges vers la reserve du programme,
+     * et les acces a la section de donnees vers les donnees du programme.
+     *
+     * @param source la source du programme
+     * @param parsers fournit l'analyseur des lignes du programme
+     * @return le codage des instructions, les labels definis et exportes et les branchements a reloger
+     * @throws IllegalArgumentException si une instruction ne peut pas etre codee ou si un label exporte n'est pas defini
+     * @see Linker
+     */
+    static ObjectFile compile(Source source, Supplier<Parser> parsers)
+    {
+        Assembler assembler = new Assembler(source, parsers, 1, null, null, Metrics.DISABLED, null, new LiteralPool());
+        assembler.read();
+        int[] words = Arrays.copyOf(assembler.image, (int) assembler.programCounter);
+        Map<String, Integer> symbols = new LinkedHashMap<>();
+        assembler.link.forEach((label, address) -> symbols.put(label, address.intValue()));
+        Map<Integer, String> external = new HashMap<>();
+        assembler.fixups.forEach((label, pending) -> pending.forEach(index -> external.put(index, label)));
+        assembler.accesses.forEach((label, pending) -> pending.forEach(index -> external.put(index, ObjectFile.DATA + label)));
+        List<ObjectFile.Relocation> relocations = new ArrayList<>();
+        for (int i = 0; i < words.length; i++)
+        {
+            if (Disassembler.instruction(Disassembler.decode(words[i])).getType() == InstructionType.BRANCH)
+                relocations.add(new ObjectFile.Relocation(i, external.get(i)));
+            else if (assembler.literals.containsKey(i))
+                relocations.add(new ObjectFile.Relocation(i, ObjectFile.LITERAL + assembler.literals.get(i)));
+            else if (external.containsKey(i))
+                relocations.add(new ObjectFile.Relocation(i, external.get(i)));
+        }
+        for (String label : assembler.data.getGlobals())
+        {
+            if (!symbols.containsKey(label) && assembler.data.address(label) == null)
+                throw new IllegalArgumentException("Label not found: " + label);
+        }
+        return new ObjectFile(words, symbols, new LinkedHashSet<>(assembler.data.getGlobals()), relocations, assembler.data);
+    }
+
+    /**
+     * @param name le nom d'un analyseur : <tt>regex</tt> pour {@link PatternParser}, <tt>descent</tt> pour {@link DescentParser}
+     * @return fournit l'analyseur correspondant
+     * @throws IllegalArgumentException si l'analyseur n'existe pas
+     */
+    static Supplier<Parser> parsers(String name)
+    {
+        switch (name)
+        {
+            case "regex":   return PatternParser::new;
+            case "descent": return DescentParser::new;
+            default:        throw new IllegalArgumentException("Unknown parser: " + name);
+        }
     }
 
     /**
      * Convertie le programme ARM assembleur en donnee binaire permettant l'initialisation de la memoire logisim.
      *
-     * @throws IOException si le fichier n'existe pas
+     * @throws IOException si le fichier de sortie ne peut pas etre ecrit
      */
     private void build() throws IOException
+    {
+        metrics.begin();
+        int[] program = program();
+        // Ecrit le codage de chaque instruction
+        long time = metrics.start();
+        Image.of(program).write(output, format);
+        metrics.stop(Phase.WRITE, time);
+        if (metrics.isEnabled())
+            metrics.add(Counter.BYTES_WRITTEN, Files.size(output));
+        metrics.end();
+    }
+
+    /**
+     * @return le codage de chaque instruction du programme
+     */
+    private int[] program()
+    {
+        return parallel == null ? assemble() : parallel.assemble(source);
+    }
+
+    /**
+     * Assemble le programme sur le thread courant.
+     * <p>
+     * Le fichier source n'est lu qu'une seule fois :
+     * les branchements vers un label defini plus loin sont corriges lorsque le label est rencontre.
+     * La longueur du programme n'est verifiee qu'une fois les instructions placees, apres l'optimisation eventuelle.
+     *
+     * @return le codage de chaque instruction du programme
+     * @throws IllegalArgumentException si le programme ne tient pas dans la ROM
+     */
+    private int[] assemble()
+    {
+        read();
+        locate();
+
+        if (optimizer != null)
+        {
+            long time = metrics.start();
+            int[] program = optimizer.optimize();
+            metrics.stop(Phase.OPTIMIZE, time);
+            metrics.add(Counter.INSTRUCTIONS, program.length);
+            return Simulator.checkRom(program);
+        }
+
+        // Tous les branchements doivent avoir ete resolus
+        if (!fixups.isEmpty())
+            throw new IllegalArgumentException("Label not found: " + fixups.keySet().iterator().next());
+
+        return Simulator.checkRom(Arrays.copyOf(image, (int) programCounter));
+    }
+
+    /**
+     * Lit et code chaque ligne du programme.
+     * Les branchements vers un label qui n'est pas defini restent dans {@link #fixups},
+     * les acces a la section de donnees dans {@link #accesses}.
+     */
+    private void read()
     {
         // Initialise le nombre d'instruction à 0
         programCounter = 0;
-        // Lit et applique le pattern sur chaque ligne du fichier
-        for (String line = file.readLine(); line != null; line = file.readLine())
+        // Lit et analyse chaque ligne du fichier
+        Parser parser = parsers.get();
+        ParsedLine parsed = new ParsedLine();
+        long time = metrics.start();
+        for (CharSequence line = source.nextLine(); line != null; line = source.nextLine())
         {
-            memory.write(match(PATTERN.matcher(line)));
+            time = metrics.stop(Phase.READ, time);
+            metrics.count(Counter.LINES_READ);
+            // Les directives et les lignes de la section de donnees ne contiennent pas d'instruction
+            if (data.parse(line))
+            {
+                time = metrics.stop(Phase.PARSE, time);
+                continue;
+            }
+            boolean matched = parser.parse(line, parsed);
+            time = metrics.stop(Phase.PARSE, time);
+            if (matched)
+            {
+                metrics.count(Counter.LINES_MATCHED);
+                match(parsed);
+                time = metrics.start();
+            }
         }
-        file.close();
-        memory.close();
     }
 
     /**
-     * Recupere le resultat de l'application du patterne sur la ligne
-     * et renvoie le code Hexa de l'instruction présente sur celle-ci.
-     * Renvoie la chaine vide <tt>""</tt> si aucune instruction n'est présente.
-     * Renvoie <tt>0</tt> si une instruction inconnue est présente sur la ligne.
+     * Recupere le resultat de l'analyse de la ligne
+     * et ajoute le codage de l'instruction présente sur celle-ci a l'image memoire.
+     * N'ajoute rien si aucune instruction n'est présente.
+     * Ajoute <tt>0</tt> si une instruction inconnue est présente sur la ligne.
      *
-     * @param matcher le resultat de l'application du patterne sur la ligne.
-     * @return le codage Hexadecimale de l'instruction.
-     * @throws IOException si le fichier n'existe pas
+     * @param parsed le resultat de l'analyse d'une ligne reconnue.
      */
-    private String match(Matcher matcher) throws IOException
+    private void match(ParsedLine parsed)
     {
-        // Si le patterne ne correspond pas à la ligne, renvoie la chaine vide ""
-        if (!matcher.matches())
-            return "";
-
+        long time = metrics.start();
         // Si un label est présent, ajout du label à la table des labels
-        if (matcher.group(1) != null)
-            link.put(matcher.group(LABEL_GROUP), programCounter);
+        if (parsed.has(LABEL_GROUP))
+        {
+            if (optimizer != null)
+                optimizer.label(parsed.text(LABEL_GROUP));
+            else
+                define(parsed.text(LABEL_GROUP));
+        }
+        time = metrics.stop(Phase.LINK, time);
+
+        // Si aucune instruction n'est trouvé (i.e une ligne avec uniquement un label), aucune instruction n'est ajoutee
+        if (!parsed.has(INSTRUCTION_GROUP))
+            return;
+
+        // La pseudo-instruction LDR Rd, =valeur est remplacee par les instructions qui chargent la constante
+        if (parsed.isLiteral())
+        {
+            literal(parsed);
+            metrics.stop(Phase.ENCODE, time);
+            return;
+        }
 
-        // Si aucune instruction n'est trouvé (i.e une ligne avec uniquement un label), renvoie la chaine vide ""
-        if (matcher.group(2) == null)
-            return "";
+        // Un acces a un label de donnee recoit l'adresse du label une fois toute la source lue
+        Instructions access = parsed.dataAccess();
+        if (access != null)
+        {
+            int word = access.getEncoding().encode(parsed.value(FIRST_OPERAND_GROUP), 0);
+            int index = optimizer != null ? optimizer.getSize() : (int) programCounter;
+            accesses.computeIfAbsent(parsed.text(DATA_LABEL_GROUP), key -> new ArrayList<>()).add(index);
+            if (optimizer != null)
+                optimizer.add(access, word, null);
+            else
+            {
+                emit(word);
+                metrics.count(Counter.INSTRUCTIONS);
+            }
+            metrics.stop(Phase.ENCODE, time);
+            return;
+        }
 
         /*
-        Recupere les indices des groupes non null
         Recupere l'instruction correspondant au nom et au groupes présents
-        Recupere l'opcode de l'instruction
+        Recupere le codage de l'instruction
          */
-        int[] groups = IntStream.range(2, matcher.groupCount() + 1).filter(n -> matcher.group(n) != null).toArray();
-        Instructions instruction = Instructions.getEnum(matcher.group(INSTRUCTION_GROUP), groups);
-        String binaryOpcode = instruction.getOpcode(matcher);
+        Instructions instruction = Instructions.getEnum(parsed);
+        time = metrics.stop(Phase.DISPATCH, time);
+        int opcode = instruction.encode(parsed);
+        time = metrics.stop(Phase.ENCODE, time);
+
+        // Les branchements sont resolus apres l'optimisation
+        if (optimizer != null)
+        {
+            optimizer.add(instruction, opcode, instruction.getType() == InstructionType.BRANCH ? parsed.text(BRANCH_LABEL_GROUP) : null);
+            return;
+        }
 
         /*
         Si l'instruction est un branchement
@@ -202,67 +507,237 @@ public class Assembler
         if (instruction.getType() == InstructionType.BRANCH)
         {
             /*
-            Si le label de branchement n'est pas présent dans la table des labels (i.e le label est présent plus loin dans le programme
-            Cherche le label plus loin dans le programme et l'ajoute à la table
+            Si le label de branchement n'est pas présent dans la table des labels (i.e le label est présent plus loin dans le programme)
+            Laisse une adresse nulle qui sera corrigee lorsque le label sera defini
             */
-            if (!link.containsKey(matcher.group(BRANCH_LABEL_GROUP)))
-                findLabel(matcher.group(BRANCH_LABEL_GROUP));
-            binaryOpcode += String.format("%8s", Long.toBinaryString(link.get(matcher.group(BRANCH_LABEL_GROUP)))).replace(' ', '0');
+            String label = parsed.text(BRANCH_LABEL_GROUP);
+            Long target = link.get(label);
+            if (target != null)
+            {
+                metrics.count(Counter.LABEL_HITS);
+                opcode = Encoding.target(opcode, target);
+            }
+            else
+            {
+                metrics.count(Counter.LABEL_MISSES);
+                fixups.computeIfAbsent(label, key -> new ArrayList<>()).add((int) programCounter);
+            }
         }
 
-        // Une instruction de plus a été traitée
-        programCounter += 1;
+        emit(opcode);
+        metrics.count(Counter.INSTRUCTIONS);
+        metrics.stop(Phase.LINK, time);
+    }
 
-        // Convertion de l'opcode en hexadecimal
-        return Integer.toHexString(Integer.parseInt(binaryOpcode, 2)) + " ";
+    /**
+     * Developpe la pseudo-instruction <tt>LDR Rd, =valeur</tt>, voir {@link LiteralPool}.
+     *
+     * @param parsed le resultat de l'analyse de la ligne
+     */
+    private void literal(ParsedLine parsed)
+    {
+        int register = parsed.value(FIRST_OPERAND_GROUP);
+        int value = parsed.literal();
+        int[] words = pool.inline(register, value);
+        if (words == null)
+        {
+            words = new int[]{LiteralPool.load(register, pool.address(value))};
+            literals.put((int) programCounter, value);
+        }
+        for (int word : words)
+        {
+            if (optimizer != null)
+                optimizer.add(Disassembler.instruction(Disassembler.decode(word)), word, null);
+            else
+            {
+                emit(word);
+                metrics.count(Counter.INSTRUCTIONS);
+            }
+        }
     }
 
     /**
-     * Cherche et ajoute un label pas encore present dans la table.
+     * Ajoute l'adresse de leur label aux acces a la section de donnees.
      *
-     * @param label le label a trouve
-     * @throws IOException si le fichier n'existe pas
+     * @throws IllegalArgumentException si un label de donnee n'est pas defini
+     *                                  ou si les donnees et la reserve ne tiennent pas dans la RAM
      */
-    private void findLabel(String label) throws IOException
+    private void locate()
     {
-        // Demarre a l'instruction actuel
-        long temp = programCounter;
+        data.check(pool);
+        for (Map.Entry<String, List<Integer>> entry : accesses.entrySet())
+        {
+            Integer address = data.address(entry.getKey());
+            if (address == null)
+                throw new IllegalArgumentException("Label not found: " + entry.getKey());
+            for (int index : entry.getValue())
+            {
+                if (optimizer != null)
+                    optimizer.locate(index, address);
+                else
+                    image[index] = LiteralPool.relocate(image[index], address);
+            }
+        }
+    }
 
-        // Sauvegarde la position actuelle de lecture du fichier source
-        long backup = file.getFilePointer();
+    /**
+     * Ajoute un label a la table et corrige les branchements qui l'attendaient.
+     *
+     * @param label le label defini sur l'instruction en cours
+     */
+    private void define(String label)
+    {
+        link.put(label, programCounter);
+        List<Integer> pending = fixups.remove(label);
+        if (pending == null)
+            return;
+        metrics.add(Counter.FIXUPS, pending.size());
+        for (int index : pending)
+        {
+            image[index] = Encoding.target(image[index], programCounter);
+        }
+    }
 
-        /*
-        Parcourt le reste du fichier
-        Si le patterne correspond, ajoute une instruction à la taille temporaire du programme
-        Si le patterne et le label correspondent,
-        Ajout à la table des labels du label ainsi que de son numéro d'instruction correspondant
-        Retourne à l'endroit de lecture du fichier précédement sauvegarder
-         */
-        for (String line = file.readLine(); line != null; line = file.readLine())
+    /**
+     * Ajoute le codage d'une instruction a l'image memoire.
+     *
+     * @param opcode le codage de l'instruction
+     */
+    private void emit(int opcode)
+    {
+        if (programCounter == image.length)
+            image = Arrays.copyOf(image, image.length * 2);
+        image[(int) programCounter] = opcode;
+        // Une instruction de plus a été traitée
+        programCounter += 1;
+    }
+
+    /**
+     * Assemble un programme avec {@link AssemblyPipeline} et ecrit son image logisim au fil de l'eau.
+     * L'image est ecrite dans un fichier temporaire renomme une fois l'assemblage termine :
+     * en cas d'erreur, l'image precedente reste intacte.
+     */
+    private static void stream(String filename, String parser, Path output, Metrics metrics) throws IOException
+    {
+        metrics.begin();
+        Path temporary = Files.createTempFile(output.toAbsolutePath().getParent(), output.getFileName().toString(), ".tmp");
+        try
         {
-            Matcher matcher = PATTERN.matcher(line);
-            if (matcher.matches())
-                temp += 1;
-            if (matcher.matches() && label.equals(matcher.group(LABEL_GROUP)))
+            try (Reader reader = Source.STDIN.equals(filename) ? new InputStreamReader(System.in, StandardCharsets.UTF_8) : Files.newBufferedReader(Paths.get(filename));
+                 OutputStream out = new BufferedOutputStream(Files.newOutputStream(temporary)))
             {
-                link.put(label, temp);
-                file.seek(backup);
-                return;
+                metrics.add(Counter.INSTRUCTIONS, new AssemblyPipeline(parser, 16).assemble(reader, AssemblyPipeline.logisim(out)));
             }
+            Files.move(temporary, output, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        finally
+        {
+            Files.deleteIfExists(temporary);
         }
+        // Les etages du pipeline ne sont pas mesures separement
+        if (metrics.isEnabled())
+            metrics.add(Counter.BYTES_WRITTEN, Files.size(output));
+        metrics.end();
     }
 
     /**
      * Prend en argument le nom du fichier contenant le programme en langage assembleur ARM et le convertit en fichier binaire.
+     * Le programme est lu sur l'entree standard si le nom du fichier vaut {@value Source#STDIN}.
+     * <p>
+     * Options, placees avant le nom du fichier :
+     * <pre>
+     * --parser=regex    analyse les lignes avec {@link #PATTERN PATTERN} (par defaut)
+     * --parser=descent  analyse les lignes avec {@link DescentParser}
+     * --parallel        assemble le programme sur tous les processeurs, voir {@link ParallelAssembler}
+     * --parallel=N      assemble le programme sur N threads
+     * --output=FILE     ecrit l'image dans FILE (par defaut {@value OUT_FILE})
+     * --format=F        format de l'image : raw, binary ou hex (par defaut d'apres l'extension de FILE, voir {@link Image.Format})
+     * --stream          assemble le programme au fil de sa lecture, sans le garder en memoire, voir {@link AssemblyPipeline}
+     *                   (format raw uniquement)
+     * --optimize        optimise le programme avant de l'ecrire et affiche les instructions et cycles economises,
+     *                   voir {@link Optimizer} (sur un seul thread)
+     * --inline=N        developpe LDR Rd, =valeur en au plus N instructions, sinon charge la constante
+     *                   depuis la reserve (par defaut {@value LiteralPool#INLINE}), voir {@link LiteralPool}
+     * --ram=FILE        ecrit l'image de la RAM contenant la section de donnees et la reserve dans FILE
+     *                   (par defaut {@value RAM_FILE}), si le programme en utilise, voir {@link DataSection}
+     * --stats           affiche les compteurs et le temps de chaque phase a la fin de l'assemblage, voir {@link Metrics}
+     * </pre>
      *
-     * @param args les arguments contenant à l'indice 0 le nom du fichier source
+     * @param args les options suivies du nom du fichier source
      * @throws IOException si le fichier n'existe pas
      */
     public static void main(String[] args) throws IOException
     {
-        if (args.length < 1)
+        Supplier<Parser> parsers = PatternParser::new;
+        String parserName = "regex";
+        int threads = 1;
+        Path output = Paths.get(OUT_FILE);
+        Image.Format format = null;
+        boolean stream = false;
+        boolean stats = false;
+        boolean optimize = false;
+        int inline = LiteralPool.INLINE;
+        Path ram = Paths.get(RAM_FILE);
+        String filename = null;
+        for (String arg : args)
+        {
+            if (arg.startsWith("--parser="))
+            {
+                parserName = arg.substring("--parser=".length());
+                parsers = parsers(parserName);
+            }
+            else if (arg.equals("--parallel"))
+                threads = Runtime.getRuntime().availableProcessors();
+            else if (arg.startsWith("--parallel="))
+                threads = Integer.parseInt(arg.substring("--parallel=".length()));
+            else if (arg.startsWith("--output="))
+                output = Paths.get(arg.substring("--output=".length()));
+            else if (arg.startsWith("--format="))
+                format = Image.Format.forName(arg.substring("--format=".length()));
+            else if (arg.equals("--stream"))
+                stream = true;
+            else if (arg.equals("--stats"))
+                stats = true;
+            else if (arg.equals("--optimize"))
+                optimize = true;
+            else if (arg.startsWith("--inline="))
+                inline = Integer.parseInt(arg.substring("--inline=".length()));
+            else if (arg.startsWith("--ram="))
+                ram = Paths.get(arg.substring("--ram=".length()));
+            else if (arg.startsWith("--"))
+                throw new IllegalArgumentException("Unknown option: " + arg);
+            else
+                filename = arg;
+        }
+        if (filename == null)
             throw new IllegalArgumentException("File name is missing");
-        new Assembler(args[0]).build();
+        if (format == null)
+            format = Image.Format.of(output);
+        Metrics metrics = Metrics.of(stats);
+        if (stream)
+        {
+            if (format != Image.Format.RAW)
+                throw new IllegalArgumentException("--stream only supports the raw format");
+            if (optimize)
+                throw new IllegalArgumentException("--stream does not support --optimize");
+            stream(filename, parserName, output, metrics);
+        }
+        else
+        {
+            long time = metrics.start();
+            Source source = Source.open(filename);
+            metrics.stop(Phase.READ, time);
+            Optimizer optimizer = optimize ? new Optimizer() : null;
+            LiteralPool pool = new LiteralPool(inline);
+            Assembler assembler = new Assembler(source, parsers, threads, output, format, metrics, optimizer, pool);
+            assembler.build();
+            if (!assembler.data.isEmpty() || !pool.isEmpty())
+                assembler.data.write(ram, pool);
+            if (optimizer != null)
+                System.out.print(optimizer.report());
+        }
+        if (stats)
+            System.out.print(metrics.summary());
     }
 
 }
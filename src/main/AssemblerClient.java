@@ -0,0 +1,273 @@
+package main;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Client du {@link AssemblerServer serveur d'assemblage}.
+ * <p>
+ * Une connexion est ouverte par programme et les programmes sont envoyes en parallele :
+ * le serveur les assemble chacun sur son propre thread.
+ * L'image de chaque programme est ecrite a cote de sa source, avec l'extension de son format,
+ * si bien que plusieurs programmes peuvent etre assembles dans un meme repertoire.
+ * L'image de la RAM d'un programme utilisant des donnees ou la reserve des constantes est ecrite de meme,
+ * le nom de la source suivi de {@value #RAM_SUFFIX}.
+ *
+ * @see AssemblerServer
+ */
+final class AssemblerClient implements AutoCloseable
+{
+    /**
+     * Fin du nom de l'image de la RAM ecrite a cote de la source.
+     */
+    static final String RAM_SUFFIX = "-ram.ini";
+
+    private final SocketChannel channel;
+    private final InputStream in;
+    private final OutputStream out;
+
+    /**
+     * Se connecte au serveur.
+     *
+     * @param address l'adresse TCP ou le chemin de la socket Unix du serveur
+     * @throws IOException si le serveur ne repond pas
+     */
+    AssemblerClient(SocketAddress address) throws IOException
+    {
+        channel = address instanceof UnixDomainSocketAddress ? SocketChannel.open(StandardProtocolFamily.UNIX) : SocketChannel.open();
+        channel.connect(address);
+        in = new BufferedInputStream(Channels.newInputStream(channel));
+        out = new BufferedOutputStream(Channels.newOutputStream(channel));
+    }
+
+    /**
+     * Fait assembler un programme par le serveur.
+     *
+     * @param source le programme encode en UTF-8
+     * @param parser le nom de l'analyseur, voir {@link Assembler#parsers(String)}
+     * @param format le format de l'image renvoyee
+     * @return l'image du programme, dans le format demande, et l'image de sa RAM
+     * @throws IOException si la connexion est interrompue
+     * @throws IllegalArgumentException si le programme ne peut pas etre assemble, avec le diagnostic du serveur
+     */
+    Images assemble(byte[] source, String parser, Image.Format format) throws IOException
+    {
+        out.write(("ASSEMBLE " + parser + " " + format.name().toLowerCase(Locale.ROOT) + " " + source.length + "\n").getBytes(StandardCharsets.US_ASCII));
+        out.write(source);
+        out.flush();
+        String[] lengths = status().split(" ");
+        if (lengths.length != 2)
+            throw new IOException("Unexpected response: OK " + String.join(" ", lengths));
+        byte[] rom = payload(Integer.parseInt(lengths[0]));
+        return new Images(rom, payload(Integer.parseInt(lengths[1])));
+    }
+
+    /**
+     * @return les statistiques du serveur
+     * @throws IOException si la connexion est interrompue
+     */
+    String statistics() throws IOException
+    {
+        out.write("STATS\n".getBytes(StandardCharsets.US_ASCII));
+        out.flush();
+        return new String(response(), StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * Arrete le serveur.
+     *
+     * @throws IOException si la connexion est interrompue
+     */
+    void stop() throws IOException
+    {
+        out.write("STOP\n".getBytes(StandardCharsets.US_ASCII));
+        out.flush();
+        response();
+    }
+
+    private byte[] response() throws IOException
+    {
+        return payload(Integer.parseInt(status()));
+    }
+
+    /**
+     * Lit la ligne d'etat d'une reponse.
+     *
+     * @return les longueurs des parties de la reponse
+     * @throws IllegalArgumentException si le serveur renvoie une erreur
+     */
+    private String status() throws IOException
+    {
+        String status = AssemblerServer.readLine(in);
+        if (status == null)
+            throw new IOException("Connection closed by server");
+        if (status.startsWith("ERROR "))
+            throw new IllegalArgumentException(status.substring("ERROR ".length()));
+        if (!status.startsWith("OK "))
+            throw new IOException("Unexpected response: " + status);
+        return status.substring("OK ".length());
+    }
+
+    private byte[] payload(int length) throws IOException
+    {
+        byte[] payload = in.readNBytes(length);
+        if (payload.length != length)
+            throw new IOException("Connection closed by server");
+        return payload;
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        channel.close();
+    }
+
+    /**
+     * Envoie des programmes au serveur et ecrit leurs images.
+     * <p>
+     * Options, placees avant les noms des fichiers :
+     * <pre>
+     * --port=N          serveur sur le port TCP N de l'interface locale (par defaut {@value AssemblerServer#PORT})
+     * --socket=PATH     serveur sur la socket Unix PATH
+     * --parser=P        analyseur : regex (par defaut) ou descent
+     * --format=F        format des images : raw (par defaut), binary ou hex
+     * --output=FILE     nom de l'image, lorsqu'un seul programme est envoye
+     * --ram=FILE        nom de l'image de la RAM, lorsqu'un seul programme est envoye
+     * --stats           affiche les statistiques du serveur
+     * --stop            arrete le serveur
+     * </pre>
+     *
+     * @param args les options suivies des noms des fichiers source
+     * @throws IOException si le serveur ne repond pas ou si un fichier n'existe pas
+     */
+    public static void main(String[] args) throws IOException
+    {
+        int port = -1;
+        String socket = null;
+        String parser = "regex";
+        Image.Format format = Image.Format.RAW;
+        String output = null;
+        String ram = null;
+        boolean stats = false;
+        boolean stop = false;
+        List<String> filenames = new ArrayList<>();
+        for (String arg : args)
+        {
+            if (arg.startsWith("--port="))
+                port = Integer.parseInt(arg.substring("--port=".length()));
+            else if (arg.startsWith("--socket="))
+                socket = arg.substring("--socket=".length());
+            else if (arg.startsWith("--parser="))
+                parser = arg.substring("--parser=".length());
+            else if (arg.startsWith("--format="))
+                format = Image.Format.forName(arg.substring("--format=".length()));
+            else if (arg.startsWith("--output="))
+                output = arg.substring("--output=".length());
+            else if (arg.startsWith("--ram="))
+                ram = arg.substring("--ram=".length());
+            else if (arg.equals("--stats"))
+                stats = true;
+            else if (arg.equals("--stop"))
+                stop = true;
+            else if (arg.startsWith("--"))
+                throw new IllegalArgumentException("Unknown option: " + arg);
+            else
+                filenames.add(arg);
+        }
+        if (output != null && filenames.size() != 1)
+            throw new IllegalArgumentException("--output requires exactly one file");
+        if (ram != null && filenames.size() != 1)
+            throw new IllegalArgumentException("--ram requires exactly one file");
+        if (filenames.isEmpty() && !stats && !stop)
+            throw new IllegalArgumentException("File name is missing");
+
+        SocketAddress address = AssemblerServer.address(port, socket);
+        String chosenParser = parser;
+        Image.Format chosenFormat = format;
+        String chosenOutput = output;
+        String chosenRam = ram;
+        long failures = filenames.parallelStream().filter(filename -> {
+            Path target = chosenOutput != null ? Paths.get(chosenOutput) : image(Paths.get(filename), "." + chosenFormat.getExtension());
+            Path memory = chosenRam != null ? Paths.get(chosenRam) : image(Paths.get(filename), RAM_SUFFIX);
+            try (AssemblerClient client = new AssemblerClient(address))
+            {
+                Images images = client.assemble(Files.readAllBytes(Paths.get(filename)), chosenParser, chosenFormat);
+                Files.write(target, images.getRom());
+                if (images.getRam().length > 0)
+                    Files.write(memory, images.getRam());
+                return false;
+            }
+            catch (IOException | IllegalArgumentException e)
+            {
+                System.err.println(filename + ": " + e.getMessage());
+                return true;
+            }
+        }).count();
+
+        if (stats || stop)
+        {
+            try (AssemblerClient client = new AssemblerClient(address))
+            {
+                if (stats)
+                    System.out.print(client.statistics());
+                if (stop)
+                    client.stop();
+            }
+        }
+        if (failures > 0)
+            System.exit(1);
+    }
+
+    /**
+     * @return le nom d'une image d'un programme : le nom de la source, sans son extension, suivi de <tt>suffix</tt>
+     */
+    private static Path image(Path source, String suffix)
+    {
+        String name = source.getFileName().toString();
+        int dot = name.lastIndexOf('.');
+        return source.resolveSibling((dot > 0 ? name.substring(0, dot) : name) + suffix);
+    }
+
+    /**
+     * Images d'un programme assemble par le serveur.
+     */
+    static final class Images
+    {
+        private final byte[] rom;
+        /**
+         * Image de la RAM, vide si le programme n'a ni donnees ni constantes dans la reserve.
+         */
+        private final byte[] ram;
+
+        Images(byte[] rom, byte[] ram)
+        {
+            this.rom = rom;
+            this.ram = ram;
+        }
+
+        byte[] getRom()
+        {
+            return rom;
+        }
+
+        byte[] getRam()
+        {
+            return ram;
+        }
+    }
+}
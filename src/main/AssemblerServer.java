@@ -0,0 +1,378 @@
+package main;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Serveur d'assemblage : garde une JVM chargee pour assembler de nombreux programmes
+ * sans payer a chaque fois le demarrage de la JVM et l'initialisation de {@link Assembler#PATTERN PATTERN}.
+ * <p>
+ * Le serveur ecoute sur un port TCP local ou sur une socket Unix.
+ * Chaque connexion est traitee sur son propre thread virtuel lorsque la JVM en dispose,
+ * sur un thread classique sinon.
+ * Seules les tables immuables ({@link Instructions}, {@link Encoding}, PATTERN) sont partagees :
+ * chaque requete cree son propre {@link Assembler}.
+ * <p>
+ * Protocole, une requete apres l'autre sur une meme connexion.
+ * Chaque requete et chaque reponse commence par une ligne ASCII terminee par '\n' :
+ * <pre>
+ * ASSEMBLE parser format N   suivie des N octets du programme en UTF-8
+ *                            reponse : OK N M suivie des N octets de l'image de la ROM et des M octets de l'image
+ *                            de la RAM, ou ERROR message
+ * STATS                      reponse : OK N suivie de N octets de texte
+ * STOP                       reponse : OK 0, puis le serveur s'arrete
+ * </pre>
+ * <tt>parser</tt> vaut <tt>regex</tt> ou <tt>descent</tt>, voir {@link Assembler#parsers(String)},
+ * et <tt>format</tt> est l'un des {@link Image.Format formats} d'image.
+ * L'image de la RAM contient la section de donnees et la reserve des constantes, comme celle de l'option
+ * <tt>--ram</tt> de l'{@link Assembler} ; elle est vide si le programme n'en utilise pas.
+ *
+ * @see AssemblerClient
+ */
+final class AssemblerServer
+{
+    /**
+     * Port TCP par defaut, sur l'interface locale.
+     */
+    static final int PORT = 7070;
+    /**
+     * Taille maximale d'un programme accepte, en octets.
+     */
+    private static final int MAX_SOURCE = 1 << 28;
+    /**
+     * Nombre de latences conservees pour le calcul des percentiles.
+     */
+    private static final int SAMPLES = 4096;
+    /**
+     * Longueur maximale d'une ligne d'etat ou de requete, en caracteres.
+     */
+    private static final int MAX_LINE = 4096;
+
+    private final ServerSocketChannel server;
+    private final ExecutorService executor;
+    /**
+     * Requetes en cours de traitement.
+     */
+    private final AtomicInteger active = new AtomicInteger();
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong errors = new AtomicLong();
+    /**
+     * Dernieres latences mesurees, en nanosecondes, dans un tampon circulaire.
+     */
+    private final long[] latencies = new long[SAMPLES];
+    private long samples;
+
+    /**
+     * @param server la socket d'ecoute, deja liee a son adresse
+     */
+    AssemblerServer(ServerSocketChannel server)
+    {
+        this.server = server;
+        this.executor = executor();
+    }
+
+    /**
+     * Ouvre une socket d'ecoute.
+     *
+     * @param address l'adresse TCP ou le chemin de la socket Unix
+     * @return la socket d'ecoute
+     * @throws IOException si l'adresse est deja utilisee
+     */
+    static ServerSocketChannel bind(SocketAddress address) throws IOException
+    {
+        ServerSocketChannel channel = address instanceof UnixDomainSocketAddress ? ServerSocketChannel.open(StandardProtocolFamily.UNIX) : ServerSocketChannel.open();
+        return channel.bind(address);
+    }
+
+    /**
+     * @param port le port TCP, ou -1
+     * @param socket le chemin de la socket Unix, ou <tt>null</tt> pour utiliser le port TCP
+     * @return l'adresse du serveur
+     */
+    static SocketAddress address(int port, String socket)
+    {
+        if (socket != null)
+            return UnixDomainSocketAddress.of(socket);
+        return new InetSocketAddress(InetAddress.getLoopbackAddress(), port < 0 ? PORT : port);
+    }
+
+    /**
+     * Cree un executeur lancant un thread virtuel par tache si la JVM le permet (Java 21 et plus),
+     * un thread classique par tache sinon.
+     */
+    private static ExecutorService executor()
+    {
+        try
+        {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        }
+        catch (ReflectiveOperationException e)
+        {
+            return Executors.newCachedThreadPool(task -> {
+                Thread thread = new Thread(task, "assembler-request");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    /**
+     * Accepte les connexions jusqu'a la reception d'une commande STOP ou la fermeture de la socket.
+     *
+     * @throws IOException si la socket d'ecoute echoue
+     */
+    void serve() throws IOException
+    {
+        try
+        {
+            while (server.isOpen())
+            {
+                SocketChannel client;
+                try
+                {
+                    client = server.accept();
+                }
+                catch (IOException e)
+                {
+                    if (!server.isOpen())
+                        break;
+                    throw e;
+                }
+                executor.execute(() -> handle(client));
+            }
+        }
+        finally
+        {
+            executor.shutdown();
+            try
+            {
+                executor.awaitTermination(10, TimeUnit.SECONDS);
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Traite les requetes d'une connexion jusqu'a sa fermeture.
+     */
+    private void handle(SocketChannel client)
+    {
+        try (SocketChannel channel = client)
+        {
+            InputStream in = new BufferedInputStream(Channels.newInputStream(channel));
+            OutputStream out = new BufferedOutputStream(Channels.newOutputStream(channel));
+            for (String request = readLine(in); request != null; request = readLine(in))
+            {
+                long start = System.nanoTime();
+                active.incrementAndGet();
+                try
+                {
+                    if (!respond(request.split(" "), in, out))
+                        return;
+                }
+                finally
+                {
+                    active.decrementAndGet();
+                    record(System.nanoTime() - start);
+                }
+            }
+        }
+        catch (IOException e)
+        {
+            // Connexion interrompue par le client : rien a lui repondre
+            errors.incrementAndGet();
+        }
+    }
+
+    /**
+     * Repond a une requete.
+     *
+     * @return faux si la connexion doit etre fermee
+     */
+    private boolean respond(String[] request, InputStream in, OutputStream out) throws IOException
+    {
+        requests.incrementAndGet();
+        switch (request[0])
+        {
+            case "ASSEMBLE":
+                // Sans longueur valide, la requete suivante ne peut pas etre retrouvee : la connexion est fermee
+                int length = request.length == 4 && request[3].matches("\\d{1,9}") ? Integer.parseInt(request[3]) : -1;
+                if (length < 0 || length > MAX_SOURCE)
+                    return !error(out, "Malformed request: " + String.join(" ", request));
+                byte[] source = in.readNBytes(length);
+                if (source.length != length)
+                    throw new EOFException();
+                byte[] image;
+                ByteArrayOutputStream ram = new ByteArrayOutputStream();
+                try
+                {
+                    int[] program = Assembler.assemble(Source.of(ByteBuffer.wrap(source)), Assembler.parsers(request[1]), ram);
+                    ByteArrayOutputStream bytes = new ByteArrayOutputStream(program.length * 5 + 16);
+                    Image.Format.forName(request[2]).write(Image.of(program), Channels.newChannel(bytes));
+                    image = bytes.toByteArray();
+                }
+                catch (RuntimeException e)
+                {
+                    return error(out, e.getMessage() != null ? e.getMessage() : e.toString());
+                }
+                reply(out, image, ram.toByteArray());
+                return true;
+            case "STATS":
+                reply(out, statistics().getBytes(StandardCharsets.US_ASCII));
+                return true;
+            case "STOP":
+                reply(out, new byte[0]);
+                server.close();
+                return false;
+            default:
+                return error(out, "Unknown request: " + request[0]);
+        }
+    }
+
+    /**
+     * Envoie une reponse : la longueur de chaque partie, puis les parties dans l'ordre.
+     */
+    private static void reply(OutputStream out, byte[]... payloads) throws IOException
+    {
+        StringBuilder status = new StringBuilder("OK");
+        for (byte[] payload : payloads)
+            status.append(' ').append(payload.length);
+        out.write(status.append('\n').toString().getBytes(StandardCharsets.US_ASCII));
+        for (byte[] payload : payloads)
+            out.write(payload);
+        out.flush();
+    }
+
+    /**
+     * Renvoie un diagnostic au client, sur une ligne ASCII comme le reste du protocole :
+     * les caracteres hors de l'ASCII imprimable sont remplaces par '?'.
+     *
+     * @return vrai : la connexion reste utilisable
+     */
+    private boolean error(OutputStream out, String message) throws IOException
+    {
+        errors.incrementAndGet();
+        StringBuilder line = new StringBuilder("ERROR ");
+        for (char c : String.valueOf(message).toCharArray())
+            line.append(c >= ' ' && c < 0x7F ? c : '?');
+        // Le client refuse les lignes trop longues, voir readLine
+        line.setLength(Math.min(line.length(), MAX_LINE));
+        out.write(line.append('\n').toString().getBytes(StandardCharsets.US_ASCII));
+        out.flush();
+        return true;
+    }
+
+    private synchronized void record(long latency)
+    {
+        latencies[(int) (samples++ % SAMPLES)] = latency;
+    }
+
+    /**
+     * @return le nombre de requetes, les requetes en cours et les percentiles de latence des dernieres requetes
+     */
+    synchronized String statistics()
+    {
+        long[] sorted = Arrays.copyOf(latencies, (int) Math.min(samples, SAMPLES));
+        Arrays.sort(sorted);
+        StringBuilder text = new StringBuilder();
+        text.append("requests ").append(requests.get()).append('\n');
+        text.append("errors ").append(errors.get()).append('\n');
+        text.append("active ").append(active.get()).append('\n');
+        for (double percentile : new double[]{50, 90, 99, 100})
+        {
+            long latency = sorted.length == 0 ? 0 : sorted[(int) Math.min(sorted.length - 1, Math.ceil(percentile / 100 * sorted.length) - 1)];
+            text.append(percentile == 100 ? "max" : "p" + (int) percentile).append(' ').append(String.format(Locale.ROOT, "%.3f ms", latency / 1e6)).append('\n');
+        }
+        return text.toString();
+    }
+
+    /**
+     * Lit une ligne ASCII terminee par '\n'.
+     *
+     * @param in le flux
+     * @return la ligne sans son '\n', ou <tt>null</tt> si le flux est termine
+     * @throws IOException si la lecture echoue ou si la ligne est trop longue
+     */
+    static String readLine(InputStream in) throws IOException
+    {
+        StringBuilder line = new StringBuilder();
+        for (int c = in.read(); c != '\n'; c = in.read())
+        {
+            if (c < 0)
+                return line.length() == 0 ? null : line.toString();
+            if (line.length() > MAX_LINE)
+                throw new IOException("Line too long");
+            line.append((char) c);
+        }
+        return line.toString();
+    }
+
+    /**
+     * Lance le serveur.
+     * <p>
+     * Options :
+     * <pre>
+     * --port=N       ecoute sur le port TCP N de l'interface locale (par defaut {@value PORT})
+     * --socket=PATH  ecoute sur la socket Unix PATH
+     * </pre>
+     *
+     * @param args les options
+     * @throws IOException si l'adresse est deja utilisee
+     */
+    public static void main(String[] args) throws IOException
+    {
+        int port = -1;
+        String socket = null;
+        for (String arg : args)
+        {
+            if (arg.startsWith("--port="))
+                port = Integer.parseInt(arg.substring("--port=".length()));
+            else if (arg.startsWith("--socket="))
+                socket = arg.substring("--socket=".length());
+            else
+                throw new IllegalArgumentException("Unknown option: " + arg);
+        }
+        SocketAddress address = address(port, socket);
+        if (socket != null)
+            Files.deleteIfExists(Paths.get(socket));
+        // Initialise les tables partagees avant la premiere requete
+        Assembler.assemble(Source.of(""), Assembler.parsers("regex"), 1);
+        try (ServerSocketChannel channel = bind(address))
+        {
+            System.out.println("Listening on " + address);
+            new AssemblerServer(channel).serve();
+        }
+        finally
+        {
+            if (socket != null)
+                Files.deleteIfExists(Paths.get(socket));
+        }
+    }
+}
@@ -0,0 +1,537 @@
+package main;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+import static main.Assembler.*;
+
+/**
+ * Assemble un programme au fil de sa lecture, sans jamais le garder en entier en memoire.
+ * <p>
+ * L'assemblage est decoupe en etapes reliees par des files bornees :
+ * <ol>
+ * <li>lecture des lignes, sur son propre thread ;</li>
+ * <li>analyse et codage de chaque ligne, sur son propre thread
+ * (le codage lit directement le resultat de l'analyse, reutilise d'une ligne a l'autre) ;</li>
+ * <li>attribution des adresses et resolution des branchements, sur son propre thread ;</li>
+ * <li>envoi des mots au {@link Sink}, sur le thread appelant.</li>
+ * </ol>
+ * Les mots sont envoyes des qu'ils sont connus : seuls les branchements vers un label pas encore defini
+ * sont retenus, puis envoyes avec leur adresse lorsque le label apparait.
+ * Un {@link Sink} recoit donc les mots dans le desordre, sauf s'il est enveloppe par {@link #ordered(Sink)}.
+ * La memoire utilisee ne depend que de la capacite des files, de la table des labels et des branchements en attente.
+ *
+ * @see Assembler
+ */
+public final class AssemblyPipeline
+{
+    /**
+     * Nombre d'elements transmis d'une etape a l'autre en une fois.
+     */
+    private static final int BATCH = 512;
+    /**
+     * Nombre de lots en attente entre deux etapes, par defaut.
+     */
+    private static final int CAPACITY = 16;
+    /**
+     * Delai entre deux verifications de l'etat des etapes, en millisecondes.
+     */
+    private static final long POLL = 50;
+
+    private final Supplier<Parser> parsers;
+    private final int capacity;
+
+    /**
+     * Cree un pipeline utilisant l'analyseur par defaut.
+     */
+    public AssemblyPipeline()
+    {
+        this("regex", CAPACITY);
+    }
+
+    /**
+     * @param parser le nom de l'analyseur : <tt>regex</tt> ou <tt>descent</tt>
+     * @param capacity le nombre de lots de {@value BATCH} elements en attente entre deux etapes
+     * @throws IllegalArgumentException si l'analyseur n'existe pas ou si la capacite n'est pas positive
+     */
+    public AssemblyPipeline(String parser, int capacity)
+    {
+        if (capacity <= 0)
+            throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+        this.parsers = Assembler.parsers(parser);
+        this.capacity = capacity;
+    }
+
+    /**
+     * Recoit le codage des instructions au fur et a mesure de l'assemblage.
+     */
+    @FunctionalInterface
+    public interface Sink
+    {
+        /**
+         * @param address le numero de l'instruction
+         * @param word le codage de l'instruction sur 16 bits
+         * @throws IOException si le mot ne peut pas etre ecrit
+         */
+        void accept(int address, int word) throws IOException;
+
+        /**
+         * Appelee une fois tous les mots recus.
+         *
+         * @param length le nombre d'instructions du programme
+         * @throws IOException si la fin de l'image ne peut pas etre ecrite
+         */
+        default void finish(int length) throws IOException
+        {
+        }
+    }
+
+    /**
+     * Enveloppe un {@link Sink} pour qu'il recoive les mots dans l'ordre des adresses.
+     * Seuls les mots suivant un branchement encore en attente sont retenus.
+     *
+     * @param sink le destinataire des mots, dans l'ordre
+     * @return un destinataire acceptant les mots dans le desordre
+     */
+    public static Sink ordered(Sink sink)
+    {
+        return new Sink()
+        {
+            private final Map<Integer, Integer> waiting = new HashMap<>();
+            private int next;
+
+            @Override
+            public void accept(int address, int word) throws IOException
+            {
+                if (address != next)
+                {
+                    waiting.put(address, word);
+                    return;
+                }
+                sink.accept(next++, word);
+                for (Integer held = waiting.remove(next); held != null; held = waiting.remove(next))
+                    sink.accept(next++, held);
+            }
+
+            @Override
+            public void finish(int length) throws IOException
+            {
+                sink.finish(length);
+            }
+        };
+    }
+
+    /**
+     * Ecrit les mots dans une image logisim {@value Image#HEADER}, identique a celle de {@link Image.Format#RAW}.
+     *
+     * @param out la destination de l'image, qui n'est pas fermee
+     * @return un destinataire acceptant les mots dans le desordre
+     */
+    public static Sink logisim(OutputStream out)
+    {
+        return ordered(new Sink()
+        {
+            private final StringBuilder text = new StringBuilder(Image.HEADER).append('\n');
+            private int value = -1;
+            private int run;
+
+            @Override
+            public void accept(int address, int word) throws IOException
+            {
+                if (word == value)
+                {
+                    run += 1;
+                    return;
+                }
+                flush();
+                value = word;
+                run = 1;
+            }
+
+            @Override
+            public void finish(int length) throws IOException
+            {
+                flush();
+                write();
+                out.flush();
+            }
+
+            private void flush() throws IOException
+            {
+                if (run > 0)
+                    Image.Format.run(text, value, run);
+                run = 0;
+                if (text.length() >= BATCH * 8)
+                    write();
+            }
+
+            private void write() throws IOException
+            {
+                out.write(text.toString().getBytes(StandardCharsets.US_ASCII));
+                text.setLength(0);
+            }
+        });
+    }
+
+    /**
+     * Assemble un programme lu depuis un flux de caracteres.
+     *
+     * @param reader le programme, qui n'est pas ferme
+     * @param sink le destinataire du codage des instructions
+     * @return le nombre d'instructions du programme
+     * @throws IOException si la lecture ou l'ecriture echoue
+     * @throws IllegalArgumentException si une instruction ne peut pas etre codee, si un label n'est pas defini
+     *                                  ou si le programme ne tient pas dans la ROM
+     */
+    public int assemble(Reader reader, Sink sink) throws IOException
+    {
+        BufferedReader lines = reader instanceof BufferedReader ? (BufferedReader) reader : new BufferedReader(reader);
+        return run(() -> {
+            try
+            {
+                return lines.readLine();
+            }
+            catch (IOException e)
+            {
+                throw new UncheckedIOException(e);
+            }
+        }, sink);
+    }
+
+    /**
+     * Assemble un programme encode en UTF-8 lu depuis un canal.
+     *
+     * @param channel le programme, qui n'est pas ferme
+     * @param sink le destinataire du codage des instructions
+     * @return le nombre d'instructions du programme
+     * @throws IOException si la lecture ou l'ecriture echoue
+     * @throws IllegalArgumentException si une instruction ne peut pas etre codee, si un label n'est pas defini
+     *                                  ou si le programme ne tient pas dans la ROM
+     */
+    public int assemble(ReadableByteChannel channel, Sink sink) throws IOException
+    {
+        return assemble(Channels.newReader(channel, StandardCharsets.UTF_8), sink);
+    }
+
+    /**
+     * Assemble un programme fourni ligne par ligne, par exemple par un generateur de code.
+     *
+     * @param lines les lignes du programme, consommees une seule fois
+     * @param sink le destinataire du codage des instructions
+     * @return le nombre d'instructions du programme
+     * @throws IOException si l'ecriture echoue
+     * @throws IllegalArgumentException si une instruction ne peut pas etre codee, si un label n'est pas defini
+     *                                  ou si le programme ne tient pas dans la ROM
+     */
+    public int assemble(Stream<String> lines, Sink sink) throws IOException
+    {
+        Iterator<String> iterator = lines.iterator();
+        return run(() -> iterator.hasNext() ? iterator.next() : null, sink);
+    }
+
+    /**
+     * Lance les etapes et envoie les mots au destinataire sur le thread appelant.
+     *
+     * @param source fournit la ligne suivante, ou <tt>null</tt> a la fin du programme
+     */
+    private int run(Supplier<String> source, Sink sink) throws IOException
+    {
+        BlockingQueue<String[]> lines = new ArrayBlockingQueue<>(capacity);
+        BlockingQueue<Lines> parsed = new ArrayBlockingQueue<>(capacity);
+        BlockingQueue<int[]> words = new ArrayBlockingQueue<>(capacity);
+        Stage[] stages = {
+                new Stage("assembler-read", () -> {
+                    read(source, lines);
+                    return 0;
+                }),
+                new Stage("assembler-parse", () -> {
+                    parse(lines, parsed);
+                    return 0;
+                }),
+                new Stage("assembler-resolve", () -> resolve(parsed, words)),
+        };
+        for (Stage stage : stages)
+        {
+            stage.start();
+        }
+
+        int length;
+        try
+        {
+            // Un lot vide marque la fin du programme
+            for (int[] batch = take(words, stages); batch.length > 0; batch = take(words, stages))
+            {
+                for (int i = 0; i < batch.length; i += 2)
+                {
+                    sink.accept(batch[i], batch[i + 1]);
+                }
+            }
+            stages[2].join();
+            length = stages[2].length;
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted", e);
+        }
+        finally
+        {
+            for (Stage stage : stages)
+            {
+                stage.interrupt();
+            }
+        }
+        sink.finish(length);
+        return length;
+    }
+
+    /**
+     * Attend le lot suivant en surveillant les etapes : la premiere erreur d'une etape est propagee au thread appelant.
+     */
+    private static int[] take(BlockingQueue<int[]> queue, Stage[] stages) throws IOException, InterruptedException
+    {
+        while (true)
+        {
+            int[] batch = queue.poll(POLL, TimeUnit.MILLISECONDS);
+            if (batch != null)
+                return batch;
+            for (Stage stage : stages)
+            {
+                stage.rethrow();
+            }
+        }
+    }
+
+    /**
+     * Etape 1 : lit les lignes par lots.
+     */
+    private static void read(Supplier<String> source, BlockingQueue<String[]> lines) throws InterruptedException
+    {
+        String[] batch = new String[BATCH];
+        int size = 0;
+        for (String line = source.get(); line != null; line = source.get())
+        {
+            batch[size++] = line;
+            if (size == BATCH)
+            {
+                lines.put(batch);
+                batch = new String[BATCH];
+                size = 0;
+            }
+        }
+        if (size > 0)
+            lines.put(Arrays.copyOf(batch, size));
+        lines.put(new String[0]);
+    }
+
+    /**
+     * Etape 2 : analyse chaque ligne, choisit et code son instruction.
+     */
+    private void parse(BlockingQueue<String[]> lines, BlockingQueue<Lines> parsed) throws InterruptedException
+    {
+        Parser parser = parsers.get();
+        ParsedLine line = new ParsedLine();
+        DataSection directives = new DataSection();
+        for (String[] batch = lines.take(); batch.length > 0; batch = lines.take())
+        {
+            Lines result = new Lines(batch.length);
+            for (String text : batch)
+            {
+                if (directives.isDirective(text))
+                    throw new IllegalArgumentException("--stream does not support data sections");
+                if (!parser.parse(text, line))
+                    continue;
+                String label = line.has(LABEL_GROUP) ? line.text(LABEL_GROUP) : null;
+                if (!line.has(INSTRUCTION_GROUP))
+                {
+                    result.add(label, Lines.NONE, null);
+                    continue;
+                }
+                if (line.isLiteral())
+                    throw new IllegalArgumentException("--stream does not support LDR Rd, =value");
+                if (line.dataAccess() != null)
+                    throw new IllegalArgumentException("--stream does not support data sections");
+                Instructions instruction = Instructions.getEnum(line);
+                int word = instruction.encode(line);
+                result.add(label, word, instruction.getType() == InstructionType.BRANCH ? line.text(BRANCH_LABEL_GROUP) : null);
+            }
+            parsed.put(result);
+        }
+        parsed.put(new Lines(0));
+    }
+
+    /**
+     * Etape 3 : numerote les instructions et resout les branchements.
+     * Un branchement vers un label pas encore defini est retenu jusqu'a la definition du label,
+     * avec la meme semantique que {@link Assembler} : la definition la plus recente l'emporte.
+     *
+     * @return le nombre d'instructions
+     */
+    private static int resolve(BlockingQueue<Lines> parsed, BlockingQueue<int[]> words) throws InterruptedException
+    {
+        Map<String, Integer> labels = new HashMap<>();
+        Map<String, List<int[]>> pending = new HashMap<>();
+        int address = 0;
+        int[] batch = new int[2 * BATCH];
+        int size = 0;
+        for (Lines lines = parsed.take(); lines.size > 0 || !lines.last; lines = parsed.take())
+        {
+            for (int i = 0; i < lines.size; i++)
+            {
+                if (lines.labels[i] != null)
+                {
+                    labels.put(lines.labels[i], address);
+                    List<int[]> waiting = pending.remove(lines.labels[i]);
+                    if (waiting != null)
+                    {
+                        for (int[] branch : waiting)
+                        {
+                            if (size == batch.length)
+                            {
+                                words.put(batch);
+                                batch = new int[2 * BATCH];
+                                size = 0;
+                            }
+                            batch[size++] = branch[0];
+                            batch[size++] = Encoding.target(branch[1], address);
+                        }
+                    }
+                }
+                int word = lines.words[i];
+                if (word == Lines.NONE)
+                    continue;
+                String target = lines.targets[i];
+                if (target != null)
+                {
+                    Integer defined = labels.get(target);
+                    if (defined == null)
+                    {
+                        pending.computeIfAbsent(target, key -> new ArrayList<>()).add(new int[]{address++, word});
+                        continue;
+                    }
+                    word = Encoding.target(word, defined);
+                }
+                if (size == batch.length)
+                {
+                    words.put(batch);
+                    batch = new int[2 * BATCH];
+                    size = 0;
+                }
+                batch[size++] = address++;
+                batch[size++] = word;
+            }
+        }
+        if (!pending.isEmpty())
+            throw new IllegalArgumentException("Label not found: " + pending.keySet().iterator().next());
+        // Verifie la longueur avant le lot final : Sink.finish n'est pas appele pour un programme trop long
+        Simulator.checkRom(address);
+        if (size > 0)
+            words.put(Arrays.copyOf(batch, size));
+        words.put(new int[0]);
+        return address;
+    }
+
+    /**
+     * Lot de lignes analysees : label defini, codage et label vise par chaque ligne.
+     */
+    private static final class Lines
+    {
+        /**
+         * Codage d'une ligne ne contenant qu'un label.
+         */
+        static final int NONE = -1;
+
+        final String[] labels;
+        final int[] words;
+        final String[] targets;
+        /**
+         * Vrai pour le lot marquant la fin du programme.
+         */
+        final boolean last;
+        int size;
+
+        Lines(int capacity)
+        {
+            labels = new String[capacity];
+            words = new int[capacity];
+            targets = new String[capacity];
+            last = capacity == 0;
+        }
+
+        void add(String label, int word, String target)
+        {
+            labels[size] = label;
+            words[size] = word;
+            targets[size] = target;
+            size += 1;
+        }
+    }
+
+    /**
+     * Etape executee sur son propre thread, dont l'erreur est conservee pour le thread appelant.
+     * Le resultat de la tache est le nombre d'instructions pour l'etape de resolution.
+     */
+    private static final class Stage extends Thread
+    {
+        private final Task task;
+        private volatile Throwable failure;
+        private volatile int length;
+
+        Stage(String name, Task task)
+        {
+            super(name);
+            this.task = task;
+            setDaemon(true);
+        }
+
+        @Override
+        public void run()
+        {
+            try
+            {
+                length = task.run();
+            }
+            catch (InterruptedException e)
+            {
+                // Arret demande par le thread appelant
+            }
+            catch (Throwable e)
+            {
+                failure = e;
+            }
+        }
+
+        void rethrow() throws IOException
+        {
+            if (failure instanceof UncheckedIOException)
+                throw ((UncheckedIOException) failure).getCause();
+            if (failure instanceof RuntimeException)
+                throw (RuntimeException) failure;
+            if (failure instanceof Error)
+                throw (Error) failure;
+        }
+    }
+
+    @FunctionalInterface
+    private interface Task
+    {
+        int run() throws InterruptedException;
+    }
+}
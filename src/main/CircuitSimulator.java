@@ -0,0 +1,794 @@
+package main;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import main.Netlist.Gate;
+import main.Netlist.Kind;
+
+/**
+ * Simulateur des circuits logisim du projet, sans interface graphique.
+ * <p>
+ * La {@link Netlist} est compilee en tableaux : chaque sortie de composant est un mot <tt>long</tt>
+ * contenant tous ses bits, et chaque entree est lue par quelques decalages et masques
+ * depuis les sorties qui la pilotent, les splitters ayant disparu a la mise a plat.
+ * <p>
+ * Les composants combinatoires sont classes par niveau (tri topologique),
+ * les registres et les bascules coupant les boucles.
+ * La simulation est evenementielle : seuls les composants dont une entree a change sont evalues,
+ * niveau par niveau. Les registres et les bascules echantillonnent leurs entrees pendant la propagation
+ * et ne publient leur nouvelle valeur qu'une fois le circuit stable, comme apres le delai de logisim.
+ * <p>
+ * Un tick change l'etat de chaque horloge puis propage les changements jusqu'a stabilite.
+ * <p>
+ * Le simulateur reproduit les circuits tels qu'ils sont cables, y compris ce qui n'y est pas termine.
+ * Dans <tt>ProjetPEP.circ</tt>, le compteur avance d'une instruction par front montant (deux ticks)
+ * et la ROM presente l'instruction suivante, comme le compteur de programme du {@link Simulator} sur un programme sans branchement.
+ * En revanche, l'entree des registres n'est reliee qu'a la sortie de la RAM, le resultat de l'ALU n'y arrive pas
+ * (tunnels isoles <tt>DataIn</tt>, <tt>ld</tt> et <tt>Load/Store</tt>, voir <tt>--check</tt>),
+ * et le compteur ne charge jamais la cible d'un branchement : les registres restent a 0 et les branchements ne sont pas pris.
+ *
+ * @see Netlist
+ */
+final class CircuitSimulator
+{
+    /**
+     * Nombre maximal d'evaluations par composant et par propagation, au-dela duquel le circuit oscille.
+     */
+    private static final int OSCILLATION = 1000;
+
+    private final Gate[] gates;
+    private final Kind[] kinds;
+    /**
+     * Premiere entree de chaque composant dans les tableaux d'entrees, et fin en position suivante.
+     */
+    private final int[] inputFirst;
+    /**
+     * Premiere sortie de chaque composant dans {@link #values}, et fin en position suivante.
+     */
+    private final int[] outputFirst;
+    private final int[] segmentFirst;
+    private final long[] inputConstant;
+    private final int[] segmentDriver;
+    private final int[] segmentSource;
+    private final int[] segmentTarget;
+    private final long[] segmentMask;
+    /**
+     * Valeur de chaque sortie.
+     */
+    private final long[] values;
+    private final long[] masks;
+    private final int[] readerFirst;
+    private final int[] readers;
+    private final int[] levels;
+    /**
+     * Etat de chaque composant : contenu d'un registre, etat d'une horloge.
+     */
+    private final long[] states;
+    /**
+     * Derniere valeur de l'entree d'horloge de chaque composant sequentiel.
+     */
+    private final long[] clocks;
+    private final long[][] memories;
+    private final int[] clockGates;
+    private final Netlist netlist;
+    /**
+     * Sortie et bit de la sortie pilotant chaque signal, -1 pour un signal flottant.
+     */
+    private final int[] driverOf;
+    private final int[] bitOf;
+
+    private final int[][] buckets;
+    private final int[] bucketSizes;
+    private final boolean[] dirty;
+    private int lowest;
+    /**
+     * Composants sequentiels dont la sortie doit etre publiee a la fin de la propagation.
+     */
+    private final int[] pending;
+    private final boolean[] queued;
+    private int pendingSize;
+    private long ticks;
+    private long evaluations;
+
+    /**
+     * Compile une netlist.
+     *
+     * @param netlist la netlist a simuler
+     */
+    CircuitSimulator(Netlist netlist)
+    {
+        gates = netlist.getGates().toArray(new Gate[0]);
+        int count = gates.length;
+        kinds = new Kind[count];
+        inputFirst = new int[count + 1];
+        outputFirst = new int[count + 1];
+        for (int gate = 0; gate < count; gate++)
+        {
+            kinds[gate] = gates[gate].getKind();
+            inputFirst[gate + 1] = inputFirst[gate] + gates[gate].getInputs().size();
+            outputFirst[gate + 1] = outputFirst[gate] + gates[gate].getOutputs().size();
+        }
+
+        // Sortie et bit pilotant chaque signal
+        this.netlist = netlist;
+        driverOf = new int[netlist.getBits()];
+        bitOf = new int[netlist.getBits()];
+        Arrays.fill(driverOf, -1);
+        values = new long[outputFirst[count]];
+        masks = new long[outputFirst[count]];
+        for (int gate = 0; gate < count; gate++)
+        {
+            List<int[]> outputs = gates[gate].getOutputs();
+            for (int output = 0; output < outputs.size(); output++)
+            {
+                int driver = outputFirst[gate] + output;
+                int[] bits = outputs.get(output);
+                masks[driver] = bits.length == 64 ? -1L : (1L << bits.length) - 1;
+                for (int bit = 0; bit < bits.length; bit++)
+                {
+                    int signal = netlist.find(bits[bit]);
+                    if (driverOf[signal] >= 0)
+                        netlist.getWarnings().add("Several drivers for a signal of " + gates[gate].getPath());
+                    else
+                    {
+                        driverOf[signal] = driver;
+                        bitOf[signal] = bit;
+                    }
+                }
+            }
+        }
+
+        // Segments lus par chaque entree : suites de bits consecutifs d'une meme sortie
+        segmentFirst = new int[inputFirst[count] + 1];
+        inputConstant = new long[inputFirst[count]];
+        List<long[]> segments = new ArrayList<>();
+        List<List<Integer>> readerLists = new ArrayList<>();
+        for (int driver = 0; driver < values.length; driver++)
+        {
+            readerLists.add(new ArrayList<>());
+        }
+        for (int gate = 0; gate < count; gate++)
+        {
+            List<int[]> inputs = gates[gate].getInputs();
+            for (int index = 0; index < inputs.size(); index++)
+            {
+                int input = inputFirst[gate] + index;
+                segmentFirst[input] = segments.size();
+                int[] bits = inputs.get(index);
+                for (int bit = 0; bit < bits.length; bit++)
+                {
+                    int signal = netlist.find(bits[bit]);
+                    int driver = driverOf[signal];
+                    if (driver < 0)
+                    {
+                        if (gates[gate].isFloatingHigh(index))
+                            inputConstant[input] |= 1L << bit;
+                        continue;
+                    }
+                    long[] last = segments.size() > segmentFirst[input] ? segments.get(segments.size() - 1) : null;
+                    if (last != null && last[0] == driver && last[1] + last[3] == bitOf[signal] && last[2] + last[3] == bit)
+                        last[3] += 1;
+                    else
+                        segments.add(new long[]{driver, bitOf[signal], bit, 1});
+                    List<Integer> list = readerLists.get(driver);
+                    if (list.isEmpty() || list.get(list.size() - 1) != gate)
+                        list.add(gate);
+                }
+                if (segmentFirst[input] == segments.size() && inputs.get(index).length > 0 && !gates[gate].isFloatingHigh(index) && kinds[gate] != Kind.PIN)
+                    inputConstant[input] = floating(kinds[gate], index, bits.length);
+            }
+        }
+        segmentFirst[inputFirst[count]] = segments.size();
+        segmentDriver = new int[segments.size()];
+        segmentSource = new int[segments.size()];
+        segmentTarget = new int[segments.size()];
+        segmentMask = new long[segments.size()];
+        for (int segment = 0; segment < segments.size(); segment++)
+        {
+            long[] description = segments.get(segment);
+            segmentDriver[segment] = (int) description[0];
+            segmentSource[segment] = (int) description[1];
+            segmentTarget[segment] = (int) description[2];
+            segmentMask[segment] = description[3] == 64 ? -1L : (1L << description[3]) - 1;
+        }
+        readerFirst = new int[values.length + 1];
+        for (int driver = 0; driver < values.length; driver++)
+        {
+            readerFirst[driver + 1] = readerFirst[driver] + (int) readerLists.get(driver).stream().distinct().count();
+        }
+        readers = new int[readerFirst[values.length]];
+        for (int driver = 0; driver < values.length; driver++)
+        {
+            int next = readerFirst[driver];
+            for (int reader : readerLists.get(driver).stream().distinct().mapToInt(Integer::intValue).toArray())
+            {
+                readers[next++] = reader;
+            }
+        }
+
+        levels = levelize();
+        int depth = Arrays.stream(levels).max().orElse(0) + 1;
+        int[] sizes = new int[depth];
+        for (int level : levels)
+        {
+            sizes[level] += 1;
+        }
+        buckets = new int[depth][];
+        for (int level = 0; level < depth; level++)
+        {
+            buckets[level] = new int[sizes[level]];
+        }
+        bucketSizes = new int[depth];
+        dirty = new boolean[count];
+        pending = new int[count];
+        queued = new boolean[count];
+        states = new long[count];
+        clocks = new long[count];
+        memories = new long[count][];
+        List<Integer> clockList = new ArrayList<>();
+        for (int gate = 0; gate < count; gate++)
+        {
+            switch (kinds[gate])
+            {
+                case CLOCK:
+                    clockList.add(gate);
+                    break;
+                case CONSTANT:
+                    states[gate] = constant(gates[gate]);
+                    break;
+                case FLIP_FLOP:
+                    values[outputFirst[gate] + 1] = 1;
+                    break;
+                case RAM:
+                case ROM:
+                    memories[gate] = new long[1 << gates[gate].getInputs().get(0).length];
+                    String contents = gates[gate].attribute("contents", null);
+                    if (contents != null && contents.indexOf('\n') >= 0)
+                        load(gate, Image.values(contents.substring(contents.indexOf('\n') + 1)));
+                    break;
+                default:
+                    break;
+            }
+        }
+        clockGates = clockList.stream().mapToInt(Integer::intValue).toArray();
+        lowest = depth;
+        for (int gate = 0; gate < count; gate++)
+        {
+            mark(gate);
+        }
+        propagate();
+    }
+
+    /**
+     * Valeur d'une entree non connectee, selon logisim : une porte ignore ses entrees flottantes.
+     */
+    private static long floating(Kind kind, int index, int width)
+    {
+        if (kind == Kind.AND || kind == Kind.NAND)
+            return width == 64 ? -1L : (1L << width) - 1;
+        return 0;
+    }
+
+    private static long constant(Gate gate)
+    {
+        int width = gate.getOutputs().get(0).length;
+        long mask = width == 64 ? -1L : (1L << width) - 1;
+        return Long.decode(gate.attribute("value", "0x1")) & mask;
+    }
+
+    /**
+     * Classe les composants par niveau : un composant combinatoire est au-dessus des composants qu'il lit.
+     * Les sorties des composants sequentiels ne creent pas de dependance.
+     * Les composants d'une boucle combinatoire sont places apres tous les autres.
+     */
+    private int[] levelize()
+    {
+        int count = gates.length;
+        int[] incoming = new int[count];
+        for (int gate = 0; gate < count; gate++)
+        {
+            if (sequential(gate))
+                continue;
+            for (int driver = outputFirst[gate]; driver < outputFirst[gate + 1]; driver++)
+            {
+                for (int reader = readerFirst[driver]; reader < readerFirst[driver + 1]; reader++)
+                {
+                    incoming[readers[reader]] += 1;
+                }
+            }
+        }
+        int[] levels = new int[count];
+        int[] queue = new int[count];
+        int head = 0;
+        int tail = 0;
+        for (int gate = 0; gate < count; gate++)
+        {
+            if (incoming[gate] == 0)
+                queue[tail++] = gate;
+        }
+        int maximum = 0;
+        while (head < tail)
+        {
+            int gate = queue[head++];
+            maximum = Math.max(maximum, levels[gate]);
+            if (sequential(gate))
+                continue;
+            for (int driver = outputFirst[gate]; driver < outputFirst[gate + 1]; driver++)
+            {
+                for (int reader = readerFirst[driver]; reader < readerFirst[driver + 1]; reader++)
+                {
+                    int next = readers[reader];
+                    levels[next] = Math.max(levels[next], levels[gate] + 1);
+                    if (--incoming[next] == 0)
+                        queue[tail++] = next;
+                }
+            }
+        }
+        for (int gate = 0; gate < count; gate++)
+        {
+            if (incoming[gate] > 0)
+                levels[gate] = maximum + 1;
+        }
+        return levels;
+    }
+
+    private boolean sequential(int gate)
+    {
+        return kinds[gate] == Kind.REGISTER || kinds[gate] == Kind.FLIP_FLOP;
+    }
+
+    /**
+     * Charge une image dans toutes les ROM du circuit.
+     *
+     * @param image les mots de l'image
+     * @return le nombre de ROM chargees
+     */
+    int loadRom(int[] image)
+    {
+        int loaded = 0;
+        for (int gate = 0; gate < gates.length; gate++)
+        {
+            if (kinds[gate] == Kind.ROM)
+            {
+                load(gate, image);
+                loaded += 1;
+            }
+        }
+        propagate();
+        return loaded;
+    }
+
+    private void load(int gate, int[] image)
+    {
+        long mask = masks[outputFirst[gate]];
+        Arrays.fill(memories[gate], 0);
+        for (int address = 0; address < Math.min(image.length, memories[gate].length); address++)
+        {
+            memories[gate][address] = image[address] & mask;
+        }
+        mark(gate);
+    }
+
+    /**
+     * Avance la simulation d'un tick : chaque horloge change d'etat, puis le circuit se stabilise.
+     */
+    void tick()
+    {
+        for (int gate : clockGates)
+        {
+            states[gate] ^= 1;
+            set(outputFirst[gate], states[gate]);
+        }
+        ticks += 1;
+        propagate();
+    }
+
+    /**
+     * Propage les changements jusqu'a ce que le circuit soit stable.
+     *
+     * @throws IllegalStateException si le circuit oscille
+     */
+    private void propagate()
+    {
+        long limit = evaluations + (long) OSCILLATION * Math.max(gates.length, 1);
+        do
+        {
+            while (lowest < buckets.length)
+            {
+                if (bucketSizes[lowest] == 0)
+                {
+                    lowest += 1;
+                    continue;
+                }
+                int gate = buckets[lowest][--bucketSizes[lowest]];
+                dirty[gate] = false;
+                evaluate(gate);
+                if (++evaluations > limit)
+                    throw new IllegalStateException("Oscillation apparent");
+            }
+            // Publication des registres et des bascules
+            int size = pendingSize;
+            pendingSize = 0;
+            for (int i = 0; i < size; i++)
+            {
+                int gate = pending[i];
+                queued[gate] = false;
+                set(outputFirst[gate], states[gate]);
+                if (kinds[gate] == Kind.FLIP_FLOP)
+                    set(outputFirst[gate] + 1, states[gate] ^ 1);
+            }
+        }
+        while (lowest < buckets.length);
+    }
+
+    private void mark(int gate)
+    {
+        if (dirty[gate])
+            return;
+        dirty[gate] = true;
+        int level = levels[gate];
+        buckets[level][bucketSizes[level]++] = gate;
+        if (level < lowest)
+            lowest = level;
+    }
+
+    private void set(int driver, long value)
+    {
+        value &= masks[driver];
+        if (values[driver] == value)
+            return;
+        values[driver] = value;
+        for (int reader = readerFirst[driver]; reader < readerFirst[driver + 1]; reader++)
+        {
+            mark(readers[reader]);
+        }
+    }
+
+    private long read(int input)
+    {
+        long value = inputConstant[input];
+        for (int segment = segmentFirst[input]; segment < segmentFirst[input + 1]; segment++)
+        {
+            value |= (values[segmentDriver[segment]] >>> segmentSource[segment] & segmentMask[segment]) << segmentTarget[segment];
+        }
+        return value;
+    }
+
+    /**
+     * Detecte un front d'horloge et memorise la nouvelle valeur de l'horloge.
+     */
+    private boolean triggered(int gate, long clock)
+    {
+        long previous = clocks[gate];
+        clocks[gate] = clock;
+        switch (gates[gate].attribute("trigger", "rising"))
+        {
+            case "falling": return previous == 1 && clock == 0;
+            case "high":    return clock == 1;
+            case "low":     return clock == 0;
+            default:        return previous == 0 && clock == 1;
+        }
+    }
+
+    private void publish(int gate, long state)
+    {
+        if (states[gate] == state)
+            return;
+        states[gate] = state;
+        if (!queued[gate])
+        {
+            queued[gate] = true;
+            pending[pendingSize++] = gate;
+        }
+    }
+
+    private void evaluate(int gate)
+    {
+        int in = inputFirst[gate];
+        int inputs = inputFirst[gate + 1] - in;
+        int out = outputFirst[gate];
+        long mask = out < outputFirst[gate + 1] ? masks[out] : 0;
+        switch (kinds[gate])
+        {
+            case PIN:
+            case CLOCK:
+                break;
+            case CONSTANT:
+                set(out, states[gate]);
+                break;
+            case AND:
+            case NAND:
+            {
+                long value = -1L;
+                for (int i = 0; i < inputs; i++)
+                    value &= read(in + i);
+                set(out, kinds[gate] == Kind.AND ? value : ~value);
+                break;
+            }
+            case OR:
+            case NOR:
+            {
+                long value = 0;
+                for (int i = 0; i < inputs; i++)
+                    value |= read(in + i);
+                set(out, kinds[gate] == Kind.OR ? value : ~value);
+                break;
+            }
+            case XOR:
+            case XNOR:
+            {
+                boolean odd = "odd".equals(gates[gate].attribute("xor", "1"));
+                long seen = 0;
+                long several = 0;
+                long parity = 0;
+                for (int i = 0; i < inputs; i++)
+                {
+                    long value = read(in + i);
+                    several |= seen & value;
+                    seen |= value;
+                    parity ^= value;
+                }
+                long value = odd ? parity : seen & ~several;
+                set(out, kinds[gate] == Kind.XOR ? value : ~value);
+                break;
+            }
+            case NOT:
+                set(out, ~read(in));
+                break;
+            case BUFFER:
+                set(out, read(in));
+                break;
+            case MULTIPLEXER:
+            {
+                int data = 1 << gates[gate].getInputs().get(inputs - (inputs % 2 == 0 ? 2 : 1)).length;
+                boolean enabled = inputs == data + 1 || read(in + data + 1) != 0;
+                set(out, enabled ? read(in + (int) read(in + data)) : 0);
+                break;
+            }
+            case DECODER:
+            {
+                long select = read(in);
+                boolean enabled = inputs == 1 || read(in + 1) != 0;
+                for (int output = out; output < outputFirst[gate + 1]; output++)
+                    set(output, enabled && output - out == select ? 1 : 0);
+                break;
+            }
+            case BIT_SELECTOR:
+            {
+                long shift = read(in + 1) * Long.bitCount(mask);
+                set(out, shift >= 64 ? 0 : read(in) >>> shift);
+                break;
+            }
+            case ADDER:
+            {
+                long sum = read(in) + read(in + 1) + read(in + 2);
+                set(out, sum);
+                set(out + 1, sum >>> Long.bitCount(mask));
+                break;
+            }
+            case SUBTRACTOR:
+            {
+                long difference = read(in) - read(in + 1) - read(in + 2);
+                set(out, difference);
+                set(out + 1, difference < 0 ? 1 : 0);
+                break;
+            }
+            case MULTIPLIER:
+            {
+                long product = read(in) * read(in + 1) + read(in + 2);
+                set(out, product);
+                set(out + 1, product >>> Long.bitCount(mask));
+                break;
+            }
+            case COMPARATOR:
+            {
+                int width = gates[gate].getInputs().get(0).length;
+                long a = read(in);
+                long b = read(in + 1);
+                if (!"unsigned".equals(gates[gate].attribute("mode", "twosComplement")))
+                {
+                    a = a << (64 - width) >> (64 - width);
+                    b = b << (64 - width) >> (64 - width);
+                }
+                set(out, a > b ? 1 : 0);
+                set(out + 1, a == b ? 1 : 0);
+                set(out + 2, a < b ? 1 : 0);
+                break;
+            }
+            case SHIFTER:
+            {
+                int width = Long.bitCount(mask);
+                long value = read(in);
+                int distance = (int) read(in + 1);
+                switch (gates[gate].attribute("shift", "ll"))
+                {
+                    case "lr": value = distance >= width ? 0 : value >>> distance; break;
+                    case "ar": value = (value << (64 - width) >> (64 - width)) >> Math.min(distance, 63); break;
+                    case "rl": distance %= width; value = value << distance | value >>> (width - distance); break;
+                    case "rr": distance %= width; value = value >>> distance | value << (width - distance); break;
+                    default:   value = distance >= width ? 0 : value << distance; break;
+                }
+                set(out, value);
+                break;
+            }
+            case REGISTER:
+            {
+                // d, clk, clr, en
+                boolean edge = triggered(gate, read(in + 1));
+                if (read(in + 2) != 0)
+                    publish(gate, 0);
+                else if (edge && read(in + 3) != 0)
+                    publish(gate, read(in) & mask);
+                break;
+            }
+            case FLIP_FLOP:
+            {
+                // d, clk, reset, preset, en
+                boolean edge = triggered(gate, read(in + 1));
+                if (read(in + 2) != 0)
+                    publish(gate, 0);
+                else if (read(in + 3) != 0)
+                    publish(gate, 1);
+                else if (edge && read(in + 4) != 0)
+                    publish(gate, read(in) & 1);
+                break;
+            }
+            case RAM:
+            {
+                // addr, cs, oe, clr, clk, we, din
+                long[] memory = memories[gate];
+                boolean edge = triggered(gate, read(in + 4));
+                if (read(in + 3) != 0)
+                    Arrays.fill(memory, 0);
+                if (read(in + 1) == 0)
+                {
+                    set(out, 0);
+                    break;
+                }
+                int address = (int) read(in);
+                if (edge && read(in + 5) != 0)
+                    memory[address] = read(in + 6) & mask;
+                set(out, read(in + 2) != 0 ? memory[address] : 0);
+                break;
+            }
+            case ROM:
+                set(out, read(in + 1) != 0 ? memories[gate][(int) read(in)] : 0);
+                break;
+            default:
+                throw new IllegalStateException("Unsupported component: " + kinds[gate]);
+        }
+    }
+
+    long getTicks()
+    {
+        return ticks;
+    }
+
+    long getEvaluations()
+    {
+        return evaluations;
+    }
+
+    /**
+     * @return les composants de la netlist, dans l'ordre de {@link #value(int, int)}
+     */
+    Gate[] getGates()
+    {
+        return gates;
+    }
+
+    /**
+     * @param gate le numero du composant
+     * @param output le numero de la sortie
+     * @return la valeur de la sortie
+     */
+    long value(int gate, int output)
+    {
+        return values[outputFirst[gate] + output];
+    }
+
+    /**
+     * @param gate le numero d'un composant en lecture seule (pin de sortie)
+     * @param input le numero de l'entree
+     * @return la valeur de l'entree
+     */
+    long input(int gate, int input)
+    {
+        return read(inputFirst[gate] + input);
+    }
+
+    /**
+     * Lit la valeur d'un ensemble de signaux, par exemple une pin de {@link Netlist#getPins()}.
+     *
+     * @param bits les bits a lire, du poids faible au poids fort
+     * @return la valeur des bits, un bit flottant valant 0
+     */
+    long signal(int[] bits)
+    {
+        long value = 0;
+        for (int bit = 0; bit < bits.length; bit++)
+        {
+            int signal = netlist.find(bits[bit]);
+            if (driverOf[signal] >= 0)
+                value |= (values[driverOf[signal]] >>> bitOf[signal] & 1) << bit;
+        }
+        return value;
+    }
+
+    /**
+     * Simule un circuit logisim avec une {@link Image image} dans ses ROM,
+     * puis affiche la valeur des registres et des pins de sortie ainsi que le nombre de ticks par seconde.
+     * <p>
+     * Options, placees avant le nom du fichier .circ :
+     * <pre>
+     * --rom=FILE   charge une {@link Image image} dans les ROM (par defaut rom.ini s'il existe)
+     * --ticks=N    nombre de ticks a simuler (par defaut 1000000)
+     * --check      affiche les anomalies de cablage relevees
+     * --pins       affiche la valeur finale des pins de toutes les instances
+     * </pre>
+     *
+     * @param args les options suivies du nom du fichier .circ
+     * @throws IOException si un fichier n'existe pas
+     */
+    public static void main(String[] args) throws IOException
+    {
+        String rom = Files.exists(Paths.get("rom.ini")) ? "rom.ini" : null;
+        long ticks = 1_000_000L;
+        boolean check = false;
+        boolean pins = false;
+        String filename = null;
+        for (String arg : args)
+        {
+            if (arg.startsWith("--rom="))
+                rom = arg.substring("--rom=".length());
+            else if (arg.startsWith("--ticks="))
+                ticks = Long.parseLong(arg.substring("--ticks=".length()));
+            else if (arg.equals("--check"))
+                check = true;
+            else if (arg.equals("--pins"))
+                pins = true;
+            else if (arg.startsWith("--"))
+                throw new IllegalArgumentException("Unknown option: " + arg);
+            else
+                filename = arg;
+        }
+        if (filename == null)
+            throw new IllegalArgumentException("File name is missing");
+
+        Netlist netlist = Netlist.load(filename);
+        CircuitSimulator simulator = new CircuitSimulator(netlist);
+        if (check)
+            netlist.getWarnings().forEach(System.out::println);
+        if (rom != null)
+            System.out.println("Loaded " + rom + " into " + simulator.loadRom(Image.read(Paths.get(rom)).toArray()) + " ROM");
+
+        long start = System.nanoTime();
+        for (long tick = 0; tick < ticks; tick++)
+        {
+            simulator.tick();
+        }
+        long elapsed = Math.max(1, System.nanoTime() - start);
+
+        if (pins)
+        {
+            for (Map.Entry<String, int[]> pin : netlist.getPins().entrySet())
+                System.out.printf("%s = %x%n", pin.getKey(), simulator.signal(pin.getValue()));
+        }
+        Gate[] gates = simulator.getGates();
+        for (int gate = 0; gate < gates.length; gate++)
+        {
+            if (gates[gate].getKind() == Kind.REGISTER)
+                System.out.printf("%s = %x%n", gates[gate].getPath(), simulator.value(gate, 0));
+            else if (gates[gate].getKind() == Kind.PIN && !gates[gate].getInputs().isEmpty())
+                System.out.printf("%s = %x%n", gates[gate].getPath(), simulator.input(gate, 0));
+        }
+        System.out.printf("%d components, %d ticks in %.3f ms (%.0f ticks/s, %d evaluations)%n",
+                gates.length, simulator.getTicks(), elapsed / 1e6, simulator.getTicks() * 1e9 / elapsed, simulator.getEvaluations());
+    }
+}
@@ -0,0 +1,804 @@
+package main;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Analyse statique du flot de controle et du cout en cycles d'un programme assemble.
+ * <p>
+ * Le programme est decoupe en blocs de base : un bloc commence a la premiere instruction,
+ * a la cible d'un branchement et apres chaque branchement, et se termine avant le bloc suivant.
+ * Un bloc se termine aussi sur un mot ne correspondant a aucune instruction, ou le processeur s'arrete.
+ * Un branchement inconditionnel vers lui-meme arrete le programme, comme pour le {@link Simulator}.
+ * <p>
+ * Le cout de chaque instruction depend de sa categorie, decodee comme par <tt>selecteurCategory</tt>
+ * dans <tt>Controller.circ</tt>. Le controleur n'a qu'un etat : le compteur avance a chaque front d'horloge
+ * et le decodage est combinatoire, chaque categorie coute donc un cycle par defaut.
+ * <p>
+ * Les boucles et leur imbrication sont retrouvees en un seul parcours en profondeur, voir {@link #nest()}.
+ * Le pire chemin est le plus long chemin de la premiere instruction jusqu'a l'arret
+ * dans le graphe des composantes fortement connexes, chaque composante comptant pour un passage par tous ses blocs.
+ * Le graphe n'est parcouru qu'un nombre constant de fois : l'analyse est quasi lineaire en la taille du programme.
+ * Faute de connaitre le nombre d'iterations, chaque boucle est supposee faire {@value #TRIP_COUNT} iterations
+ * pour estimer le cout de chaque bloc ; une boucle est chaude lorsque ses blocs representent
+ * une part importante du cout estime du programme.
+ * <p>
+ * Le rapport est ecrit en JSON.
+ *
+ * @see Disassembler
+ */
+final class CycleAnalyzer
+{
+    /**
+     * Part du cout estime du programme a partir de laquelle une boucle est chaude.
+     */
+    static final double HOT = 0.1;
+    /**
+     * Nombre d'iterations suppose pour chaque boucle.
+     */
+    static final int TRIP_COUNT = 10;
+    /**
+     * Profondeur d'imbrication au-dela de laquelle le nombre d'executions estime n'augmente plus.
+     */
+    static final int ESTIMATED_DEPTH = 8;
+    private static final int NONE = -1;
+
+    /**
+     * Categories d'instructions distinguees par le controleur.
+     */
+    enum Category
+    {
+        DATA_PROCESSING,
+        SHIFT_ADD_SUB_MOVE,
+        LOAD_STORE,
+        BRANCH;
+
+        /**
+         * @param word le codage d'une instruction connue
+         * @return la categorie de l'instruction, d'apres ses bits de poids fort
+         */
+        static Category of(int word)
+        {
+            if (word >>> 14 == 0)
+                return SHIFT_ADD_SUB_MOVE;
+            if (word >>> 10 == 0b010000)
+                return DATA_PROCESSING;
+            if (word >>> 12 == 0b1001)
+                return LOAD_STORE;
+            return BRANCH;
+        }
+    }
+
+    private final int[] program;
+    /**
+     * Label de chaque instruction, ou <tt>null</tt>.
+     */
+    private final String[] labels;
+    /**
+     * Cout en cycles de chaque categorie.
+     */
+    private final int[] costs;
+
+    private int blocks;
+    /**
+     * Premiere instruction de chaque bloc, suivie du nombre d'instructions.
+     */
+    private int[] start;
+    /**
+     * Deux successeurs par bloc, {@link #NONE} si absent.
+     */
+    private int[] successors;
+    /**
+     * Vrai si le programme peut s'arreter a la fin du bloc.
+     */
+    private boolean[] exits;
+    private boolean[] undefined;
+    private long[] cycles;
+    private boolean[] reachable;
+    /**
+     * Boucle la plus interne contenant chaque bloc.
+     */
+    private int[] loopOf;
+    private int[] depth;
+    private final List<Loop> loops = new ArrayList<>();
+    private double estimated;
+    private long worstCase;
+    private final List<Integer> path = new ArrayList<>();
+
+    /**
+     * Entree de la boucle la plus interne contenant chaque bloc, hors de la boucle dont il est l'entree.
+     */
+    private int[] header;
+    /**
+     * Position de chaque bloc sur le chemin courant du parcours, 0 hors du chemin.
+     */
+    private int[] position;
+
+    /**
+     * @param program le codage de chaque instruction
+     * @param labels le label de chaque instruction, ou <tt>null</tt> si les labels ne sont pas connus
+     * @param costs le cout en cycles de chaque {@link Category categorie}
+     */
+    CycleAnalyzer(int[] program, String[] labels, int[] costs)
+    {
+        this.program = program;
+        this.labels = labels;
+        this.costs = costs;
+    }
+
+    /**
+     * @return un cycle pour chaque categorie
+     */
+    static int[] defaultCosts()
+    {
+        int[] costs = new int[Category.values().length];
+        Arrays.fill(costs, 1);
+        return costs;
+    }
+
+    /**
+     * Construit le graphe de flot de controle et calcule les boucles et les couts.
+     *
+     * @return cet analyseur
+     */
+    CycleAnalyzer analyse()
+    {
+        split();
+        link();
+        reach();
+        condense();
+        nest();
+        estimate();
+        return this;
+    }
+
+    /**
+     * @return vrai si l'instruction est un branchement inconditionnel
+     */
+    private static boolean isJump(int record)
+    {
+        Instructions instruction = Disassembler.instruction(record);
+        return instruction == Instructions.B || instruction == Instructions.BC && Disassembler.field(record, 0) == Condition.AL.ordinal();
+    }
+
+    private static int target(int record)
+    {
+        return Disassembler.field(record, Disassembler.instruction(record).getEncoding().getFields().length - 1);
+    }
+
+    /**
+     * Decoupe le programme en blocs de base.
+     */
+    private void split()
+    {
+        int size = program.length;
+        boolean[] leader = new boolean[size + 1];
+        leader[0] = true;
+        leader[size] = true;
+        for (int i = 0; i < size; i++)
+        {
+            int record = Disassembler.decode(program[i]);
+            Instructions instruction = Disassembler.instruction(record);
+            if (instruction.getType() == InstructionType.BRANCH)
+            {
+                leader[Math.min(size, target(record))] = true;
+                leader[i + 1] = true;
+            }
+            else if (instruction == Instructions.UNKNOWN_INSTRUCTION)
+                leader[i + 1] = true;
+        }
+        start = new int[size + 1];
+        blocks = 0;
+        for (int i = 0; i < size; i++)
+        {
+            if (leader[i])
+                start[blocks++] = i;
+        }
+        start[blocks] = size;
+        start = Arrays.copyOf(start, blocks + 1);
+    }
+
+    /**
+     * @return le bloc commencant a une instruction de tete, ou {@link #NONE} a la fin du programme
+     */
+    private int blockAt(int address)
+    {
+        if (address >= program.length)
+            return NONE;
+        return Arrays.binarySearch(start, 0, blocks, address);
+    }
+
+    /**
+     * Calcule le cout et les successeurs de chaque bloc.
+     */
+    private void link()
+    {
+        successors = new int[2 * blocks];
+        Arrays.fill(successors, NONE);
+        exits = new boolean[blocks];
+        undefined = new boolean[blocks];
+        cycles = new long[blocks];
+        for (int b = 0; b < blocks; b++)
+        {
+            for (int i = start[b]; i < start[b + 1]; i++)
+            {
+                if (Disassembler.instruction(Disassembler.decode(program[i])) != Instructions.UNKNOWN_INSTRUCTION)
+                    cycles[b] += costs[Category.of(program[i]).ordinal()];
+            }
+            int last = start[b + 1] - 1;
+            int record = Disassembler.decode(program[last]);
+            Instructions instruction = Disassembler.instruction(record);
+            if (instruction == Instructions.UNKNOWN_INSTRUCTION)
+            {
+                undefined[b] = true;
+                exits[b] = true;
+                continue;
+            }
+            if (instruction.getType() == InstructionType.BRANCH)
+            {
+                int target = target(record);
+                if (isJump(record) && target == last)
+                    exits[b] = true;
+                else if (blockAt(target) == NONE)
+                    exits[b] = true;
+                else
+                    successors[2 * b] = blockAt(target);
+                if (isJump(record))
+                    continue;
+            }
+            int next = blockAt(last + 1);
+            if (next == NONE)
+                exits[b] = true;
+            else if (next != successors[2 * b])
+                successors[2 * b + 1] = next;
+        }
+    }
+
+    /**
+     * Marque les blocs accessibles depuis la premiere instruction.
+     */
+    private void reach()
+    {
+        reachable = new boolean[blocks];
+        if (blocks == 0)
+            return;
+        int[] stack = new int[blocks];
+        int top = 0;
+        stack[top++] = 0;
+        reachable[0] = true;
+        while (top > 0)
+        {
+            int b = stack[--top];
+            for (int e = 2 * b; e < 2 * b + 2; e++)
+            {
+                int successor = successors[e];
+                if (successor != NONE && !reachable[successor])
+                {
+                    reachable[successor] = true;
+                    stack[top++] = successor;
+                }
+            }
+        }
+    }
+
+    /**
+     * Calcule le pire chemin sur le graphe des composantes fortement connexes,
+     * emises en ordre topologique inverse par l'algorithme de Tarjan (iteratif).
+     */
+    private void condense()
+    {
+        int[] index = new int[blocks];
+        int[] low = new int[blocks];
+        int[] edge = new int[blocks];
+        int[] component = new int[blocks];
+        boolean[] stacked = new boolean[blocks];
+        int[] stack = new int[blocks];
+        int[] calls = new int[blocks];
+        long[] longest = new long[blocks];
+        int[] next = new int[blocks];
+        int[] first = new int[blocks];
+        Arrays.fill(index, NONE);
+        Arrays.fill(component, NONE);
+        int top = 0;
+        int counter = 0;
+        int components = 0;
+        int depth = 0;
+        if (blocks > 0)
+        {
+            calls[depth++] = 0;
+            index[0] = low[0] = counter++;
+            stack[top++] = 0;
+            stacked[0] = true;
+        }
+        while (depth > 0)
+        {
+            int v = calls[depth - 1];
+            if (edge[v] < 2)
+            {
+                int w = successors[2 * v + edge[v]++];
+                if (w == NONE)
+                    continue;
+                if (index[w] == NONE)
+                {
+                    index[w] = low[w] = counter++;
+                    stack[top++] = w;
+                    stacked[w] = true;
+                    calls[depth++] = w;
+                }
+                else if (stacked[w])
+                    low[v] = Math.min(low[v], index[w]);
+                continue;
+            }
+            depth -= 1;
+            if (depth > 0)
+                low[calls[depth - 1]] = Math.min(low[calls[depth - 1]], low[v]);
+            if (low[v] != index[v])
+                continue;
+            // Les successeurs hors de la composante ont deja ete emis
+            int id = components++;
+            int bottom = top;
+            long weight = 0;
+            first[id] = v;
+            do
+            {
+                int b = stack[--bottom];
+                stacked[b] = false;
+                component[b] = id;
+                weight += cycles[b];
+                first[id] = Math.min(first[id], b);
+            }
+            while (stack[bottom] != v);
+            longest[id] = weight;
+            next[id] = NONE;
+            for (int i = bottom; i < top; i++)
+            {
+                for (int e = 2 * stack[i]; e < 2 * stack[i] + 2; e++)
+                {
+                    int successor = successors[e];
+                    if (successor != NONE && component[successor] != id && weight + longest[component[successor]] > longest[id])
+                    {
+                        longest[id] = weight + longest[component[successor]];
+                        next[id] = component[successor];
+                    }
+                }
+            }
+            top = bottom;
+        }
+        if (blocks > 0)
+        {
+            worstCase = longest[component[0]];
+            for (int c = component[0]; c != NONE; c = next[c])
+                path.add(first[c]);
+        }
+    }
+
+    /**
+     * Retrouve les boucles et leur imbrication en un seul parcours en profondeur
+     * (Wei, Mao, Zou et Chen, <i>A New Algorithm for Identifying Loops in Decompilation</i>).
+     * Chaque bloc recoit l'entree de la boucle la plus interne qui le contient.
+     * Un arc vers un bloc du chemin courant designe une entree de boucle ;
+     * un arc vers une boucle deja parcourue dont l'entree n'est plus sur le chemin la rend irreductible.
+     */
+    private void nest()
+    {
+        header = new int[blocks];
+        position = new int[blocks];
+        boolean[] entry = new boolean[blocks];
+        boolean[] visited = new boolean[blocks];
+        boolean[] irreducible = new boolean[blocks];
+        int[] edge = new int[blocks];
+        int[] calls = new int[blocks];
+        int[] order = new int[blocks];
+        Arrays.fill(header, NONE);
+        int visits = 0;
+        int depth = 0;
+        if (blocks > 0)
+        {
+            calls[depth++] = 0;
+            visited[0] = true;
+            position[0] = depth;
+            order[visits++] = 0;
+        }
+        while (depth > 0)
+        {
+            int v = calls[depth - 1];
+            if (edge[v] < 2)
+            {
+                int w = successors[2 * v + edge[v]++];
+                if (w == NONE)
+                    continue;
+                if (!visited[w])
+                {
+                    calls[depth++] = w;
+                    visited[w] = true;
+                    position[w] = depth;
+                    order[visits++] = w;
+                }
+                else if (position[w] > 0)
+                {
+                    entry[w] = true;
+                    tag(v, w);
+                }
+                else if (header[w] != NONE)
+                {
+                    int h = header[w];
+                    if (position[h] > 0)
+                        tag(v, h);
+                    else
+                    {
+                        irreducible[h] = true;
+                        while (header[h] != NONE)
+                        {
+                            h = header[h];
+                            if (position[h] > 0)
+                            {
+                                tag(v, h);
+                                break;
+                            }
+                            irreducible[h] = true;
+                        }
+                    }
+                }
+                continue;
+            }
+            position[v] = 0;
+            depth -= 1;
+            if (depth > 0)
+                tag(calls[depth - 1], header[v]);
+        }
+
+        // Les entrees englobantes sont parcourues avant les entrees interieures
+        int[] loopAt = new int[blocks];
+        for (int i = 0; i < visits; i++)
+        {
+            int b = order[i];
+            if (!entry[b])
+                continue;
+            Loop parent = header[b] == NONE ? null : loops.get(loopAt[header[b]]);
+            loopAt[b] = loops.size();
+            loops.add(new Loop(loops.size(), b, parent == null ? NONE : parent.id, parent == null ? 1 : parent.depth + 1, irreducible[b]));
+        }
+        loopOf = new int[blocks];
+        this.depth = new int[blocks];
+        int[] counts = new int[loops.size()];
+        for (int b = 0; b < blocks; b++)
+        {
+            int h = entry[b] ? b : header[b];
+            loopOf[b] = h == NONE ? NONE : loopAt[h];
+            if (h != NONE)
+            {
+                this.depth[b] = loops.get(loopOf[b]).depth;
+                counts[loopOf[b]] += 1;
+            }
+        }
+        for (Loop loop : loops)
+            loop.blocks = new int[counts[loop.id]];
+        Arrays.fill(counts, 0);
+        for (int b = 0; b < blocks; b++)
+        {
+            if (loopOf[b] != NONE)
+            {
+                Loop loop = loops.get(loopOf[b]);
+                loop.blocks[counts[loop.id]++] = b;
+                loop.cycles += cycles[b];
+                if (exits[b])
+                    exit(loop, null);
+                for (int e = 2 * b; e < 2 * b + 2; e++)
+                {
+                    if (successors[e] != NONE && loopOf[successors[e]] != loop.id)
+                        exit(loop, loopOf[successors[e]] == NONE ? null : loops.get(loopOf[successors[e]]));
+                }
+            }
+        }
+        for (int i = loops.size() - 1; i >= 0; i--)
+        {
+            Loop loop = loops.get(i);
+            if (loop.parent != NONE)
+                loops.get(loop.parent).cycles += loop.cycles;
+        }
+    }
+
+    /**
+     * Rattache un bloc et les boucles qui le contiennent a une boucle englobante.
+     * Les entrees sont classees par leur position sur le chemin courant, la plus profonde etant la plus interne.
+     *
+     * @param b un bloc
+     * @param h l'entree d'une boucle contenant le bloc, ou {@link #NONE}
+     */
+    private void tag(int b, int h)
+    {
+        if (b == h || h == NONE)
+            return;
+        int inner = b;
+        int outer = h;
+        while (header[inner] != NONE)
+        {
+            int current = header[inner];
+            if (current == outer)
+                return;
+            if (position[current] < position[outer])
+            {
+                header[inner] = outer;
+                inner = outer;
+                outer = current;
+            }
+            else
+                inner = current;
+        }
+        header[inner] = outer;
+    }
+
+    /**
+     * Marque les boucles quittees par un arc : la boucle de depart et ses boucles englobantes
+     * jusqu'a la premiere qui contient aussi la destination.
+     *
+     * @param from la boucle la plus interne contenant l'origine de l'arc
+     * @param to la boucle la plus interne contenant la destination, ou <tt>null</tt> hors de toute boucle ou a l'arret
+     */
+    private void exit(Loop from, Loop to)
+    {
+        while (from != null && from != to)
+        {
+            if (to != null && to.depth > from.depth)
+                to = parent(to);
+            else
+            {
+                from.exits = true;
+                from = parent(from);
+            }
+        }
+    }
+
+    private Loop parent(Loop loop)
+    {
+        return loop.parent == NONE ? null : loops.get(loop.parent);
+    }
+
+    /**
+     * Estime le cout de chaque boucle, chaque niveau d'imbrication multipliant le nombre d'executions par {@value #TRIP_COUNT},
+     * jusqu'a {@value #ESTIMATED_DEPTH} niveaux.
+     */
+    private void estimate()
+    {
+        estimated = 0;
+        for (int b = 0; b < blocks; b++)
+        {
+            double weight = cycles[b] * Math.pow(TRIP_COUNT, Math.min(depth[b], ESTIMATED_DEPTH));
+            if (reachable[b])
+                estimated += weight;
+            if (loopOf[b] != NONE)
+                loops.get(loopOf[b]).estimated += weight;
+        }
+        for (int i = loops.size() - 1; i >= 0; i--)
+        {
+            Loop loop = loops.get(i);
+            if (loop.parent != NONE)
+                loops.get(loop.parent).estimated += loop.estimated;
+            loop.hot = estimated > 0 && loop.estimated >= HOT * estimated;
+        }
+    }
+
+    /**
+     * Ecrit le rapport JSON de l'analyse.
+     *
+     * @param out la destination du rapport
+     * @throws IOException si l'ecriture echoue
+     */
+    void report(Appendable out) throws IOException
+    {
+        long total = 0;
+        long dead = 0;
+        for (int b = 0; b < blocks; b++)
+        {
+            total += cycles[b];
+            if (!reachable[b])
+                dead += start[b + 1] - start[b];
+        }
+        out.append("{\n");
+        out.append("  \"instructions\": ").append(String.valueOf(program.length)).append(",\n");
+        out.append("  \"blocks\": ").append(String.valueOf(blocks)).append(",\n");
+        out.append("  \"staticCycles\": ").append(String.valueOf(total)).append(",\n");
+        out.append("  \"costs\": {");
+        for (Category category : Category.values())
+            out.append(category.ordinal() == 0 ? "" : ", ").append('"').append(category.name()).append("\": ").append(String.valueOf(costs[category.ordinal()]));
+        out.append("},\n");
+        out.append("  \"worstCase\": {\"cycles\": ").append(String.valueOf(worstCase))
+                .append(", \"bounded\": ").append(String.valueOf(loops.isEmpty()))
+                .append(", \"path\": ").append(list(path.stream().mapToInt(b -> start[b]).toArray())).append("},\n");
+        out.append("  \"estimatedCycles\": ").append(String.format("%.1f", estimated)).append(",\n");
+        out.append("  \"unreachableInstructions\": ").append(String.valueOf(dead)).append(",\n");
+
+        out.append("  \"loops\": [");
+        for (Loop loop : loops)
+        {
+            out.append(loop.id == 0 ? "\n" : ",\n");
+            out.append("    {\"id\": ").append(String.valueOf(loop.id))
+                    .append(", \"header\": ").append(String.valueOf(start[loop.header]))
+                    .append(", \"label\": ").append(label(start[loop.header]))
+                    .append(", \"parent\": ").append(loop.parent == NONE ? "null" : String.valueOf(loop.parent))
+                    .append(", \"depth\": ").append(String.valueOf(loop.depth))
+                    .append(", \"blocks\": ").append(list(Arrays.stream(loop.blocks).map(b -> start[b]).toArray()))
+                    .append(", \"cyclesPerIteration\": ").append(String.valueOf(loop.cycles))
+                    .append(", \"estimatedCycles\": ").append(String.format("%.1f", loop.estimated))
+                    .append(", \"exits\": ").append(String.valueOf(loop.exits))
+                    .append(", \"irreducible\": ").append(String.valueOf(loop.irreducible))
+                    .append(", \"hot\": ").append(String.valueOf(loop.hot)).append('}');
+        }
+        out.append(loops.isEmpty() ? "],\n" : "\n  ],\n");
+
+        out.append("  \"unreachable\": [");
+        boolean first = true;
+        for (int b = 0; b < blocks; b++)
+        {
+            if (reachable[b] || b > 0 && !reachable[b - 1])
+                continue;
+            int end = b;
+            while (end + 1 < blocks && !reachable[end + 1])
+                end += 1;
+            out.append(first ? "" : ", ").append("{\"start\": ").append(String.valueOf(start[b])).append(", \"end\": ").append(String.valueOf(start[end + 1] - 1)).append('}');
+            first = false;
+        }
+        out.append("],\n");
+
+        out.append("  \"basicBlocks\": [");
+        for (int b = 0; b < blocks; b++)
+        {
+            out.append(b == 0 ? "\n" : ",\n");
+            int[] next = Arrays.stream(successors, 2 * b, 2 * b + 2).filter(s -> s != NONE).map(s -> start[s]).toArray();
+            out.append("    {\"start\": ").append(String.valueOf(start[b]))
+                    .append(", \"end\": ").append(String.valueOf(start[b + 1] - 1))
+                    .append(", \"label\": ").append(label(start[b]))
+                    .append(", \"cycles\": ").append(String.valueOf(cycles[b]))
+                    .append(", \"successors\": ").append(list(next))
+                    .append(", \"exit\": ").append(String.valueOf(exits[b]))
+                    .append(", \"undefined\": ").append(String.valueOf(undefined[b]))
+                    .append(", \"reachable\": ").append(String.valueOf(reachable[b]))
+                    .append(", \"loop\": ").append(loopOf[b] == NONE ? "null" : String.valueOf(loopOf[b]))
+                    .append(", \"depth\": ").append(String.valueOf(depth[b])).append('}');
+        }
+        out.append(blocks == 0 ? "]\n" : "\n  ]\n");
+        out.append("}\n");
+    }
+
+    private String label(int address)
+    {
+        if (labels == null || labels[address] == null)
+            return "null";
+        return '"' + labels[address].replace("\\", "\\\\").replace("\"", "\\\"") + '"';
+    }
+
+    private static String list(int[] values)
+    {
+        StringBuilder text = new StringBuilder("[");
+        for (int i = 0; i < values.length; i++)
+            text.append(i == 0 ? "" : ", ").append(values[i]);
+        return text.append(']').toString();
+    }
+
+    /**
+     * Analyse un programme et ecrit le rapport JSON.
+     * Le fichier est lu comme une image si son extension est celle d'un {@link Image.Format format} d'image,
+     * comme un programme source sinon ; les labels ne sont connus que pour un programme source.
+     * <p>
+     * Options, placees avant le nom du fichier :
+     * <pre>
+     * --parser=P        analyseur du programme source : regex (par defaut) ou descent
+     * --cost=C:N,...    cout en cycles des categories, par exemple branch:2,load_store:3 (1 par defaut)
+     * --output=FILE     ecrit le rapport dans FILE plutot que sur la sortie standard
+     * </pre>
+     *
+     * @param args les options suivies du nom du fichier
+     * @throws IOException si un fichier ne peut pas etre lu ou ecrit
+     */
+    public static void main(String[] args) throws IOException
+    {
+        Supplier<Parser> parsers = PatternParser::new;
+        int[] costs = defaultCosts();
+        String output = null;
+        String filename = null;
+        for (String arg : args)
+        {
+            if (arg.startsWith("--parser="))
+                parsers = Assembler.parsers(arg.substring("--parser=".length()));
+            else if (arg.startsWith("--cost="))
+            {
+                for (String entry : arg.substring("--cost=".length()).split(","))
+                {
+                    String[] pair = entry.split(":");
+                    if (pair.length != 2)
+                        throw new IllegalArgumentException("Malformed cost: " + entry);
+                    costs[Category.valueOf(pair[0].toUpperCase()).ordinal()] = Integer.parseInt(pair[1]);
+                }
+            }
+            else if (arg.startsWith("--output="))
+                output = arg.substring("--output=".length());
+            else if (arg.startsWith("--"))
+                throw new IllegalArgumentException("Unknown option: " + arg);
+            else
+                filename = arg;
+        }
+        if (filename == null)
+            throw new IllegalArgumentException("File name is missing");
+
+        Path path = Paths.get(filename);
+        int[] program;
+        String[] labels = null;
+        if (isImage(path))
+            program = Image.read(path).toArray();
+        else
+        {
+            Map<String, Long> link = new HashMap<>();
+            program = Assembler.assemble(Source.open(filename), parsers, link);
+            labels = new String[program.length + 1];
+            // Le premier label dans l'ordre alphabetique nomme l'instruction
+            for (Map.Entry<String, Long> entry : link.entrySet())
+            {
+                int address = entry.getValue().intValue();
+                if (labels[address] == null || entry.getKey().compareTo(labels[address]) < 0)
+                    labels[address] = entry.getKey();
+            }
+        }
+        CycleAnalyzer analyzer = new CycleAnalyzer(program, labels, costs).analyse();
+        try (Writer out = output == null
+                ? new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8))
+                : Files.newBufferedWriter(Paths.get(output)))
+        {
+            analyzer.report(out);
+        }
+    }
+
+    private static boolean isImage(Path path)
+    {
+        String name = path.getFileName().toString();
+        for (Image.Format format : Image.Format.values())
+        {
+            if (name.endsWith("." + format.getExtension()))
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Boucle du programme, identifiee par son entree.
+     */
+    private static final class Loop
+    {
+        private final int id;
+        private final int header;
+        private final int parent;
+        private final int depth;
+        private final boolean irreducible;
+        /**
+         * Blocs dont c'est la boucle la plus interne.
+         */
+        private int[] blocks;
+        /**
+         * Cout d'une iteration passant une fois par chaque bloc, boucles interieures comprises.
+         */
+        private long cycles;
+        private boolean exits;
+        private double estimated;
+        private boolean hot;
+
+        private Loop(int id, int header, int parent, int depth, boolean irreducible)
+        {
+            this.id = id;
+            this.header = header;
+            this.parent = parent;
+            this.depth = depth;
+            this.irreducible = irreducible;
+        }
+    }
+}
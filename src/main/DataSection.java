@@ -0,0 +1,538 @@
+package main;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Section de donnees d'un programme : le contenu initial de la RAM, decrit par des directives.
+ * <pre>
+ * .data                passe dans la section de donnees
+ * .text                revient aux instructions
+ * .word v1, v2, ...    ajoute des mots de 32 bits
+ * .fill n, v           ajoute n mots valant v
+ * .space n             ajoute n mots nuls
+ * .global l1, l2, ...  exporte des labels vers les autres fichiers, voir {@link Linker}
+ * </pre>
+ * Les valeurs sont ecrites en decimal ou en hexadecimal avec le prefixe <tt>0x</tt>, eventuellement precedees de '-'.
+ * Un label place devant une directive, ou seul sur une ligne de la section de donnees, designe l'adresse du mot suivant
+ * dans la RAM : il s'utilise comme adresse de <tt>LDR Rt, label</tt> et <tt>STR Rt, label</tt>.
+ * Les lignes de la section de donnees ne contiennent que des labels, des directives et des commentaires.
+ * La directive <tt>.global</tt> peut designer un label d'instruction ou de donnee et se placer dans l'une ou l'autre section ;
+ * elle n'a d'effet qu'a l'edition des liens.
+ * <p>
+ * Les donnees commencent a l'adresse 0 et sont conservees comme des suites de valeurs identiques :
+ * un <tt>.fill</tt> ou un <tt>.space</tt> occupe la meme place quel que soit son nombre de mots,
+ * et l'image de la RAM est ecrite sous la forme <tt>N*v</tt>, voir {@link #write(Path, LiteralPool)}.
+ * La {@link LiteralPool reserve des constantes} occupe le haut de la RAM, au-dessus des donnees.
+ * Aucune chaine n'est creee lors de l'analyse d'une ligne, sauf pour le nom d'un label.
+ *
+ * @see Assembler
+ */
+final class DataSection
+{
+    /**
+     * Marque l'echec de la reconnaissance d'une partie de la ligne.
+     */
+    private static final int FAIL = -1;
+    /**
+     * Nombre de caracteres de l'image ecrits a la fois.
+     */
+    private static final int BATCH = 1 << 13;
+
+    /**
+     * Adresse de chaque label, dans l'ordre de definition.
+     */
+    private final Map<String, Integer> labels = new LinkedHashMap<>();
+    /**
+     * Labels exportes par <tt>.global</tt>, dans l'ordre de declaration.
+     */
+    private final Set<String> globals = new LinkedHashSet<>();
+    /**
+     * Suites de valeurs identiques : la valeur et le nombre de mots de chaque suite.
+     */
+    private int[] values = new int[16];
+    private int[] counts = new int[16];
+    private int runs;
+    /**
+     * Nombre de mots de la section.
+     */
+    private int size;
+    /**
+     * Vrai entre un <tt>.data</tt> et le <tt>.text</tt> suivant.
+     */
+    private boolean active;
+
+    private CharSequence line;
+    private int length;
+
+    DataSection()
+    {
+        this(false);
+    }
+
+    /**
+     * @param active vrai si la premiere ligne analysee est dans la section de donnees
+     */
+    DataSection(boolean active)
+    {
+        this.active = active;
+    }
+
+    /**
+     * Analyse une ligne, si elle contient une directive ou appartient a la section de donnees.
+     *
+     * @param line la ligne
+     * @return vrai si la ligne a ete traitee ; faux pour une ligne d'instruction
+     * @throws IllegalArgumentException si la directive est inconnue ou mal formee,
+     *                                  si une donnee est hors de la section de donnees
+     *                                  ou si une instruction est dans la section de donnees
+     */
+    boolean parse(CharSequence line)
+    {
+        this.line = line;
+        this.length = line.length();
+        int start = spaces(0);
+        int directive = start;
+        if (directive(start) == FAIL)
+        {
+            // Un label, suivi de ':' et/ou d'espaces, puis une directive ou la fin de la ligne
+            int word = word(start);
+            int next = spaces(word);
+            if (next < length && line.charAt(next) == ':')
+                next = spaces(next + 1);
+            if (word == start || next == word || directive(next) == FAIL)
+            {
+                if (!active)
+                    return false;
+                if (!comment(next))
+                    throw new IllegalArgumentException("Instruction in .data section: " + line.toString().trim());
+                if (word > start)
+                    define(line.subSequence(start, word).toString());
+                return true;
+            }
+            define(line.subSequence(start, word).toString());
+            directive = next;
+        }
+        execute(directive, directive(directive));
+        return true;
+    }
+
+    /**
+     * @param line une ligne du programme
+     * @return vrai si la ligne contient une directive, eventuellement precedee d'un label
+     */
+    boolean isDirective(CharSequence line)
+    {
+        this.line = line;
+        this.length = line.length();
+        int start = spaces(0);
+        if (directive(start) != FAIL)
+            return true;
+        int word = word(start);
+        int next = spaces(word);
+        if (next < length && line.charAt(next) == ':')
+            next = spaces(next + 1);
+        return word > start && next > word && directive(next) != FAIL;
+    }
+
+    /**
+     * @param start la position du '.'
+     * @return la fin du nom de la directive, ou {@value FAIL}
+     */
+    private int directive(int start)
+    {
+        if (start >= length || line.charAt(start) != '.')
+            return FAIL;
+        int end = word(start + 1);
+        return end > start + 1 ? end : FAIL;
+    }
+
+    /**
+     * Execute une directive.
+     *
+     * @param start la position du '.'
+     * @param end la fin du nom de la directive
+     */
+    private void execute(int start, int end)
+    {
+        if (matches(".DATA", start, end) || matches(".TEXT", start, end))
+        {
+            if (!comment(end))
+                throw new IllegalArgumentException("Invalid directive: " + line.toString().trim());
+            active = matches(".DATA", start, end);
+            return;
+        }
+        if (matches(".GLOBAL", start, end))
+        {
+            // Noms separes par des virgules, au moins un
+            int position = spaces(end);
+            while (true)
+            {
+                int next = word(position);
+                if (next == position)
+                    throw new IllegalArgumentException("Invalid directive: " + line.toString().trim());
+                globals.add(line.subSequence(position, next).toString());
+                position = spaces(next);
+                if (position >= length || line.charAt(position) != ',')
+                    break;
+                position = spaces(position + 1);
+            }
+            if (!comment(position))
+                throw new IllegalArgumentException("Invalid directive: " + line.toString().trim());
+            return;
+        }
+        boolean word = matches(".WORD", start, end);
+        boolean fill = matches(".FILL", start, end);
+        boolean space = matches(".SPACE", start, end);
+        if (!word && !fill && !space)
+            throw new IllegalArgumentException("Unknown directive: " + line.subSequence(start, end));
+        if (!active)
+            throw new IllegalArgumentException("Directive outside .data section: " + line.subSequence(start, end));
+
+        // Valeurs separees par des virgules, au moins une
+        long first = 0;
+        long second = 0;
+        int count = 0;
+        int position = spaces(end);
+        if (position == end && position < length && line.charAt(position) != ';')
+            throw new IllegalArgumentException("Invalid directive: " + line.toString().trim());
+        while (true)
+        {
+            int next = number(position);
+            if (next == FAIL)
+                throw new IllegalArgumentException("Invalid directive: " + line.toString().trim());
+            long value = value(position, next);
+            if (word)
+                fill(1, (int) value);
+            else if (count == 0)
+                first = value;
+            else
+                second = value;
+            count += 1;
+            position = spaces(next);
+            if (position >= length || line.charAt(position) != ',')
+                break;
+            position = spaces(position + 1);
+        }
+        if (!comment(position) || fill && count != 2 || space && count != 1)
+            throw new IllegalArgumentException("Invalid directive: " + line.toString().trim());
+        if (fill || space)
+        {
+            if (first < 0)
+                throw new IllegalArgumentException("Invalid directive: " + line.toString().trim());
+            if (first > Simulator.RAM_SIZE)
+                throw new IllegalArgumentException("Data section does not fit in RAM: " + line.toString().trim());
+            fill((int) first, fill ? (int) second : 0);
+        }
+    }
+
+    /**
+     * Definit un label a l'adresse du prochain mot.
+     *
+     * @param label le nom du label
+     */
+    void define(String label)
+    {
+        define(label, size);
+    }
+
+    /**
+     * Definit un label a une adresse de la section.
+     *
+     * @param label le nom du label
+     * @param address l'adresse du label
+     */
+    void define(String label, int address)
+    {
+        labels.put(label, address);
+    }
+
+    /**
+     * Ajoute une suite de mots identiques.
+     *
+     * @param count le nombre de mots
+     * @param value la valeur des mots
+     * @throws IllegalArgumentException si la section ne tient plus dans la RAM
+     */
+    void fill(int count, int value)
+    {
+        if (count == 0)
+            return;
+        if (size + (long) count > Simulator.RAM_SIZE)
+            throw new IllegalArgumentException("Data section does not fit in RAM: " + (size + (long) count) + " words");
+        size += count;
+        if (runs > 0 && values[runs - 1] == value)
+        {
+            counts[runs - 1] += count;
+            return;
+        }
+        if (runs == values.length)
+        {
+            values = Arrays.copyOf(values, runs * 2);
+            counts = Arrays.copyOf(counts, runs * 2);
+        }
+        values[runs] = value;
+        counts[runs] = count;
+        runs += 1;
+    }
+
+    /**
+     * Ajoute une section a la suite de celle-ci ; ses labels sont decales de la taille de cette section.
+     *
+     * @param other la section ajoutee
+     */
+    void append(DataSection other)
+    {
+        int base = size;
+        other.labels.forEach((label, address) -> labels.put(label, base + address));
+        globals.addAll(other.globals);
+        for (int i = 0; i < other.runs; i++)
+            fill(other.counts[i], other.values[i]);
+    }
+
+    /**
+     * @param label le nom d'un label
+     * @return l'adresse du label dans la RAM, ou <tt>null</tt> s'il n'est pas defini
+     */
+    Integer address(String label)
+    {
+        return labels.get(label);
+    }
+
+    Map<String, Integer> getLabels()
+    {
+        return Collections.unmodifiableMap(labels);
+    }
+
+    /**
+     * @return les labels exportes par <tt>.global</tt>
+     */
+    Set<String> getGlobals()
+    {
+        return Collections.unmodifiableSet(globals);
+    }
+
+    boolean isActive()
+    {
+        return active;
+    }
+
+    /**
+     * @return vrai si la section ne contient aucun mot
+     */
+    boolean isEmpty()
+    {
+        return size == 0;
+    }
+
+    /**
+     * @return le nombre de mots de la section
+     */
+    int size()
+    {
+        return size;
+    }
+
+    /**
+     * @return le nombre de suites de valeurs identiques
+     */
+    int getRuns()
+    {
+        return runs;
+    }
+
+    int value(int run)
+    {
+        return values[run];
+    }
+
+    int count(int run)
+    {
+        return counts[run];
+    }
+
+    /**
+     * Verifie que les donnees et la reserve des constantes tiennent ensemble dans la RAM.
+     *
+     * @param pool la reserve des constantes
+     * @throws IllegalArgumentException si elles se chevauchent
+     */
+    void check(LiteralPool pool)
+    {
+        if (size + pool.size() > Simulator.RAM_SIZE)
+            throw new IllegalArgumentException("RAM is full: " + size + " data words and " + pool.size() + " literals");
+    }
+
+    /**
+     * Ecrit l'image logisim {@value Image#HEADER} de la RAM : les donnees a partir de l'adresse 0,
+     * puis la reserve des constantes en haut de la RAM.
+     * L'image est ecrite par morceaux, sans etre construite en memoire.
+     *
+     * @param path le fichier image, lisible par le simulateur (option <tt>--ram</tt>)
+     * @param pool la reserve des constantes
+     * @throws IOException si le fichier ne peut pas etre ecrit
+     * @throws IllegalArgumentException si les donnees et la reserve ne tiennent pas dans la RAM
+     */
+    void write(Path path, LiteralPool pool) throws IOException
+    {
+        check(pool);
+        try (OutputStream out = Files.newOutputStream(path))
+        {
+            write(out, pool);
+        }
+    }
+
+    /**
+     * Ecrit l'image logisim de la RAM dans un flux, voir {@link #write(Path, LiteralPool)}.
+     *
+     * @param out le flux, laisse ouvert
+     * @param pool la reserve des constantes
+     * @throws IOException si le flux ne peut pas etre ecrit
+     * @throws IllegalArgumentException si les donnees et la reserve ne tiennent pas dans la RAM
+     */
+    void write(OutputStream out, LiteralPool pool) throws IOException
+    {
+        check(pool);
+        StringBuilder text = new StringBuilder(Image.HEADER).append('\n');
+        int low = Simulator.RAM_SIZE - pool.size();
+        // Les mots nuls entre les donnees et la reserve prolongent une derniere suite nulle
+        int last = runs;
+        int gap = pool.isEmpty() ? 0 : low - size;
+        if (gap > 0 && runs > 0 && values[runs - 1] == 0)
+            gap += counts[--last];
+        for (int i = 0; i < last; i++)
+            text = flush(out, text, values[i], counts[i]);
+        if (!pool.isEmpty())
+        {
+            text = flush(out, text, 0, gap);
+            int[] ram = pool.ram();
+            for (int address = low; address < ram.length; address++)
+                text = flush(out, text, ram[address], 1);
+        }
+        text.append('\n');
+        out.write(text.toString().getBytes(StandardCharsets.US_ASCII));
+    }
+
+    /**
+     * Ajoute une suite de valeurs identiques a l'image et ecrit l'image lorsqu'elle depasse {@value #BATCH} caracteres.
+     */
+    private static StringBuilder flush(OutputStream out, StringBuilder text, int value, int count) throws IOException
+    {
+        if (count > 0)
+            Image.Format.run(text, value, count);
+        if (text.length() >= BATCH)
+        {
+            out.write(text.toString().getBytes(StandardCharsets.US_ASCII));
+            text.setLength(0);
+        }
+        return text;
+    }
+
+    /**
+     * @param start la position de la valeur
+     * @return la fin d'une valeur <tt>-?(0x[0-9a-f]+|\d+)</tt>, ou {@value FAIL}
+     */
+    private int number(int start)
+    {
+        int i = start;
+        if (i < length && line.charAt(i) == '-')
+            i += 1;
+        int radix = hex(i) ? 16 : 10;
+        if (radix == 16)
+            i += 2;
+        int end = i;
+        while (end < length && line.charAt(end) < 0x80 && Character.digit(line.charAt(end), radix) >= 0)
+            end += 1;
+        return end > i ? end : FAIL;
+    }
+
+    /**
+     * @return la valeur sur 32 bits reconnue par {@link #number(int)}
+     * @throws IllegalArgumentException si la valeur ne tient pas sur 32 bits
+     */
+    private long value(int start, int end)
+    {
+        int i = start;
+        boolean negative = line.charAt(i) == '-';
+        if (negative)
+            i += 1;
+        int radix = hex(i) ? 16 : 10;
+        if (radix == 16)
+            i += 2;
+        long value = 0;
+        for (; i < end; i++)
+        {
+            value = radix * value + Character.digit(line.charAt(i), radix);
+            if (value > 0xFFFFFFFFL)
+                throw new IllegalArgumentException("Value does not fit in 32 bits: " + line.subSequence(start, end));
+        }
+        if (negative && value > 1L << 31)
+            throw new IllegalArgumentException("Value does not fit in 32 bits: " + line.subSequence(start, end));
+        return negative ? -value : value;
+    }
+
+    /**
+     * @return vrai si une valeur hexadecimale commence a cette position
+     */
+    private boolean hex(int start)
+    {
+        return start + 2 < length && line.charAt(start) == '0' && (line.charAt(start + 1) == 'x' || line.charAt(start + 1) == 'X')
+                && line.charAt(start + 2) < 0x80 && Character.digit(line.charAt(start + 2), 16) >= 0;
+    }
+
+    /**
+     * @param start la fin de la directive
+     * @return vrai si la fin de la ligne est atteinte, eventuellement apres un commentaire commencant par ';'
+     */
+    private boolean comment(int start)
+    {
+        int position = spaces(start);
+        return position == length || line.charAt(position) == ';';
+    }
+
+    private int word(int start)
+    {
+        int end = start;
+        while (end < length && isWord(line.charAt(end)))
+            end += 1;
+        return end;
+    }
+
+    private int spaces(int start)
+    {
+        int end = start;
+        while (end < length && Character.isWhitespace(line.charAt(end)))
+            end += 1;
+        return end;
+    }
+
+    /**
+     * @param name un nom en majuscules
+     * @return vrai si le texte correspond au nom, sans tenir compte de la casse
+     */
+    private boolean matches(String name, int start, int end)
+    {
+        if (end - start != name.length())
+            return false;
+        for (int i = start; i < end; i++)
+        {
+            if (Character.toUpperCase(line.charAt(i)) != name.charAt(i - start))
+                return false;
+        }
+        return true;
+    }
+
+    private static boolean isWord(char c)
+    {
+        return c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z' || c >= '0' && c <= '9' || c == '_';
+    }
+}
@@ -0,0 +1,409 @@
+package main;
+
+import java.util.Arrays;
+
+import static main.Assembler.*;
+
+/**
+ * Analyseur descendant ecrit a la main, equivalent a {@link main.Assembler#PATTERN PATTERN}.
+ * <p>
+ * Les seuls choix possibles sont le label, le nom de l'instruction, le flag <tt>S</tt> et la condition :
+ * ils sont essayes dans le meme ordre que le patterne.
+ * Les operandes sont ensuite reconnues sans retour en arriere, le premier caractere determinant chaque alternative.
+ * Aucun objet n'est cree lors de l'analyse d'une ligne.
+ *
+ * @see ParsedLine
+ */
+final class DescentParser implements Parser
+{
+    /**
+     * Noms des instructions, dans l'ordre de l'alternative du patterne.
+     */
+    private static final String[] MNEMONICS = Arrays.stream(Instructions.values()).map(Instructions::toString).distinct().toArray(String[]::new);
+    /**
+     * Noms des conditions.
+     */
+    private static final String[] CONDITIONS = Arrays.stream(Condition.values()).map(Condition::toString).toArray(String[]::new);
+    /**
+     * Noms des instructions de decalage utilisables dans une adresse.
+     */
+    private static final String[] SHIFTS = Arrays.stream(Instructions.ofType(InstructionType.SHIFT)).map(Instructions::toString).distinct().toArray(String[]::new);
+
+    /**
+     * Marque l'echec de la reconnaissance d'une partie de la ligne.
+     */
+    private static final int FAIL = -1;
+
+    private CharSequence line;
+    private int length;
+    private ParsedLine parsed;
+
+    @Override
+    public boolean parse(CharSequence line, ParsedLine parsed)
+    {
+        this.line = line;
+        this.length = line.length();
+        this.parsed = parsed;
+        parsed.reset(line);
+
+        int start = spaces(0);
+
+        // Essaie d'abord de lire un label suivi de ':' et/ou d'un espace
+        int word = word(start);
+        if (word > start)
+        {
+            int next = spaces(word);
+            boolean separated;
+            if (next < length && line.charAt(next) == ':')
+            {
+                int colon = next + 1;
+                next = spaces(colon);
+                separated = next > colon;
+            }
+            else
+                separated = next > word;
+            if (separated && instruction(next))
+            {
+                parsed.set(LABEL_GROUP, start, word);
+                return true;
+            }
+            parsed.clear();
+        }
+
+        // Sinon la ligne doit commencer par l'instruction
+        return instruction(start);
+    }
+
+    /**
+     * Reconnait le nom de l'instruction, le flag <tt>S</tt>, la condition puis les operandes.
+     *
+     * @param start le debut de l'instruction
+     * @return vrai si le reste de la ligne est reconnu
+     */
+    private boolean instruction(int start)
+    {
+        for (String mnemonic : MNEMONICS)
+        {
+            if (!matches(mnemonic, start))
+                continue;
+            int end = start + mnemonic.length();
+            boolean flag = end < length && (line.charAt(end) == 'S' || line.charAt(end) == 's');
+            // Le flag et la condition sont optionnels : on essaie d'abord avec, puis sans
+            for (int s = flag ? 1 : 0; s >= 0; s--)
+            {
+                int condition = condition(end + s);
+                for (int c = condition != FAIL ? 2 : 0; c >= 0; c -= 2)
+                {
+                    if (operands(end + s + c))
+                    {
+                        parsed.set(INSTRUCTION_GROUP, start, end);
+                        if (s == 1)
+                            parsed.set(CHANGE_LABEL_GROUP, end, end + 1);
+                        if (c == 2)
+                            parsed.set(CONDITION_GROUP, end + s, end + s + 2);
+                        return true;
+                    }
+                    parsed.clear();
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @param start la position de la condition
+     * @return l'indice de la condition reconnue, ou {@value FAIL}
+     */
+    private int condition(int start)
+    {
+        for (int i = 0; i < CONDITIONS.length; i++)
+        {
+            if (matches(CONDITIONS[i], start))
+                return i;
+        }
+        return FAIL;
+    }
+
+    /**
+     * Reconnait les trois operandes et le commentaire de fin de ligne.
+     *
+     * @param start la fin du nom de l'instruction
+     * @return vrai si le reste de la ligne est reconnu
+     */
+    private boolean operands(int start)
+    {
+        // Premiere operande : un registre ou un label
+        int first = spaces(start);
+        int end = word(first);
+        if (end == first)
+            return false;
+        if (register(first) == end)
+            parsed.set(FIRST_OPERAND_GROUP, first + 1, end);
+        else
+            parsed.set(BRANCH_LABEL_GROUP, first, end);
+
+        // Seconde operande : un registre, une valeur ou une adresse
+        int comma = spaces(end);
+        if (comma < length && line.charAt(comma) == ',')
+        {
+            int second = spaces(comma + 1);
+            int next;
+            if ((next = separated(register(second))) != FAIL)
+                parsed.set(SECOND_OPERAND_GROUP, second + 1, next);
+            else if ((next = separated(immediate(second))) != FAIL)
+                parsed.set(ADDRESSING_OFFSET, second + 1, next);
+            else
+                next = addressing(second);
+            // Sinon la virgule peut introduire la troisieme operande ou un label de donnee, comme dans le patterne
+            if (next != FAIL)
+            {
+                end = next;
+                comma = spaces(end);
+            }
+        }
+
+        // Troisieme operande : un registre ou une valeur
+        if (comma < length && line.charAt(comma) == ',')
+        {
+            int third = spaces(comma + 1);
+            int next;
+            if ((next = separated(register(third))) != FAIL)
+                parsed.set(THIRD_OPERAND, third + 1, next);
+            else if ((next = separated(immediate(third))) != FAIL)
+                parsed.set(TWO_OPERAND_OFFSET, third + 1, next);
+            if (next != FAIL)
+            {
+                end = next;
+                comma = spaces(end);
+            }
+        }
+
+        // Constante de la pseudo-instruction LDR Rd, =valeur
+        if (comma < length && line.charAt(comma) == ',')
+        {
+            int literal = spaces(comma + 1);
+            if (literal < length && line.charAt(literal) == '=')
+            {
+                if ((end = literal(literal + 1)) == FAIL)
+                    return false;
+                parsed.set(LITERAL_GROUP, literal + 1, end);
+                comma = spaces(end);
+            }
+        }
+
+        // Label de la section de donnees
+        if (comma < length && line.charAt(comma) == ',')
+        {
+            int label = spaces(comma + 1);
+            if ((end = word(label)) == label)
+                return false;
+            parsed.set(DATA_LABEL_GROUP, label, end);
+        }
+
+        return comment(end);
+    }
+
+    /**
+     * Une operande suivie d'un caractere de mot n'est pas reconnue : le patterne essaie alors l'alternative suivante.
+     *
+     * @param end la fin d'une operande, ou {@value FAIL}
+     * @return la fin de l'operande, ou {@value FAIL}
+     */
+    private int separated(int end)
+    {
+        return end != FAIL && end < length && isWord(line.charAt(end)) ? FAIL : end;
+    }
+
+    /**
+     * @param start la position de la valeur, apres le '='
+     * @return la fin d'une constante <tt>-?(0x[0-9a-f]+|\d+)</tt>, ou {@value FAIL}
+     */
+    private int literal(int start)
+    {
+        if (start < length && line.charAt(start) == '-')
+            start += 1;
+        if (start + 1 < length && line.charAt(start) == '0' && (line.charAt(start + 1) == 'x' || line.charAt(start + 1) == 'X'))
+        {
+            int end = start + 2;
+            while (end < length && Character.digit(line.charAt(end), 16) >= 0 && line.charAt(end) < 0x80)
+                end += 1;
+            if (end > start + 2)
+                return end;
+        }
+        return digits(start);
+    }
+
+    /**
+     * Reconnait une adresse de la forme <tt>[Rn{, Rm|#imm{, SHIFT{ #imm}}}]</tt>.
+     *
+     * @param start la position du '['
+     * @return la fin de l'adresse, ou {@value FAIL}
+     */
+    private int addressing(int start)
+    {
+        if (start >= length || line.charAt(start) != '[')
+            return FAIL;
+        int base = spaces(start + 1);
+        int end = register(base);
+        if (end == FAIL)
+            return FAIL;
+        parsed.set(ADDRESSING_REGISTER, base + 1, end);
+
+        int comma = spaces(end);
+        if (comma < length && line.charAt(comma) == ',')
+        {
+            int index = spaces(comma + 1);
+            int indexEnd;
+            if ((indexEnd = register(index)) != FAIL)
+                parsed.set(ADDRESSING_INDEX, index + 1, indexEnd);
+            else if ((indexEnd = immediate(index)) != FAIL)
+                parsed.set(ADDRESSING_OFFSET_REGISTER, index + 1, indexEnd);
+            if (indexEnd != FAIL)
+                end = shift(spaces(indexEnd), indexEnd);
+        }
+
+        int bracket = spaces(end);
+        if (bracket < length && line.charAt(bracket) == ']')
+            return bracket + 1;
+        return FAIL;
+    }
+
+    /**
+     * Reconnait le decalage optionnel d'une adresse <tt>, SHIFT{ #imm}</tt>.
+     *
+     * @param comma la position de la virgule
+     * @param end la fin de l'adresse si le decalage est absent
+     * @return la fin de l'adresse
+     */
+    private int shift(int comma, int end)
+    {
+        if (comma >= length || line.charAt(comma) != ',')
+            return end;
+        int start = spaces(comma + 1);
+        for (String shift : SHIFTS)
+        {
+            if (!matches(shift, start))
+                continue;
+            int shiftEnd = start + shift.length();
+            parsed.set(ADDRESSING_SHIFT_INSTRUCTION, start, shiftEnd);
+            int offset = spaces(shiftEnd);
+            int offsetEnd = offset > shiftEnd ? immediate(offset) : FAIL;
+            if (offsetEnd == FAIL)
+                return shiftEnd;
+            parsed.set(ADDRESSING_SHIFT_OFFSET, offset + 1, offsetEnd);
+            return offsetEnd;
+        }
+        return end;
+    }
+
+    /**
+     * Reconnait la fin de ligne, eventuellement precedee d'un commentaire commencant par ';'.
+     *
+     * @param start la fin de la derniere operande
+     * @return vrai si la fin de la ligne est atteinte
+     */
+    private boolean comment(int start)
+    {
+        int position = spaces(start);
+        if (position < length && line.charAt(position) == ';')
+        {
+            position += 1;
+            while (position < length && !terminator(line.charAt(position)))
+                position += 1;
+        }
+        return position == length;
+    }
+
+    /**
+     * @param start la position du registre
+     * @return la fin d'un registre <tt>R\d+</tt>, ou {@value FAIL}
+     */
+    private int register(int start)
+    {
+        if (start >= length || (line.charAt(start) != 'R' && line.charAt(start) != 'r'))
+            return FAIL;
+        return digits(start + 1);
+    }
+
+    /**
+     * @param start la position de la valeur
+     * @return la fin d'une valeur <tt>#\d+</tt>, ou {@value FAIL}
+     */
+    private int immediate(int start)
+    {
+        if (start >= length || line.charAt(start) != '#')
+            return FAIL;
+        return digits(start + 1);
+    }
+
+    /**
+     * @param start la position du premier chiffre
+     * @return la fin d'au moins un chiffre, ou {@value FAIL}
+     */
+    private int digits(int start)
+    {
+        int end = start;
+        while (end < length && line.charAt(end) >= '0' && line.charAt(end) <= '9')
+            end += 1;
+        return end > start ? end : FAIL;
+    }
+
+    /**
+     * @param start la position du mot
+     * @return la fin du mot <tt>\w*</tt>
+     */
+    private int word(int start)
+    {
+        int end = start;
+        while (end < length && isWord(line.charAt(end)))
+            end += 1;
+        return end;
+    }
+
+    /**
+     * @param start la position des espaces
+     * @return la fin des espaces <tt>\s*</tt>
+     */
+    private int spaces(int start)
+    {
+        int end = start;
+        while (end < length && isSpace(line.charAt(end)))
+            end += 1;
+        return end;
+    }
+
+    /**
+     * @param name un nom en majuscules
+     * @param start la position du nom dans la ligne
+     * @return vrai si la ligne contient le nom a cette position, sans tenir compte de la casse
+     */
+    private boolean matches(String name, int start)
+    {
+        if (start + name.length() > length)
+            return false;
+        for (int i = 0; i < name.length(); i++)
+        {
+            char c = line.charAt(start + i);
+            if (c >= 'a' && c <= 'z')
+                c -= 'a' - 'A';
+            if (c != name.charAt(i))
+                return false;
+        }
+        return true;
+    }
+
+    private static boolean isWord(char c)
+    {
+        return c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z' || c >= '0' && c <= '9' || c == '_';
+    }
+
+    private static boolean isSpace(char c)
+    {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+    }
+
+    private static boolean terminator(char c)
+    {
+        return c == '\n' || c == '\r' || c == '\u0085' || c == '\u2028' || c == '\u2029';
+    }
+}
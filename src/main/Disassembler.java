@@ -0,0 +1,379 @@
+package main;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+import static main.Assembler.*;
+
+/**
+ * Retrouve l'instruction et les operandes codees dans chaque mot d'une image.
+ * <p>
+ * Le decodage passe par une table de 65536 entrees, construite une seule fois
+ * a partir des {@link Encoding codages} utilises par l'assembleur.
+ * Chaque entree est un enregistrement compact sur 32 bits :
+ * le numero de l'instruction sur 8 bits, puis la valeur de chaque champ du codage sur 8 bits, dans l'ordre du codage.
+ * Lorsque plusieurs instructions partagent un codage, la premiere declaree dans {@link Instructions} est retenue,
+ * comme pour le {@link Simulator}. Un branchement de condition 15, qui ne designe aucune {@link Condition},
+ * est indefini pour l'un comme pour l'autre.
+ * <p>
+ * Le texte produit est accepte par l'assembleur et redonne la meme image :
+ * les cibles des branchements recoivent un label <tt>Ln</tt>, n etant le numero de l'instruction visee.
+ * Seuls les mots ne correspondant a aucune instruction ne peuvent pas etre reassembles ;
+ * ils sont ecrits en commentaire.
+ *
+ * @see Encoding
+ * @see Instructions
+ */
+final class Disassembler
+{
+    private static final Instructions[] INSTRUCTIONS = Instructions.values();
+    private static final Condition[] CONDITIONS = Condition.values();
+    /**
+     * Enregistrement d'un mot ne correspondant a aucune instruction.
+     */
+    private static final int UNKNOWN = Instructions.UNKNOWN_INSTRUCTION.ordinal() << 24;
+    /**
+     * Nombre de mots decodes par tache lors d'un decodage parallele.
+     */
+    private static final int CHUNK = 1 << 14;
+    /**
+     * Enregistrement de chaque mot de 16 bits.
+     */
+    private static final int[] TABLE = new int[1 << 16];
+
+    static
+    {
+        Arrays.fill(TABLE, UNKNOWN);
+        for (Instructions instruction : INSTRUCTIONS)
+        {
+            if (instruction == Instructions.UNKNOWN_INSTRUCTION)
+                continue;
+            Encoding encoding = instruction.getEncoding();
+            // Parcourt uniquement les mots dont les bits fixes correspondent
+            int free = ~encoding.getMask() & 0xFFFF;
+            for (int bits = free; ; bits = (bits - 1) & free)
+            {
+                int word = encoding.getOpcode() | bits;
+                if (TABLE[word] == UNKNOWN)
+                    TABLE[word] = record(instruction, encoding, word);
+                if (bits == 0)
+                    break;
+            }
+        }
+    }
+
+    private Disassembler()
+    {
+    }
+
+    /**
+     * Construit l'enregistrement d'un mot, ou {@link #UNKNOWN} si un champ n'a pas de sens (condition inexistante).
+     */
+    private static int record(Instructions instruction, Encoding encoding, int word)
+    {
+        int record = instruction.ordinal() << 24;
+        Encoding.Field[] fields = encoding.getFields();
+        for (int i = 0; i < fields.length; i++)
+        {
+            int value = fields[i].decode(word);
+            if (fields[i].getGroup() == CONDITION_GROUP && value >= CONDITIONS.length)
+                return UNKNOWN;
+            record |= value << (16 - 8 * i);
+        }
+        return record;
+    }
+
+    /**
+     * @param word un mot de 16 bits
+     * @return l'enregistrement decode du mot
+     */
+    static int decode(int word)
+    {
+        return TABLE[word & 0xFFFF];
+    }
+
+    /**
+     * @param record un enregistrement renvoye par {@link #decode(int)}
+     * @return l'instruction de l'enregistrement
+     */
+    static Instructions instruction(int record)
+    {
+        return INSTRUCTIONS[record >>> 24];
+    }
+
+    /**
+     * @param record un enregistrement renvoye par {@link #decode(int)}
+     * @param field le rang du champ dans le codage de l'instruction
+     * @return la valeur du champ
+     */
+    static int field(int record, int field)
+    {
+        return record >>> (16 - 8 * field) & 0xFF;
+    }
+
+    /**
+     * Decode tous les mots d'une image, en parallele.
+     *
+     * @param image l'image a decoder
+     * @return l'enregistrement de chaque mot
+     */
+    static int[] decode(Image image)
+    {
+        int[] records = new int[image.length()];
+        IntStream.range(0, (records.length + CHUNK - 1) / CHUNK).parallel().forEach(chunk -> {
+            for (int address = chunk * CHUNK, end = Math.min(records.length, address + CHUNK); address < end; address++)
+                records[address] = TABLE[image.get(address)];
+        });
+        return records;
+    }
+
+    /**
+     * Ecrit le texte assembleur d'une image, une instruction par ligne.
+     *
+     * @param image l'image a desassembler
+     * @return le programme
+     */
+    static String disassemble(Image image)
+    {
+        StringBuilder text = new StringBuilder(image.length() * 16);
+        try
+        {
+            disassemble(image, text);
+        }
+        catch (IOException e)
+        {
+            throw new IllegalStateException(e);
+        }
+        return text.toString();
+    }
+
+    /**
+     * Ecrit le texte assembleur d'une image, une instruction par ligne.
+     * Les lignes sont formatees en parallele par parties de {@value #CHUNK} mots ;
+     * seules quelques parties sont gardees en memoire avant d'etre ecrites dans l'ordre.
+     *
+     * @param image l'image a desassembler
+     * @param out la destination du programme
+     * @throws IOException si l'ecriture echoue
+     */
+    static void disassemble(Image image, Appendable out) throws IOException
+    {
+        int[] records = decode(image);
+        boolean[] targets = new boolean[records.length];
+        for (int record : records)
+        {
+            if (instruction(record).getType() == InstructionType.BRANCH)
+            {
+                int target = field(record, instruction(record).getEncoding().getFields().length - 1);
+                if (target < targets.length)
+                    targets[target] = true;
+            }
+        }
+        int chunks = (records.length + CHUNK - 1) / CHUNK;
+        int window = 4 * Runtime.getRuntime().availableProcessors();
+        for (int first = 0; first < chunks; first += window)
+        {
+            StringBuilder[] parts = IntStream.range(first, Math.min(chunks, first + window)).parallel().mapToObj(chunk -> {
+                StringBuilder text = new StringBuilder(CHUNK * 20);
+                for (int address = chunk * CHUNK, end = Math.min(records.length, address + CHUNK); address < end; address++)
+                {
+                    if (targets[address])
+                        text.append('L').append(address).append(": ");
+                    else
+                        text.append("    ");
+                    format(text, records[address], image.get(address));
+                    text.append('\n');
+                }
+                return text;
+            }).toArray(StringBuilder[]::new);
+            for (StringBuilder part : parts)
+            {
+                out.append(part);
+            }
+        }
+    }
+
+    /**
+     * Ajoute le texte d'une instruction, dans une syntaxe acceptee par l'assembleur.
+     *
+     * @param text la destination
+     * @param record l'enregistrement du mot
+     * @param word le mot, pour les instructions inconnues
+     */
+    static void format(StringBuilder text, int record, int word)
+    {
+        Instructions instruction = instruction(record);
+        switch (instruction)
+        {
+            case UNKNOWN_INSTRUCTION:
+                text.append("; unknown 0x").append(Integer.toHexString(word));
+                break;
+            case B:
+                text.append("B L").append(field(record, 0));
+                break;
+            case BC:
+                text.append('B').append(CONDITIONS[field(record, 0)]).append(" L").append(field(record, 1));
+                break;
+            case MOV:
+            case STR_I:
+            case STR_R:
+            case LDR_I:
+            case LDR_R:
+                // Rt, #imm8
+                text.append(instruction).append(" R").append(field(record, 0)).append(", #").append(field(record, 1));
+                break;
+            case LSL_I:
+            case LSR_I:
+            case ASR_I:
+                // #imm5, Rm, Rd
+                text.append(instruction).append(" R").append(field(record, 2)).append(", R").append(field(record, 1)).append(", #").append(field(record, 0));
+                break;
+            case ADD_I:
+                // #imm3, Rn, Rd
+                text.append(instruction).append(" R").append(field(record, 2)).append(", R").append(field(record, 1)).append(", #").append(field(record, 0));
+                break;
+            case ADD_R:
+            case SUB:
+                // Rm, Rn, Rd
+                text.append(instruction).append(" R").append(field(record, 2)).append(", R").append(field(record, 1)).append(", R").append(field(record, 0));
+                break;
+            case RSB:
+                // Rm, Rd ; l'operande #0 n'est pas codee
+                text.append(instruction).append(" R").append(field(record, 1)).append(", R").append(field(record, 0)).append(", #0");
+                break;
+            case MUL:
+                // Rm, Rdn ; la troisieme operande n'est pas codee
+                text.append(instruction).append(" R").append(field(record, 1)).append(", R").append(field(record, 0)).append(", R").append(field(record, 1));
+                break;
+            default:
+                // Traitement de donnees : Rm, Rdn
+                text.append(instruction).append(" R").append(field(record, 1)).append(", R").append(field(record, 0));
+                break;
+        }
+    }
+
+    /**
+     * Compte les instructions de chaque sorte dans une image.
+     *
+     * @param records les enregistrements renvoyes par {@link #decode(Image)}
+     * @return le nombre de mots pour chaque instruction
+     */
+    static Map<Instructions, Long> histogram(int[] records)
+    {
+        long[] counts = IntStream.range(0, (records.length + CHUNK - 1) / CHUNK).parallel().mapToObj(chunk -> {
+            long[] local = new long[INSTRUCTIONS.length];
+            for (int address = chunk * CHUNK, end = Math.min(records.length, address + CHUNK); address < end; address++)
+                local[records[address] >>> 24] += 1;
+            return local;
+        }).reduce(new long[INSTRUCTIONS.length], (a, b) -> {
+            long[] sum = a.clone();
+            for (int i = 0; i < sum.length; i++)
+                sum[i] += b[i];
+            return sum;
+        });
+        Map<Instructions, Long> histogram = new EnumMap<>(Instructions.class);
+        for (Instructions instruction : INSTRUCTIONS)
+        {
+            if (counts[instruction.ordinal()] > 0)
+                histogram.put(instruction, counts[instruction.ordinal()]);
+        }
+        return histogram;
+    }
+
+    /**
+     * Desassemble des images.
+     * <p>
+     * Options, placees avant les noms des fichiers :
+     * <pre>
+     * --stats    affiche le nombre d'instructions de chaque sorte au lieu du programme
+     * --verify   reassemble le programme et verifie qu'il redonne l'image
+     * </pre>
+     *
+     * @param args les options suivies des noms des fichiers image, dans l'un des {@link Image.Format formats} connus
+     * @throws IOException si un fichier n'existe pas
+     */
+    public static void main(String[] args) throws IOException
+    {
+        boolean stats = false;
+        boolean verify = false;
+        int files = 0;
+        for (String arg : args)
+        {
+            if (arg.equals("--stats"))
+                stats = true;
+            else if (arg.equals("--verify"))
+                verify = true;
+            else if (arg.startsWith("--"))
+                throw new IllegalArgumentException("Unknown option: " + arg);
+        }
+        int failures = 0;
+        Writer out = new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8), 1 << 16);
+        for (String arg : args)
+        {
+            if (arg.startsWith("--"))
+                continue;
+            files += 1;
+            Image image = Image.read(Paths.get(arg));
+            if (stats)
+            {
+                System.out.println(arg + ": " + image.length() + " words");
+                histogram(decode(image)).forEach((instruction, count) -> System.out.printf("  %-20s %d%n", instruction.name(), count));
+            }
+            else if (!verify)
+            {
+                disassemble(image, out);
+                out.flush();
+            }
+            if (verify)
+            {
+                int mismatch = verify(image);
+                if (mismatch >= 0)
+                {
+                    failures += 1;
+                    System.out.printf("%s: mismatch at %d (%04x)%n", arg, mismatch, image.get(Math.min(mismatch, image.length() - 1)));
+                }
+                else
+                {
+                    System.out.println(arg + ": OK");
+                }
+            }
+        }
+        if (files == 0)
+            throw new IllegalArgumentException("File name is missing");
+        if (failures > 0)
+            System.exit(1);
+    }
+
+    /**
+     * Reassemble le texte d'une image et le compare a l'image.
+     *
+     * @param image l'image a verifier
+     * @return l'adresse du premier mot different, ou -1 si le programme redonne l'image
+     */
+    static int verify(Image image)
+    {
+        int[] program;
+        try
+        {
+            program = Assembler.assemble(Source.of(disassemble(image)), PatternParser::new, 1);
+        }
+        catch (IllegalArgumentException e)
+        {
+            return 0;
+        }
+        for (int address = 0; address < Math.min(program.length, image.length()); address++)
+        {
+            if (program[address] != image.get(address))
+                return address;
+        }
+        return program.length == image.length() ? -1 : Math.min(program.length, image.length());
+    }
+}
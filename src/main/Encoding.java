@@ -0,0 +1,210 @@
+package main;
+
+import static main.Assembler.*;
+
+/**
+ * Codage binaire d'une instruction sur 16 bits.
+ * <p>
+ * Un codage est compose de bits fixes identifiant l'instruction
+ * et de champs recevant la valeur des groupes reconnus par un {@link Parser}.
+ * Le mot est construit directement par decalages et masques,
+ * et chaque valeur est verifiee pour ne pas deborder de son champ.
+ *
+ * @see Instructions
+ */
+final class Encoding
+{
+    /**
+     * Champ recevant le numero de l'instruction cible d'un branchement.
+     */
+    static final Field TARGET = new Field(BRANCH_LABEL_GROUP, 0, 8);
+
+    /**
+     * Valeur des bits fixes.
+     */
+    private final int opcode;
+    /**
+     * Masque des bits fixes.
+     */
+    private final int mask;
+    private final Field[] fields;
+
+    private Encoding(int opcode, int width, Field... fields)
+    {
+        this.opcode = opcode << (16 - width);
+        this.mask = (0xFFFF << (16 - width)) & 0xFFFF;
+        this.fields = fields;
+    }
+
+    /**
+     * Construit le mot de 16 bits de l'instruction.
+     * Le champ {@link #TARGET} d'un branchement est laisse a 0, voir {@link #target(int, long)}.
+     *
+     * @param parsed le resultat de l'analyse de la ligne
+     * @return le codage de l'instruction
+     * @throws IllegalArgumentException si une valeur ne tient pas dans son champ
+     */
+    int encode(ParsedLine parsed)
+    {
+        int word = opcode;
+        for (Field field : fields)
+        {
+            if (field.group != BRANCH_LABEL_GROUP)
+                word |= field.encode(field.value(parsed));
+        }
+        return word;
+    }
+
+    /**
+     * Construit le mot de 16 bits d'une instruction a partir de la valeur de ses champs.
+     *
+     * @param values la valeur de chaque champ, dans l'ordre de {@link #getFields()}
+     * @return le codage de l'instruction
+     * @throws IllegalArgumentException si une valeur ne tient pas dans son champ
+     */
+    int encode(int... values)
+    {
+        int word = opcode;
+        for (int i = 0; i < fields.length; i++)
+        {
+            word |= fields[i].encode(values[i]);
+        }
+        return word;
+    }
+
+    int getOpcode()
+    {
+        return opcode;
+    }
+
+    int getMask()
+    {
+        return mask;
+    }
+
+    Field[] getFields()
+    {
+        return fields;
+    }
+
+    /**
+     * Ajoute le numero de l'instruction cible au codage d'un branchement.
+     *
+     * @param word le codage du branchement
+     * @param target le numero de l'instruction cible
+     * @return le codage complet du branchement
+     * @throws IllegalArgumentException si la cible ne tient pas dans le champ
+     */
+    static int target(int word, long target)
+    {
+        return word | TARGET.encode(target);
+    }
+
+    static Encoding dataProcess(int ordinal)
+    {
+        return new Encoding(0b010000 << 4 | ordinal, 10, new Field(SECOND_OPERAND_GROUP, 3, 3), new Field(FIRST_OPERAND_GROUP, 0, 3));
+    }
+
+    static Encoding shift(int ordinal)
+    {
+        return new Encoding(ordinal, 5, new Field(TWO_OPERAND_OFFSET, 6, 5), new Field(SECOND_OPERAND_GROUP, 3, 3), new Field(FIRST_OPERAND_GROUP, 0, 3));
+    }
+
+    static Encoding addSub(int ordinal)
+    {
+        return new Encoding(0b00011 << 2 | ordinal, 7, new Field(THIRD_OPERAND, 6, 3), new Field(SECOND_OPERAND_GROUP, 3, 3), new Field(FIRST_OPERAND_GROUP, 0, 3));
+    }
+
+    static Encoding addImmediate()
+    {
+        return new Encoding(0b0001110, 7, new Field(TWO_OPERAND_OFFSET, 6, 3), new Field(SECOND_OPERAND_GROUP, 3, 3), new Field(FIRST_OPERAND_GROUP, 0, 3));
+    }
+
+    static Encoding move()
+    {
+        return new Encoding(0b00100, 5, new Field(FIRST_OPERAND_GROUP, 8, 3), new Field(ADDRESSING_OFFSET, 0, 8));
+    }
+
+    static Encoding loadStoreImm8(int ordinal)
+    {
+        return new Encoding(0b1001 << 1 | ordinal, 5, new Field(FIRST_OPERAND_GROUP, 8, 3), new Field(ADDRESSING_OFFSET, 0, 8));
+    }
+
+    static Encoding loadStoreImm8R(int ordinal)
+    {
+        return new Encoding(0b1001 << 1 | ordinal, 5, new Field(FIRST_OPERAND_GROUP, 8, 3), new Field(ADDRESSING_OFFSET_REGISTER, 0, 8));
+    }
+
+    static Encoding branch()
+    {
+        return new Encoding(0b11011110, 8, TARGET);
+    }
+
+    static Encoding branchConditional()
+    {
+        return new Encoding(0b1101, 4, new Field(CONDITION_GROUP, 8, 4), TARGET);
+    }
+
+    static Encoding unknown()
+    {
+        return new Encoding(0, 0);
+    }
+
+    /**
+     * Champ d'un codage, alimente par un groupe du patterne.
+     */
+    static final class Field
+    {
+        private final int group;
+        private final int offset;
+        private final int width;
+
+        private Field(int group, int offset, int width)
+        {
+            this.group = group;
+            this.offset = offset;
+            this.width = width;
+        }
+
+        int getGroup()
+        {
+            return group;
+        }
+
+        /**
+         * Extrait la valeur du champ d'un mot.
+         *
+         * @param word le codage de l'instruction
+         * @return la valeur du champ
+         */
+        int decode(int word)
+        {
+            return (word >>> offset) & ((1 << width) - 1);
+        }
+
+        /**
+         * Place une valeur dans le champ.
+         *
+         * @param value la valeur du champ
+         * @return la valeur decalee a la position du champ
+         * @throws IllegalArgumentException si la valeur ne tient pas dans le champ
+         */
+        private int encode(long value)
+        {
+            if (value < 0 || value >= 1 << width)
+                throw new IllegalArgumentException("Value " + value + " does not fit in " + width + " bits (group " + group + ")");
+            return (int) value << offset;
+        }
+
+        /**
+         * @param parsed le resultat de l'analyse de la ligne
+         * @return la valeur numerique du groupe, ou le numero de la condition
+         */
+        private int value(ParsedLine parsed)
+        {
+            if (group == CONDITION_GROUP)
+                return parsed.condition().ordinal();
+            return parsed.value(group);
+        }
+    }
+}
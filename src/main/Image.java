@@ -0,0 +1,530 @@
+package main;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ShortBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Image memoire de mots de 16 bits, telle que produite par {@link Assembler}.
+ * <p>
+ * Les mots sont ranges dans un tableau primitif, sans objet par mot.
+ * L'image est ecrite et relue par un {@link Serializer} :
+ * les formats disponibles sont donnes par {@link Format}.
+ *
+ * @see Format
+ */
+final class Image
+{
+    /**
+     * Entete des images logisim.
+     */
+    static final String HEADER = "v2.0 raw";
+
+    private final short[] words;
+    private final int length;
+
+    /**
+     * @param words les mots de l'image, partages sans copie
+     * @param length le nombre de mots utilises
+     */
+    Image(short[] words, int length)
+    {
+        this.words = words;
+        this.length = length;
+    }
+
+    /**
+     * Cree une image a partir du codage de chaque instruction.
+     * Seuls les 16 bits de poids faible de chaque valeur sont conserves.
+     *
+     * @param program le codage de chaque instruction
+     * @return l'image du programme
+     */
+    static Image of(int[] program)
+    {
+        short[] words = new short[program.length];
+        for (int i = 0; i < program.length; i++)
+        {
+            words[i] = (short) program[i];
+        }
+        return new Image(words, words.length);
+    }
+
+    /**
+     * Lit une image en choisissant le format d'apres l'extension du fichier, voir {@link Format#of(Path)}.
+     *
+     * @param path le fichier image
+     * @return l'image lue
+     * @throws IOException si le fichier n'existe pas ou n'est pas dans le format attendu
+     */
+    static Image read(Path path) throws IOException
+    {
+        return read(path, Format.of(path));
+    }
+
+    /**
+     * Lit une image dans un format donne.
+     *
+     * @param path le fichier image
+     * @param serializer le format du fichier
+     * @return l'image lue
+     * @throws IOException si le fichier n'existe pas ou n'est pas dans le format attendu
+     */
+    static Image read(Path path, Serializer serializer) throws IOException
+    {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ))
+        {
+            if (channel.size() > Integer.MAX_VALUE)
+                throw new IOException("File too large: " + path);
+            return serializer.read(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    /**
+     * Ecrit l'image dans un fichier, remplace s'il existe deja.
+     *
+     * @param path le fichier image
+     * @param serializer le format du fichier
+     * @throws IOException si le fichier ne peut pas etre ecrit
+     */
+    void write(Path path, Serializer serializer) throws IOException
+    {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING))
+        {
+            serializer.write(this, channel);
+        }
+    }
+
+    /**
+     * @return le nombre de mots de l'image
+     */
+    int length()
+    {
+        return length;
+    }
+
+    /**
+     * @param address l'adresse d'un mot
+     * @return la valeur non signee du mot
+     */
+    int get(int address)
+    {
+        if (address >= length)
+            throw new IndexOutOfBoundsException("Address out of image: " + address);
+        return words[address] & 0xFFFF;
+    }
+
+    /**
+     * @return une vue en lecture seule sur les mots de l'image
+     */
+    ShortBuffer buffer()
+    {
+        return ShortBuffer.wrap(words, 0, length).asReadOnlyBuffer();
+    }
+
+    /**
+     * @return la valeur non signee de chaque mot
+     */
+    int[] toArray()
+    {
+        int[] values = new int[length];
+        for (int i = 0; i < length; i++)
+        {
+            values[i] = words[i] & 0xFFFF;
+        }
+        return values;
+    }
+
+    /**
+     * Lit les valeurs d'une image logisim de mots de 32 bits, sans son entete, voir {@link #values(CharSequence, int)}.
+     *
+     * @param content les valeurs de l'image
+     * @return les valeurs de l'image
+     * @throws IllegalArgumentException si une valeur n'est pas un nombre hexadecimal ou ne tient pas sur 32 bits
+     */
+    static int[] values(CharSequence content)
+    {
+        return values(content, 32);
+    }
+
+    /**
+     * Lit les valeurs d'une image logisim, sans son entete.
+     * Les valeurs sont en hexadecimal, une valeur <tt>N*v</tt> represente N fois la valeur v,
+     * et un '#' commence un commentaire jusqu'a la fin de la ligne.
+     *
+     * @param content les valeurs de l'image
+     * @param bits la largeur des mots de l'image, au plus 32
+     * @return les valeurs de l'image
+     * @throws IllegalArgumentException si une valeur n'est pas un nombre hexadecimal ou ne tient pas dans un mot
+     */
+    static int[] values(CharSequence content, int bits)
+    {
+        long limit = (1L << bits) - 1;
+        int[] values = new int[256];
+        int size = 0;
+        int index = 0;
+        int end = content.length();
+        while (index < end)
+        {
+            char c = content.charAt(index);
+            if (c == '#')
+            {
+                while (index < end && content.charAt(index) != '\n')
+                    index += 1;
+                continue;
+            }
+            if (Character.isWhitespace(c))
+            {
+                index += 1;
+                continue;
+            }
+            // Lit un jeton "v" ou "N*v"
+            int start = index;
+            boolean repeated = false;
+            long count = 1;
+            long value = 0;
+            for (; index < end && !Character.isWhitespace(content.charAt(index)) && content.charAt(index) != '#'; index++)
+            {
+                char digit = content.charAt(index);
+                if (digit == '*' && !repeated && index > start)
+                {
+                    repeated = true;
+                    count = Long.parseLong(content.subSequence(start, index).toString());
+                    value = 0;
+                    continue;
+                }
+                int hex = Character.digit(digit, 16);
+                if (hex < 0)
+                    throw new IllegalArgumentException("Invalid value: " + content.subSequence(start, index + 1));
+                value = value << 4 | hex;
+                if (value > limit)
+                    throw new IllegalArgumentException("Value does not fit in " + bits + " bits: " + content.subSequence(start, index + 1));
+            }
+            if (size + count > Integer.MAX_VALUE - 8)
+                throw new IllegalArgumentException("Image too large");
+            if (size + count > values.length)
+                values = Arrays.copyOf(values, (int) Math.max(values.length * 2L, size + count));
+            Arrays.fill(values, size, size + (int) count, (int) value);
+            size += (int) count;
+        }
+        return Arrays.copyOf(values, size);
+    }
+
+    /**
+     * Ecrit et relit une image dans un format donne.
+     */
+    interface Serializer
+    {
+        /**
+         * @param image l'image a ecrire
+         * @param channel la destination
+         * @throws IOException si l'ecriture echoue
+         */
+        void write(Image image, WritableByteChannel channel) throws IOException;
+
+        /**
+         * @param bytes le contenu du fichier
+         * @return l'image lue
+         * @throws IOException si le contenu n'est pas dans le format attendu
+         */
+        Image read(ByteBuffer bytes) throws IOException;
+    }
+
+    /**
+     * Formats d'image connus.
+     */
+    enum Format implements Serializer
+    {
+        /**
+         * Image logisim {@value HEADER} : mots en hexadecimal separes par des espaces.
+         * Une suite de mots identiques est ecrite <tt>N*v</tt> lorsque c'est plus court.
+         */
+        RAW("ini")
+                {
+                    @Override
+                    public void write(Image image, WritableByteChannel channel) throws IOException
+                    {
+                        StringBuilder text = new StringBuilder(HEADER.length() + 1 + image.length * 5);
+                        text.append(HEADER).append('\n');
+                        for (int address = 0; address < image.length; )
+                        {
+                            short word = image.words[address];
+                            int run = 1;
+                            while (address + run < image.length && image.words[address + run] == word)
+                                run += 1;
+                            run(text, word & 0xFFFF, run);
+                            address += run;
+                        }
+                        writeFully(channel, StandardCharsets.US_ASCII.encode(text.toString()));
+                    }
+
+                    @Override
+                    public Image read(ByteBuffer bytes) throws IOException
+                    {
+                        String content = StandardCharsets.US_ASCII.decode(bytes).toString();
+                        if (!content.startsWith(HEADER))
+                            throw new IOException("Not a logisim image");
+                        try
+                        {
+                            return Image.of(Image.values(content.substring(HEADER.length()), 16));
+                        }
+                        catch (IllegalArgumentException e)
+                        {
+                            throw new IOException(e.getMessage(), e);
+                        }
+                    }
+                },
+        /**
+         * Mots bruts sur deux octets, poids fort en premier.
+         */
+        BINARY("bin")
+                {
+                    @Override
+                    public void write(Image image, WritableByteChannel channel) throws IOException
+                    {
+                        ByteBuffer bytes = ByteBuffer.allocate(image.length * 2);
+                        bytes.asShortBuffer().put(image.words, 0, image.length);
+                        writeFully(channel, bytes);
+                    }
+
+                    @Override
+                    public Image read(ByteBuffer bytes) throws IOException
+                    {
+                        if (bytes.remaining() % 2 != 0)
+                            throw new IOException("Odd number of bytes: " + bytes.remaining());
+                        short[] words = new short[bytes.remaining() / 2];
+                        bytes.asShortBuffer().get(words);
+                        return new Image(words, words.length);
+                    }
+                },
+        /**
+         * Intel HEX : enregistrements de {@value #RECORD} octets adresses par octet, poids fort de chaque mot en premier.
+         * Les adresses au-dela de 64 Ko utilisent des enregistrements d'adresse lineaire etendue.
+         */
+        HEX("hex")
+                {
+                    @Override
+                    public void write(Image image, WritableByteChannel channel) throws IOException
+                    {
+                        StringBuilder text = new StringBuilder(image.length * 5 + 16);
+                        byte[] record = new byte[RECORD];
+                        long bytes = image.length * 2L;
+                        int segment = 0;
+                        for (long address = 0; address < bytes; address += RECORD)
+                        {
+                            if (address >>> 16 != segment)
+                            {
+                                segment = (int) (address >>> 16);
+                                record(text, 0, EXTENDED_LINEAR_ADDRESS, new byte[]{(byte) (segment >>> 8), (byte) segment}, 2);
+                            }
+                            int count = (int) Math.min(RECORD, bytes - address);
+                            for (int i = 0; i < count; i++)
+                            {
+                                short word = image.words[(int) ((address + i) / 2)];
+                                record[i] = (byte) ((address + i) % 2 == 0 ? word >>> 8 : word);
+                            }
+                            record(text, (int) address & 0xFFFF, DATA, record, count);
+                        }
+                        record(text, 0, END_OF_FILE, record, 0);
+                        writeFully(channel, StandardCharsets.US_ASCII.encode(text.toString()));
+                    }
+
+                    @Override
+                    public Image read(ByteBuffer bytes) throws IOException
+                    {
+                        byte[] data = new byte[256];
+                        int size = 0;
+                        int base = 0;
+                        String content = StandardCharsets.US_ASCII.decode(bytes).toString();
+                        for (String line : content.split("\r?\n"))
+                        {
+                            if (line.trim().isEmpty())
+                                continue;
+                            byte[] record = parse(line.trim());
+                            int count = record[0] & 0xFF;
+                            int address = base + ((record[1] & 0xFF) << 8 | record[2] & 0xFF);
+                            // Un enregistrement d'adresse porte exactement les 2 octets de la base
+                            boolean extended = record[3] == EXTENDED_SEGMENT_ADDRESS || record[3] == EXTENDED_LINEAR_ADDRESS;
+                            if (extended && count != 2 || record[3] == DATA && address < 0)
+                                throw new IOException("Malformed HEX record: " + line.trim());
+                            switch (record[3])
+                            {
+                                case DATA:
+                                    if (address + count > data.length)
+                                        data = Arrays.copyOf(data, Math.max(data.length * 2, address + count));
+                                    System.arraycopy(record, 4, data, address, count);
+                                    size = Math.max(size, address + count);
+                                    break;
+                                case END_OF_FILE:
+                                    return words(data, size);
+                                case EXTENDED_SEGMENT_ADDRESS:
+                                    base = ((record[4] & 0xFF) << 8 | record[5] & 0xFF) << 4;
+                                    break;
+                                case EXTENDED_LINEAR_ADDRESS:
+                                    base = ((record[4] & 0xFF) << 8 | record[5] & 0xFF) << 16;
+                                    break;
+                                default:
+                                    break;
+                            }
+                        }
+                        throw new IOException("Missing end of file record");
+                    }
+                };
+
+        /**
+         * Nombre d'octets par enregistrement Intel HEX.
+         */
+        private static final int RECORD = 16;
+        private static final byte DATA = 0;
+        private static final byte END_OF_FILE = 1;
+        private static final byte EXTENDED_SEGMENT_ADDRESS = 2;
+        private static final byte EXTENDED_LINEAR_ADDRESS = 4;
+
+        private final String extension;
+
+        Format(String extension)
+        {
+            this.extension = extension;
+        }
+
+        /**
+         * @return l'extension usuelle des fichiers de ce format
+         */
+        String getExtension()
+        {
+            return extension;
+        }
+
+        /**
+         * Choisit le format d'apres l'extension d'un fichier.
+         *
+         * @param path le fichier image
+         * @return le format associe a l'extension, ou {@link #RAW} par defaut
+         */
+        static Format of(Path path)
+        {
+            String name = path.getFileName().toString();
+            String extension = name.substring(name.lastIndexOf('.') + 1);
+            for (Format format : values())
+            {
+                if (format.extension.equalsIgnoreCase(extension))
+                    return format;
+            }
+            return RAW;
+        }
+
+        /**
+         * @param name le nom du format, sans tenir compte de la casse
+         * @return le format correspondant
+         * @throws IllegalArgumentException si le format n'existe pas
+         */
+        static Format forName(String name)
+        {
+            for (Format format : values())
+            {
+                if (format.name().equalsIgnoreCase(name))
+                    return format;
+            }
+            throw new IllegalArgumentException("Unknown format: " + name);
+        }
+
+        /**
+         * Ajoute une suite de valeurs identiques a une image {@value HEADER},
+         * sous la forme <tt>N*v</tt> lorsque c'est plus court que la liste des valeurs.
+         *
+         * @param text l'image en cours d'ecriture
+         * @param value la valeur repetee
+         * @param run le nombre de repetitions
+         */
+        static void run(StringBuilder text, int value, int run)
+        {
+            String hex = Integer.toHexString(value);
+            String count = Integer.toString(run);
+            if (count.length() + hex.length() + 2 < run * (hex.length() + 1))
+            {
+                text.append(count).append('*').append(hex).append(' ');
+            }
+            else
+            {
+                for (int i = 0; i < run; i++)
+                    text.append(hex).append(' ');
+            }
+        }
+
+        private static void writeFully(WritableByteChannel channel, ByteBuffer bytes) throws IOException
+        {
+            while (bytes.hasRemaining())
+                channel.write(bytes);
+        }
+
+        /**
+         * Ajoute un enregistrement Intel HEX, suivi de sa somme de controle.
+         */
+        private static void record(StringBuilder text, int address, byte type, byte[] data, int count)
+        {
+            int checksum = count + (address >>> 8) + address + type;
+            text.append(':');
+            hex(text, count);
+            hex(text, address >>> 8);
+            hex(text, address);
+            hex(text, type);
+            for (int i = 0; i < count; i++)
+            {
+                hex(text, data[i]);
+                checksum += data[i];
+            }
+            hex(text, -checksum);
+            text.append('\n');
+        }
+
+        private static void hex(StringBuilder text, int value)
+        {
+            text.append(Character.toUpperCase(Character.forDigit(value >>> 4 & 0xF, 16)));
+            text.append(Character.toUpperCase(Character.forDigit(value & 0xF, 16)));
+        }
+
+        /**
+         * Decode un enregistrement Intel HEX et verifie sa longueur et sa somme de controle.
+         *
+         * @return les octets de l'enregistrement : nombre, adresse, type, donnees et somme de controle
+         */
+        private static byte[] parse(String line) throws IOException
+        {
+            if (line.charAt(0) != ':' || line.length() % 2 == 0 || line.length() < 11)
+                throw new IOException("Invalid record: " + line);
+            byte[] record = new byte[line.length() / 2];
+            int checksum = 0;
+            for (int i = 0; i < record.length; i++)
+            {
+                int high = Character.digit(line.charAt(1 + 2 * i), 16);
+                int low = Character.digit(line.charAt(2 + 2 * i), 16);
+                if (high < 0 || low < 0)
+                    throw new IOException("Invalid record: " + line);
+                record[i] = (byte) (high << 4 | low);
+                checksum += record[i];
+            }
+            if ((record[0] & 0xFF) + 5 != record.length || (checksum & 0xFF) != 0)
+                throw new IOException("Invalid record: " + line);
+            return record;
+        }
+
+        /**
+         * Regroupe des octets en mots de 16 bits, poids fort en premier.
+         */
+        private static Image words(byte[] data, int size)
+        {
+            short[] words = new short[(size + 1) / 2];
+            for (int i = 0; i < words.length; i++)
+            {
+                words[i] = (short) ((data[2 * i] & 0xFF) << 8 | (2 * i + 1 < size ? data[2 * i + 1] & 0xFF : 0));
+            }
+            return new Image(words, words.length);
+        }
+    }
+}
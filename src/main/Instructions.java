@@ -1,10 +1,9 @@
 package main;
 
 import java.util.Arrays;
-import java.util.List;
-import java.util.regex.Matcher;
+import java.util.EnumMap;
+import java.util.Map;
 
-import static java.lang.Integer.toBinaryString;
 import static main.Assembler.*;
 import static main.InstructionType.*;
 import static main.InstructionType.SHIFT;
@@ -18,69 +17,141 @@ import static main.InstructionType.SHIFT;
  * @since 30/12/2016.
  *
  * @see InstructionType
- * @see Opcode
+ * @see Encoding
  */
 enum Instructions
 {
-    AND(dataProcess(0),                     INSTRUCTION_GROUP, FIRST_OPERAND_GROUP, SECOND_OPERAND_GROUP),
-    EOR(dataProcess(1),                     INSTRUCTION_GROUP, FIRST_OPERAND_GROUP, SECOND_OPERAND_GROUP),
-    LSL_R(dataProcess(2),   SHIFT,  "LSL",  INSTRUCTION_GROUP, FIRST_OPERAND_GROUP, SECOND_OPERAND_GROUP),
-    LSR_R(dataProcess(3),   SHIFT,  "LSR",  INSTRUCTION_GROUP, FIRST_OPERAND_GROUP, SECOND_OPERAND_GROUP),
-    ASR_R(dataProcess(4),   SHIFT,  "ASR",  INSTRUCTION_GROUP, FIRST_OPERAND_GROUP, SECOND_OPERAND_GROUP),
-    ADC(dataProcess(5),                     INSTRUCTION_GROUP, FIRST_OPERAND_GROUP, SECOND_OPERAND_GROUP),
-    SBC(dataProcess(6),                     INSTRUCTION_GROUP, FIRST_OPERAND_GROUP, SECOND_OPERAND_GROUP),
-    ROR(dataProcess(7),     SHIFT,  "ROR",  INSTRUCTION_GROUP, FIRST_OPERAND_GROUP, SECOND_OPERAND_GROUP),
-    TST(dataProcess(8),                     INSTRUCTION_GROUP, FIRST_OPERAND_GROUP, SECOND_OPERAND_GROUP),
-    RSB(dataProcess(9),                     INSTRUCTION_GROUP, FIRST_OPERAND_GROUP, SECOND_OPERAND_GROUP, TWO_OPERAND_OFFSET),
-    CMP(dataProcess(10),                    INSTRUCTION_GROUP, FIRST_OPERAND_GROUP, SECOND_OPERAND_GROUP),
-    CMN(dataProcess(11),                    INSTRUCTION_GROUP, FIRST_OPERAND_GROUP, SECOND_OPERAND_GROUP),
-    ORR(dataProcess(12),                    INSTRUCTION_GROUP, FIRST_OPERAND_GROUP, SECOND_OPERAND_GROUP),
-    MUL(dataProcess(13),                    INSTRUCTION_GROUP, FIRST_OPERAND_GROUP, SECOND_OPERAND_GROUP, THIRD_OPERAND),
-    BIC(dataProcess(14),                    INSTRUCTION_GROUP, FIRST_OPERAND_GROUP, SECOND_OPERAND_GROUP),
-    MVN(dataProcess(15),                    INSTRUCTION_GROUP, FIRST_OPERAND_GROUP, SECOND_OPERAND_GROUP),
-    LSL_I(shift(0),         SHIFT,  "LSL",  INSTRUCTION_GROUP, FIRST_OPERAND_GROUP, SECOND_OPERAND_GROUP, TWO_OPERAND_OFFSET),
-    LSR_I(shift(1),         SHIFT,  "LSR",  INSTRUCTION_GROUP, FIRST_OPERAND_GROUP, SECOND_OPERAND_GROUP, TWO_OPERAND_OFFSET),
-    ASR_I(shift(2),         SHIFT,  "ASR",  INSTRUCTION_GROUP, FIRST_OPERAND_GROUP, SECOND_OPERAND_GROUP, TWO_OPERAND_OFFSET),
-    ADD_R(addSub(0),                "ADD",  INSTRUCTION_GROUP, FIRST_OPERAND_GROUP, SECOND_OPERAND_GROUP, THIRD_OPERAND),
-    ADD_I(addImmediate(),           "ADD",  INSTRUCTION_GROUP, FIRST_OPERAND_GROUP, SECOND_OPERAND_GROUP, TWO_OPERAND_OFFSET),
-    SUB(addSub(1),                          INSTRUCTION_GROUP, FIRST_OPERAND_GROUP, SECOND_OPERAND_GROUP, THIRD_OPERAND),
-    MOV(move(),                             INSTRUCTION_GROUP, FIRST_OPERAND_GROUP, ADDRESSING_OFFSET),
-    STR_I(loadStoreImm8(0),        "STR",  INSTRUCTION_GROUP, FIRST_OPERAND_GROUP, ADDRESSING_OFFSET),
-    STR_R(loadStoreImm8R(0),       "STR",  INSTRUCTION_GROUP, FIRST_OPERAND_GROUP, ADDRESSING_REGISTER, ADDRESSING_OFFSET_REGISTER),
-    LDR_I(loadStoreImm8(1),        "LDR",  INSTRUCTION_GROUP, FIRST_OPERAND_GROUP, ADDRESSING_OFFSET),
-    LDR_R(loadStoreImm8R(1),       "LDR",  INSTRUCTION_GROUP, FIRST_OPERAND_GROUP, ADDRESSING_REGISTER, ADDRESSING_OFFSET_REGISTER),
-    B(m -> "11011110",      BRANCH, "B",    INSTRUCTION_GROUP, BRANCH_LABEL_GROUP),
-    BC(branchConditional(), BRANCH, "B",    INSTRUCTION_GROUP, CONDITION_GROUP, BRANCH_LABEL_GROUP),
-    UNKNOWN_INSTRUCTION(m -> String.format("%16s", " "));
+    AND(Encoding.dataProcess(0),                      INSTRUCTION_GROUP, FIRST_OPERAND_GROUP, SECOND_OPERAND_GROUP),
+    EOR(Encoding.dataProcess(1),                      INSTRUCTION_GROUP, FIRST_OPERAND_GROUP, SECOND_OPERAND_GROUP),
+    LSL_R(Encoding.dataProcess(2),    SHIFT,  "LSL",  INSTRUCTION_GROUP, FIRST_OPERAND_GROUP, SECOND_OPERAND_GROUP),
+    LSR_R(Encoding.dataProcess(3),    SHIFT,  "LSR",  INSTRUCTION_GROUP, FIRST_OPERAND_GROUP, SECOND_OPERAND_GROUP),
+    ASR_R(Encoding.dataProcess(4),    SHIFT,  "ASR",  INSTRUCTION_GROUP, FIRST_OPERAND_GROUP, SECOND_OPERAND_GROUP),
+    ADC(Encoding.dataProcess(5),                      INSTRUCTION_GROUP, FIRST_OPERAND_GROUP, SECOND_OPERAND_GROUP),
+    SBC(Encoding.dataProcess(6),                      INSTRUCTION_GROUP, FIRST_OPERAND_GROUP, SECOND_OPERAND_GROUP),
+    ROR(Encoding.dataProcess(7),      SHIFT,  "ROR",  INSTRUCTION_GROUP, FIRST_OPERAND_GROUP, SECOND_OPERAND_GROUP),
+    TST(Encoding.dataProcess(8),                      INSTRUCTION_GROUP, FIRST_OPERAND_GROUP, SECOND_OPERAND_GROUP),
+    RSB(Encoding.dataProcess(9),                      INSTRUCTION_GROUP, FIRST_OPERAND_GROUP, SECOND_OPERAND_GROUP, TWO_OPERAND_OFFSET),
+    CMP(Encoding.dataProcess(10),                     INSTRUCTION_GROUP, FIRST_OPERAND_GROUP, SECOND_OPERAND_GROUP),
+    CMN(Encoding.dataProcess(11),                     INSTRUCTION_GROUP, FIRST_OPERAND_GROUP, SECOND_OPERAND_GROUP),
+    ORR(Encoding.dataProcess(12),                     INSTRUCTION_GROUP, FIRST_OPERAND_GROUP, SECOND_OPERAND_GROUP),
+    MUL(Encoding.dataProcess(13),                     INSTRUCTION_GROUP, FIRST_OPERAND_GROUP, SECOND_OPERAND_GROUP, THIRD_OPERAND),
+    BIC(Encoding.dataProcess(14),                     INSTRUCTION_GROUP, FIRST_OPERAND_GROUP, SECOND_OPERAND_GROUP),
+    MVN(Encoding.dataProcess(15),                     INSTRUCTION_GROUP, FIRST_OPERAND_GROUP, SECOND_OPERAND_GROUP),
+    LSL_I(Encoding.shift(0),          SHIFT,  "LSL",  INSTRUCTION_GROUP, FIRST_OPERAND_GROUP, SECOND_OPERAND_GROUP, TWO_OPERAND_OFFSET),
+    LSR_I(Encoding.shift(1),          SHIFT,  "LSR",  INSTRUCTION_GROUP, FIRST_OPERAND_GROUP, SECOND_OPERAND_GROUP, TWO_OPERAND_OFFSET),
+    ASR_I(Encoding.shift(2),          SHIFT,  "ASR",  INSTRUCTION_GROUP, FIRST_OPERAND_GROUP, SECOND_OPERAND_GROUP, TWO_OPERAND_OFFSET),
+    ADD_R(Encoding.addSub(0),                 "ADD",  INSTRUCTION_GROUP, FIRST_OPERAND_GROUP, SECOND_OPERAND_GROUP, THIRD_OPERAND),
+    ADD_I(Encoding.addImmediate(),            "ADD",  INSTRUCTION_GROUP, FIRST_OPERAND_GROUP, SECOND_OPERAND_GROUP, TWO_OPERAND_OFFSET),
+    SUB(Encoding.addSub(1),                           INSTRUCTION_GROUP, FIRST_OPERAND_GROUP, SECOND_OPERAND_GROUP, THIRD_OPERAND),
+    MOV(Encoding.move(),                              INSTRUCTION_GROUP, FIRST_OPERAND_GROUP, ADDRESSING_OFFSET),
+    STR_I(Encoding.loadStoreImm8(0),          "STR",  INSTRUCTION_GROUP, FIRST_OPERAND_GROUP, ADDRESSING_OFFSET),
+    STR_R(Encoding.loadStoreImm8R(0),         "STR",  INSTRUCTION_GROUP, FIRST_OPERAND_GROUP, ADDRESSING_REGISTER, ADDRESSING_OFFSET_REGISTER),
+    LDR_I(Encoding.loadStoreImm8(1),          "LDR",  INSTRUCTION_GROUP, FIRST_OPERAND_GROUP, ADDRESSING_OFFSET),
+    LDR_R(Encoding.loadStoreImm8R(1),         "LDR",  INSTRUCTION_GROUP, FIRST_OPERAND_GROUP, ADDRESSING_REGISTER, ADDRESSING_OFFSET_REGISTER),
+    B(Encoding.branch(),              BRANCH, "B",    INSTRUCTION_GROUP, BRANCH_LABEL_GROUP),
+    BC(Encoding.branchConditional(),  BRANCH, "B",    INSTRUCTION_GROUP, CONDITION_GROUP, BRANCH_LABEL_GROUP),
+    UNKNOWN_INSTRUCTION(Encoding.unknown());
+
+    /**
+     * Taille de la table de dispatch (puissance de 2 superieure au double du nombre de noms).
+     */
+    private static final int DISPATCH_SIZE = 64;
+    /**
+     * Table de dispatch indexee par le hachage du nom (en majuscules) des instructions.
+     * Chaque case contient les instructions partageant ce nom, distinguees par leurs groupes requis.
+     */
+    private static final Instructions[][] DISPATCH = new Instructions[DISPATCH_SIZE][];
+    /**
+     * Instructions de chaque type.
+     */
+    private static final Map<InstructionType, Instructions[]> TYPES = new EnumMap<>(InstructionType.class);
+
+    static
+    {
+        for (Instructions instruction : values())
+        {
+            int slot = slot(instruction.name, 0, instruction.name.length());
+            while (DISPATCH[slot] != null && !DISPATCH[slot][0].name.equals(instruction.name))
+                slot = (slot + 1) & (DISPATCH_SIZE - 1);
+            DISPATCH[slot] = DISPATCH[slot] == null ? new Instructions[]{instruction} : append(DISPATCH[slot], instruction);
+        }
+        for (InstructionType type : InstructionType.values())
+        {
+            TYPES.put(type, Arrays.stream(values()).filter(inst -> inst.type == type).toArray(Instructions[]::new));
+        }
+    }
 
     private String name;
     private InstructionType type;
-    private int[] requiredGroup;
-    private Opcode opcode;
+    /**
+     * Masque des groupes necessairement non null (le bit n correspond au groupe n).
+     */
+    private int requiredGroups;
+    private Encoding encoding;
 
-    Instructions(Opcode opcode, int... requiredGroup)
+    Instructions(Encoding encoding, int... requiredGroup)
     {
         this.name = name();
         this.type = NULL;
-        this.opcode = opcode;
-        this.requiredGroup = requiredGroup;
+        this.encoding = encoding;
+        this.requiredGroups = mask(requiredGroup);
     }
 
-    Instructions(Opcode opcode, String name, int... requiredGroup)
+    Instructions(Encoding encoding, String name, int... requiredGroup)
     {
-        this(opcode, requiredGroup);
+        this(encoding, requiredGroup);
         this.name = name;
     }
 
-    Instructions(Opcode opcode, InstructionType type, String name, int... requiredGroup)
+    Instructions(Encoding encoding, InstructionType type, String name, int... requiredGroup)
     {
-        this(opcode, name, requiredGroup);
+        this(encoding, name, requiredGroup);
         this.type = type;
     }
 
-    public String getOpcode(Matcher matcher)
+    /**
+     * Renvoie le codage de l'instruction sur 16 bits.
+     * Le numero de l'instruction cible d'un branchement vaut 0, voir {@link Encoding#target(int, long)}.
+     *
+     * @param parsed le resultat de l'analyse de la ligne
+     * @return le codage de l'instruction
+     * @throws IllegalArgumentException si une operande ne tient pas dans son champ
+     */
+    public int encode(ParsedLine parsed)
+    {
+        return encoding.encode(parsed);
+    }
+
+    /**
+     * Renvoie l'opcode binaire de l'instruction sous forme de texte.
+     * <p>
+     * Aide au debogage uniquement : l'assembleur utilise {@link #encode(ParsedLine)}, dont ce texte est tire.
+     * Le numero de l'instruction cible d'un branchement vaut 0.
+     *
+     * @param parsed le resultat de l'analyse de la ligne
+     * @return l'opcode binaire de l'instruction, sur 16 chiffres
+     * @throws IllegalArgumentException si une operande ne tient pas dans son champ
+     */
+    public String getOpcode(ParsedLine parsed)
+    {
+        return toBinaryString(encode(parsed));
+    }
+
+    /**
+     * @param word le codage d'une instruction sur 16 bits
+     * @return les 16 chiffres binaires du codage, bit de poids fort en tete
+     */
+    static String toBinaryString(int word)
     {
-        return opcode.match(matcher).replace(' ', '0');
+        char[] digits = new char[16];
+        for (int bit = 0; bit < digits.length; bit++)
+            digits[bit] = (word >>> (15 - bit) & 1) == 0 ? '0' : '1';
+        return new String(digits);
+    }
+
+    public Encoding getEncoding()
+    {
+        return encoding;
     }
 
     public InstructionType getType()
@@ -104,78 +175,118 @@ enum Instructions
      */
     public static Instructions getEnum(String value, int... requiredGroup)
     {
-        List<Instructions> list = Arrays.asList(Instructions.values());
-        return list.stream().filter(inst -> inst.match(value, requiredGroup)).findAny().orElse(UNKNOWN_INSTRUCTION);
-    }
-
-    public static Instructions[] ofType(InstructionType type)
-    {
-        List<Instructions> list = Arrays.asList(Instructions.values());
-        return list.stream().filter(inst -> inst.type == type).toArray(Instructions[]::new);
+        return find(value, 0, value.length(), mask(requiredGroup));
     }
 
-    private boolean match(String value, int[] requiredGroup)
-    {
-        return name.equalsIgnoreCase(value) && Arrays.equals(this.requiredGroup, requiredGroup);
-    }
-
-    private static Opcode dataProcess(int ordinal)
-    {
-        return m -> String.format("010000%4s%3s%3s", toBinaryString(ordinal), toBinaryString(Integer.valueOf(m.group(SECOND_OPERAND_GROUP))), toBinaryString(Integer.valueOf(m.group(FIRST_OPERAND_GROUP))));
-    }
-
-    private static Opcode multi()
-    {
-        return m -> String.format("0100001101%3s%3s", toBinaryString(Integer.valueOf(m.group(FIRST_OPERAND_GROUP))), toBinaryString(Integer.valueOf(m.group(SECOND_OPERAND_GROUP))));
-    }
-
-    private static Opcode multiWithRd()
-    {
-        return m -> String.format("0100001101%3s%s", toBinaryString(Integer.valueOf(m.group(SECOND_OPERAND_GROUP))), toBinaryString(Integer.valueOf(m.group(THIRD_OPERAND))));
-    }
-
-    private static Opcode shift(int ordinal)
-    {
-        return m -> String.format("000%2s%5s%3s%3s", toBinaryString(ordinal), toBinaryString(Integer.valueOf(m.group(TWO_OPERAND_OFFSET))), toBinaryString(Integer.valueOf(m.group(SECOND_OPERAND_GROUP))), toBinaryString(Integer.valueOf(m.group(FIRST_OPERAND_GROUP))));
-    }
-
-    private static Opcode addSub(int ordinal)
+    /**
+     * Renvoie l'instruction qui est indentifier par son nom et le masque des groupes non null.
+     * La recherche se fait en temps constant, sans allocation, dans la table de dispatch.
+     * Son nom la distingue de {@link #getEnum(String, int...)}, qu'un appel avec trois groupes designerait sinon.
+     *
+     * @param value le texte contenant le nom de l'instruction
+     * @param start l'indice du debut du nom dans le texte
+     * @param end l'indice de fin du nom dans le texte
+     * @param groups le masque des groupes non null (le bit n correspond au groupe n)
+     * @return l'instruction associee ou {@link main.Instructions#UNKNOWN_INSTRUCTION UNKNOW_INSTRUCTION} si l'instruction n'existe pas
+     */
+    private static Instructions find(CharSequence value, int start, int end, int groups)
     {
-        return m -> String.format("00011%2s%3s%3s%3s", toBinaryString(ordinal), toBinaryString(Integer.valueOf(m.group(THIRD_OPERAND))), toBinaryString(Integer.valueOf(m.group(SECOND_OPERAND_GROUP))), toBinaryString(Integer.valueOf(m.group(FIRST_OPERAND_GROUP))));
+        for (int slot = slot(value, start, end); DISPATCH[slot] != null; slot = (slot + 1) & (DISPATCH_SIZE - 1))
+        {
+            Instructions[] variants = DISPATCH[slot];
+            if (!variants[0].hasName(value, start, end))
+                continue;
+            for (Instructions instruction : variants)
+            {
+                if (instruction.requiredGroups == groups)
+                    return instruction;
+            }
+            return UNKNOWN_INSTRUCTION;
+        }
+        return UNKNOWN_INSTRUCTION;
     }
 
-    private static Opcode addImmediate()
+    /**
+     * Renvoie l'instruction reconnue sur une ligne.
+     *
+     * @param parsed le resultat de l'analyse de la ligne
+     * @return l'instruction associee ou {@link main.Instructions#UNKNOWN_INSTRUCTION UNKNOW_INSTRUCTION} si l'instruction n'existe pas
+     */
+    public static Instructions getEnum(ParsedLine parsed)
     {
-        return m -> String.format("0001110%3s%3s%3s", toBinaryString(Integer.valueOf(m.group(TWO_OPERAND_OFFSET))), toBinaryString(Integer.valueOf(m.group(SECOND_OPERAND_GROUP))), toBinaryString(Integer.valueOf(m.group(FIRST_OPERAND_GROUP))));
+        return find(parsed.getLine(), parsed.start(INSTRUCTION_GROUP), parsed.end(INSTRUCTION_GROUP), parsed.getGroups());
     }
 
-    private static Opcode move()
+    /**
+     * Renvoie les instructions d'un type.
+     * Le tableau est partage et ne doit pas etre modifie.
+     *
+     * @param type le type des instructions
+     * @return les instructions du type
+     */
+    public static Instructions[] ofType(InstructionType type)
     {
-        return m -> String.format("00100%3s%8s", toBinaryString(Integer.valueOf(m.group(FIRST_OPERAND_GROUP))), toBinaryString(Integer.valueOf(m.group(ADDRESSING_OFFSET))));
+        return TYPES.get(type);
     }
 
-    private static Opcode loadStore(int ordinal)
+    /**
+     * @param value le texte contenant le nom
+     * @param start l'indice du debut du nom dans le texte
+     * @param end l'indice de fin du nom dans le texte
+     * @return vrai si le nom de l'instruction correspond, sans tenir compte de la casse
+     */
+    private boolean hasName(CharSequence value, int start, int end)
     {
-        return m -> String.format("0110%s%5s%3s%3s", toBinaryString(ordinal), toBinaryString(Integer.valueOf(m.group(ADDRESSING_OFFSET))), toBinaryString(Integer.valueOf(m.group(FIRST_OPERAND_GROUP))), toBinaryString(Integer.valueOf(m.group(FIRST_OPERAND_GROUP))));
+        if (end - start != name.length())
+            return false;
+        for (int i = start; i < end; i++)
+        {
+            if (upperCase(value.charAt(i)) != name.charAt(i - start))
+                return false;
+        }
+        return true;
     }
 
-    private static Opcode loadStoreWithRegister(int ordinal)
+    /**
+     * Renvoie la premiere case a sonder dans la table de dispatch pour un nom.
+     *
+     * @param value le texte contenant le nom
+     * @param start l'indice du debut du nom dans le texte
+     * @param end l'indice de fin du nom dans le texte
+     * @return l'indice de la case
+     */
+    private static int slot(CharSequence value, int start, int end)
     {
-        return m -> String.format("0110%s%5s%3s%3s", toBinaryString(ordinal), toBinaryString(Integer.valueOf(m.group(ADDRESSING_OFFSET_REGISTER))), toBinaryString(Integer.valueOf(m.group(ADDRESSING_REGISTER))), toBinaryString(Integer.valueOf(m.group(FIRST_OPERAND_GROUP))));
+        int hash = 0;
+        for (int i = start; i < end; i++)
+        {
+            hash = 31 * hash + upperCase(value.charAt(i));
+        }
+        return (hash ^ hash >>> 7) & (DISPATCH_SIZE - 1);
     }
 
-    private static Opcode loadStoreImm8(int ordinal)
+    /**
+     * Le patterne ne reconnait les noms d'instructions qu'en ASCII.
+     */
+    private static char upperCase(char c)
     {
-        return m -> String.format("1001%s%3s%8s", toBinaryString(ordinal), toBinaryString(Integer.valueOf(m.group(FIRST_OPERAND_GROUP))), toBinaryString(Integer.valueOf(m.group(ADDRESSING_OFFSET))));
+        return c >= 'a' && c <= 'z' ? (char) (c - 'a' + 'A') : c;
     }
 
-    private static Opcode loadStoreImm8R(int ordinal)
+    private static int mask(int[] groups)
     {
-        return m -> String.format("1001%s%3s%8s", toBinaryString(ordinal), toBinaryString(Integer.valueOf(m.group(FIRST_OPERAND_GROUP))), toBinaryString(Integer.valueOf(m.group(ADDRESSING_OFFSET_REGISTER))));
+        int mask = 0;
+        for (int group : groups)
+        {
+            mask |= 1 << group;
+        }
+        return mask;
     }
 
-    private static Opcode branchConditional()
+    private static Instructions[] append(Instructions[] variants, Instructions instruction)
     {
-        return m -> String.format("1101%4s", toBinaryString(Condition.valueOf(m.group(CONDITION_GROUP).toUpperCase()).ordinal()));
+        Instructions[] result = Arrays.copyOf(variants, variants.length + 1);
+        result[variants.length] = instruction;
+        return result;
     }
 }
@@ -0,0 +1,231 @@
+package main;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * Editeur de liens : place des {@link ObjectFile fichiers objets} les uns a la suite des autres
+ * et corrige leurs branchements.
+ * <p>
+ * Les fichiers sont places dans l'ordre ou ils sont ajoutes, le premier a l'adresse 0.
+ * Les labels d'un fichier lui sont locaux, sauf ceux qu'il exporte par la directive <tt>.global</tt> :
+ * un label exporte est visible de tous les fichiers et ne peut etre exporte que par un seul,
+ * alors que plusieurs fichiers peuvent definir le meme label local.
+ * Un label est cherche parmi ceux du fichier avant de l'etre parmi les labels exportes.
+ * Un branchement vers un label du fichier est decale de l'adresse du fichier,
+ * un branchement vers un label d'un autre fichier recoit l'adresse du label dans le programme.
+ * Les constantes chargees depuis la reserve sont reunies dans une seule {@link LiteralPool reserve},
+ * ou chaque valeur n'apparait qu'une fois pour tout le programme.
+ * Les {@link DataSection sections de donnees} sont placees les unes a la suite des autres, dans l'ordre des fichiers ;
+ * leurs labels sont locaux ou exportes comme ceux des instructions.
+ * L'edition des liens est lineaire en la taille du programme : seuls les fichiers modifies sont assembles de nouveau,
+ * voir {@link ObjectCache}.
+ *
+ * @see ObjectFile
+ */
+final class Linker
+{
+    private final List<ObjectFile> objects = new ArrayList<>();
+    private final LiteralPool pool = new LiteralPool();
+    private final DataSection data = new DataSection();
+
+    /**
+     * Ajoute un fichier objet a la suite des precedents.
+     *
+     * @param object le fichier objet
+     * @return cet editeur de liens
+     */
+    Linker add(ObjectFile object)
+    {
+        objects.add(object);
+        return this;
+    }
+
+    /**
+     * Place les fichiers objets et corrige leurs branchements.
+     *
+     * @return le codage de chaque instruction du programme
+     * @throws IllegalArgumentException si un label est exporte par plusieurs fichiers, s'il n'est defini dans aucun,
+     *                                  si une cible ne tient pas dans le champ d'un branchement,
+     *                                  si le programme ne tient pas dans la ROM
+     *                                  ou si les donnees et la reserve ne tiennent pas dans la RAM
+     */
+    int[] link()
+    {
+        // Adresse de chaque fichier et de ses donnees, et table globale des labels exportes
+        int[] bases = new int[objects.size()];
+        int[] dataBases = new int[objects.size()];
+        int size = 0;
+        Map<String, Integer> symbols = new HashMap<>();
+        Map<String, Integer> dataSymbols = new HashMap<>();
+        for (int i = 0; i < objects.size(); i++)
+        {
+            ObjectFile object = objects.get(i);
+            bases[i] = size;
+            dataBases[i] = data.size();
+            for (String label : object.getExported())
+            {
+                Integer address = object.getSymbols().get(label);
+                if (address != null && symbols.putIfAbsent(label, size + address) != null)
+                    throw new IllegalArgumentException("Duplicate label: " + label);
+                address = object.getData().address(label);
+                if (address != null && dataSymbols.putIfAbsent(label, dataBases[i] + address) != null)
+                    throw new IllegalArgumentException("Duplicate label: " + label);
+            }
+            size += object.getWords().length;
+            data.append(object.getData());
+        }
+
+        int[] program = Simulator.checkRom(new int[size]);
+        for (int i = 0; i < objects.size(); i++)
+        {
+            ObjectFile object = objects.get(i);
+            int base = bases[i];
+            System.arraycopy(object.getWords(), 0, program, base, object.getWords().length);
+            for (ObjectFile.Relocation relocation : object.getRelocations())
+            {
+                int word = program[base + relocation.getIndex()];
+                String symbol = relocation.getSymbol();
+                if (symbol != null && symbol.startsWith(ObjectFile.LITERAL))
+                {
+                    int address = pool.address(Integer.parseInt(symbol.substring(ObjectFile.LITERAL.length())));
+                    program[base + relocation.getIndex()] = LiteralPool.relocate(word, address);
+                    continue;
+                }
+                if (symbol != null && symbol.startsWith(ObjectFile.DATA))
+                {
+                    String label = symbol.substring(ObjectFile.DATA.length());
+                    Integer address = object.getData().address(label);
+                    address = address != null ? Integer.valueOf(dataBases[i] + address) : dataSymbols.get(label);
+                    if (address == null)
+                        throw new IllegalArgumentException("Label not found: " + label);
+                    program[base + relocation.getIndex()] = LiteralPool.relocate(word, address);
+                    continue;
+                }
+                int local = Encoding.TARGET.decode(word);
+                // Un label du fichier masque un label exporte du meme nom
+                Integer target = symbol == null ? Integer.valueOf(local) : object.getSymbols().get(symbol);
+                target = target != null ? Integer.valueOf(base + target) : symbols.get(symbol);
+                if (target == null)
+                    throw new IllegalArgumentException("Label not found: " + symbol);
+                program[base + relocation.getIndex()] = Encoding.target(word - local, target);
+            }
+        }
+        data.check(pool);
+        return program;
+    }
+
+    /**
+     * @return la reserve des constantes du programme, remplie par {@link #link()}
+     */
+    LiteralPool getPool()
+    {
+        return pool;
+    }
+
+    /**
+     * @return la section de donnees du programme, remplie par {@link #link()}
+     */
+    DataSection getData()
+    {
+        return data;
+    }
+
+    /**
+     * Assemble plusieurs fichiers sources et fichiers objets en un seul programme.
+     * Les sources sont assemblees en parallele et conservees dans un {@link ObjectCache cache} :
+     * seules les sources modifiees depuis la derniere edition des liens sont analysees.
+     * Les fichiers d'extension <tt>.o</tt> sont lus comme des fichiers objets.
+     * <p>
+     * Options, placees avant les noms des fichiers :
+     * <pre>
+     * --parser=P        analyseur des sources : regex (par defaut) ou descent
+     * --cache=DIR       repertoire du cache (par defaut {@value ObjectCache#DIRECTORY})
+     * --output=FILE     ecrit l'image dans FILE (par defaut {@value Assembler#OUT_FILE})
+     * --format=F        format de l'image : raw, binary ou hex (par defaut d'apres l'extension de FILE)
+     * --ram=FILE        ecrit l'image de la RAM contenant les donnees et la reserve dans FILE
+     *                   (par defaut {@value Assembler#RAM_FILE}), si le programme en utilise
+     * --stats           affiche le nombre de sources assemblees et lues dans le cache
+     * </pre>
+     *
+     * @param args les options suivies des noms des fichiers, dans l'ordre de leur placement
+     * @throws IOException si un fichier ne peut pas etre lu ou ecrit
+     */
+    public static void main(String[] args) throws IOException
+    {
+        String parser = "regex";
+        Path cache = Paths.get(ObjectCache.DIRECTORY);
+        Path output = Paths.get(Assembler.OUT_FILE);
+        Image.Format format = null;
+        Path ram = Paths.get(Assembler.RAM_FILE);
+        boolean stats = false;
+        List<Path> files = new ArrayList<>();
+        for (String arg : args)
+        {
+            if (arg.startsWith("--parser="))
+                parser = arg.substring("--parser=".length());
+            else if (arg.startsWith("--cache="))
+                cache = Paths.get(arg.substring("--cache=".length()));
+            else if (arg.startsWith("--output="))
+                output = Paths.get(arg.substring("--output=".length()));
+            else if (arg.startsWith("--format="))
+                format = Image.Format.forName(arg.substring("--format=".length()));
+            else if (arg.startsWith("--ram="))
+                ram = Paths.get(arg.substring("--ram=".length()));
+            else if (arg.equals("--stats"))
+                stats = true;
+            else if (arg.startsWith("--"))
+                throw new IllegalArgumentException("Unknown option: " + arg);
+            else
+                files.add(Paths.get(arg));
+        }
+        if (files.isEmpty())
+            throw new IllegalArgumentException("File name is missing");
+        if (format == null)
+            format = Image.Format.of(output);
+
+        long start = System.nanoTime();
+        ObjectCache objects = new ObjectCache(cache, parser);
+        List<ObjectFile> compiled;
+        try
+        {
+            compiled = files.parallelStream().map(file -> {
+                try
+                {
+                    return file.toString().endsWith(".o") ? ObjectFile.read(file) : objects.get(file);
+                }
+                catch (IOException e)
+                {
+                    throw new UncheckedIOException(e);
+                }
+            }).collect(Collectors.toList());
+        }
+        catch (UncheckedIOException e)
+        {
+            throw e.getCause();
+        }
+        objects.save();
+
+        Linker linker = new Linker();
+        compiled.forEach(linker::add);
+        int[] program = linker.link();
+        Image.of(program).write(output, format);
+        if (!linker.getData().isEmpty() || !linker.getPool().isEmpty())
+            linker.getData().write(ram, linker.getPool());
+        if (stats)
+        {
+            System.out.printf("%-24s %d%n", "files", files.size());
+            System.out.printf("%-24s %d%n", "assembled", objects.getMisses());
+            System.out.printf("%-24s %d%n", "cached", objects.getHits());
+            System.out.printf("%-24s %d%n", "instructions", program.length);
+            System.out.printf("%-24s %.3f ms%n", "total", (System.nanoTime() - start) / 1e6);
+        }
+    }
+}
@@ -0,0 +1,257 @@
+package main;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Chargement de constantes par la pseudo-instruction <tt>LDR Rd, =valeur</tt>.
+ * <p>
+ * <tt>MOV</tt> ne code qu'une valeur de 8 bits : une constante plus grande est construite
+ * par une suite d'instructions n'utilisant que le registre de destination
+ * (<tt>MOV</tt>, puis <tt>LSL</tt>, <tt>LSR</tt>, <tt>ADD</tt> immediat et <tt>MUL Rd, Rd</tt>).
+ * La plus courte suite de chaque valeur de 16 bits est calculee une fois pour toutes par un parcours en largeur
+ * des valeurs atteignables : le developpement d'une constante est une lecture de table.
+ * Une valeur de 32 bits est construite a partir d'une valeur de la table suivie d'un <tt>LSL</tt> ou d'un <tt>MVN</tt>.
+ * <p>
+ * Lorsque la suite depasse {@link #getInline() une longueur donnee} ou n'existe pas,
+ * la constante est placee dans la reserve et chargee par un <tt>LDR Rd, #adresse</tt>.
+ * La reserve occupe le haut de la RAM, a partir de l'adresse {@value Simulator#RAM_SIZE} - 1 en descendant,
+ * et chaque valeur n'y figure qu'une fois pour tout le programme.
+ * Elle est ecrite dans l'image logisim de la RAM, au-dessus de la section de donnees, voir {@link DataSection#write(Path, LiteralPool)}.
+ * <p>
+ * Comme toute instruction de traitement, une suite modifie les drapeaux ; le chargement depuis la reserve ne les modifie pas.
+ *
+ * @see Assembler
+ */
+final class LiteralPool
+{
+    /**
+     * Longueur maximale par defaut d'une suite d'instructions, au-dela de laquelle la constante est placee dans la reserve.
+     * Un chargement est plus court qu'une suite, mais la reserve partage la RAM avec les donnees du programme.
+     */
+    static final int INLINE = 2;
+    /**
+     * Nombre de valeurs de la table des suites.
+     */
+    private static final int VALUES = 1 << 16;
+
+    // Operations d'une suite
+    private static final int MOV = 0;
+    private static final int LSL = 1;
+    private static final int LSR = 2;
+    private static final int ADD = 3;
+    private static final int MUL = 4;
+
+    /**
+     * Longueur de la plus courte suite de chaque valeur de 16 bits.
+     */
+    private static final byte[] LENGTH = new byte[VALUES];
+    /**
+     * Derniere operation de la suite de chaque valeur : operation &lt;&lt; 24 | operande &lt;&lt; 16 | valeur precedente.
+     */
+    private static final int[] STEP = new int[VALUES];
+
+    static
+    {
+        int[] queue = new int[VALUES];
+        int tail = 0;
+        for (int value = 0; value < 1 << 8; value++)
+        {
+            LENGTH[value] = 1;
+            STEP[value] = MOV << 24 | value << 16;
+            queue[tail++] = value;
+        }
+        for (int head = 0; head < tail; head++)
+        {
+            int value = queue[head];
+            for (int shift = 1; shift < 16; shift++)
+            {
+                tail = visit(queue, tail, value << shift, LSL, shift, value);
+                tail = visit(queue, tail, value >>> shift, LSR, shift, value);
+            }
+            for (int immediate = 1; immediate < 8; immediate++)
+                tail = visit(queue, tail, value + immediate, ADD, immediate, value);
+            tail = visit(queue, tail, value * value, MUL, 0, value);
+        }
+    }
+
+    private final int inline;
+    /**
+     * Adresse de chaque valeur de la reserve, dans l'ordre d'ajout.
+     */
+    private final Map<Integer, Integer> addresses = new LinkedHashMap<>();
+
+    /**
+     * Cree une reserve vide, les suites d'au plus {@value #INLINE} instructions etant preferees.
+     */
+    LiteralPool()
+    {
+        this(INLINE);
+    }
+
+    /**
+     * @param inline la longueur maximale d'une suite d'instructions, 0 pour toujours utiliser la reserve
+     */
+    LiteralPool(int inline)
+    {
+        this.inline = inline;
+    }
+
+    private static int visit(int[] queue, int tail, int value, int operation, int operand, int previous)
+    {
+        if (value < 0 || value >= VALUES || LENGTH[value] != 0)
+            return tail;
+        LENGTH[value] = (byte) (LENGTH[previous] + 1);
+        STEP[value] = operation << 24 | operand << 16 | previous;
+        queue[tail] = value;
+        return tail + 1;
+    }
+
+    /**
+     * Donne la plus courte suite d'instructions connue chargeant une constante dans un registre.
+     *
+     * @param register le registre de destination
+     * @param value la constante, sur 32 bits
+     * @return le codage de chaque instruction de la suite, ou <tt>null</tt> si aucune suite n'est connue
+     * @throws IllegalArgumentException si le registre ne tient pas dans son champ
+     */
+    static int[] sequence(int register, int value)
+    {
+        if ((value & -VALUES) == 0)
+            return build(register, value, 0);
+        int[] best = null;
+        int shift = Integer.numberOfTrailingZeros(value);
+        if ((value >>> shift & -VALUES) == 0)
+        {
+            best = build(register, value >>> shift, 1);
+            best[best.length - 1] = Instructions.LSL_I.getEncoding().encode(shift, register, register);
+        }
+        if ((~value & -VALUES) == 0 && (best == null || LENGTH[~value] + 1 < best.length))
+        {
+            best = build(register, ~value, 1);
+            best[best.length - 1] = Instructions.MVN.getEncoding().encode(register, register);
+        }
+        return best;
+    }
+
+    /**
+     * Reconstruit la suite d'une valeur de la table.
+     *
+     * @param extra le nombre d'instructions a reserver a la fin de la suite
+     */
+    private static int[] build(int register, int value, int extra)
+    {
+        int[] words = new int[LENGTH[value] + extra];
+        for (int i = LENGTH[value] - 1; i >= 0; i--)
+        {
+            int step = STEP[value];
+            int operand = step >>> 16 & 0xFF;
+            switch (step >>> 24)
+            {
+                case MOV: words[i] = Instructions.MOV.getEncoding().encode(register, operand); break;
+                case LSL: words[i] = Instructions.LSL_I.getEncoding().encode(operand, register, register); break;
+                case LSR: words[i] = Instructions.LSR_I.getEncoding().encode(operand, register, register); break;
+                case ADD: words[i] = Instructions.ADD_I.getEncoding().encode(operand, register, register); break;
+                default:  words[i] = Instructions.MUL.getEncoding().encode(register, register); break;
+            }
+            value = step & 0xFFFF;
+        }
+        return words;
+    }
+
+    /**
+     * Developpe <tt>LDR Rd, =valeur</tt> en une suite d'instructions ou en un chargement depuis la reserve.
+     *
+     * @param register le registre de destination
+     * @param value la constante, sur 32 bits
+     * @return le codage de chaque instruction
+     * @throws IllegalArgumentException si le registre ne tient pas dans son champ ou si la reserve est pleine
+     */
+    int[] expand(int register, int value)
+    {
+        int[] sequence = inline(register, value);
+        return sequence != null ? sequence : new int[]{load(register, address(value))};
+    }
+
+    /**
+     * @param register le registre de destination
+     * @param value la constante, sur 32 bits
+     * @return la suite d'instructions chargeant la constante,
+     *         ou <tt>null</tt> si elle est plus longue que {@link #getInline()} et que la constante va dans la reserve
+     * @throws IllegalArgumentException si le registre ne tient pas dans son champ
+     */
+    int[] inline(int register, int value)
+    {
+        int[] sequence = sequence(register, value);
+        return sequence != null && sequence.length <= inline ? sequence : null;
+    }
+
+    /**
+     * @return le codage de <tt>LDR Rd, #adresse</tt>
+     */
+    static int load(int register, int address)
+    {
+        return Instructions.LDR_I.getEncoding().encode(register, address);
+    }
+
+    /**
+     * Change l'adresse d'un chargement depuis la reserve, ou d'un acces <tt>LDR</tt>/<tt>STR Rt, #adresse</tt>
+     * a la {@link DataSection section de donnees}.
+     * L'adresse occupe les 8 bits de poids faible, comme la cible d'un branchement.
+     *
+     * @param load le codage du chargement
+     * @param address la nouvelle adresse dans la RAM
+     * @return le codage du chargement a cette adresse
+     */
+    static int relocate(int load, int address)
+    {
+        return Encoding.target(load - Encoding.TARGET.decode(load), address);
+    }
+
+    /**
+     * Donne l'adresse d'une valeur dans la reserve, en l'ajoutant si elle n'y est pas.
+     *
+     * @param value la constante
+     * @return son adresse dans la RAM
+     * @throws IllegalArgumentException si la reserve occupe deja toute la RAM
+     */
+    int address(int value)
+    {
+        Integer address = addresses.get(value);
+        if (address != null)
+            return address;
+        if (addresses.size() == Simulator.RAM_SIZE)
+            throw new IllegalArgumentException("Literal pool is full");
+        address = Simulator.RAM_SIZE - 1 - addresses.size();
+        addresses.put(value, address);
+        return address;
+    }
+
+    int getInline()
+    {
+        return inline;
+    }
+
+    boolean isEmpty()
+    {
+        return addresses.isEmpty();
+    }
+
+    /**
+     * @return le nombre de valeurs de la reserve
+     */
+    int size()
+    {
+        return addresses.size();
+    }
+
+    /**
+     * @return le contenu initial de la RAM : la reserve en haut, des zeros en dessous
+     */
+    int[] ram()
+    {
+        int[] ram = new int[Simulator.RAM_SIZE];
+        addresses.forEach((value, address) -> ram[address] = value);
+        return ram;
+    }
+}
@@ -0,0 +1,303 @@
+package main;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+/**
+ * Compteurs et temps passes dans chaque phase d'un assemblage.
+ * <p>
+ * Une instance n'est utilisee que par un seul thread : l'{@link ParallelAssembler assembleur parallele}
+ * donne une instance a chaque partie du programme et les reunit ensuite.
+ * Les temps des phases sont donc cumules sur tous les threads.
+ * <p>
+ * L'instance {@link #DISABLED} ne compte rien et ne lit jamais l'horloge :
+ * chaque mesure se reduit a un test sur un champ final.
+ * Les mesures sont activees par l'option <tt>--stats</tt> de l'{@link Assembler}
+ * ou lorsqu'un enregistrement JFR active l'evenement {@value #ASSEMBLY_EVENT}.
+ * Les classes des evenements ne sont chargees que si JFR est demarre, leur chargement ralentissant le demarrage de la JVM.
+ *
+ * @see Assembler
+ */
+final class Metrics
+{
+    /**
+     * Nom de l'evenement JFR emis a la fin de chaque assemblage mesure.
+     */
+    static final String ASSEMBLY_EVENT = "main.Assembly";
+    /**
+     * Nom de l'evenement JFR emis pour chaque phase d'un assemblage mesure.
+     */
+    static final String PHASE_EVENT = "main.AssemblyPhase";
+    /**
+     * Mesures desactivees.
+     */
+    static final Metrics DISABLED = new Metrics(false);
+
+    /**
+     * Grandeurs comptees pendant un assemblage.
+     */
+    enum Counter
+    {
+        LINES_READ("lines read"),
+        LINES_MATCHED("lines matched"),
+        INSTRUCTIONS("instructions emitted"),
+        LABEL_HITS("label hits"),
+        LABEL_MISSES("label misses"),
+        FIXUPS("forward branches fixed"),
+        BYTES_WRITTEN("bytes written");
+
+        private final String label;
+
+        Counter(String label)
+        {
+            this.label = label;
+        }
+    }
+
+    /**
+     * Phases d'un assemblage.
+     */
+    enum Phase
+    {
+        /** Lecture des lignes de la source. */
+        READ,
+        /** Analyse des lignes par le {@link Parser}. */
+        PARSE,
+        /** Recherche de l'instruction, voir {@link Instructions#getEnum(ParsedLine)}. */
+        DISPATCH,
+        /** Codage de l'instruction, voir {@link Instructions#encode(ParsedLine)} et son texte {@link Instructions#getOpcode(ParsedLine)}. */
+        ENCODE,
+        /** Table des labels et resolution des branchements. */
+        LINK,
+        /** Passe d'optimisation, voir {@link Optimizer}. */
+        OPTIMIZE,
+        /** Ecriture de l'image. */
+        WRITE
+    }
+
+    private final boolean enabled;
+    private final long[] counts = new long[Counter.values().length];
+    private final long[] times = new long[Phase.values().length];
+    private AssemblyEvent event;
+    private long start;
+    private long total;
+
+    /**
+     * Cree des mesures activees.
+     */
+    Metrics()
+    {
+        this(true);
+    }
+
+    private Metrics(boolean enabled)
+    {
+        this.enabled = enabled;
+    }
+
+    /**
+     * @param stats vrai si les mesures doivent etre affichees
+     * @return des mesures activees si elles sont affichees ou enregistrees par JFR, {@link #DISABLED} sinon
+     */
+    static Metrics of(boolean stats)
+    {
+        return stats || FlightRecorder.isInitialized() && new AssemblyEvent().isEnabled() ? new Metrics() : DISABLED;
+    }
+
+    /**
+     * @return des mesures vides pour un autre thread, activees si celles-ci le sont
+     */
+    Metrics fork()
+    {
+        return enabled ? new Metrics() : DISABLED;
+    }
+
+    /**
+     * Ajoute les compteurs et les temps d'autres mesures a celles-ci.
+     *
+     * @param other des mesures obtenues par {@link #fork()}
+     */
+    void merge(Metrics other)
+    {
+        if (!enabled)
+            return;
+        for (int i = 0; i < counts.length; i++)
+            counts[i] += other.counts[i];
+        for (int i = 0; i < times.length; i++)
+            times[i] += other.times[i];
+    }
+
+    boolean isEnabled()
+    {
+        return enabled;
+    }
+
+    /**
+     * Incremente un compteur.
+     */
+    void count(Counter counter)
+    {
+        if (enabled)
+            counts[counter.ordinal()]++;
+    }
+
+    /**
+     * Ajoute une quantite a un compteur.
+     */
+    void add(Counter counter, long amount)
+    {
+        if (enabled)
+            counts[counter.ordinal()] += amount;
+    }
+
+    long get(Counter counter)
+    {
+        return counts[counter.ordinal()];
+    }
+
+    /**
+     * @return le temps cumule d'une phase, en nanosecondes
+     */
+    long time(Phase phase)
+    {
+        return times[phase.ordinal()];
+    }
+
+    /**
+     * @return l'instant de debut d'une mesure, ou 0 si les mesures sont desactivees
+     */
+    long start()
+    {
+        return enabled ? System.nanoTime() : 0;
+    }
+
+    /**
+     * Attribue a une phase le temps ecoule depuis une mesure.
+     *
+     * @param phase la phase mesuree
+     * @param start l'instant renvoye par {@link #start()} ou par l'appel precedent
+     * @return l'instant de fin, debut de la phase suivante
+     */
+    long stop(Phase phase, long start)
+    {
+        if (!enabled)
+            return 0;
+        long now = System.nanoTime();
+        times[phase.ordinal()] += now - start;
+        return now;
+    }
+
+    /**
+     * Commence la mesure de la duree totale de l'assemblage.
+     */
+    void begin()
+    {
+        if (!enabled)
+            return;
+        if (FlightRecorder.isInitialized())
+        {
+            event = new AssemblyEvent();
+            event.begin();
+        }
+        start = System.nanoTime();
+    }
+
+    /**
+     * Termine la mesure de la duree totale et emet les evenements JFR.
+     */
+    void end()
+    {
+        if (!enabled)
+            return;
+        total = System.nanoTime() - start;
+        if (event == null)
+            return;
+        event.end();
+        if (event.shouldCommit())
+        {
+            event.linesRead = get(Counter.LINES_READ);
+            event.linesMatched = get(Counter.LINES_MATCHED);
+            event.instructions = get(Counter.INSTRUCTIONS);
+            event.labelHits = get(Counter.LABEL_HITS);
+            event.labelMisses = get(Counter.LABEL_MISSES);
+            event.fixups = get(Counter.FIXUPS);
+            event.bytesWritten = get(Counter.BYTES_WRITTEN);
+            event.commit();
+        }
+        for (Phase phase : Phase.values())
+        {
+            PhaseEvent phaseEvent = new PhaseEvent();
+            if (!phaseEvent.shouldCommit())
+                break;
+            phaseEvent.phase = phase.name();
+            phaseEvent.time = time(phase);
+            phaseEvent.commit();
+        }
+        event = null;
+    }
+
+    /**
+     * @return les compteurs et le temps de chaque phase, une valeur par ligne
+     */
+    String summary()
+    {
+        StringBuilder text = new StringBuilder();
+        for (Counter counter : Counter.values())
+            text.append(String.format("%-24s %d%n", counter.label, get(counter)));
+        for (Phase phase : Phase.values())
+            text.append(String.format("%-24s %.3f ms%n", phase.name().toLowerCase(), time(phase) / 1e6));
+        text.append(String.format("%-24s %.3f ms%n", "total", total / 1e6));
+        long instructions = get(Counter.INSTRUCTIONS);
+        if (total > 0 && instructions > 0)
+            text.append(String.format("%-24s %.1f ns%n", "per instruction", (double) total / instructions));
+        return text.toString();
+    }
+
+    /**
+     * Evenement JFR resumant un assemblage.
+     */
+    @Name(ASSEMBLY_EVENT)
+    @Label("Assembly")
+    @Category("Assembler")
+    @Description("Counters of one assembled program")
+    static final class AssemblyEvent extends Event
+    {
+        @Label("Lines Read")
+        long linesRead;
+        @Label("Lines Matched")
+        long linesMatched;
+        @Label("Instructions Emitted")
+        long instructions;
+        @Label("Label Hits")
+        long labelHits;
+        @Label("Label Misses")
+        long labelMisses;
+        @Label("Forward Branches Fixed")
+        long fixups;
+        @Label("Bytes Written")
+        @DataAmount
+        long bytesWritten;
+    }
+
+    /**
+     * Evenement JFR donnant le temps cumule d'une phase d'un assemblage.
+     */
+    @Name(PHASE_EVENT)
+    @Label("Assembly Phase")
+    @Category("Assembler")
+    @Description("Cumulated time of one phase of an assembled program")
+    static final class PhaseEvent extends Event
+    {
+        @Label("Phase")
+        String phase;
+        @Label("Time")
+        @Timespan(Timespan.NANOSECONDS)
+        long time;
+    }
+}
@@ -0,0 +1,1105 @@
+package main;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+import org.xml.sax.SAXException;
+
+/**
+ * Netlist a plat d'un projet logisim.
+ * <p>
+ * Le fichier .circ est lu avec un parseur DOM, ainsi que les fichiers qu'il reference comme bibliotheques ("file#...").
+ * Les sous-circuits sont instancies recursivement et mis a plat :
+ * les fils, les tunnels, les splitters et les pins des sous-circuits disparaissent
+ * au profit de signaux d'un bit, reunis par un union-find.
+ * Il ne reste que des {@link Gate composants} dont chaque port est la liste des signaux de ses bits.
+ * <p>
+ * La position des ports de chaque composant reproduit celle de logisim 2.7,
+ * y compris l'apparence par defaut des sous-circuits.
+ *
+ * @see CircuitSimulator
+ */
+final class Netlist
+{
+    /**
+     * Types de composants conserves dans la netlist.
+     */
+    enum Kind
+    {
+        PIN, CONSTANT, CLOCK,
+        AND, OR, XOR, NAND, NOR, XNOR, NOT, BUFFER,
+        MULTIPLEXER, DECODER, BIT_SELECTOR,
+        ADDER, SUBTRACTOR, MULTIPLIER, COMPARATOR, SHIFTER,
+        REGISTER, FLIP_FLOP, RAM, ROM
+    }
+
+    /**
+     * Composant de la netlist.
+     */
+    static final class Gate
+    {
+        private final Kind kind;
+        private final String path;
+        private final Map<String, String> attributes;
+        private final List<int[]> inputs = new ArrayList<>();
+        private final List<int[]> outputs = new ArrayList<>();
+        /**
+         * Masque des entrees valant 1 lorsqu'elles ne sont pas connectees (enable, chip select...).
+         */
+        private long floatingHigh;
+
+        private Gate(Kind kind, String path, Map<String, String> attributes)
+        {
+            this.kind = kind;
+            this.path = path;
+            this.attributes = attributes;
+        }
+
+        Kind getKind()
+        {
+            return kind;
+        }
+
+        /**
+         * @return le chemin du composant dans la hierarchie, par exemple <tt>main/Register(450,430)/Register(440,180)</tt>
+         */
+        String getPath()
+        {
+            return path;
+        }
+
+        String attribute(String name, String otherwise)
+        {
+            return attributes.getOrDefault(name, otherwise);
+        }
+
+        List<int[]> getInputs()
+        {
+            return inputs;
+        }
+
+        List<int[]> getOutputs()
+        {
+            return outputs;
+        }
+
+        boolean isFloatingHigh(int input)
+        {
+            return (floatingHigh >>> input & 1) != 0;
+        }
+
+        @Override
+        public String toString()
+        {
+            return kind + " " + path;
+        }
+    }
+
+    private final Map<Path, Library> libraries = new HashMap<>();
+    private final List<Gate> gates = new ArrayList<>();
+    private final List<String> warnings = new ArrayList<>();
+    /**
+     * Bits de chaque pin de chaque instance, par chemin.
+     */
+    private final Map<String, int[]> labels = new LinkedHashMap<>();
+    /**
+     * Union-find des signaux d'un bit.
+     */
+    private int[] parent = new int[1024];
+    private int bits;
+
+    private Netlist()
+    {
+    }
+
+    /**
+     * Charge et met a plat le circuit principal d'un fichier logisim.
+     *
+     * @param filename le nom du fichier .circ
+     * @return la netlist du circuit principal
+     * @throws IOException si un fichier n'existe pas ou n'est pas un fichier logisim
+     * @throws IllegalArgumentException si un composant n'est pas supporte
+     */
+    static Netlist load(String filename) throws IOException
+    {
+        Netlist netlist = new Netlist();
+        Library library = netlist.library(Paths.get(filename).toAbsolutePath().normalize());
+        Definition main = library.circuit(library.main);
+        netlist.instantiate(main, main.name, true);
+        return netlist;
+    }
+
+    List<Gate> getGates()
+    {
+        return gates;
+    }
+
+    /**
+     * @return les bits de chaque pin de chaque instance de circuit, par chemin, par exemple <tt>main/ALU(480,500)/Codop</tt>
+     */
+    Map<String, int[]> getPins()
+    {
+        return labels;
+    }
+
+    /**
+     * @return les anomalies de cablage relevees : fils non connectes et largeurs incompatibles
+     */
+    List<String> getWarnings()
+    {
+        return warnings;
+    }
+
+    /**
+     * @return le nombre de bits alloues, avant reunion
+     */
+    int getBits()
+    {
+        return bits;
+    }
+
+    /**
+     * @param bit un bit alloue
+     * @return le representant du signal contenant ce bit
+     */
+    int find(int bit)
+    {
+        int root = bit;
+        while (parent[root] != root)
+            root = parent[root];
+        while (parent[bit] != root)
+        {
+            int next = parent[bit];
+            parent[bit] = root;
+            bit = next;
+        }
+        return root;
+    }
+
+    private void union(int a, int b)
+    {
+        int ra = find(a);
+        int rb = find(b);
+        if (ra != rb)
+            parent[Math.max(ra, rb)] = Math.min(ra, rb);
+    }
+
+    private int allocate(int width)
+    {
+        if (bits + width > parent.length)
+            parent = Arrays.copyOf(parent, Math.max(parent.length * 2, bits + width));
+        for (int i = 0; i < width; i++)
+        {
+            parent[bits + i] = bits + i;
+        }
+        bits += width;
+        return bits - width;
+    }
+
+    private Library library(Path file) throws IOException
+    {
+        Library library = libraries.get(file);
+        if (library == null)
+        {
+            library = new Library(file);
+            libraries.put(file, library);
+        }
+        return library;
+    }
+
+    /**
+     * Instancie un circuit et ses sous-circuits.
+     *
+     * @param circuit le circuit a instancier
+     * @param path le chemin de l'instance
+     * @param top vrai pour le circuit principal, dont les pins deviennent des composants
+     * @return les bits de chaque pin du circuit
+     */
+    private Map<Component, int[]> instantiate(Definition circuit, String path, boolean top) throws IOException
+    {
+        Points points = new Points();
+        for (int[] wire : circuit.wires)
+        {
+            points.union(points.index(wire[0], wire[1]), points.index(wire[2], wire[3]));
+        }
+        Map<String, Integer> tunnels = new HashMap<>();
+        List<List<Port>> ports = new ArrayList<>();
+        for (Component component : circuit.components)
+        {
+            List<Port> list = ports(component, circuit.library);
+            for (Port port : list)
+            {
+                port.point = points.index(component.x + port.dx, component.y + port.dy);
+            }
+            if (component.is("Tunnel"))
+                points.union(list.get(0).point, tunnels.computeIfAbsent(component.attribute("label", ""), label -> list.get(0).point));
+            ports.add(list);
+        }
+
+        // Largeur et bits de chaque noeud
+        int[] widths = new int[points.size()];
+        for (List<Port> list : ports)
+        {
+            for (Port port : list)
+            {
+                int root = points.find(port.point);
+                if (widths[root] != 0 && port.width != 0 && widths[root] != port.width && !circuit.checked)
+                    warnings.add(circuit.name + ": incompatible widths " + widths[root] + " and " + port.width + " at " + points.location(port.point));
+                widths[root] = Math.max(widths[root], port.width);
+            }
+        }
+        int[] base = new int[points.size()];
+        for (int point = 0; point < points.size(); point++)
+        {
+            if (points.find(point) == point && widths[point] > 0)
+                base[point] = allocate(widths[point]);
+        }
+        if (!circuit.checked)
+            check(circuit, points, ports);
+
+        Map<Component, int[]> pins = new LinkedHashMap<>();
+        for (int i = 0; i < circuit.components.size(); i++)
+        {
+            Component component = circuit.components.get(i);
+            List<Port> list = ports.get(i);
+            for (Port port : list)
+            {
+                int root = points.find(port.point);
+                port.bits = new int[Math.max(port.width, 0)];
+                for (int bit = 0; bit < port.bits.length; bit++)
+                {
+                    port.bits[bit] = base[root] + bit;
+                }
+            }
+            String name = path + "/" + component.name + "(" + component.x + "," + component.y + ")";
+            if (component.library == null || component.library.startsWith("file#"))
+            {
+                Definition child = component.library == null ? circuit.library.circuit(component.name)
+                        : library(circuit.library.directory.resolve(component.library.substring("file#".length())).normalize()).circuit(component.name);
+                Map<Component, int[]> childPins = instantiate(child, name, false);
+                int port = 0;
+                for (Component pin : child.appearance().keySet())
+                {
+                    int[] parentBits = list.get(port++).bits;
+                    int[] childBits = childPins.get(pin);
+                    for (int bit = 0; bit < Math.min(parentBits.length, childBits.length); bit++)
+                    {
+                        union(parentBits[bit], childBits[bit]);
+                    }
+                }
+            }
+            else if (component.is("Pin"))
+            {
+                pins.put(component, list.get(0).bits);
+                labels.put(path + "/" + component.attribute("label", component.name + "(" + component.x + "," + component.y + ")"), list.get(0).bits);
+                if (top)
+                    gate(Kind.PIN, name, component, list);
+            }
+            else if (component.is("Splitter"))
+            {
+                int[] combined = list.get(0).bits;
+                int[] ends = splitterEnds(component);
+                int[] used = new int[list.size()];
+                for (int bit = 0; bit < combined.length; bit++)
+                {
+                    if (ends[bit] >= 0)
+                        union(combined[bit], list.get(1 + ends[bit]).bits[used[ends[bit]]++]);
+                }
+            }
+            else if (!component.is("Tunnel") && !component.is("Probe") && !component.is("Text"))
+            {
+                gate(kind(component), name, component, list);
+            }
+        }
+        circuit.checked = true;
+        return pins;
+    }
+
+    private void gate(Kind kind, String path, Component component, List<Port> ports)
+    {
+        Map<String, String> attributes = component.attributes;
+        if (component.is("Power") || component.is("Ground"))
+        {
+            // Alimentation et masse : constantes de valeur fixe
+            attributes = new HashMap<>(attributes);
+            attributes.put("value", component.is("Power") ? "-1" : "0");
+        }
+        Gate gate = new Gate(kind, path, attributes);
+        for (Port port : ports)
+        {
+            if (port.output)
+            {
+                gate.outputs.add(port.bits);
+            }
+            else
+            {
+                if (port.high)
+                    gate.floatingHigh |= 1L << gate.inputs.size();
+                gate.inputs.add(port.bits);
+            }
+        }
+        gates.add(gate);
+    }
+
+    /**
+     * Releve les extremites de fils qui ne touchent ni un autre fil ni un port,
+     * ainsi que les tunnels dont l'etiquette n'apparait qu'une fois dans le circuit.
+     */
+    private void check(Definition circuit, Points points, List<List<Port>> ports)
+    {
+        int[] touches = new int[points.size()];
+        for (int[] wire : circuit.wires)
+        {
+            touches[points.index(wire[0], wire[1])] += 1;
+            touches[points.index(wire[2], wire[3])] += 1;
+        }
+        for (List<Port> list : ports)
+        {
+            for (Port port : list)
+            {
+                touches[port.point] += 2;
+            }
+        }
+        for (int[] wire : circuit.wires)
+        {
+            for (int end = 0; end < 4; end += 2)
+            {
+                int point = points.index(wire[end], wire[end + 1]);
+                if (touches[point] == 1)
+                    warnings.add(circuit.name + ": unconnected wire end at " + points.location(point));
+            }
+        }
+        Map<String, Integer> labels = new HashMap<>();
+        for (Component component : circuit.components)
+        {
+            if (component.is("Tunnel"))
+                labels.merge(component.attribute("label", ""), 1, Integer::sum);
+        }
+        for (Map.Entry<String, Integer> label : labels.entrySet())
+        {
+            if (label.getValue() == 1)
+                warnings.add(circuit.name + ": lone tunnel \"" + label.getKey() + "\"");
+        }
+    }
+
+    private static Kind kind(Component component)
+    {
+        switch (component.name)
+        {
+            case "Pin":          return Kind.PIN;
+            case "Constant":
+            case "Power":
+            case "Ground":       return Kind.CONSTANT;
+            case "Clock":        return Kind.CLOCK;
+            case "AND Gate":     return Kind.AND;
+            case "OR Gate":      return Kind.OR;
+            case "XOR Gate":     return Kind.XOR;
+            case "NAND Gate":    return Kind.NAND;
+            case "NOR Gate":     return Kind.NOR;
+            case "XNOR Gate":    return Kind.XNOR;
+            case "NOT Gate":     return Kind.NOT;
+            case "Buffer":       return Kind.BUFFER;
+            case "Multiplexer":  return Kind.MULTIPLEXER;
+            case "Decoder":      return Kind.DECODER;
+            case "BitSelector":  return Kind.BIT_SELECTOR;
+            case "Adder":        return Kind.ADDER;
+            case "Subtractor":   return Kind.SUBTRACTOR;
+            case "Multiplier":   return Kind.MULTIPLIER;
+            case "Comparator":   return Kind.COMPARATOR;
+            case "Shifter":      return Kind.SHIFTER;
+            case "Register":     return Kind.REGISTER;
+            case "D Flip-Flop":  return Kind.FLIP_FLOP;
+            case "RAM":          return Kind.RAM;
+            case "ROM":          return Kind.ROM;
+            default:             throw new IllegalArgumentException("Unsupported component: " + component.name);
+        }
+    }
+
+    /**
+     * Renvoie les ports d'un composant, dans l'ordre des entrees et des sorties attendu par {@link CircuitSimulator},
+     * avec leur position relative a celle du composant.
+     */
+    private List<Port> ports(Component component, Library library) throws IOException
+    {
+        List<Port> ports = new ArrayList<>();
+        Facing facing = Facing.of(component.attribute("facing", "east"));
+        int width = component.integer("width", 1);
+        if (component.library == null || component.library.startsWith("file#"))
+        {
+            Definition child = component.library == null ? library.circuit(component.name)
+                    : library(library.directory.resolve(component.library.substring("file#".length())).normalize()).circuit(component.name);
+            for (Map.Entry<Component, int[]> pin : child.appearance().entrySet())
+            {
+                ports.add(new Port(pin.getValue()[0], pin.getValue()[1], pin.getKey().integer("width", 1), false, false));
+            }
+            facing.rotate(ports);
+            return ports;
+        }
+        switch (component.name)
+        {
+            case "Pin":
+                ports.add(new Port(0, 0, width, !"true".equals(component.attribute("output", "false")), false));
+                break;
+            case "Tunnel":
+                ports.add(new Port(0, 0, width, false, false));
+                break;
+            case "Probe":
+                ports.add(new Port(0, 0, 0, false, false));
+                break;
+            case "Text":
+                break;
+            case "Constant":
+            case "Power":
+            case "Ground":
+            case "Clock":
+                ports.add(new Port(0, 0, width, true, false));
+                break;
+            case "AND Gate":
+            case "OR Gate":
+            case "XOR Gate":
+            case "NAND Gate":
+            case "NOR Gate":
+            case "XNOR Gate":
+                gatePorts(component, ports, width);
+                facing.rotate(ports);
+                break;
+            case "NOT Gate":
+                ports.add(new Port(-component.integer("size", 30), 0, width, false, false));
+                ports.add(new Port(0, 0, width, true, false));
+                facing.rotate(ports);
+                break;
+            case "Buffer":
+                ports.add(new Port(-20, 0, width, false, false));
+                ports.add(new Port(0, 0, width, true, false));
+                facing.rotate(ports);
+                break;
+            case "Multiplexer":
+                multiplexerPorts(component, ports, width);
+                facing.rotate(ports);
+                break;
+            case "Decoder":
+                decoderPorts(component, ports);
+                facing.rotate(ports);
+                break;
+            case "BitSelector":
+            {
+                int group = component.integer("group", 1);
+                int groups = (width + group - 1) / group - 1;
+                int select = 1;
+                while (groups > 1)
+                {
+                    groups >>= 1;
+                    select += 1;
+                }
+                ports.add(new Port(-30, 0, width, false, false));
+                ports.add(new Port(-10, 10, select, false, false));
+                ports.add(new Port(0, 0, group, true, false));
+                facing.rotate(ports);
+                break;
+            }
+            case "Adder":
+            case "Subtractor":
+            case "Multiplier":
+                ports.add(new Port(-40, -10, width, false, false));
+                ports.add(new Port(-40, 10, width, false, false));
+                ports.add(new Port(-20, -20, component.is("Multiplier") ? width : 1, false, false));
+                ports.add(new Port(0, 0, width, true, false));
+                ports.add(new Port(-20, 20, component.is("Multiplier") ? width : 1, true, false));
+                break;
+            case "Comparator":
+                ports.add(new Port(-40, -10, width, false, false));
+                ports.add(new Port(-40, 10, width, false, false));
+                ports.add(new Port(0, -10, 1, true, false));
+                ports.add(new Port(0, 0, 1, true, false));
+                ports.add(new Port(0, 10, 1, true, false));
+                break;
+            case "Shifter":
+            {
+                int distance = 1;
+                while (1 << distance < width)
+                    distance += 1;
+                ports.add(new Port(-40, -10, width, false, false));
+                ports.add(new Port(-40, 10, distance, false, false));
+                ports.add(new Port(0, 0, width, true, false));
+                break;
+            }
+            case "Register":
+                ports.add(new Port(-30, 0, width, false, false));
+                ports.add(new Port(-20, 20, 1, false, false));
+                ports.add(new Port(-10, 20, 1, false, false));
+                ports.add(new Port(-30, 10, 1, false, true));
+                ports.add(new Port(0, 0, width, true, false));
+                break;
+            case "D Flip-Flop":
+                ports.add(new Port(-40, 20, 1, false, false));
+                ports.add(new Port(-40, 0, 1, false, false));
+                ports.add(new Port(-10, 30, 1, false, false));
+                ports.add(new Port(-30, 30, 1, false, false));
+                ports.add(new Port(-20, 30, 1, false, true));
+                ports.add(new Port(0, 0, 1, true, false));
+                ports.add(new Port(0, 20, 1, true, false));
+                break;
+            case "RAM":
+            {
+                if (!"separate".equals(component.attribute("bus", "combined")))
+                    throw new IllegalArgumentException("Unsupported RAM bus: " + component.attribute("bus", "combined"));
+                int address = component.integer("addrWidth", 8);
+                int data = component.integer("dataWidth", 8);
+                ports.add(new Port(-140, 0, address, false, false));
+                ports.add(new Port(-90, 40, 1, false, true));
+                ports.add(new Port(-50, 40, 1, false, true));
+                ports.add(new Port(-30, 40, 1, false, false));
+                ports.add(new Port(-70, 40, 1, false, false));
+                ports.add(new Port(-110, 40, 1, false, false));
+                ports.add(new Port(-140, 20, data, false, false));
+                ports.add(new Port(0, 0, data, true, false));
+                break;
+            }
+            case "ROM":
+                ports.add(new Port(-140, 0, component.integer("addrWidth", 8), false, false));
+                ports.add(new Port(-90, 40, 1, false, true));
+                ports.add(new Port(0, 0, component.integer("dataWidth", 8), true, false));
+                break;
+            case "Splitter":
+                splitterPorts(component, ports, facing);
+                break;
+            default:
+                throw new IllegalArgumentException("Unsupported component: " + component.name);
+        }
+        return ports;
+    }
+
+    private static void gatePorts(Component component, List<Port> ports, int width)
+    {
+        int inputs = component.integer("inputs", 5);
+        int size = component.integer("size", 50);
+        int axis = size + (component.is("XOR Gate") || component.is("XNOR Gate") ? 10 : 0)
+                + (component.is("NAND Gate") || component.is("NOR Gate") || component.is("XNOR Gate") ? 10 : 0);
+        int skipStart;
+        int skipDistance;
+        int skipLowerEven;
+        if (inputs <= 3)
+        {
+            skipStart = size < 40 ? -5 : size < 60 || inputs <= 2 ? -10 : -15;
+            skipDistance = -2 * skipStart;
+            skipLowerEven = skipDistance;
+        }
+        else
+        {
+            skipStart = -5;
+            skipDistance = inputs == 4 && size >= 60 ? 20 : 10;
+            skipLowerEven = inputs == 4 && size >= 60 ? 0 : 10;
+        }
+        for (int index = 0; index < inputs; index++)
+        {
+            int dy = (inputs & 1) == 1 ? skipStart * (inputs - 1) + skipDistance * index
+                    : skipStart * inputs + skipDistance * index + (index >= inputs / 2 ? skipLowerEven : 0);
+            int dx = axis + ("true".equals(component.attribute("negate" + index, "false")) ? 10 : 0);
+            ports.add(new Port(-dx, dy, width, false, false));
+        }
+        ports.add(new Port(0, 0, width, true, false));
+    }
+
+    private static void multiplexerPorts(Component component, List<Port> ports, int width)
+    {
+        int select = component.integer("select", 1);
+        int inputs = 1 << select;
+        int selectSide = "tr".equals(component.attribute("selloc", "bl")) ? -1 : 1;
+        int selectY;
+        if (inputs == 2)
+        {
+            ports.add(new Port(-30, -10, width, false, false));
+            ports.add(new Port(-30, 10, width, false, false));
+            selectY = selectSide * 20;
+        }
+        else
+        {
+            int dy = -(inputs / 2) * 10;
+            for (int i = 0; i < inputs; i++)
+            {
+                ports.add(new Port(-40, dy + 10 * i, width, false, false));
+            }
+            selectY = selectSide * (dy + 10 * inputs);
+        }
+        ports.add(new Port(-20, selectY, select, false, false));
+        if (!"false".equals(component.attribute("enable", "true")))
+            ports.add(new Port(-10, selectY, 1, false, true));
+        ports.add(new Port(0, 0, width, true, false));
+    }
+
+    private static void decoderPorts(Component component, List<Port> ports)
+    {
+        int select = component.integer("select", 1);
+        int outputs = 1 << select;
+        boolean topRight = "tr".equals(component.attribute("selloc", "bl"));
+        ports.add(new Port(0, 0, select, false, false));
+        if (!"false".equals(component.attribute("enable", "true")))
+            ports.add(new Port(-10, 0, 1, false, true));
+        for (int i = 0; i < outputs; i++)
+        {
+            if (outputs == 2)
+                ports.add(new Port(10, (topRight ? 10 : -30) + 20 * i, 1, true, false));
+            else
+                ports.add(new Port(20, (topRight ? 0 : -10 * outputs) + 10 * i, 1, true, false));
+        }
+    }
+
+    /**
+     * Le premier port est l'extremite commune, les suivants sont les extremites separees.
+     */
+    private static void splitterPorts(Component component, List<Port> ports, Facing facing)
+    {
+        int fanout = component.integer("fanout", 2);
+        int[] ends = splitterEnds(component);
+        String appear = component.attribute("appear", "left");
+        int justify = "center".equals(appear) || "legacy".equals(appear) ? 0 : "right".equals(appear) ? 1 : -1;
+        int x;
+        int y;
+        int dx;
+        int dy;
+        if (facing == Facing.NORTH || facing == Facing.SOUTH)
+        {
+            int m = facing == Facing.NORTH ? 1 : -1;
+            x = justify == 0 ? 10 * ((fanout + 1) / 2 - 1) : m * justify < 0 ? -10 : 10 * fanout;
+            y = -m * 20;
+            dx = -10;
+            dy = 0;
+        }
+        else
+        {
+            int m = facing == Facing.WEST ? -1 : 1;
+            x = m * 20;
+            y = justify == 0 ? -10 * (fanout / 2) : m * justify > 0 ? 10 : -10 * fanout;
+            dx = 0;
+            dy = 10;
+        }
+        ports.add(new Port(0, 0, ends.length, false, false));
+        for (int end = 0; end < fanout; end++)
+        {
+            int width = 0;
+            for (int target : ends)
+            {
+                if (target == end)
+                    width += 1;
+            }
+            ports.add(new Port(x + dx * end, y + dy * end, width, false, false));
+        }
+    }
+
+    /**
+     * @return l'extremite separee de chaque bit de l'extremite commune, -1 si le bit n'est pas relie
+     */
+    private static int[] splitterEnds(Component component)
+    {
+        int fanout = component.integer("fanout", 2);
+        int[] ends = new int[component.integer("incoming", 2)];
+        int perEnd = ends.length / fanout;
+        int extra = ends.length % fanout;
+        int end = -1;
+        int left = 0;
+        for (int bit = 0; bit < ends.length; bit++)
+        {
+            if (fanout >= ends.length)
+            {
+                ends[bit] = bit;
+                continue;
+            }
+            if (left == 0)
+            {
+                end += 1;
+                left = perEnd + (extra-- > 0 ? 1 : 0);
+            }
+            ends[bit] = end;
+            left -= 1;
+        }
+        for (int bit = 0; bit < ends.length; bit++)
+        {
+            String value = component.attribute("bit" + bit, null);
+            if (value != null)
+                ends[bit] = "none".equals(value) ? -1 : Integer.parseInt(value);
+        }
+        return ends;
+    }
+
+    /**
+     * Orientation d'un composant.
+     */
+    private enum Facing
+    {
+        EAST, NORTH, WEST, SOUTH;
+
+        static Facing of(String facing)
+        {
+            return valueOf(facing.toUpperCase());
+        }
+
+        Facing reverse()
+        {
+            return values()[(ordinal() + 2) % 4];
+        }
+
+        /**
+         * Tourne la position de ports decrits pour un composant oriente a l'est.
+         */
+        void rotate(List<Port> ports)
+        {
+            for (Port port : ports)
+            {
+                int dx = port.dx;
+                int dy = port.dy;
+                switch (this)
+                {
+                    case NORTH: port.dx = dy;  port.dy = -dx; break;
+                    case WEST:  port.dx = -dx; port.dy = -dy; break;
+                    case SOUTH: port.dx = -dy; port.dy = dx;  break;
+                    default:    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * Port d'un composant.
+     */
+    private static final class Port
+    {
+        private int dx;
+        private int dy;
+        private final int width;
+        private final boolean output;
+        /**
+         * Vrai si l'entree vaut 1 lorsqu'elle n'est pas connectee.
+         */
+        private final boolean high;
+        private int point;
+        private int[] bits;
+
+        private Port(int dx, int dy, int width, boolean output, boolean high)
+        {
+            this.dx = dx;
+            this.dy = dy;
+            this.width = width;
+            this.output = output;
+            this.high = high;
+        }
+    }
+
+    /**
+     * Points d'un circuit, reunis par les fils et les tunnels.
+     */
+    private static final class Points
+    {
+        private final Map<Long, Integer> indexes = new HashMap<>();
+        private long[] locations = new long[64];
+        private int[] parent = new int[64];
+
+        int index(int x, int y)
+        {
+            long location = (long) x << 32 | (y & 0xFFFFFFFFL);
+            Integer index = indexes.get(location);
+            if (index != null)
+                return index;
+            int size = indexes.size();
+            if (size == parent.length)
+            {
+                parent = Arrays.copyOf(parent, size * 2);
+                locations = Arrays.copyOf(locations, size * 2);
+            }
+            parent[size] = size;
+            locations[size] = location;
+            indexes.put(location, size);
+            return size;
+        }
+
+        int size()
+        {
+            return indexes.size();
+        }
+
+        int find(int point)
+        {
+            while (parent[point] != point)
+                point = parent[point] = parent[parent[point]];
+            return point;
+        }
+
+        void union(int a, int b)
+        {
+            int ra = find(a);
+            int rb = find(b);
+            if (ra != rb)
+                parent[Math.max(ra, rb)] = Math.min(ra, rb);
+        }
+
+        String location(int point)
+        {
+            return "(" + (int) (locations[point] >> 32) + "," + (int) locations[point] + ")";
+        }
+    }
+
+    /**
+     * Composant tel qu'il est decrit dans le fichier.
+     */
+    private static final class Component
+    {
+        /**
+         * Description de la bibliotheque ("#Wiring", "file#RAM.circ"...), <tt>null</tt> pour un circuit du meme fichier.
+         */
+        private final String library;
+        private final String name;
+        private final int x;
+        private final int y;
+        private final Map<String, String> attributes = new HashMap<>();
+
+        private Component(String library, String name, int x, int y)
+        {
+            this.library = library;
+            this.name = name;
+            this.x = x;
+            this.y = y;
+        }
+
+        boolean is(String name)
+        {
+            return library != null && library.startsWith("#") && this.name.equals(name);
+        }
+
+        String attribute(String name, String otherwise)
+        {
+            return attributes.getOrDefault(name, otherwise);
+        }
+
+        int integer(String name, int otherwise)
+        {
+            String value = attributes.get(name);
+            return value == null ? otherwise : Integer.decode(value);
+        }
+    }
+
+    /**
+     * Circuit defini dans un fichier.
+     */
+    private static final class Definition
+    {
+        private final Library library;
+        private final String name;
+        private final List<int[]> wires = new ArrayList<>();
+        private final List<Component> components = new ArrayList<>();
+        private Map<Component, int[]> appearance;
+        /**
+         * Vrai lorsque le cablage du circuit a deja ete verifie.
+         */
+        private boolean checked;
+
+        private Definition(Library library, String name)
+        {
+            this.library = library;
+            this.name = name;
+        }
+
+        /**
+         * Calcule l'apparence par defaut du circuit, comme logisim :
+         * chaque pin est placee sur le cote oppose a son orientation,
+         * et la position du sous-circuit est celle de la premiere pin.
+         *
+         * @return la position de chaque pin relativement a celle du sous-circuit, dans l'ordre des ports
+         */
+        Map<Component, int[]> appearance()
+        {
+            if (appearance != null)
+                return appearance;
+            Map<Facing, List<Component>> edges = new EnumMap<>(Facing.class);
+            for (Facing facing : Facing.values())
+            {
+                edges.put(facing, new ArrayList<>());
+            }
+            for (Component component : components)
+            {
+                if (component.is("Pin"))
+                    edges.get(Facing.of(component.attribute("facing", "east")).reverse()).add(component);
+            }
+            Comparator<Component> byX = Comparator.<Component>comparingInt(c -> c.x).thenComparingInt(c -> c.y);
+            Comparator<Component> byY = Comparator.<Component>comparingInt(c -> c.y).thenComparingInt(c -> c.x);
+            edges.get(Facing.NORTH).sort(byX);
+            edges.get(Facing.SOUTH).sort(byX);
+            edges.get(Facing.EAST).sort(byY);
+            edges.get(Facing.WEST).sort(byY);
+
+            int north = edges.get(Facing.NORTH).size();
+            int south = edges.get(Facing.SOUTH).size();
+            int east = edges.get(Facing.EAST).size();
+            int west = edges.get(Facing.WEST).size();
+            int vertical = Math.max(north, south);
+            int horizontal = Math.max(east, west);
+            int offsetNorth = offset(north, south, horizontal);
+            int offsetSouth = offset(south, north, horizontal);
+            int offsetEast = offset(east, west, vertical);
+            int offsetWest = offset(west, east, vertical);
+            int width = dimension(vertical, horizontal);
+            int height = dimension(horizontal, vertical);
+
+            int ax;
+            int ay;
+            if (east > 0)
+            {
+                ax = width;
+                ay = offsetEast;
+            }
+            else if (north > 0)
+            {
+                ax = offsetNorth;
+                ay = 0;
+            }
+            else if (west > 0)
+            {
+                ax = 0;
+                ay = offsetWest;
+            }
+            else if (south > 0)
+            {
+                ax = offsetSouth;
+                ay = height;
+            }
+            else
+            {
+                ax = 0;
+                ay = 0;
+            }
+            int rx = 9 - (ax + 9) % 10;
+            int ry = 9 - (ay + 9) % 10;
+
+            appearance = new LinkedHashMap<>();
+            place(edges.get(Facing.WEST), rx - (rx + ax), ry + offsetWest - (ry + ay), 0, 10);
+            place(edges.get(Facing.EAST), rx + width - (rx + ax), ry + offsetEast - (ry + ay), 0, 10);
+            place(edges.get(Facing.NORTH), rx + offsetNorth - (rx + ax), ry - (ry + ay), 10, 0);
+            place(edges.get(Facing.SOUTH), rx + offsetSouth - (rx + ax), ry + height - (ry + ay), 10, 0);
+            return appearance;
+        }
+
+        private void place(List<Component> pins, int x, int y, int dx, int dy)
+        {
+            for (Component pin : pins)
+            {
+                appearance.put(pin, new int[]{x, y});
+                x += dx;
+                y += dy;
+            }
+        }
+
+        private static int dimension(int count, int others)
+        {
+            if (count < 3)
+                return 30;
+            return others == 0 ? 10 * count : 10 * count + 10;
+        }
+
+        private static int offset(int facing, int opposite, int others)
+        {
+            int count = Math.max(facing, opposite);
+            int offset;
+            if (count <= 1)
+                offset = others == 0 ? 15 : 10;
+            else if (count == 2)
+                offset = 10;
+            else
+                offset = others == 0 ? 5 : 10;
+            return offset + 10 * ((count - facing) / 2);
+        }
+    }
+
+    /**
+     * Fichier logisim et ses circuits.
+     */
+    private static final class Library
+    {
+        private final Path directory;
+        private final Map<String, Definition> circuits = new HashMap<>();
+        private final String main;
+
+        private Library(Path file) throws IOException
+        {
+            this.directory = file.getParent();
+            Document document;
+            try
+            {
+                document = DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(file.toFile());
+            }
+            catch (ParserConfigurationException | SAXException e)
+            {
+                throw new IOException("Not a logisim file: " + file, e);
+            }
+            Element project = document.getDocumentElement();
+            Map<String, String> libraries = new HashMap<>();
+            for (Element library : children(project, "lib"))
+            {
+                libraries.put(library.getAttribute("name"), library.getAttribute("desc"));
+            }
+            List<Element> main = children(project, "main");
+            this.main = main.isEmpty() ? "main" : main.get(0).getAttribute("name");
+            for (Element circuit : children(project, "circuit"))
+            {
+                Definition definition = new Definition(this, circuit.getAttribute("name"));
+                for (Element wire : children(circuit, "wire"))
+                {
+                    int[] from = location(wire.getAttribute("from"));
+                    int[] to = location(wire.getAttribute("to"));
+                    definition.wires.add(new int[]{from[0], from[1], to[0], to[1]});
+                }
+                for (Element element : children(circuit, "comp"))
+                {
+                    int[] location = location(element.getAttribute("loc"));
+                    String library = element.hasAttribute("lib") ? libraries.get(element.getAttribute("lib")) : null;
+                    Component component = new Component(library, element.getAttribute("name"), location[0], location[1]);
+                    for (Element attribute : children(element, "a"))
+                    {
+                        component.attributes.put(attribute.getAttribute("name"),
+                                attribute.hasAttribute("val") ? attribute.getAttribute("val") : attribute.getTextContent());
+                    }
+                    definition.components.add(component);
+                }
+                circuits.put(definition.name, definition);
+            }
+        }
+
+        Definition circuit(String name)
+        {
+            Definition circuit = circuits.get(name);
+            if (circuit == null)
+                throw new IllegalArgumentException("Circuit not found: " + name);
+            return circuit;
+        }
+
+        private static List<Element> children(Element parent, String tag)
+        {
+            List<Element> children = new ArrayList<>();
+            NodeList nodes = parent.getChildNodes();
+            for (int i = 0; i < nodes.getLength(); i++)
+            {
+                Node node = nodes.item(i);
+                if (node instanceof Element && tag.equals(node.getNodeName()))
+                    children.add((Element) node);
+            }
+            return children;
+        }
+
+        private static int[] location(String location)
+        {
+            int comma = location.indexOf(',');
+            return new int[]{Integer.parseInt(location.substring(1, comma).trim()), Integer.parseInt(location.substring(comma + 1, location.length() - 1).trim())};
+        }
+    }
+}
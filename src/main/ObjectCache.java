@@ -0,0 +1,192 @@
+package main;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Cache sur disque des {@link ObjectFile fichiers objets}, indexe par le contenu des fichiers sources.
+ * <p>
+ * La cle d'un fichier objet est l'empreinte SHA-256 de la source, du nom de l'analyseur
+ * et de la {@link ObjectFile#VERSION version} du format : une source inchangee n'est jamais analysee de nouveau,
+ * quel que soit son nom ou son emplacement.
+ * <p>
+ * Un index ({@value #INDEX}) associe a chaque source deja vue sa taille, sa date de modification et sa cle :
+ * une source dont la taille et la date n'ont pas change n'est pas relue.
+ * Le cache peut etre utilise par plusieurs threads ; un fichier objet est ecrit puis renomme,
+ * de sorte qu'un fichier partiellement ecrit n'est jamais lu.
+ *
+ * @see Linker
+ */
+final class ObjectCache
+{
+    /**
+     * Repertoire du cache par defaut.
+     */
+    static final String DIRECTORY = ".pepcache";
+    /**
+     * Nom de l'index des sources dans le repertoire du cache.
+     */
+    static final String INDEX = "index";
+    private static final String EXTENSION = ".o";
+
+    private final Path directory;
+    private final String parser;
+    private final Supplier<Parser> parsers;
+    /**
+     * Taille, date de modification et cle de chaque source, par chemin absolu.
+     */
+    private final Map<Path, String> index = new ConcurrentHashMap<>();
+    private final AtomicInteger hits = new AtomicInteger();
+    private final AtomicInteger misses = new AtomicInteger();
+
+    /**
+     * Ouvre le cache et lit son index s'il existe.
+     *
+     * @param directory le repertoire du cache, cree au premier fichier objet ecrit
+     * @param parser le nom de l'analyseur, voir {@link Assembler#parsers(String)}
+     * @throws IOException si l'index ne peut pas etre lu
+     */
+    ObjectCache(Path directory, String parser) throws IOException
+    {
+        this.directory = directory;
+        this.parser = parser;
+        this.parsers = Assembler.parsers(parser);
+        Path file = directory.resolve(INDEX);
+        if (Files.isRegularFile(file))
+        {
+            for (String line : Files.readAllLines(file, StandardCharsets.UTF_8))
+            {
+                String[] entry = line.split("\t", 2);
+                if (entry.length == 2)
+                    index.put(Paths.get(entry[1]), entry[0]);
+            }
+        }
+    }
+
+    /**
+     * Donne le fichier objet d'une source, en l'assemblant si elle n'est pas dans le cache.
+     *
+     * @param source le fichier source
+     * @return le fichier objet de la source
+     * @throws IOException si la source ne peut pas etre lue ou le fichier objet ecrit
+     * @throws IllegalArgumentException si une instruction ne peut pas etre codee
+     */
+    ObjectFile get(Path source) throws IOException
+    {
+        source = source.toAbsolutePath().normalize();
+        BasicFileAttributes attributes = Files.readAttributes(source, BasicFileAttributes.class);
+        String stamp = attributes.size() + ":" + attributes.lastModifiedTime().toMillis() + ":" + parser + ":";
+        String known = index.get(source);
+        if (known != null && known.startsWith(stamp))
+        {
+            ObjectFile object = load(known.substring(stamp.length()));
+            if (object != null)
+                return object;
+        }
+
+        byte[] bytes = Files.readAllBytes(source);
+        String key = key(bytes);
+        index.put(source, stamp + key);
+        ObjectFile object = load(key);
+        if (object != null)
+            return object;
+        misses.incrementAndGet();
+        object = Assembler.compile(Source.of(ByteBuffer.wrap(bytes)), parsers);
+        Files.createDirectories(directory);
+        Path temporary = Files.createTempFile(directory, key, ".tmp");
+        object.write(temporary);
+        Files.move(temporary, directory.resolve(key + EXTENSION), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return object;
+    }
+
+    /**
+     * @return le fichier objet de la cle, ou <tt>null</tt> s'il est absent ou illisible
+     */
+    private ObjectFile load(String key)
+    {
+        Path file = directory.resolve(key + EXTENSION);
+        if (!Files.isRegularFile(file))
+            return null;
+        try
+        {
+            ObjectFile object = ObjectFile.read(file);
+            hits.incrementAndGet();
+            return object;
+        }
+        catch (IOException e)
+        {
+            // Un fichier objet d'une autre version ou tronque est assemble de nouveau
+            return null;
+        }
+    }
+
+    private String key(byte[] bytes)
+    {
+        try
+        {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update((ObjectFile.VERSION + ":" + parser + ":").getBytes(StandardCharsets.UTF_8));
+            StringBuilder key = new StringBuilder();
+            for (byte b : digest.digest(bytes))
+                key.append(String.format("%02x", b));
+            return key.toString();
+        }
+        catch (NoSuchAlgorithmException e)
+        {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Ecrit l'index des sources.
+     *
+     * @throws IOException si l'index ne peut pas etre ecrit
+     */
+    void save() throws IOException
+    {
+        if (index.isEmpty())
+            return;
+        Files.createDirectories(directory);
+        Path temporary = Files.createTempFile(directory, INDEX, ".tmp");
+        try (BufferedWriter out = Files.newBufferedWriter(temporary, StandardCharsets.UTF_8))
+        {
+            for (Map.Entry<Path, String> entry : index.entrySet())
+            {
+                out.write(entry.getValue());
+                out.write('\t');
+                out.write(entry.getKey().toString());
+                out.newLine();
+            }
+        }
+        Files.move(temporary, directory.resolve(INDEX), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * @return le nombre de fichiers objets lus dans le cache
+     */
+    int getHits()
+    {
+        return hits.get();
+    }
+
+    /**
+     * @return le nombre de sources assemblees
+     */
+    int getMisses()
+    {
+        return misses.get();
+    }
+}
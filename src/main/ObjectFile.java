@@ -0,0 +1,237 @@
+package main;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Fichier objet relogeable, produit par {@link Assembler#compile(Source, java.util.function.Supplier)}
+ * et assemble avec d'autres par le {@link Linker}.
+ * <p>
+ * Les branchements codent le numero absolu de l'instruction cible :
+ * chaque branchement du fichier est donc reloge, vers un label du fichier
+ * (la cible est decalee de l'adresse du fichier dans le programme)
+ * ou vers un label exporte par un autre fichier (la cible est celle du label).
+ * Les labels du fichier, d'instruction comme de donnee, lui sont locaux
+ * sauf ceux que la directive <tt>.global</tt> exporte, voir {@link DataSection}.
+ * Les chargements depuis la {@link LiteralPool reserve des constantes} sont aussi reloges :
+ * leur symbole est la constante precedee de {@value #LITERAL}, et l'editeur de liens lui donne son adresse
+ * dans la reserve du programme.
+ * La {@link DataSection section de donnees} du fichier est placee a la suite de celles des fichiers precedents :
+ * un acces a un label de donnee est reloge par le nom du label, precede de {@value #DATA}.
+ * <p>
+ * Format binaire, en big-endian :
+ * <pre>
+ * int     {@value #MAGIC} puis {@value #VERSION}
+ * int     nombre de mots, suivi des mots sur 16 bits
+ * int     nombre de labels, suivi pour chacun du nom (UTF) et de son adresse (int)
+ * int     nombre de labels exportes, suivi du nom de chacun (UTF)
+ * int     nombre de relocations, suivi pour chacune de l'adresse du branchement (int)
+ *         et du label externe (UTF, vide pour un label du fichier, {@value #LITERAL} suivi de la constante
+ *         pour un chargement depuis la reserve, {@value #DATA} suivi du label pour un acces aux donnees)
+ * int     nombre de labels de donnee, suivi pour chacun du nom (UTF) et de son adresse (int)
+ * int     nombre de suites de donnees, suivi pour chacune de la valeur et du nombre de mots (int)
+ * </pre>
+ *
+ * @see Linker
+ */
+final class ObjectFile
+{
+    /**
+     * Signature des fichiers objets, "PEPO".
+     */
+    static final int MAGIC = 0x5045504F;
+    /**
+     * Version du format, a changer avec le format ou le codage des instructions.
+     */
+    static final int VERSION = 4;
+    /**
+     * Prefixe du symbole d'un chargement depuis la reserve des constantes.
+     */
+    static final String LITERAL = "=";
+    /**
+     * Prefixe du symbole d'un acces a un label de donnee.
+     */
+    static final String DATA = "@";
+
+    private final int[] words;
+    /**
+     * Labels d'instruction du fichier et leur adresse dans le fichier.
+     */
+    private final Map<String, Integer> symbols;
+    /**
+     * Labels d'instruction et de donnee visibles des autres fichiers.
+     */
+    private final Set<String> exported;
+    private final List<Relocation> relocations;
+    private final DataSection data;
+
+    ObjectFile(int[] words, Map<String, Integer> symbols, Set<String> exported, List<Relocation> relocations, DataSection data)
+    {
+        this.words = words;
+        this.symbols = symbols;
+        this.exported = exported;
+        this.relocations = relocations;
+        this.data = data;
+    }
+
+    int[] getWords()
+    {
+        return words;
+    }
+
+    Map<String, Integer> getSymbols()
+    {
+        return Collections.unmodifiableMap(symbols);
+    }
+
+    Set<String> getExported()
+    {
+        return Collections.unmodifiableSet(exported);
+    }
+
+    List<Relocation> getRelocations()
+    {
+        return Collections.unmodifiableList(relocations);
+    }
+
+    DataSection getData()
+    {
+        return data;
+    }
+
+    /**
+     * Ecrit le fichier objet.
+     *
+     * @param path le fichier a ecrire
+     * @throws IOException si le fichier ne peut pas etre ecrit
+     */
+    void write(Path path) throws IOException
+    {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path))))
+        {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(words.length);
+            for (int word : words)
+                out.writeShort(word);
+            out.writeInt(symbols.size());
+            for (Map.Entry<String, Integer> symbol : symbols.entrySet())
+            {
+                out.writeUTF(symbol.getKey());
+                out.writeInt(symbol.getValue());
+            }
+            out.writeInt(exported.size());
+            for (String label : exported)
+                out.writeUTF(label);
+            out.writeInt(relocations.size());
+            for (Relocation relocation : relocations)
+            {
+                out.writeInt(relocation.index);
+                out.writeUTF(relocation.symbol == null ? "" : relocation.symbol);
+            }
+            out.writeInt(data.getLabels().size());
+            for (Map.Entry<String, Integer> label : data.getLabels().entrySet())
+            {
+                out.writeUTF(label.getKey());
+                out.writeInt(label.getValue());
+            }
+            out.writeInt(data.getRuns());
+            for (int i = 0; i < data.getRuns(); i++)
+            {
+                out.writeInt(data.value(i));
+                out.writeInt(data.count(i));
+            }
+        }
+    }
+
+    /**
+     * Lit un fichier objet.
+     *
+     * @param path le fichier a lire
+     * @return le fichier objet
+     * @throws IOException si le fichier n'existe pas ou n'est pas un fichier objet de cette version
+     */
+    static ObjectFile read(Path path) throws IOException
+    {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path))))
+        {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION)
+                throw new IOException("Not an object file: " + path);
+            int[] words = new int[in.readInt()];
+            for (int i = 0; i < words.length; i++)
+                words[i] = in.readUnsignedShort();
+            int count = in.readInt();
+            Map<String, Integer> symbols = new LinkedHashMap<>();
+            for (int i = 0; i < count; i++)
+                symbols.put(in.readUTF(), in.readInt());
+            count = in.readInt();
+            Set<String> exported = new LinkedHashSet<>();
+            for (int i = 0; i < count; i++)
+                exported.add(in.readUTF());
+            count = in.readInt();
+            List<Relocation> relocations = new ArrayList<>(count);
+            for (int i = 0; i < count; i++)
+            {
+                int index = in.readInt();
+                String symbol = in.readUTF();
+                relocations.add(new Relocation(index, symbol.isEmpty() ? null : symbol));
+            }
+            DataSection data = new DataSection();
+            count = in.readInt();
+            Map<String, Integer> labels = new LinkedHashMap<>();
+            for (int i = 0; i < count; i++)
+                labels.put(in.readUTF(), in.readInt());
+            count = in.readInt();
+            for (int i = 0; i < count; i++)
+            {
+                int value = in.readInt();
+                data.fill(in.readInt(), value);
+            }
+            labels.forEach(data::define);
+            return new ObjectFile(words, symbols, exported, relocations, data);
+        }
+    }
+
+    /**
+     * Branchement dont la cible depend de l'adresse des fichiers dans le programme,
+     * chargement d'une constante dont l'adresse depend de la reserve du programme,
+     * ou acces a une donnee dont l'adresse depend de la section de donnees du programme.
+     */
+    static final class Relocation
+    {
+        private final int index;
+        /**
+         * Label du fichier dont la cible est hors du champ ou label defini dans un autre fichier, constante precedee de {@link #LITERAL},
+         * label de donnee precede de {@link #DATA}, ou <tt>null</tt> si la cible est dans le fichier.
+         */
+        private final String symbol;
+
+        Relocation(int index, String symbol)
+        {
+            this.index = index;
+            this.symbol = symbol;
+        }
+
+        int getIndex()
+        {
+            return index;
+        }
+
+        String getSymbol()
+        {
+            return symbol;
+        }
+    }
+}
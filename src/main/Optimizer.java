@@ -0,0 +1,736 @@
+package main;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Optimisation "peephole" d'un programme, entre l'analyse des lignes et le codage des branchements.
+ * <p>
+ * L'{@link Assembler} y ajoute chaque instruction codee, avec le label vise si c'est un branchement.
+ * Les labels sont resolus en numeros d'instruction avant l'optimisation, comme le ferait l'assembleur,
+ * puis les passes suivantes sont repetees jusqu'a ce qu'aucune ne change plus le programme :
+ * <ul>
+ * <li>un branchement vers un branchement inconditionnel vise directement la cible de celui-ci ;</li>
+ * <li>un branchement vers l'instruction suivante est supprime ;</li>
+ * <li>le code inaccessible depuis la premiere instruction, notamment celui qui suit un <tt>B</tt>, est supprime ;</li>
+ * <li>un <tt>MUL</tt> par un registre contenant une puissance de 2 devient un <tt>LSL</tt> ;</li>
+ * <li>un <tt>MOV</tt> est supprime si le registre contient deja la valeur, ou si ni le registre ni les flags ne sont relus ;</li>
+ * <li>un <tt>ADD Rd, Rd, #0</tt> ou un <tt>LSL Rd, Rd, #0</tt> dont les flags ne sont pas relus est supprime ;</li>
+ * <li>un <tt>CMP Rn, Rz</tt>, <tt>Rz</tt> valant 0, est supprime lorsque l'instruction precedente vient d'ecrire <tt>Rn</tt>
+ * et de mettre a jour N et Z, et que C et V ne sont pas relus.</li>
+ * </ul>
+ * Les instructions de traitement de donnees mettant toujours les flags a jour (voir {@link Simulator}),
+ * chaque suppression verifie que les flags qu'elle ne produit plus ne sont pas relus.
+ * Les valeurs des registres sont connues uniquement apres un <tt>MOV</tt>, sur tous les chemins menant a l'instruction.
+ * Les labels d'une instruction supprimee passent a l'instruction suivante.
+ * <p>
+ * Le chemin de donnees PEP executant une instruction par cycle,
+ * le nombre de cycles economises est estime en executant le programme avant et apres optimisation avec le {@link Simulator}.
+ *
+ * @see Assembler
+ */
+final class Optimizer
+{
+    /**
+     * Nombre maximal d'instructions executees par le simulateur pour estimer le nombre de cycles.
+     */
+    static final long LIMIT = 10_000_000L;
+    /**
+     * Masque des registres dans un ensemble de registres et de flags.
+     */
+    private static final int REGISTERS = (1 << Simulator.REGISTERS) - 1;
+    private static final int N = 1 << 8;
+    private static final int Z = 1 << 9;
+    private static final int C = 1 << 10;
+    private static final int V = 1 << 11;
+    private static final int ALL = REGISTERS | N | Z | C | V;
+    /**
+     * Resultat d'un programme : les registres, les flags n'etant pas observes a l'arret.
+     */
+    private static final int RESULT = REGISTERS;
+    /**
+     * Flags lus par chaque condition, dans l'ordre de {@link Condition}.
+     */
+    private static final int[] CONDITION_FLAGS = {Z, Z, C, C, N, N, V, V, C | Z, C | Z, N | V, N | V, N | Z | V, N | Z | V, 0};
+    /**
+     * Marque une instruction atteinte par l'analyse des valeurs des registres.
+     */
+    private static final int VISITED = 1 << 8;
+    /**
+     * Nombre maximal de branchements suivis pour retrouver la cible finale d'un branchement.
+     */
+    private static final int CHAIN = 64;
+
+    /**
+     * Transformations appliquees au programme.
+     */
+    enum Rule
+    {
+        THREAD("branches threaded"),
+        JUMP("branches to next removed"),
+        UNREACHABLE("unreachable removed"),
+        MUL("MUL reduced to LSL"),
+        MOV("MOV removed"),
+        SELF_MOVE("self-moves removed"),
+        CMP("CMP folded");
+
+        private final String label;
+
+        Rule(String label)
+        {
+            this.label = label;
+        }
+    }
+
+    /**
+     * Instructions definies pour chaque label.
+     */
+    private final Map<String, List<Integer>> labels = new HashMap<>();
+    private final int[] applied = new int[Rule.values().length];
+    private Instructions[] instructions = new Instructions[256];
+    private int[] words = new int[256];
+    /**
+     * Label vise par chaque branchement, <tt>null</tt> pour les autres instructions.
+     */
+    private String[] names = new String[256];
+    private int size;
+
+    /**
+     * Numero de l'instruction visee par chaque branchement.
+     */
+    private int[] targets;
+    private boolean[] removed;
+    /**
+     * Premiere instruction conservee a partir de chaque numero, <tt>size</tt> s'il n'y en a plus.
+     */
+    private int[] following;
+    private boolean[] targeted;
+    /**
+     * Registres et flags relus apres chaque instruction.
+     */
+    private int[] live;
+    /**
+     * Registres de valeur connue avant chaque instruction, et {@link #VISITED}.
+     */
+    private int[] known;
+    /**
+     * Valeur des registres avant chaque instruction, 8 par instruction.
+     */
+    private int[] values;
+
+    private int[] original;
+    private int[] program;
+
+    /**
+     * Definit un label sur la prochaine instruction ajoutee.
+     *
+     * @param label le nom du label
+     */
+    void label(String label)
+    {
+        labels.computeIfAbsent(label, key -> new ArrayList<>()).add(size);
+    }
+
+    /**
+     * Ajoute une instruction a la fin du programme.
+     *
+     * @param instruction l'instruction
+     * @param word son codage, avec une cible nulle pour un branchement
+     * @param target le label vise par un branchement, <tt>null</tt> sinon
+     */
+    void add(Instructions instruction, int word, String target)
+    {
+        if (size == words.length)
+        {
+            instructions = Arrays.copyOf(instructions, size * 2);
+            words = Arrays.copyOf(words, size * 2);
+            names = Arrays.copyOf(names, size * 2);
+        }
+        instructions[size] = instruction;
+        words[size] = word;
+        names[size] = target;
+        size += 1;
+    }
+
+    /**
+     * @return le nombre d'instructions ajoutees
+     */
+    int getSize()
+    {
+        return size;
+    }
+
+    /**
+     * Ajoute l'adresse d'un label de donnee au codage d'une instruction deja ajoutee, voir {@link DataSection}.
+     *
+     * @param index le numero de l'instruction, dans l'ordre d'ajout
+     * @param address l'adresse du label dans la RAM
+     */
+    void locate(int index, int address)
+    {
+        words[index] = LiteralPool.relocate(words[index], address);
+    }
+
+    /**
+     * Optimise le programme et code ses branchements.
+     *
+     * @return le codage de chaque instruction du programme optimise
+     * @throws IllegalArgumentException si un label n'est pas defini ou si une cible ne tient pas dans son champ
+     */
+    int[] optimize()
+    {
+        resolve();
+        try
+        {
+            original = link();
+        }
+        catch (IllegalArgumentException e)
+        {
+            // Le programme ne tient peut-etre qu'une fois optimise
+            original = null;
+        }
+        boolean changed = true;
+        while (changed)
+        {
+            changed = thread() | jumps() | unreachable();
+            analyse();
+            if (reduce())
+            {
+                changed = true;
+                analyse();
+            }
+            changed |= clean();
+        }
+        program = link();
+        return program;
+    }
+
+    /**
+     * @param rule une transformation
+     * @return le nombre de fois ou elle a ete appliquee
+     */
+    int applied(Rule rule)
+    {
+        return applied[rule.ordinal()];
+    }
+
+    /**
+     * @return le nombre d'instructions et de cycles economises, et le detail des transformations appliquees
+     */
+    String report()
+    {
+        StringBuilder text = new StringBuilder();
+        text.append(String.format("%-24s %d -> %d (%d saved)%n", "instructions", size, program.length, size - program.length));
+        for (Rule rule : Rule.values())
+            text.append(String.format("%-24s %d%n", rule.label, applied(rule)));
+        long before = original == null ? -1 : cycles(original);
+        long after = cycles(program);
+        if (before < 0 || after < 0)
+            text.append(String.format("%-24s not estimated (larger than the ROM or no stop within %d instructions)%n", "cycles", LIMIT));
+        else
+            text.append(String.format("%-24s %d -> %d (%d saved)%n", "cycles", before, after, before - after));
+        return text.toString();
+    }
+
+    /**
+     * @return le nombre d'instructions executees par le simulateur jusqu'a l'arret du programme,
+     *         ou -1 si le programme ne tient pas dans la ROM
+     */
+    private static long cycles(int[] program)
+    {
+        if (program.length > Simulator.ROM_SIZE)
+            return -1;
+        Simulator simulator = new Simulator(program);
+        Simulator.Status status = simulator.run(LIMIT);
+        return status == Simulator.Status.HALTED || status == Simulator.Status.LOOP ? simulator.getExecuted() : -1;
+    }
+
+    /**
+     * Remplace le label de chaque branchement par le numero de l'instruction visee, comme l'assembleur :
+     * la derniere definition du label au plus a l'adresse du branchement, sinon la premiere definition suivante.
+     */
+    private void resolve()
+    {
+        targets = new int[size];
+        removed = new boolean[size];
+        for (int i = 0; i < size; i++)
+        {
+            if (names[i] == null)
+                continue;
+            List<Integer> definitions = labels.get(names[i]);
+            if (definitions == null)
+                throw new IllegalArgumentException("Label not found: " + names[i]);
+            targets[i] = definitions.get(0);
+            for (int definition : definitions)
+            {
+                if (definition > i)
+                    break;
+                targets[i] = definition;
+            }
+        }
+    }
+
+    /**
+     * Numerote les instructions conservees et code les branchements.
+     *
+     * @return le codage de chaque instruction conservee
+     */
+    private int[] link()
+    {
+        int[] address = new int[size + 1];
+        int count = 0;
+        for (int i = 0; i < size; i++)
+        {
+            address[i] = count;
+            if (!removed[i])
+                count += 1;
+        }
+        address[size] = count;
+        int[] program = new int[count];
+        for (int i = 0; i < size; i++)
+        {
+            if (!removed[i])
+                program[address[i]] = names[i] == null ? words[i] : Encoding.target(words[i], address[targets[i]]);
+        }
+        return program;
+    }
+
+    /**
+     * Recalcule {@link #following} apres la suppression d'instructions.
+     */
+    private void follow()
+    {
+        following = following == null ? new int[size + 1] : following;
+        following[size] = size;
+        for (int i = size - 1; i >= 0; i--)
+            following[i] = removed[i] ? following[i + 1] : i;
+    }
+
+    private boolean isBranch(int i)
+    {
+        return names[i] != null;
+    }
+
+    /**
+     * @return vrai si l'instruction ne passe jamais a l'instruction suivante
+     */
+    private boolean isUnconditional(int i)
+    {
+        return instructions[i] == Instructions.B || instructions[i] == Instructions.BC && field(i, 0) == Condition.AL.ordinal();
+    }
+
+    /**
+     * @return la valeur d'un champ de l'instruction, dans l'ordre de {@link Encoding#getFields()}
+     */
+    private int field(int i, int field)
+    {
+        return instructions[i].getEncoding().getFields()[field].decode(words[i]);
+    }
+
+    private void remove(int i, Rule rule)
+    {
+        removed[i] = true;
+        applied[rule.ordinal()] += 1;
+    }
+
+    /**
+     * Fait viser a chaque branchement la cible finale d'une suite de branchements inconditionnels.
+     */
+    private boolean thread()
+    {
+        follow();
+        boolean changed = false;
+        for (int i = 0; i < size; i++)
+        {
+            if (removed[i] || !isBranch(i))
+                continue;
+            targets[i] = following[targets[i]];
+            int target = targets[i];
+            for (int steps = 0; target < size && isUnconditional(target); steps++)
+            {
+                // Une boucle de branchements n'a pas de cible finale
+                if (steps == CHAIN || following[targets[target]] == target)
+                {
+                    target = targets[i];
+                    break;
+                }
+                target = following[targets[target]];
+            }
+            if (target != targets[i])
+            {
+                targets[i] = target;
+                applied[Rule.THREAD.ordinal()] += 1;
+                changed = true;
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * Supprime les branchements vers l'instruction suivante.
+     */
+    private boolean jumps()
+    {
+        follow();
+        boolean changed = false;
+        for (int i = 0; i < size; i++)
+        {
+            if (!removed[i] && isBranch(i) && following[targets[i]] == following[i + 1])
+            {
+                remove(i, Rule.JUMP);
+                changed = true;
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * Supprime les instructions inaccessibles depuis la premiere instruction.
+     */
+    private boolean unreachable()
+    {
+        follow();
+        boolean[] reached = new boolean[size + 1];
+        int[] stack = new int[size + 1];
+        int top = 0;
+        stack[top++] = following[0];
+        reached[following[0]] = true;
+        while (top > 0)
+        {
+            int i = stack[--top];
+            if (i == size)
+                continue;
+            if (!isUnconditional(i) && !reached[following[i + 1]])
+            {
+                reached[following[i + 1]] = true;
+                stack[top++] = following[i + 1];
+            }
+            if (isBranch(i) && !reached[following[targets[i]]])
+            {
+                reached[following[targets[i]]] = true;
+                stack[top++] = following[targets[i]];
+            }
+        }
+        boolean changed = false;
+        for (int i = 0; i < size; i++)
+        {
+            if (!removed[i] && !reached[i])
+            {
+                remove(i, Rule.UNREACHABLE);
+                changed = true;
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * Calcule les cibles des branchements, les registres et flags relus apres chaque instruction
+     * et les valeurs connues des registres avant chaque instruction.
+     */
+    private void analyse()
+    {
+        follow();
+        targeted = new boolean[size + 1];
+        for (int i = 0; i < size; i++)
+        {
+            if (!removed[i] && isBranch(i))
+                targeted[following[targets[i]]] = true;
+        }
+        liveness();
+        constants();
+    }
+
+    /**
+     * Analyse arriere des registres et flags relus.
+     * Les registres sont relus a l'arret du programme : apres la derniere instruction ou sur un branchement vers lui-meme.
+     * Tout est d'abord suppose relu, notamment dans une boucle sans sortie, puis l'ensemble est reduit jusqu'au point fixe.
+     */
+    private void liveness()
+    {
+        live = live == null ? new int[size] : live;
+        Arrays.fill(live, ALL);
+        boolean changed = true;
+        while (changed)
+        {
+            changed = false;
+            for (int i = size - 1; i >= 0; i--)
+            {
+                if (removed[i])
+                    continue;
+                int out;
+                if (isUnconditional(i) && following[targets[i]] == i)
+                    out = RESULT;
+                else
+                {
+                    out = isUnconditional(i) ? 0 : liveIn(following[i + 1]);
+                    if (isBranch(i))
+                        out |= liveIn(following[targets[i]]);
+                }
+                if (out != live[i])
+                {
+                    live[i] = out;
+                    changed = true;
+                }
+            }
+        }
+    }
+
+    private int liveIn(int i)
+    {
+        return i == size ? RESULT : uses(i) | live[i] & ~defines(i);
+    }
+
+    /**
+     * Analyse avant des valeurs des registres : une valeur est connue si elle est la meme sur tous les chemins.
+     */
+    private void constants()
+    {
+        known = known == null ? new int[size + 1] : known;
+        values = values == null ? new int[(size + 1) * Simulator.REGISTERS] : values;
+        Arrays.fill(known, 0);
+        known[following[0]] = VISITED;
+        int[] out = new int[Simulator.REGISTERS];
+        boolean changed = true;
+        while (changed)
+        {
+            changed = false;
+            for (int i = 0; i < size; i++)
+            {
+                if (removed[i] || (known[i] & VISITED) == 0)
+                    continue;
+                System.arraycopy(values, i * Simulator.REGISTERS, out, 0, Simulator.REGISTERS);
+                int mask = known[i] & REGISTERS & ~defines(i);
+                if (instructions[i] == Instructions.MOV)
+                {
+                    mask |= 1 << field(i, 0);
+                    out[field(i, 0)] = field(i, 1);
+                }
+                if (!isUnconditional(i))
+                    changed |= merge(following[i + 1], mask, out);
+                if (isBranch(i))
+                    changed |= merge(following[targets[i]], mask, out);
+            }
+        }
+    }
+
+    /**
+     * Ajoute les valeurs arrivant par un chemin aux valeurs connues avant une instruction.
+     *
+     * @return vrai si les valeurs connues ont change
+     */
+    private boolean merge(int i, int mask, int[] registers)
+    {
+        if (i == size)
+            return false;
+        int offset = i * Simulator.REGISTERS;
+        if ((known[i] & VISITED) == 0)
+        {
+            known[i] = mask | VISITED;
+            System.arraycopy(registers, 0, values, offset, Simulator.REGISTERS);
+            return true;
+        }
+        int merged = known[i] & mask;
+        for (int r = 0; r < Simulator.REGISTERS; r++)
+        {
+            if ((merged & 1 << r) != 0 && values[offset + r] != registers[r])
+                merged &= ~(1 << r);
+        }
+        merged |= VISITED;
+        if (merged == known[i])
+            return false;
+        known[i] = merged;
+        return true;
+    }
+
+    private boolean isKnown(int i, int register, int value)
+    {
+        return (known[i] & 1 << register) != 0 && values[i * Simulator.REGISTERS + register] == value;
+    }
+
+    /**
+     * @return le logarithme en base 2 de la valeur connue d'un registre si c'est une puissance de 2, -1 sinon
+     */
+    private int log2(int i, int register)
+    {
+        int value = values[i * Simulator.REGISTERS + register];
+        return (known[i] & 1 << register) != 0 && value > 0 && Integer.bitCount(value) == 1 ? Integer.numberOfTrailingZeros(value) : -1;
+    }
+
+    /**
+     * Applique les transformations utilisant les valeurs connues des registres.
+     * Aucune ne rend relu un flag qui ne l'etait pas, sauf la suppression d'un CMP entre lui et l'instruction precedente :
+     * celle-ci est examinee avant le CMP, les analyses restent donc valables pendant tout le parcours.
+     */
+    private boolean reduce()
+    {
+        boolean changed = false;
+        int previous = -1;
+        for (int i = 0; i < size; i++)
+        {
+            if (removed[i])
+                continue;
+            switch (instructions[i])
+            {
+                case MOV:
+                    if (isKnown(i, field(i, 0), field(i, 1)) && (live[i] & (N | Z)) == 0)
+                    {
+                        remove(i, Rule.MOV);
+                        changed = true;
+                    }
+                    break;
+                case MUL:
+                    changed |= multiply(i);
+                    break;
+                case CMP:
+                    // CMP Rn, #0 donne C = 1 et V = 0 : ces flags ne doivent pas etre relus
+                    int rn = field(i, 1);
+                    if (isKnown(i, field(i, 0), 0) && !targeted[i] && (live[i] & (C | V)) == 0
+                            && previous >= 0 && following[previous + 1] == i && !isBranch(previous)
+                            && (defines(previous) & (1 << rn | N | Z)) == (1 << rn | N | Z))
+                    {
+                        remove(i, Rule.CMP);
+                        changed = true;
+                    }
+                    break;
+                default:
+                    break;
+            }
+            if (!removed[i])
+                previous = i;
+        }
+        return changed;
+    }
+
+    /**
+     * Remplace <tt>MUL Rd, Rm</tt> par un decalage si l'une des operandes contient une puissance de 2.
+     */
+    private boolean multiply(int i)
+    {
+        int rm = field(i, 0);
+        int rd = field(i, 1);
+        int shift = log2(i, rm);
+        int source = rd;
+        if (shift < 0 && rd != rm)
+        {
+            shift = log2(i, rd);
+            source = rm;
+        }
+        // MUL ne modifie pas C, contrairement a LSL d'au moins 1 bit
+        if (shift < 0 || shift > 0 && (live[i] & C) != 0)
+            return false;
+        instructions[i] = Instructions.LSL_I;
+        words[i] = Instructions.LSL_I.getEncoding().encode(shift, source, rd);
+        applied[Rule.MUL.ordinal()] += 1;
+        return true;
+    }
+
+    /**
+     * Supprime les instructions dont le resultat n'est jamais relu.
+     * Ces suppressions ne rendent relu aucun registre ni flag, les analyses restent valables pendant tout le parcours.
+     */
+    private boolean clean()
+    {
+        boolean changed = false;
+        for (int i = 0; i < size; i++)
+        {
+            if (removed[i])
+                continue;
+            switch (instructions[i])
+            {
+                case MOV:
+                    if ((live[i] & (1 << field(i, 0) | N | Z)) == 0)
+                    {
+                        remove(i, Rule.MOV);
+                        changed = true;
+                    }
+                    break;
+                case ADD_I:
+                    if (field(i, 0) == 0 && field(i, 1) == field(i, 2) && (live[i] & (N | Z | C | V)) == 0)
+                    {
+                        remove(i, Rule.SELF_MOVE);
+                        changed = true;
+                    }
+                    break;
+                case LSL_I:
+                    if (field(i, 0) == 0 && field(i, 1) == field(i, 2) && (live[i] & (N | Z)) == 0)
+                    {
+                        remove(i, Rule.SELF_MOVE);
+                        changed = true;
+                    }
+                    break;
+                default:
+                    break;
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * @return les registres et flags lus par une instruction
+     */
+    private int uses(int i)
+    {
+        switch (instructions[i])
+        {
+            case AND: case EOR: case LSL_R: case LSR_R: case ASR_R: case ROR:
+            case TST: case CMP: case CMN: case ORR: case MUL: case BIC:
+                return 1 << field(i, 0) | 1 << field(i, 1);
+            case ADC: case SBC:
+                return 1 << field(i, 0) | 1 << field(i, 1) | C;
+            case RSB: case MVN:
+                return 1 << field(i, 0);
+            case LSL_I: case LSR_I: case ASR_I: case ADD_I:
+                return 1 << field(i, 1);
+            case ADD_R: case SUB:
+                return 1 << field(i, 0) | 1 << field(i, 1);
+            case STR_I: case STR_R:
+                return 1 << field(i, 0);
+            case BC:
+                return CONDITION_FLAGS[field(i, 0)];
+            case MOV: case LDR_I: case LDR_R: case B:
+                return 0;
+            default:
+                // Instruction inconnue : tout est suppose lu
+                return ALL;
+        }
+    }
+
+    /**
+     * @return les registres et flags toujours ecrits par une instruction
+     */
+    private int defines(int i)
+    {
+        switch (instructions[i])
+        {
+            case AND: case EOR: case ORR: case MUL: case BIC:
+            case LSL_R: case LSR_R: case ASR_R: case ROR:
+                // Un decalage par registre ne modifie C que si le decalage n'est pas nul
+                return 1 << field(i, 1) | N | Z;
+            case ADC: case SBC:
+                return 1 << field(i, 1) | N | Z | C | V;
+            case TST:
+                return N | Z;
+            case CMP: case CMN:
+                return N | Z | C | V;
+            case RSB:
+                return 1 << field(i, 1) | N | Z | C | V;
+            case MVN:
+                return 1 << field(i, 1) | N | Z;
+            case LSL_I:
+                return 1 << field(i, 2) | N | Z | (field(i, 0) != 0 ? C : 0);
+            case LSR_I: case ASR_I:
+                return 1 << field(i, 2) | N | Z | C;
+            case ADD_R: case ADD_I: case SUB:
+                return 1 << field(i, 2) | N | Z | C | V;
+            case MOV:
+                return 1 << field(i, 0) | N | Z;
+            case LDR_I: case LDR_R:
+                return 1 << field(i, 0);
+            default:
+                return 0;
+        }
+    }
+}
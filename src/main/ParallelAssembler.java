@@ -0,0 +1,415 @@
+package main;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+import main.Metrics.Counter;
+import main.Metrics.Phase;
+
+import static main.Assembler.*;
+
+/**
+ * Assemble un programme en parallele, en deux phases, sur un {@link ForkJoinPool}.
+ * <p>
+ * Phase 1 : la source est decoupee en parties analysees en parallele.
+ * Chaque partie code ses instructions, compte ses instructions et releve ses labels et ses branchements.
+ * Une somme prefixe sur le nombre d'instructions donne ensuite l'adresse de chaque partie,
+ * et les labels des parties sont reunis dans une table globale.
+ * <p>
+ * Les constantes chargees depuis la reserve recoivent leur adresse entre les deux phases, dans l'ordre de la source.
+ * Les sections de donnees des parties sont reunies de la meme facon ; une partie analysee hors de la section de donnees
+ * alors qu'elle commence dans celle-ci est analysee de nouveau, ce qui n'arrive qu'aux parties coupant une section de donnees.
+ * <p>
+ * Phase 2 : chaque partie resout ses branchements avec la table globale et copie ses instructions
+ * a sa place dans le programme, en parallele.
+ * <p>
+ * Le resultat est identique a celui de l'assembleur sequentiel, y compris pour un label defini plusieurs fois :
+ * un branchement vise la derniere definition precedente ou, a defaut, la premiere definition suivante.
+ *
+ * @see Assembler
+ */
+final class ParallelAssembler
+{
+    /**
+     * Taille minimale d'une partie, en caracteres.
+     */
+    private static final int MIN_CHUNK = 1 << 16;
+    /**
+     * Nombre de parties par thread, pour equilibrer la charge.
+     */
+    private static final int CHUNKS_PER_THREAD = 4;
+    /**
+     * Pools partages, par nombre de threads.
+     */
+    private static final Map<Integer, ForkJoinPool> POOLS = new ConcurrentHashMap<>();
+
+    private final ForkJoinPool pool;
+    private final Supplier<Parser> parsers;
+    private final Metrics metrics;
+    private final LiteralPool literals;
+    private final DataSection data;
+
+    /**
+     * @param pool le pool executant les deux phases
+     * @param parsers fournit un analyseur a chaque partie
+     */
+    ParallelAssembler(ForkJoinPool pool, Supplier<Parser> parsers)
+    {
+        this(pool, parsers, Metrics.DISABLED, new LiteralPool(), new DataSection());
+    }
+
+    /**
+     * @param pool le pool executant les deux phases
+     * @param parsers fournit un analyseur a chaque partie
+     * @param metrics les mesures auxquelles s'ajoutent celles de chaque partie
+     * @param literals la reserve des constantes chargees par <tt>LDR Rd, =valeur</tt>
+     * @param data recoit la section de donnees du programme
+     */
+    ParallelAssembler(ForkJoinPool pool, Supplier<Parser> parsers, Metrics metrics, LiteralPool literals, DataSection data)
+    {
+        this.pool = pool;
+        this.parsers = parsers;
+        this.metrics = metrics;
+        this.literals = literals;
+        this.data = data;
+    }
+
+    /**
+     * Donne le pool partage d'un nombre de threads : le pool commun s'il a ce nombre de threads,
+     * sinon un pool cree au premier appel puis reutilise par chaque assemblage.
+     * Les threads d'un pool ne retiennent pas la JVM et s'arretent lorsqu'ils sont inactifs,
+     * un pool n'a donc jamais a etre ferme.
+     *
+     * @param threads le nombre de threads
+     * @return le pool
+     */
+    static ForkJoinPool pool(int threads)
+    {
+        if (threads == ForkJoinPool.getCommonPoolParallelism())
+            return ForkJoinPool.commonPool();
+        return POOLS.computeIfAbsent(threads, ForkJoinPool::new);
+    }
+
+    /**
+     * Assemble le programme contenu dans une source.
+     *
+     * @param source la source du programme
+     * @return le codage de chaque instruction du programme
+     * @throws IllegalArgumentException si une instruction ne peut pas etre codee, si un label n'est pas defini
+     *                                  ou si le programme ne tient pas dans la ROM
+     */
+    int[] assemble(Source source)
+    {
+        int count = Math.min(pool.getParallelism() * CHUNKS_PER_THREAD, Math.max(1, source.length() / MIN_CHUNK));
+        return assemble(source.split(count));
+    }
+
+    /**
+     * Assemble un programme decoupe en parties.
+     *
+     * @param parts les parties de la source, dans l'ordre
+     * @return le codage de chaque instruction du programme
+     */
+    int[] assemble(Source[] parts)
+    {
+        Chunk[] chunks = Arrays.stream(parts).map(Chunk::new).toArray(Chunk[]::new);
+
+        // Phase 1 : analyse et codage de chaque partie, chacune supposant commencer hors de la section de donnees
+        run(chunks, Chunk::parse);
+
+        // Somme prefixe du nombre d'instructions, reunion des labels et des donnees, et adresse des constantes
+        Map<String, long[]> labels = new HashMap<>();
+        int size = 0;
+        boolean active = false;
+        for (Chunk chunk : chunks)
+        {
+            if (chunk.active != active)
+                chunk.parse(active);
+            if (chunk.error != null)
+                throw chunk.error;
+            active = chunk.data.isActive();
+            data.append(chunk.data);
+            chunk.offset = size;
+            size += chunk.count;
+            for (int i = 0; i < chunk.loads.size(); i++)
+            {
+                int index = chunk.loads.get(i);
+                chunk.words[index] = LiteralPool.relocate(chunk.words[index], literals.address(chunk.values.get(i)));
+            }
+            for (Map.Entry<String, List<Integer>> entry : chunk.labels.entrySet())
+            {
+                long[] previous = labels.getOrDefault(entry.getKey(), new long[0]);
+                long[] definitions = Arrays.copyOf(previous, previous.length + entry.getValue().size());
+                for (int i = 0; i < entry.getValue().size(); i++)
+                {
+                    definitions[previous.length + i] = chunk.offset + entry.getValue().get(i);
+                }
+                labels.put(entry.getKey(), definitions);
+            }
+        }
+
+        data.check(literals);
+
+        // Phase 2 : resolution des branchements et copie de chaque partie
+        int[] program = Simulator.checkRom(new int[size]);
+        invokeAll(chunks, chunk -> chunk.link(labels, program));
+        for (Chunk chunk : chunks)
+        {
+            metrics.merge(chunk.metrics);
+        }
+        return program;
+    }
+
+    /**
+     * Execute une action sur chaque partie en parallele puis propage la premiere erreur dans l'ordre de la source.
+     */
+    private void invokeAll(Chunk[] chunks, Consumer<Chunk> action)
+    {
+        run(chunks, action);
+        for (Chunk chunk : chunks)
+        {
+            if (chunk.error != null)
+                throw chunk.error;
+        }
+    }
+
+    /**
+     * Execute une action sur chaque partie en parallele ; l'erreur de chaque partie est conservee dans la partie.
+     */
+    private void run(Chunk[] chunks, Consumer<Chunk> action)
+    {
+        List<ForkJoinTask<?>> tasks = new ArrayList<>(chunks.length);
+        for (Chunk chunk : chunks)
+        {
+            tasks.add(ForkJoinTask.adapt(() -> {
+                try
+                {
+                    action.accept(chunk);
+                }
+                catch (RuntimeException e)
+                {
+                    chunk.error = e;
+                }
+            }));
+        }
+        pool.submit(() -> ForkJoinTask.invokeAll(tasks)).join();
+    }
+
+    /**
+     * Renvoie l'instruction visee par un branchement, comme l'assembleur sequentiel :
+     * la derniere definition du label au plus a l'adresse du branchement, sinon la premiere definition suivante.
+     *
+     * @param definitions les adresses ou le label est defini, en ordre croissant
+     * @param address l'adresse du branchement
+     * @return l'adresse de l'instruction visee
+     */
+    private static long resolve(long[] definitions, long address)
+    {
+        int index = Arrays.binarySearch(definitions, address);
+        if (index >= 0)
+            return definitions[index];
+        int next = -index - 1;
+        return next > 0 ? definitions[next - 1] : definitions[0];
+    }
+
+    /**
+     * Partie de la source, assemblee independamment.
+     */
+    private final class Chunk
+    {
+        private final Source source;
+        /**
+         * Debut de la partie dans la source, pour l'analyser de nouveau.
+         */
+        private final int mark;
+        private Metrics metrics;
+        /**
+         * Labels definis dans la partie, avec le numero local des instructions correspondantes.
+         */
+        private final Map<String, List<Integer>> labels = new LinkedHashMap<>();
+        /**
+         * Acces aux labels de donnee, avec le numero local des instructions correspondantes.
+         */
+        private final Map<String, List<Integer>> accesses = new HashMap<>();
+        private final List<String> branchLabels = new ArrayList<>();
+        private int[] branches = new int[16];
+        /**
+         * Chargements depuis la reserve, par numero local, et leur constante.
+         */
+        private final List<Integer> loads = new ArrayList<>();
+        private final List<Integer> values = new ArrayList<>();
+        private int[] words = new int[256];
+        private int count;
+        private int offset;
+        /**
+         * Vrai si la partie a ete analysee en commencant dans la section de donnees.
+         */
+        private boolean active;
+        /**
+         * Donnees de la partie, les labels ayant une adresse locale.
+         */
+        private DataSection data;
+        private RuntimeException error;
+
+        private Chunk(Source source)
+        {
+            this.source = source;
+            this.mark = source.mark();
+        }
+
+        private void parse()
+        {
+            parse(false);
+        }
+
+        /**
+         * Analyse et code les instructions de la partie, en laissant nulle la cible des branchements
+         * et l'adresse des acces aux donnees.
+         * Une nouvelle analyse remplace entierement la precedente.
+         *
+         * @param active vrai si la partie commence dans la section de donnees
+         */
+        private void parse(boolean active)
+        {
+            this.active = active;
+            metrics = ParallelAssembler.this.metrics.fork();
+            data = new DataSection(active);
+            labels.clear();
+            accesses.clear();
+            branchLabels.clear();
+            loads.clear();
+            values.clear();
+            count = 0;
+            error = null;
+            source.reset(mark);
+            try
+            {
+                read();
+            }
+            catch (RuntimeException e)
+            {
+                error = e;
+            }
+        }
+
+        private void read()
+        {
+            Parser parser = parsers.get();
+            ParsedLine parsed = new ParsedLine();
+            long time = metrics.start();
+            for (CharSequence line = source.nextLine(); line != null; line = source.nextLine(), time = metrics.start())
+            {
+                time = metrics.stop(Phase.READ, time);
+                metrics.count(Counter.LINES_READ);
+                if (data.parse(line))
+                {
+                    metrics.stop(Phase.PARSE, time);
+                    continue;
+                }
+                boolean matched = parser.parse(line, parsed);
+                time = metrics.stop(Phase.PARSE, time);
+                if (!matched)
+                    continue;
+                metrics.count(Counter.LINES_MATCHED);
+                if (parsed.has(LABEL_GROUP))
+                    labels.computeIfAbsent(parsed.text(LABEL_GROUP), key -> new ArrayList<>()).add(count);
+                time = metrics.stop(Phase.LINK, time);
+                if (!parsed.has(INSTRUCTION_GROUP))
+                    continue;
+                if (parsed.isLiteral())
+                {
+                    literal(parsed);
+                    metrics.stop(Phase.ENCODE, time);
+                    continue;
+                }
+                Instructions access = parsed.dataAccess();
+                if (access != null)
+                {
+                    accesses.computeIfAbsent(parsed.text(DATA_LABEL_GROUP), key -> new ArrayList<>()).add(count);
+                    emit(access.getEncoding().encode(parsed.value(FIRST_OPERAND_GROUP), 0));
+                    metrics.stop(Phase.ENCODE, time);
+                    continue;
+                }
+                Instructions instruction = Instructions.getEnum(parsed);
+                time = metrics.stop(Phase.DISPATCH, time);
+                int opcode = instruction.encode(parsed);
+                time = metrics.stop(Phase.ENCODE, time);
+                if (instruction.getType() == InstructionType.BRANCH)
+                {
+                    if (branchLabels.size() == branches.length)
+                        branches = Arrays.copyOf(branches, branches.length * 2);
+                    branches[branchLabels.size()] = count;
+                    branchLabels.add(parsed.text(BRANCH_LABEL_GROUP));
+                }
+                emit(opcode);
+                metrics.stop(Phase.LINK, time);
+            }
+        }
+
+        /**
+         * Developpe <tt>LDR Rd, =valeur</tt> ; l'adresse d'un chargement depuis la reserve est laissee nulle.
+         */
+        private void literal(ParsedLine parsed)
+        {
+            int register = parsed.value(FIRST_OPERAND_GROUP);
+            int value = parsed.literal();
+            int[] sequence = literals.inline(register, value);
+            if (sequence == null)
+            {
+                loads.add(count);
+                values.add(value);
+                emit(LiteralPool.load(register, 0));
+                return;
+            }
+            for (int word : sequence)
+                emit(word);
+        }
+
+        private void emit(int opcode)
+        {
+            if (count == words.length)
+                words = Arrays.copyOf(words, words.length * 2);
+            words[count++] = opcode;
+            metrics.count(Counter.INSTRUCTIONS);
+        }
+
+        /**
+         * Resout les branchements de la partie et la copie dans le programme.
+         *
+         * @param link la table globale des labels
+         * @param program le programme complet
+         */
+        private void link(Map<String, long[]> link, int[] program)
+        {
+            long time = metrics.start();
+            // Toutes les cibles sont connues : chaque branchement trouve son label
+            metrics.add(Counter.LABEL_HITS, branchLabels.size());
+            for (int i = 0; i < branchLabels.size(); i++)
+            {
+                long[] definitions = link.get(branchLabels.get(i));
+                if (definitions == null)
+                    throw new IllegalArgumentException("Label not found: " + branchLabels.get(i));
+                words[branches[i]] = Encoding.target(words[branches[i]], resolve(definitions, offset + branches[i]));
+            }
+            for (Map.Entry<String, List<Integer>> entry : accesses.entrySet())
+            {
+                Integer address = ParallelAssembler.this.data.address(entry.getKey());
+                if (address == null)
+                    throw new IllegalArgumentException("Label not found: " + entry.getKey());
+                for (int index : entry.getValue())
+                    words[index] = LiteralPool.relocate(words[index], address);
+            }
+            System.arraycopy(words, 0, program, offset, count);
+            metrics.stop(Phase.LINK, time);
+        }
+    }
+}
@@ -0,0 +1,224 @@
+package main;
+
+import static main.Assembler.*;
+
+/**
+ * Resultat de l'analyse d'une ligne par un {@link Parser}.
+ * <p>
+ * Contient, pour chaque groupe de {@link main.Assembler#PATTERN PATTERN},
+ * la position du texte correspondant dans la ligne.
+ * Le meme objet est reutilise pour chaque ligne : aucune chaine n'est creee
+ * tant que le texte d'un groupe n'est pas demande avec {@link #text(int)}.
+ *
+ * @see Parser
+ */
+final class ParsedLine
+{
+    /**
+     * Nombre de groupes du patterne, en comptant le groupe 0.
+     */
+    static final int GROUPS = DATA_LABEL_GROUP + 1;
+    private static final Condition[] CONDITIONS = Condition.values();
+    /**
+     * Groupes de la pseudo-instruction <tt>LDR Rd, =valeur</tt>.
+     */
+    private static final int LITERAL_GROUPS = 1 << INSTRUCTION_GROUP | 1 << FIRST_OPERAND_GROUP | 1 << LITERAL_GROUP;
+    /**
+     * Groupes d'un acces a la section de donnees <tt>LDR Rt, label</tt> ou <tt>STR Rt, label</tt>.
+     */
+    private static final int DATA_GROUPS = 1 << INSTRUCTION_GROUP | 1 << FIRST_OPERAND_GROUP | 1 << DATA_LABEL_GROUP;
+
+    private final int[] start = new int[GROUPS];
+    private final int[] end = new int[GROUPS];
+    private CharSequence line;
+    /**
+     * Masque des groupes presents (le bit n correspond au groupe n).
+     */
+    private int present;
+
+    /**
+     * Efface le resultat precedent et associe une nouvelle ligne.
+     *
+     * @param line la ligne analysee
+     */
+    void reset(CharSequence line)
+    {
+        this.line = line;
+        this.present = 0;
+    }
+
+    /**
+     * Enregistre la position d'un groupe.
+     *
+     * @param group le numero du groupe
+     * @param start l'indice du debut du groupe dans la ligne
+     * @param end l'indice de fin du groupe dans la ligne
+     */
+    void set(int group, int start, int end)
+    {
+        this.start[group] = start;
+        this.end[group] = end;
+        this.present |= 1 << group;
+    }
+
+    /**
+     * Oublie tous les groupes enregistres.
+     */
+    void clear()
+    {
+        present = 0;
+    }
+
+    CharSequence getLine()
+    {
+        return line;
+    }
+
+    /**
+     * @param group le numero du groupe
+     * @return vrai si le groupe est present
+     */
+    boolean has(int group)
+    {
+        return (present & 1 << group) != 0;
+    }
+
+    /**
+     * @return le masque des groupes presents a partir de {@link main.Assembler#INSTRUCTION_GROUP INSTRUCTION_GROUP}
+     */
+    int getGroups()
+    {
+        return present & -(1 << INSTRUCTION_GROUP);
+    }
+
+    int start(int group)
+    {
+        return start[group];
+    }
+
+    int end(int group)
+    {
+        return end[group];
+    }
+
+    /**
+     * @param group le numero du groupe
+     * @return le texte du groupe, ou <tt>null</tt> si le groupe est absent
+     */
+    String text(int group)
+    {
+        return has(group) ? line.subSequence(start[group], end[group]).toString() : null;
+    }
+
+    /**
+     * Renvoie la valeur decimale d'un groupe numerique.
+     * Une valeur qui depasse la capacite d'un <tt>int</tt> vaut {@link Integer#MAX_VALUE}.
+     *
+     * @param group le numero du groupe
+     * @return la valeur du groupe
+     * @throws NumberFormatException si le groupe est absent
+     */
+    int value(int group)
+    {
+        if (!has(group))
+            throw new NumberFormatException("Missing group " + group);
+        long value = 0;
+        for (int i = start[group]; i < end[group]; i++)
+        {
+            value = Math.min(10 * value + line.charAt(i) - '0', Integer.MAX_VALUE);
+        }
+        return (int) value;
+    }
+
+    /**
+     * @return vrai si la ligne contient la pseudo-instruction <tt>LDR Rd, =valeur</tt>, voir {@link LiteralPool}
+     */
+    boolean isLiteral()
+    {
+        return getGroups() == LITERAL_GROUPS && matches("LDR", start[INSTRUCTION_GROUP], end[INSTRUCTION_GROUP]);
+    }
+
+    /**
+     * @return {@link Instructions#LDR_I LDR_I} ou {@link Instructions#STR_I STR_I} si la ligne accede a un label
+     *         de la section de donnees, voir {@link DataSection} ; <tt>null</tt> sinon
+     */
+    Instructions dataAccess()
+    {
+        if (getGroups() != DATA_GROUPS)
+            return null;
+        if (matches("LDR", start[INSTRUCTION_GROUP], end[INSTRUCTION_GROUP]))
+            return Instructions.LDR_I;
+        if (matches("STR", start[INSTRUCTION_GROUP], end[INSTRUCTION_GROUP]))
+            return Instructions.STR_I;
+        return null;
+    }
+
+    /**
+     * Renvoie la constante de {@link main.Assembler#LITERAL_GROUP LITERAL_GROUP},
+     * ecrite en decimal ou en hexadecimal avec le prefixe <tt>0x</tt>, eventuellement precedee de '-'.
+     *
+     * @return la constante sur 32 bits
+     * @throws IllegalArgumentException si la constante est absente ou ne tient pas sur 32 bits
+     */
+    int literal()
+    {
+        if (!has(LITERAL_GROUP))
+            throw new NumberFormatException("Missing group " + LITERAL_GROUP);
+        int i = start[LITERAL_GROUP];
+        int last = end[LITERAL_GROUP];
+        boolean negative = line.charAt(i) == '-';
+        if (negative)
+            i += 1;
+        int radix = 10;
+        if (last - i > 2 && line.charAt(i) == '0' && (line.charAt(i + 1) == 'x' || line.charAt(i + 1) == 'X'))
+        {
+            radix = 16;
+            i += 2;
+        }
+        long value = 0;
+        for (; i < last; i++)
+        {
+            value = radix * value + Character.digit(line.charAt(i), radix);
+            if (value > 0xFFFFFFFFL)
+                throw new IllegalArgumentException("Value does not fit in 32 bits: " + text(LITERAL_GROUP));
+        }
+        if (negative && value > 1L << 31)
+            throw new IllegalArgumentException("Value does not fit in 32 bits: " + text(LITERAL_GROUP));
+        return (int) (negative ? -value : value);
+    }
+
+    /**
+     * @return la condition de {@link main.Assembler#CONDITION_GROUP CONDITION_GROUP}
+     * @throws IllegalArgumentException si la condition est absente
+     */
+    Condition condition()
+    {
+        if (has(CONDITION_GROUP))
+        {
+            for (Condition condition : CONDITIONS)
+            {
+                if (matches(condition.name(), start[CONDITION_GROUP], end[CONDITION_GROUP]))
+                    return condition;
+            }
+        }
+        throw new IllegalArgumentException("Unknown condition");
+    }
+
+    /**
+     * @param name un nom en majuscules
+     * @param start l'indice du debut du texte dans la ligne
+     * @param end l'indice de fin du texte dans la ligne
+     * @return vrai si le texte correspond au nom, sans tenir compte de la casse
+     */
+    private boolean matches(String name, int start, int end)
+    {
+        if (end - start != name.length())
+            return false;
+        for (int i = start; i < end; i++)
+        {
+            if (Character.toUpperCase(line.charAt(i)) != name.charAt(i - start))
+                return false;
+        }
+        return true;
+    }
+}
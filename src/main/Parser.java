@@ -0,0 +1,20 @@
+package main;
+
+/**
+ * Analyse une ligne de programme assembleur.
+ *
+ * @see PatternParser
+ * @see DescentParser
+ */
+@FunctionalInterface
+interface Parser
+{
+    /**
+     * Analyse une ligne et enregistre les groupes reconnus.
+     *
+     * @param line la ligne a analyser
+     * @param parsed le resultat de l'analyse, reinitialise a chaque appel
+     * @return vrai si la ligne contient une instruction
+     */
+    boolean parse(CharSequence line, ParsedLine parsed);
+}
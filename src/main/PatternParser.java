@@ -0,0 +1,25 @@
+package main;
+
+import java.util.regex.Matcher;
+
+/**
+ * Analyse les lignes avec {@link main.Assembler#PATTERN PATTERN}.
+ */
+final class PatternParser implements Parser
+{
+    private final Matcher matcher = Assembler.PATTERN.matcher("");
+
+    @Override
+    public boolean parse(CharSequence line, ParsedLine parsed)
+    {
+        parsed.reset(line);
+        if (!matcher.reset(line).matches())
+            return false;
+        for (int group = 1; group <= matcher.groupCount(); group++)
+        {
+            if (matcher.start(group) != -1)
+                parsed.set(group, matcher.start(group), matcher.end(group));
+        }
+        return true;
+    }
+}
@@ -0,0 +1,458 @@
+package main;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Arrays;
+
+/**
+ * Simulateur du jeu d'instructions code par {@link Instructions}.
+ * <p>
+ * Execute directement une {@link Image image} produite par {@link Assembler},
+ * sans passer par les circuits logisim.
+ * Le processeur simule possede huit registres de 32 bits, les flags NZCV
+ * et une RAM de {@value RAM_SIZE} mots de 32 bits adressee par les instructions LDR/STR.
+ * Comme celui du circuit, le compteur de programme est sur 8 bits : la ROM contient au plus {@value ROM_SIZE} instructions
+ * et l'instruction suivant la derniere de la ROM est la premiere.
+ * La semantique de chaque instruction est celle de son equivalent Thumb :
+ * les instructions de traitement de donnees mettent toujours les flags a jour,
+ * et les branchements visent directement le numero de l'instruction cible.
+ * Le champ de condition 15 ne correspond a aucune {@link Condition} : un tel branchement est indefini,
+ * comme dans le {@link Disassembler}.
+ * <p>
+ * Le decodage passe par une table de 65536 entrees construite a partir des {@link Encoding codages} des instructions.
+ * La boucle d'execution ne cree aucun objet.
+ *
+ * @see Instructions
+ * @see Encoding
+ */
+final class Simulator
+{
+    /**
+     * Nombre de mots de la RAM (adresse sur 8 bits).
+     */
+    static final int RAM_SIZE = 256;
+    /**
+     * Nombre de mots de la ROM (compteur de programme sur 8 bits).
+     */
+    static final int ROM_SIZE = 256;
+    /**
+     * Nombre de registres.
+     */
+    static final int REGISTERS = 8;
+    /**
+     * Instruction decodee pour chaque mot de 16 bits.
+     * Les mots ne correspondant a aucun codage sont associes a {@link Instructions#UNKNOWN_INSTRUCTION}.
+     */
+    private static final Instructions[] DECODE = new Instructions[1 << 16];
+
+    static
+    {
+        Arrays.fill(DECODE, Instructions.UNKNOWN_INSTRUCTION);
+        for (Instructions instruction : Instructions.values())
+        {
+            Encoding encoding = instruction.getEncoding();
+            if (instruction == Instructions.UNKNOWN_INSTRUCTION)
+                continue;
+            for (int word = 0; word < DECODE.length; word++)
+            {
+                if ((word & encoding.getMask()) == encoding.getOpcode() && DECODE[word] == Instructions.UNKNOWN_INSTRUCTION)
+                    DECODE[word] = instruction;
+            }
+        }
+        // Les branchements de condition 15 sont indefinis
+        for (int word = 0; word < DECODE.length; word++)
+        {
+            if (DECODE[word] == Instructions.BC && (word >>> 8 & 15) >= Condition.values().length)
+                DECODE[word] = Instructions.UNKNOWN_INSTRUCTION;
+        }
+    }
+
+    /**
+     * Etat d'arret du simulateur.
+     */
+    enum Status
+    {
+        /**
+         * Le compteur de programme a depasse la derniere instruction d'un programme plus court que la ROM.
+         */
+        HALTED,
+        /**
+         * Un branchement pris vise sa propre instruction : le programme boucle indefiniment.
+         */
+        LOOP,
+        /**
+         * Le nombre maximal d'instructions a ete execute.
+         */
+        LIMIT,
+        /**
+         * Le mot a executer ne correspond a aucune instruction.
+         */
+        UNDEFINED
+    }
+
+    private final int[] rom;
+    private final int[] registers = new int[REGISTERS];
+    private final int[] ram = new int[RAM_SIZE];
+    private int programCounter;
+    private boolean negative;
+    private boolean zero;
+    private boolean carry;
+    private boolean overflow;
+    /**
+     * Nombre d'instructions executees depuis la creation du simulateur.
+     */
+    private long executed;
+
+    /**
+     * @param rom le codage des instructions du programme
+     * @throws IllegalArgumentException si le programme ne tient pas dans la ROM
+     */
+    Simulator(int[] rom)
+    {
+        this.rom = checkRom(rom);
+    }
+
+    /**
+     * Verifie qu'un programme tient dans la ROM : au-dela de {@value #ROM_SIZE} instructions,
+     * le compteur de programme sur 8 bits revient a 0 et la fin du programme n'est jamais executee.
+     *
+     * @param program le codage de chaque instruction
+     * @return le programme
+     * @throws IllegalArgumentException si le programme ne tient pas dans la ROM
+     */
+    static int[] checkRom(int[] program)
+    {
+        checkRom(program.length);
+        return program;
+    }
+
+    /**
+     * Verifie qu'un programme de la longueur donnee tient dans la ROM, voir {@link #checkRom(int[])}.
+     *
+     * @param length le nombre d'instructions du programme
+     * @return le nombre d'instructions
+     * @throws IllegalArgumentException si le programme ne tient pas dans la ROM
+     */
+    static int checkRom(int length)
+    {
+        if (length > ROM_SIZE)
+            throw new IllegalArgumentException("Program does not fit in ROM: " + length + " instructions");
+        return length;
+    }
+
+    /**
+     * Execute le programme jusqu'a son arret ou jusqu'a un nombre maximal d'instructions.
+     *
+     * @param limit le nombre maximal d'instructions a executer
+     * @return la raison de l'arret
+     */
+    Status run(long limit)
+    {
+        final int[] rom = this.rom;
+        final int[] r = this.registers;
+        final int[] ram = this.ram;
+        int pc = programCounter;
+        long steps = 0;
+        Status status = Status.LIMIT;
+
+        while (steps < limit)
+        {
+            if (pc >= rom.length)
+            {
+                status = Status.HALTED;
+                break;
+            }
+            int word = rom[pc];
+            int rd = word & 7;
+            int rm = word >>> 3 & 7;
+            int next = pc + 1 & ROM_SIZE - 1;
+            switch (DECODE[word])
+            {
+                case AND:
+                    logical(r[rd] &= r[rm]);
+                    break;
+                case EOR:
+                    logical(r[rd] ^= r[rm]);
+                    break;
+                case LSL_R:
+                    r[rd] = shiftLeft(r[rd], r[rm] & 0xFF);
+                    break;
+                case LSR_R:
+                    r[rd] = shiftRight(r[rd], r[rm] & 0xFF);
+                    break;
+                case ASR_R:
+                    r[rd] = shiftArithmetic(r[rd], r[rm] & 0xFF);
+                    break;
+                case ADC:
+                    r[rd] = add(r[rd], r[rm], carry ? 1 : 0);
+                    break;
+                case SBC:
+                    r[rd] = add(r[rd], ~r[rm], carry ? 1 : 0);
+                    break;
+                case ROR:
+                    r[rd] = rotate(r[rd], r[rm] & 0xFF);
+                    break;
+                case TST:
+                    logical(r[rd] & r[rm]);
+                    break;
+                case RSB:
+                    r[rd] = add(0, ~r[rm], 1);
+                    break;
+                case CMP:
+                    add(r[rd], ~r[rm], 1);
+                    break;
+                case CMN:
+                    add(r[rd], r[rm], 0);
+                    break;
+                case ORR:
+                    logical(r[rd] |= r[rm]);
+                    break;
+                case MUL:
+                    logical(r[rd] *= r[rm]);
+                    break;
+                case BIC:
+                    logical(r[rd] &= ~r[rm]);
+                    break;
+                case MVN:
+                    logical(r[rd] = ~r[rm]);
+                    break;
+                case LSL_I:
+                    r[rd] = shiftLeft(r[rm], word >>> 6 & 31);
+                    break;
+                case LSR_I:
+                    r[rd] = shiftRight(r[rm], (word >>> 6 & 31) == 0 ? 32 : word >>> 6 & 31);
+                    break;
+                case ASR_I:
+                    r[rd] = shiftArithmetic(r[rm], (word >>> 6 & 31) == 0 ? 32 : word >>> 6 & 31);
+                    break;
+                case ADD_R:
+                    r[rd] = add(r[rm], r[word >>> 6 & 7], 0);
+                    break;
+                case ADD_I:
+                    r[rd] = add(r[rm], word >>> 6 & 7, 0);
+                    break;
+                case SUB:
+                    r[rd] = add(r[rm], ~r[word >>> 6 & 7], 1);
+                    break;
+                case MOV:
+                    logical(r[word >>> 8 & 7] = word & 0xFF);
+                    break;
+                case STR_I:
+                case STR_R:
+                    ram[word & 0xFF] = r[word >>> 8 & 7];
+                    break;
+                case LDR_I:
+                case LDR_R:
+                    r[word >>> 8 & 7] = ram[word & 0xFF];
+                    break;
+                case B:
+                    next = word & 0xFF;
+                    break;
+                case BC:
+                    if (condition(word >>> 8 & 15))
+                        next = word & 0xFF;
+                    break;
+                default:
+                    status = Status.UNDEFINED;
+                    break;
+            }
+            if (status == Status.UNDEFINED)
+                break;
+            steps += 1;
+            if (next == pc)
+            {
+                status = Status.LOOP;
+                break;
+            }
+            pc = next;
+        }
+
+        programCounter = pc;
+        executed += steps;
+        return status;
+    }
+
+    /**
+     * Evalue une condition selon les flags, dans l'ordre de {@link Condition}.
+     *
+     * @param condition le numero de la condition
+     * @return vrai si la condition est remplie
+     */
+    private boolean condition(int condition)
+    {
+        switch (condition)
+        {
+            case 0:  return zero;
+            case 1:  return !zero;
+            case 2:  return carry;
+            case 3:  return !carry;
+            case 4:  return negative;
+            case 5:  return !negative;
+            case 6:  return overflow;
+            case 7:  return !overflow;
+            case 8:  return carry && !zero;
+            case 9:  return !carry || zero;
+            case 10: return negative == overflow;
+            case 11: return negative != overflow;
+            case 12: return !zero && negative == overflow;
+            case 13: return zero || negative != overflow;
+            default: return true;
+        }
+    }
+
+    /**
+     * Met a jour les flags N et Z d'un resultat.
+     */
+    private int logical(int result)
+    {
+        negative = result < 0;
+        zero = result == 0;
+        return result;
+    }
+
+    /**
+     * Additionne deux valeurs et une retenue en mettant a jour les flags NZCV.
+     * Une soustraction <tt>a - b</tt> correspond a <tt>add(a, ~b, 1)</tt>.
+     */
+    private int add(int a, int b, int carryIn)
+    {
+        long unsigned = (a & 0xFFFFFFFFL) + (b & 0xFFFFFFFFL) + carryIn;
+        int result = (int) unsigned;
+        carry = unsigned >>> 32 != 0;
+        overflow = ((a ^ result) & (b ^ result)) < 0;
+        return logical(result);
+    }
+
+    private int shiftLeft(int value, int shift)
+    {
+        if (shift == 0)
+            return logical(value);
+        carry = shift <= 32 && (value >>> (32 - shift) & 1) != 0;
+        return logical(shift < 32 ? value << shift : 0);
+    }
+
+    private int shiftRight(int value, int shift)
+    {
+        if (shift == 0)
+            return logical(value);
+        carry = shift <= 32 && (value >>> (shift - 1) & 1) != 0;
+        return logical(shift < 32 ? value >>> shift : 0);
+    }
+
+    private int shiftArithmetic(int value, int shift)
+    {
+        if (shift == 0)
+            return logical(value);
+        carry = (value >> Math.min(shift - 1, 31) & 1) != 0;
+        return logical(value >> Math.min(shift, 31));
+    }
+
+    private int rotate(int value, int shift)
+    {
+        if (shift == 0)
+            return logical(value);
+        int result = Integer.rotateRight(value, shift & 31);
+        carry = result < 0;
+        return logical(result);
+    }
+
+    int getProgramCounter()
+    {
+        return programCounter;
+    }
+
+    int getRegister(int register)
+    {
+        return registers[register];
+    }
+
+    /**
+     * @return la RAM du simulateur, modifiable pour l'initialiser
+     */
+    int[] getRam()
+    {
+        return ram;
+    }
+
+    long getExecuted()
+    {
+        return executed;
+    }
+
+    /**
+     * @return les flags sous la forme <tt>NZCV</tt>, un tiret pour un flag a 0
+     */
+    String getFlags()
+    {
+        return (negative ? "N" : "-") + (zero ? "Z" : "-") + (carry ? "C" : "-") + (overflow ? "V" : "-");
+    }
+
+    /**
+     * Lit une image logisim {@value Image#HEADER} de mots de 32 bits, pour initialiser la RAM.
+     *
+     * @param filename le nom du fichier image
+     * @return les valeurs de l'image
+     * @throws IOException si le fichier n'existe pas ou n'est pas une image logisim
+     * @see Image#values(CharSequence)
+     */
+    static int[] load(String filename) throws IOException
+    {
+        String content = new String(Files.readAllBytes(Paths.get(filename)), StandardCharsets.US_ASCII);
+        if (!content.startsWith(Image.HEADER))
+            throw new IOException("Not a logisim image: " + filename);
+        return Image.values(content.substring(Image.HEADER.length()));
+    }
+
+    /**
+     * Execute une image, dans l'un des {@link Image.Format formats} connus, et affiche l'etat final du processeur
+     * ainsi que la vitesse de simulation en millions d'instructions par seconde.
+     * <p>
+     * Options, placees avant le nom du fichier :
+     * <pre>
+     * --limit=N    execute au plus N instructions (par defaut 100000000)
+     * --ram=FILE   initialise la RAM avec une image logisim
+     * </pre>
+     *
+     * @param args les options suivies du nom du fichier image
+     * @throws IOException si un fichier n'existe pas
+     */
+    public static void main(String[] args) throws IOException
+    {
+        long limit = 100_000_000L;
+        String ramFile = null;
+        String filename = null;
+        for (String arg : args)
+        {
+            if (arg.startsWith("--limit="))
+                limit = Long.parseLong(arg.substring("--limit=".length()));
+            else if (arg.startsWith("--ram="))
+                ramFile = arg.substring("--ram=".length());
+            else if (arg.startsWith("--"))
+                throw new IllegalArgumentException("Unknown option: " + arg);
+            else
+                filename = arg;
+        }
+        if (filename == null)
+            throw new IllegalArgumentException("File name is missing");
+
+        Simulator simulator = new Simulator(Image.read(Paths.get(filename)).toArray());
+        if (ramFile != null)
+        {
+            int[] ram = load(ramFile);
+            System.arraycopy(ram, 0, simulator.getRam(), 0, Math.min(ram.length, RAM_SIZE));
+        }
+
+        long start = System.nanoTime();
+        Status status = simulator.run(limit);
+        long elapsed = Math.max(1, System.nanoTime() - start);
+
+        System.out.println(status + " at PC=" + simulator.getProgramCounter() + " flags=" + simulator.getFlags());
+        for (int i = 0; i < REGISTERS; i++)
+        {
+            System.out.printf("R%d=%08x%n", i, simulator.getRegister(i));
+        }
+        System.out.printf("%d instructions in %.3f ms (%.1f MIPS)%n", simulator.getExecuted(), elapsed / 1e6, simulator.getExecuted() * 1e3 / elapsed);
+    }
+}
@@ -0,0 +1,256 @@
+package main;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * Source d'un programme assembleur, lue ligne par ligne.
+ * <p>
+ * Le contenu est decode et copie en une seule fois dans un tableau de caracteres,
+ * quelle que soit son origine (fichier, flux lu par blocs ou tampon en memoire) :
+ * un programme occupe donc deux octets par caractere tant que la source est utilisee.
+ * Les lignes sont renvoyees sous forme de vues sur ce tableau, sans copie supplementaire.
+ * La position de lecture peut etre sauvegardee puis restauree a moindre cout.
+ *
+ * @see Assembler
+ */
+final class Source
+{
+    /**
+     * Nom designant l'entree standard.
+     */
+    static final String STDIN = "-";
+    /**
+     * Taille des blocs lus depuis un flux.
+     */
+    private static final int BLOCK = 8192;
+
+    private final char[] content;
+    private final int end;
+    private final Line line;
+    /**
+     * Position du debut de la prochaine ligne dans {@link #content}.
+     */
+    private int position;
+
+    private Source(char[] content, int start, int end)
+    {
+        this.content = content;
+        this.end = end;
+        this.line = new Line();
+        this.position = start;
+    }
+
+    /**
+     * Ouvre le fichier source, ou l'entree standard si le nom vaut {@value STDIN}.
+     * Le fichier est decode en UTF-8 en une seule fois ; sa projection en memoire evite seulement
+     * de copier ses octets dans un tampon intermediaire avant le decodage.
+     *
+     * @param filename le nom du fichier contenant le programme
+     * @return la source du programme
+     * @throws IOException si le fichier n'existe pas
+     */
+    static Source open(String filename) throws IOException
+    {
+        if (STDIN.equals(filename))
+            return of(System.in);
+        try (FileChannel channel = FileChannel.open(Paths.get(filename), StandardOpenOption.READ))
+        {
+            if (channel.size() > Integer.MAX_VALUE)
+                throw new IOException("File too large: " + filename);
+            return of(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    /**
+     * Cree une source a partir d'octets encodes en UTF-8.
+     *
+     * @param bytes le programme encode
+     * @return la source du programme
+     * @throws IOException si le decodage echoue
+     */
+    static Source of(ByteBuffer bytes) throws IOException
+    {
+        CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        CharBuffer chars = decoder.decode(bytes);
+        return new Source(chars.array(), chars.arrayOffset() + chars.position(), chars.arrayOffset() + chars.limit());
+    }
+
+    /**
+     * Cree une source en lisant un flux par blocs jusqu'a sa fin.
+     *
+     * @param input le flux contenant le programme encode en UTF-8
+     * @return la source du programme
+     * @throws IOException si la lecture echoue
+     */
+    static Source of(InputStream input) throws IOException
+    {
+        return of(new InputStreamReader(input, StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Cree une source en lisant un flux de caracteres par blocs jusqu'a sa fin.
+     *
+     * @param reader le flux contenant le programme
+     * @return la source du programme
+     * @throws IOException si la lecture echoue
+     */
+    static Source of(Reader reader) throws IOException
+    {
+        char[] buffer = new char[BLOCK];
+        int length = 0;
+        for (int read = reader.read(buffer, 0, buffer.length); read != -1; read = reader.read(buffer, length, buffer.length - length))
+        {
+            length += read;
+            if (length == buffer.length)
+                buffer = Arrays.copyOf(buffer, buffer.length * 2);
+        }
+        return new Source(buffer, 0, length);
+    }
+
+    /**
+     * Cree une source a partir d'un programme deja present en memoire.
+     *
+     * @param program le programme
+     * @return la source du programme
+     */
+    static Source of(CharSequence program)
+    {
+        char[] content = program.toString().toCharArray();
+        return new Source(content, 0, content.length);
+    }
+
+    /**
+     * Renvoie la ligne suivante, sans son caractere de fin de ligne ('\n', '\r' ou "\r\n").
+     * <p>
+     * La ligne renvoyee est une vue reutilisee a chaque appel :
+     * elle n'est valide que jusqu'au prochain appel de cette methode.
+     *
+     * @return la ligne suivante, ou <tt>null</tt> si la fin de la source est atteinte
+     */
+    CharSequence nextLine()
+    {
+        if (position >= end)
+            return null;
+        int start = position;
+        int stop = start;
+        while (stop < end && content[stop] != '\n' && content[stop] != '\r')
+            stop += 1;
+        position = stop + 1;
+        if (stop < end && content[stop] == '\r' && position < end && content[position] == '\n')
+            position += 1;
+        line.start = start;
+        line.length = stop - start;
+        return line;
+    }
+
+    /**
+     * @return le nombre de caracteres restant a lire
+     */
+    int length()
+    {
+        return end - position;
+    }
+
+    /**
+     * @return la position de lecture actuelle, a restaurer avec {@link #reset(int)}
+     */
+    int mark()
+    {
+        return position;
+    }
+
+    /**
+     * Restaure une position de lecture precedemment sauvegardee.
+     *
+     * @param mark la position renvoyee par {@link #mark()}
+     */
+    void reset(int mark)
+    {
+        position = mark;
+    }
+
+    /**
+     * Decoupe le reste de la source en parties de tailles proches, coupees entre deux lignes.
+     * Les parties partagent le contenu de la source, sans copie,
+     * et renvoient dans l'ordre les memes lignes que la source.
+     *
+     * @param count le nombre de parties souhaite
+     * @return les parties de la source, au plus <tt>count</tt>
+     */
+    Source[] split(int count)
+    {
+        Source[] parts = new Source[count];
+        int parsed = 0;
+        int start = position;
+        for (int i = 1; i <= count && start < end; i++)
+        {
+            int stop = i == count ? end : lineStart(Math.max(start, position + (int) ((long) (end - position) * i / count)));
+            if (stop > start)
+                parts[parsed++] = new Source(content, start, stop);
+            start = stop;
+        }
+        return Arrays.copyOf(parts, parsed);
+    }
+
+    /**
+     * @param from une position dans la source
+     * @return la position du premier debut de ligne a partir de <tt>from</tt>
+     */
+    private int lineStart(int from)
+    {
+        int index = from;
+        while (index < end && index > position && content[index - 1] != '\n' && !(content[index - 1] == '\r' && content[index] != '\n'))
+            index += 1;
+        return index;
+    }
+
+    /**
+     * Vue sur une ligne de la source.
+     */
+    private final class Line implements CharSequence
+    {
+        private int start;
+        private int length;
+
+        @Override
+        public int length()
+        {
+            return length;
+        }
+
+        @Override
+        public char charAt(int index)
+        {
+            // Sans verification, un indice hors de la ligne lirait la ligne suivante
+            return content[start + Objects.checkIndex(index, length)];
+        }
+
+        @Override
+        public CharSequence subSequence(int from, int to)
+        {
+            Objects.checkFromToIndex(from, to, length);
+            return new String(content, start + from, to - from);
+        }
+
+        @Override
+        public String toString()
+        {
+            return new String(content, start, length);
+        }
+    }
+}
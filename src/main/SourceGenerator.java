@@ -0,0 +1,343 @@
+package main;
+
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.SplittableRandom;
+
+/**
+ * Genere des programmes assembleur synthetiques, reproductibles a partir d'une graine.
+ * <p>
+ * Le generateur controle la repartition des familles d'instructions, la densite des labels,
+ * la proportion de branchements vers l'avant et le bruit des commentaires.
+ * Les programmes produits sont acceptes par {@link Assembler} avec les deux analyseurs :
+ * comme le numero de l'instruction cible tient sur 8 bits,
+ * un branchement vise toujours un label place sur l'une des {@value #TARGETS} premieres instructions.
+ *
+ * @see Assembler
+ */
+final class SourceGenerator
+{
+    /**
+     * Nombre d'instructions pouvant etre la cible d'un branchement.
+     */
+    static final int TARGETS = 256;
+    private static final String[] DATA = {"AND", "EOR", "LSL", "LSR", "ASR", "ADC", "SBC", "ROR", "TST", "CMP", "CMN", "ORR", "BIC", "MVN"};
+    private static final String[] SHIFTS = {"LSL", "LSR", "ASR"};
+    private static final String[] WORDS = {"boucle", "compteur", "adresse", "valeur", "resultat", "registre", "tampon", "index"};
+
+    /**
+     * Familles d'instructions generees.
+     */
+    enum Kind
+    {
+        /**
+         * Traitement de donnees entre deux registres, MUL et RSB compris.
+         */
+        DATA,
+        /**
+         * Decalage d'un registre par une valeur immediate.
+         */
+        SHIFT,
+        /**
+         * ADD et SUB a trois operandes.
+         */
+        ARITHMETIC,
+        /**
+         * MOV d'une valeur immediate.
+         */
+        MOVE,
+        /**
+         * LDR et STR.
+         */
+        MEMORY,
+        /**
+         * Branchements, conditionnels ou non.
+         */
+        BRANCH
+    }
+
+    private final long seed;
+    private final Map<Kind, Integer> mix = new EnumMap<>(Kind.class);
+    private double labelDensity = 0.05;
+    private double forwardRatio = 0.5;
+    private double commentNoise = 0.1;
+
+    /**
+     * Cree un generateur dont la repartition par defaut ressemble a un programme ecrit a la main.
+     *
+     * @param seed la graine du generateur
+     */
+    SourceGenerator(long seed)
+    {
+        this.seed = seed;
+        mix.put(Kind.DATA, 30);
+        mix.put(Kind.SHIFT, 10);
+        mix.put(Kind.ARITHMETIC, 25);
+        mix.put(Kind.MOVE, 15);
+        mix.put(Kind.MEMORY, 10);
+        mix.put(Kind.BRANCH, 10);
+    }
+
+    /**
+     * @param kind une famille d'instructions
+     * @param weight le poids relatif de la famille, 0 pour ne jamais la generer
+     * @return ce generateur
+     */
+    SourceGenerator mix(Kind kind, int weight)
+    {
+        if (weight < 0)
+            throw new IllegalArgumentException("Negative weight: " + weight);
+        mix.put(kind, weight);
+        return this;
+    }
+
+    /**
+     * @param density la probabilite qu'une instruction porte un label
+     * @return ce generateur
+     */
+    SourceGenerator labelDensity(double density)
+    {
+        this.labelDensity = probability(density);
+        return this;
+    }
+
+    /**
+     * @param ratio la probabilite qu'un branchement vise un label defini plus loin
+     * @return ce generateur
+     */
+    SourceGenerator forwardRatio(double ratio)
+    {
+        this.forwardRatio = probability(ratio);
+        return this;
+    }
+
+    /**
+     * @param noise la probabilite qu'une ligne soit suivie d'un commentaire, ou precedee d'une ligne de commentaire
+     * @return ce generateur
+     */
+    SourceGenerator commentNoise(double noise)
+    {
+        this.commentNoise = probability(noise);
+        return this;
+    }
+
+    /**
+     * Genere un programme en memoire.
+     *
+     * @param instructions le nombre d'instructions du programme
+     * @return le programme
+     */
+    String generate(int instructions)
+    {
+        StringBuilder program = new StringBuilder(instructions * 24);
+        try
+        {
+            generate(instructions, program);
+        }
+        catch (IOException e)
+        {
+            throw new IllegalStateException(e);
+        }
+        return program.toString();
+    }
+
+    /**
+     * Genere un programme. Deux appels avec la meme graine et les memes parametres produisent le meme programme.
+     *
+     * @param instructions le nombre d'instructions du programme
+     * @param out la destination du programme
+     * @throws IOException si l'ecriture echoue
+     */
+    void generate(int instructions, Appendable out) throws IOException
+    {
+        SplittableRandom random = new SplittableRandom(seed);
+
+        // Place les labels ; la premiere instruction en porte toujours un, pour qu'un branchement ait toujours une cible
+        boolean[] labelled = new boolean[instructions];
+        int[] targets = new int[Math.min(instructions, TARGETS)];
+        int count = 0;
+        for (int i = 0; i < instructions; i++)
+        {
+            labelled[i] = i == 0 || random.nextDouble() < labelDensity;
+            if (labelled[i] && i < TARGETS)
+                targets[count++] = i;
+        }
+        targets = Arrays.copyOf(targets, count);
+
+        Kind[] kinds = Kind.values();
+        int total = mix.values().stream().mapToInt(Integer::intValue).sum();
+        if (total == 0)
+            throw new IllegalArgumentException("Empty instruction mix");
+
+        for (int i = 0; i < instructions; i++)
+        {
+            if (random.nextDouble() < commentNoise)
+                out.append("; ").append(words(random)).append('\n');
+            if (labelled[i])
+                out.append('L').append(Integer.toString(i)).append(": ");
+            else
+                out.append("    ");
+
+            int pick = random.nextInt(total);
+            Kind kind = kinds[0];
+            for (Kind candidate : kinds)
+            {
+                kind = candidate;
+                pick -= mix.get(candidate);
+                if (pick < 0)
+                    break;
+            }
+            instruction(kind, i, targets, random, out);
+
+            if (random.nextDouble() < commentNoise)
+                out.append("    ; ").append(words(random));
+            out.append('\n');
+        }
+    }
+
+    private void instruction(Kind kind, int address, int[] targets, SplittableRandom random, Appendable out) throws IOException
+    {
+        switch (kind)
+        {
+            case DATA:
+                int form = random.nextInt(DATA.length + 2);
+                if (form == DATA.length)
+                    out.append("MUL ").append(register(random)).append(", ").append(register(random)).append(", ").append(register(random));
+                else if (form == DATA.length + 1)
+                    out.append("RSB ").append(register(random)).append(", ").append(register(random)).append(", #0");
+                else
+                    out.append(DATA[form]).append(' ').append(register(random)).append(", ").append(register(random));
+                break;
+            case SHIFT:
+                out.append(SHIFTS[random.nextInt(SHIFTS.length)]).append(' ').append(register(random)).append(", ").append(register(random))
+                        .append(", #").append(Integer.toString(random.nextInt(32)));
+                break;
+            case ARITHMETIC:
+                // SUB n'accepte pas de valeur immediate
+                boolean add = random.nextBoolean();
+                out.append(add ? "ADD " : "SUB ").append(register(random)).append(", ").append(register(random)).append(", ");
+                if (add && random.nextBoolean())
+                    out.append("#").append(Integer.toString(random.nextInt(8)));
+                else
+                    out.append(register(random));
+                break;
+            case MOVE:
+                out.append("MOV ").append(register(random)).append(", #").append(Integer.toString(random.nextInt(256)));
+                break;
+            case MEMORY:
+                out.append(random.nextBoolean() ? "LDR " : "STR ").append(register(random)).append(", [R7, #").append(Integer.toString(random.nextInt(256))).append(']');
+                break;
+            case BRANCH:
+                Condition[] conditions = Condition.values();
+                out.append('B');
+                if (random.nextBoolean())
+                    out.append(conditions[random.nextInt(conditions.length)].toString());
+                out.append(" L").append(Integer.toString(target(address, targets, random)));
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown kind: " + kind);
+        }
+    }
+
+    /**
+     * Choisit la cible d'un branchement : un label plus loin avec la probabilite {@link #forwardRatio},
+     * sinon un label precedent ou celui de l'instruction elle-meme.
+     * A defaut de label dans la direction choisie, l'autre direction est utilisee.
+     */
+    private int target(int address, int[] targets, SplittableRandom random)
+    {
+        // Nombre de cibles d'adresse inferieure ou egale a l'instruction
+        int before = Arrays.binarySearch(targets, address);
+        before = before >= 0 ? before + 1 : -before - 1;
+        boolean forward = before < targets.length && (before == 0 || random.nextDouble() < forwardRatio);
+        if (forward)
+            return targets[before + random.nextInt(targets.length - before)];
+        return targets[random.nextInt(before)];
+    }
+
+    private static String register(SplittableRandom random)
+    {
+        return "R" + random.nextInt(8);
+    }
+
+    private static String words(SplittableRandom random)
+    {
+        StringBuilder words = new StringBuilder();
+        for (int i = random.nextInt(1, 6); i > 0; i--)
+        {
+            words.append(WORDS[random.nextInt(WORDS.length)]).append(i > 1 ? " " : "");
+        }
+        return words.toString();
+    }
+
+    private static double probability(double value)
+    {
+        if (value < 0 || value > 1)
+            throw new IllegalArgumentException("Not a probability: " + value);
+        return value;
+    }
+
+    /**
+     * Ecrit un programme synthetique sur la sortie standard.
+     * <p>
+     * Options :
+     * <pre>
+     * --lines=N       nombre d'instructions (par defaut 100000)
+     * --seed=S        graine du generateur (par defaut 42)
+     * --mix=K:W,...   poids de chaque famille, voir {@link Kind} (par exemple data:30,branch:10)
+     * --labels=P      probabilite qu'une instruction porte un label
+     * --forward=P     probabilite qu'un branchement vise un label plus loin
+     * --comments=P    probabilite d'ajouter un commentaire
+     * </pre>
+     *
+     * @param args les options
+     * @throws IOException si l'ecriture echoue
+     */
+    public static void main(String[] args) throws IOException
+    {
+        int lines = 100_000;
+        long seed = 42;
+        Map<Kind, Integer> weights = new EnumMap<>(Kind.class);
+        double labels = -1;
+        double forward = -1;
+        double comments = -1;
+        for (String arg : args)
+        {
+            if (arg.startsWith("--lines="))
+                lines = Integer.parseInt(arg.substring("--lines=".length()));
+            else if (arg.startsWith("--seed="))
+                seed = Long.parseLong(arg.substring("--seed=".length()));
+            else if (arg.startsWith("--mix="))
+                for (String entry : arg.substring("--mix=".length()).split(","))
+                {
+                    String[] pair = entry.split(":");
+                    weights.put(Kind.valueOf(pair[0].toUpperCase()), Integer.parseInt(pair[1]));
+                }
+            else if (arg.startsWith("--labels="))
+                labels = Double.parseDouble(arg.substring("--labels=".length()));
+            else if (arg.startsWith("--forward="))
+                forward = Double.parseDouble(arg.substring("--forward=".length()));
+            else if (arg.startsWith("--comments="))
+                comments = Double.parseDouble(arg.substring("--comments=".length()));
+            else
+                throw new IllegalArgumentException("Unknown option: " + arg);
+        }
+
+        SourceGenerator generator = new SourceGenerator(seed);
+        weights.forEach(generator::mix);
+        if (labels >= 0)
+            generator.labelDensity(labels);
+        if (forward >= 0)
+            generator.forwardRatio(forward);
+        if (comments >= 0)
+            generator.commentNoise(comments);
+        Writer out = new OutputStreamWriter(System.out, StandardCharsets.UTF_8);
+        generator.generate(lines, out);
+        out.flush();
+    }
+}
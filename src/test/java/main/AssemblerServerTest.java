@@ -0,0 +1,136 @@
+package main;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Dialogue avec le serveur d'assemblage sur un port TCP local choisi par le systeme.
+ */
+class AssemblerServerTest
+{
+    private static final String PROGRAM = "MOV R1, #5\nloop: ADD R0, R1, #3\nBNE loop\n";
+    /**
+     * Programmes dont l'image de la RAM contient une constante de la reserve, une section de donnees, ou les deux.
+     */
+    private static final String[] RAM_PROGRAMS = {
+            "LDR R0, =0x12345678\nMOV R1, #2\n",
+            ".data\nx: .word 7\n.text\nLDR R0, x\nSTR R0, x\n",
+            ".data\nx: .fill 3, 9\n.text\nLDR R0, x\nLDR R1, =0x1235\n"
+    };
+
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+    private SocketAddress address;
+    private Future<?> server;
+
+    @BeforeEach
+    void start() throws IOException
+    {
+        ServerSocketChannel channel = AssemblerServer.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+        address = channel.getLocalAddress();
+        server = executor.submit(() -> {
+            new AssemblerServer(channel).serve();
+            return null;
+        });
+    }
+
+    @AfterEach
+    void stop() throws Exception
+    {
+        try (AssemblerClient client = new AssemblerClient(address))
+        {
+            client.stop();
+        }
+        server.get(10, TimeUnit.SECONDS);
+        executor.shutdown();
+    }
+
+    @Test
+    void assemblesLikeTheAssembler() throws IOException
+    {
+        try (AssemblerClient client = new AssemblerClient(address))
+        {
+            for (String parser : new String[]{"regex", "descent"})
+            {
+                AssemblerClient.Images images = client.assemble(PROGRAM.getBytes(StandardCharsets.UTF_8), parser, Image.Format.BINARY);
+                assertArrayEquals(AssemblerTest.assemble(PROGRAM), Image.Format.BINARY.read(ByteBuffer.wrap(images.getRom())).toArray());
+                assertEquals(0, images.getRam().length);
+            }
+        }
+    }
+
+    @Test
+    void keepsTheConnectionAfterAnError() throws IOException
+    {
+        try (AssemblerClient client = new AssemblerClient(address))
+        {
+            IllegalArgumentException error = assertThrows(IllegalArgumentException.class,
+                    () -> client.assemble("B nowhere\n".getBytes(StandardCharsets.UTF_8), "regex", Image.Format.RAW));
+            assertEquals("Label not found: nowhere", error.getMessage());
+            byte[] image = client.assemble(PROGRAM.getBytes(StandardCharsets.UTF_8), "regex", Image.Format.RAW).getRom();
+            assertTrue(new String(image, StandardCharsets.US_ASCII).startsWith(Image.HEADER));
+            String statistics = client.statistics();
+            assertTrue(statistics.contains("requests 3\n"), statistics);
+            assertTrue(statistics.contains("errors 1\n"), statistics);
+        }
+    }
+
+    @Test
+    void answersInAsciiWhateverTheLocale() throws IOException
+    {
+        Locale locale = Locale.getDefault();
+        Locale.setDefault(Locale.FRANCE);
+        try (AssemblerClient client = new AssemblerClient(address))
+        {
+            IllegalArgumentException error = assertThrows(IllegalArgumentException.class,
+                    () -> client.assemble(".data\nt\u00e9: .word 1\n".getBytes(StandardCharsets.UTF_8), "regex", Image.Format.RAW));
+            assertEquals("Instruction in .data section: t?: .word 1", error.getMessage());
+            client.assemble(PROGRAM.getBytes(StandardCharsets.UTF_8), "regex", Image.Format.RAW);
+            String statistics = client.statistics();
+            assertTrue(statistics.matches("(?s).*\np50 \\d+\\.\\d{3} ms\n.*"), statistics);
+        }
+        finally
+        {
+            Locale.setDefault(locale);
+        }
+    }
+
+    @Test
+    void writesTheRamImageLikeTheAssembler(@TempDir Path directory) throws IOException
+    {
+        int port = ((InetSocketAddress) address).getPort();
+        for (int i = 0; i < RAM_PROGRAMS.length; i++)
+        {
+            Path source = directory.resolve("program" + i + ".s");
+            Files.write(source, RAM_PROGRAMS[i].getBytes(StandardCharsets.UTF_8));
+            Path rom = directory.resolve("rom" + i + ".ini");
+            Path ram = directory.resolve("ram" + i + ".ini");
+            Assembler.main(new String[]{"--output=" + rom, "--ram=" + ram, source.toString()});
+
+            AssemblerClient.main(new String[]{"--port=" + port, source.toString()});
+            assertArrayEquals(Files.readAllBytes(rom), Files.readAllBytes(directory.resolve("program" + i + ".ini")));
+            assertArrayEquals(Files.readAllBytes(ram), Files.readAllBytes(directory.resolve("program" + i + AssemblerClient.RAM_SUFFIX)));
+        }
+    }
+}
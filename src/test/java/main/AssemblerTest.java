@@ -0,0 +1,88 @@
+package main;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Assemblage en une seule passe : labels, branchements vers l'avant corriges a la definition du label.
+ */
+class AssemblerTest
+{
+    static int[] assemble(String program)
+    {
+        return Assembler.assemble(Source.of(program), PatternParser::new, 1);
+    }
+
+    @Test
+    void encodesEachInstruction()
+    {
+        assertArrayEquals(new int[]{0x2105, 0x1CC8, 0x4351}, assemble("MOV R1, #5\nADD R0, R1, #3\nMUL R1, R2, R1\n"));
+    }
+
+    @Test
+    void patchesForwardBranches()
+    {
+        int[] program = assemble("B end\nBEQ end\nMOV R0, #1\nend MOV R0, #2\n");
+        assertEquals(0xDE03, program[0]);
+        assertEquals(0xD003, program[1]);
+    }
+
+    @Test
+    void encodesBackwardBranches()
+    {
+        int[] program = assemble("MOV R0, #1\nloop: ADD R0, R0, #1\nBNE loop\n");
+        assertEquals(0xD101, program[2]);
+    }
+
+    @Test
+    void acceptsLabelsWithOrWithoutColon()
+    {
+        int[] program = assemble("MOV R0, #1\nfirst: MOV R0, #2\nsecond MOV R0, #3\nB first\nB second\n");
+        assertArrayEquals(new int[]{0x2001, 0x2002, 0x2003, 0xDE01, 0xDE02}, program);
+    }
+
+    @Test
+    void ignoresLinesWithoutInstruction()
+    {
+        assertArrayEquals(new int[]{0x2001}, assemble("\n   \n; rien\nMOV R0, #1 ; un\n"));
+    }
+
+    @Test
+    void unknownOperandsGiveAnEmptyWord()
+    {
+        assertArrayEquals(new int[]{0, 0x2001}, assemble("MOV R1, R2\nMOV R0, #1\n"));
+    }
+
+    @Test
+    void rejectsUndefinedLabels()
+    {
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class, () -> assemble("B nowhere\n"));
+        assertEquals("Label not found: nowhere", e.getMessage());
+    }
+
+    @Test
+    void rejectsProgramsLargerThanTheRom()
+    {
+        // Un compteur de programme sur 8 bits ne peut pas atteindre les instructions au-dela de la ROM
+        String[] programs = {
+                "MOV R0, #1\n".repeat(300),
+                "start: MOV R0, #1\n" + "ADD R0, R0, #1\n".repeat(298) + "B start\n"
+        };
+        for (String program : programs)
+        {
+            IllegalArgumentException e = assertThrows(IllegalArgumentException.class, () -> assemble(program));
+            assertEquals("Program does not fit in ROM: 300 instructions", e.getMessage());
+        }
+        assertEquals(Simulator.ROM_SIZE, assemble("MOV R0, #1\n".repeat(Simulator.ROM_SIZE)).length);
+    }
+
+    @Test
+    void rejectsValuesThatDoNotFitInTheirField()
+    {
+        assertThrows(IllegalArgumentException.class, () -> assemble("MOV R0, #256\n"));
+        assertThrows(IllegalArgumentException.class, () -> assemble("ADD R8, R0, #1\n"));
+    }
+}
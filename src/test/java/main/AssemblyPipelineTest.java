@@ -0,0 +1,98 @@
+package main;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Assemblage au fil de la lecture : meme resultat que l'assembleur, et image precedente conservee en cas d'erreur.
+ */
+class AssemblyPipelineTest
+{
+    @TempDir
+    Path directory;
+
+    @Test
+    void matchesTheAssembler() throws IOException
+    {
+        String program = new SourceGenerator(4).commentNoise(0.3).generate(Simulator.ROM_SIZE);
+        int[] expected = AssemblerTest.assemble(program);
+        for (String parser : new String[]{"regex", "descent"})
+        {
+            int[] words = new int[expected.length];
+            int[] next = {0};
+            int length = new AssemblyPipeline(parser, 2).assemble(new StringReader(program), AssemblyPipeline.ordered((address, word) -> {
+                assertEquals(next[0]++, address);
+                words[address] = word;
+            }));
+            assertEquals(expected.length, length);
+            assertArrayEquals(expected, words);
+        }
+    }
+
+    @Test
+    void reportsMissingLabels()
+    {
+        assertThrows(IllegalArgumentException.class,
+                () -> new AssemblyPipeline().assemble(Stream.of("MOV R0, #1", "B nowhere"), (address, word) -> { }));
+    }
+
+    @Test
+    void rejectsProgramsLargerThanTheRom()
+    {
+        AssemblyPipeline.Sink sink = new AssemblyPipeline.Sink()
+        {
+            @Override
+            public void accept(int address, int word)
+            {
+            }
+
+            @Override
+            public void finish(int length)
+            {
+                throw new AssertionError("Finished a program of " + length + " instructions");
+            }
+        };
+        Stream<String> lines = Stream.concat(Stream.of("start: MOV R0, #1"), Stream.generate(() -> "B start").limit(Simulator.ROM_SIZE));
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class, () -> new AssemblyPipeline().assemble(lines, sink));
+        assertEquals("Program does not fit in ROM: 257 instructions", e.getMessage());
+    }
+
+    @Test
+    void writesTheSameImageAsTheAssembler() throws IOException
+    {
+        Path source = Files.writeString(directory.resolve("program.s"), new SourceGenerator(8).generate(Simulator.ROM_SIZE));
+        Path streamed = directory.resolve("streamed.ini");
+        Path built = directory.resolve("built.ini");
+        Assembler.main(new String[]{"--stream", "--output=" + streamed, source.toString()});
+        Assembler.main(new String[]{"--output=" + built, source.toString()});
+        assertArrayEquals(Image.read(built).toArray(), Image.read(streamed).toArray());
+    }
+
+    @Test
+    void keepsThePreviousImageOnError() throws IOException
+    {
+        Path output = Files.writeString(directory.resolve("rom.ini"), Image.HEADER + "\n2105\n");
+        // Un label manquant, puis un programme trop long, decouverts apres l'ecriture des premiers mots
+        Path source = Files.writeString(directory.resolve("program.s"), "MOV R0, #1\n".repeat(200) + "B nowhere\n");
+        assertThrows(IllegalArgumentException.class, () -> Assembler.main(new String[]{"--stream", "--output=" + output, source.toString()}));
+        assertEquals(Image.HEADER + "\n2105\n", Files.readString(output));
+        Files.writeString(source, "MOV R0, #1\n".repeat(Simulator.ROM_SIZE + 1));
+        assertThrows(IllegalArgumentException.class, () -> Assembler.main(new String[]{"--stream", "--output=" + output, source.toString()}));
+        assertEquals(Image.HEADER + "\n2105\n", Files.readString(output));
+        try (Stream<Path> files = Files.list(directory))
+        {
+            assertEquals(Arrays.asList("program.s", "rom.ini"), files.map(path -> path.getFileName().toString()).sorted().toList());
+        }
+    }
+}
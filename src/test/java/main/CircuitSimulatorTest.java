@@ -0,0 +1,57 @@
+package main;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Simulation de <tt>ProjetPEP.circ</tt> comparee au {@link Simulator} sur la partie cablee du circuit :
+ * le chargement des instructions.
+ */
+class CircuitSimulatorTest
+{
+    private static final String CIRCUIT = "ProjetPEP.circ";
+
+    private static int find(CircuitSimulator circuit, Netlist.Kind kind)
+    {
+        Netlist.Gate[] gates = circuit.getGates();
+        for (int gate = 0; gate < gates.length; gate++)
+        {
+            if (gates[gate].getKind() == kind)
+                return gate;
+        }
+        throw new AssertionError("No " + kind + " in " + CIRCUIT);
+    }
+
+    @Test
+    void fetchesLikeTheSimulator() throws IOException
+    {
+        int[] rom = AssemblerTest.assemble("MOV R0, #5\nMOV R1, #3\nADD R2, R0, R1\nLSL R3, R2, #2\nMUL R3, R0, R3\nSTR R3, [R7, #1]\n");
+        CircuitSimulator circuit = new CircuitSimulator(Netlist.load(CIRCUIT));
+        assertEquals(1, circuit.loadRom(rom));
+        int memory = find(circuit, Netlist.Kind.ROM);
+
+        Simulator simulator = new Simulator(rom);
+        // Le premier front montant amene le compteur a 0, chaque front suivant a l'instruction suivante
+        circuit.tick();
+        for (int instruction = 0; instruction < rom.length; instruction++)
+        {
+            assertEquals(simulator.getProgramCounter(), circuit.input(memory, 0));
+            assertEquals(rom[simulator.getProgramCounter()], circuit.value(memory, 0));
+            simulator.run(1);
+            circuit.tick();
+            circuit.tick();
+        }
+        assertEquals(rom.length, circuit.input(memory, 0));
+    }
+
+    @Test
+    void reportsTheUnwiredWriteBack() throws IOException
+    {
+        // Le resultat de l'ALU n'atteint pas les registres, voir la documentation de CircuitSimulator
+        assertTrue(Netlist.load(CIRCUIT).getWarnings().contains("main: lone tunnel \"DataIn\""));
+    }
+}
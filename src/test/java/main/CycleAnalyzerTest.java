@@ -0,0 +1,106 @@
+package main;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Categories, blocs de base, boucles imbriquees et pire chemin du rapport de {@link CycleAnalyzer}.
+ */
+class CycleAnalyzerTest
+{
+    private static final String NESTED = "MOV R0, #0\nMOV R1, #10\n"
+            + "outer: MOV R2, #0\ninner: ADD R2, R2, #1\nCMP R2, R1\nBNE inner\nADD R0, R0, #1\nCMP R0, R1\nBNE outer\n"
+            + "B skip\nMOV R3, #1\nskip: STR R0, [R7, #1]\nend: B end\n";
+
+    /**
+     * Analyse un programme source en nommant ses instructions comme la commande <tt>CycleAnalyzer</tt>.
+     */
+    private static String report(String source, int[] costs) throws IOException
+    {
+        Map<String, Long> link = new HashMap<>();
+        int[] program = Assembler.assemble(Source.of(source), PatternParser::new, link);
+        String[] labels = new String[program.length + 1];
+        for (Map.Entry<String, Long> entry : link.entrySet())
+            labels[entry.getValue().intValue()] = entry.getKey();
+        StringBuilder out = new StringBuilder();
+        new CycleAnalyzer(program, labels, costs).analyse().report(out);
+        return out.toString();
+    }
+
+    @Test
+    void decodesCategoriesLikeTheController()
+    {
+        int[] words = AssemblerTest.assemble("MOV R0, #1\nLSL R1, R0, #2\nMUL R1, R0, R1\nCMP R0, R1\nSTR R0, [R7, #1]\nLDR R0, [R7, #1]\nBEQ end\nend: B end\n");
+        CycleAnalyzer.Category[] expected = {
+                CycleAnalyzer.Category.SHIFT_ADD_SUB_MOVE, CycleAnalyzer.Category.SHIFT_ADD_SUB_MOVE,
+                CycleAnalyzer.Category.DATA_PROCESSING, CycleAnalyzer.Category.DATA_PROCESSING,
+                CycleAnalyzer.Category.LOAD_STORE, CycleAnalyzer.Category.LOAD_STORE,
+                CycleAnalyzer.Category.BRANCH, CycleAnalyzer.Category.BRANCH
+        };
+        for (int i = 0; i < words.length; i++)
+            assertEquals(expected[i], CycleAnalyzer.Category.of(words[i]), Integer.toHexString(words[i]));
+    }
+
+    @Test
+    void boundsStraightLinePrograms() throws IOException
+    {
+        String program = "MOV R0, #1\nMOV R1, #2\nADD R2, R0, R1\nSTR R2, [R7, #1]\n";
+        String report = report(program, CycleAnalyzer.defaultCosts());
+        assertTrue(report.contains("\"blocks\": 1,"), report);
+        assertTrue(report.contains("\"worstCase\": {\"cycles\": 4, \"bounded\": true, \"path\": [0]}"), report);
+        assertTrue(report.contains("\"loops\": [],"), report);
+
+        // Sans branchement, le pire chemin est exactement l'execution du simulateur
+        Simulator simulator = new Simulator(AssemblerTest.assemble(program));
+        assertEquals(Simulator.Status.HALTED, simulator.run(100));
+        assertEquals(4, simulator.getExecuted());
+    }
+
+    @Test
+    void nestsLoops() throws IOException
+    {
+        String report = report(NESTED, CycleAnalyzer.defaultCosts());
+        assertTrue(report.contains("{\"id\": 0, \"header\": 2, \"label\": \"outer\", \"parent\": null, \"depth\": 1, \"blocks\": [2, 6], "
+                + "\"cyclesPerIteration\": 7, \"estimatedCycles\": 340.0, \"exits\": true, \"irreducible\": false, \"hot\": true}"), report);
+        assertTrue(report.contains("{\"id\": 1, \"header\": 3, \"label\": \"inner\", \"parent\": 0, \"depth\": 2, \"blocks\": [3], "
+                + "\"cyclesPerIteration\": 3, \"estimatedCycles\": 300.0, \"exits\": true, \"irreducible\": false, \"hot\": true}"), report);
+        // Chaque boucle interieure compte TRIP_COUNT fois plus que la boucle qui la contient
+        assertTrue(report.contains("\"estimatedCycles\": 345.0,"), report);
+    }
+
+    @Test
+    void skipsUnreachableCode() throws IOException
+    {
+        String report = report(NESTED, CycleAnalyzer.defaultCosts());
+        assertTrue(report.contains("\"worstCase\": {\"cycles\": 12, \"bounded\": false, \"path\": [0, 2, 9, 11, 12]}"), report);
+        assertTrue(report.contains("\"unreachableInstructions\": 1,"), report);
+        assertTrue(report.contains("\"unreachable\": [{\"start\": 10, \"end\": 10}],"), report);
+    }
+
+    @Test
+    void appliesCategoryCosts() throws IOException
+    {
+        int[] costs = CycleAnalyzer.defaultCosts();
+        costs[CycleAnalyzer.Category.LOAD_STORE.ordinal()] = 3;
+        String report = report(NESTED, costs);
+        assertTrue(report.contains("\"staticCycles\": 15,"), report);
+        assertTrue(report.contains("\"worstCase\": {\"cycles\": 14,"), report);
+        assertTrue(report.contains("\"LOAD_STORE\": 3"), report);
+    }
+
+    @Test
+    void stopsOnUndefinedWords() throws IOException
+    {
+        StringBuilder out = new StringBuilder();
+        new CycleAnalyzer(new int[]{0x2001, 0xDF00, 0x2002}, null, CycleAnalyzer.defaultCosts()).analyse().report(out);
+        String report = out.toString();
+        assertTrue(report.contains("\"undefined\": true"), report);
+        assertTrue(report.contains("\"unreachableInstructions\": 1,"), report);
+    }
+}
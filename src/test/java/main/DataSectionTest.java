@@ -0,0 +1,130 @@
+package main;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Directives de la section de donnees, image de la RAM et acces aux donnees depuis les instructions.
+ */
+class DataSectionTest
+{
+    private static DataSection parse(String program)
+    {
+        DataSection data = new DataSection();
+        for (String line : program.split("\n"))
+            assertTrue(data.parse(line), line);
+        return data;
+    }
+
+    private static String image(DataSection data, LiteralPool pool) throws IOException
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        data.write(out, pool);
+        return out.toString(StandardCharsets.US_ASCII);
+    }
+
+    @Test
+    void placesLabelsAndRuns()
+    {
+        DataSection data = parse(".data\ntable: .word 1, 0x10, -1\n.space 4\nzeros:\n.fill 3, 0\n  ones: .fill 2, 1 ; fin\n.text");
+        assertEquals(12, data.size());
+        assertEquals(0, data.address("table"));
+        assertEquals(7, data.address("zeros"));
+        assertEquals(10, data.address("ones"));
+        assertNull(data.address("nowhere"));
+        // Les mots nuls du .space et du .fill forment une seule suite
+        assertEquals(5, data.getRuns());
+        assertEquals(7, data.count(3));
+        assertFalse(data.isActive());
+    }
+
+    @Test
+    void leavesInstructionsToTheParser()
+    {
+        DataSection data = new DataSection();
+        assertFalse(data.parse("MOV R0, #1"));
+        assertFalse(data.parse("label: MOV R0, #1"));
+        assertTrue(data.parse(".data"));
+        assertTrue(data.parse("alone:"));
+        assertTrue(data.parse("; commentaire"));
+        assertTrue(data.isEmpty());
+    }
+
+    @Test
+    void rejectsMalformedDirectives()
+    {
+        String[][] cases = {
+                {".word 1", "Directive outside .data section: .word"},
+                {".data\nMOV R0, #1", "Instruction in .data section: MOV R0, #1"},
+                {".data\n.byte 1", "Unknown directive: .byte"},
+                {".data\n.word", "Invalid directive: .word"},
+                {".data\n.word 1,", "Invalid directive: .word 1,"},
+                {".data\n.fill 2", "Invalid directive: .fill 2"},
+                {".data\n.space -1", "Invalid directive: .space -1"},
+                {".data\n.word 0x100000000", "Value does not fit in 32 bits: 0x100000000"},
+                {".data\n.space 257", "Data section does not fit in RAM: .space 257"},
+                {".data x", "Invalid directive: .data x"},
+                {".global", "Invalid directive: .global"}
+        };
+        for (String[] test : cases)
+        {
+            IllegalArgumentException e = assertThrows(IllegalArgumentException.class, () -> parse(test[0]), test[0]);
+            assertEquals(test[1], e.getMessage());
+        }
+        DataSection data = parse(".data\n.space 200");
+        assertThrows(IllegalArgumentException.class, () -> data.parse(".space 57"));
+    }
+
+    @Test
+    void writesDataBelowThePool() throws IOException
+    {
+        DataSection data = parse(".data\n.word 5, 6\n.space 2");
+        assertEquals(Image.HEADER + "\n5 6 0 0 \n", image(data, new LiteralPool()));
+
+        LiteralPool pool = new LiteralPool(0);
+        pool.address(0x1235);
+        pool.address(7);
+        String text = image(data, pool);
+        // Les zeros du .space prolongent l'espace libre jusqu'a la reserve, rangee depuis le haut de la RAM
+        assertEquals(Image.HEADER + "\n5 6 252*0 7 1235 \n", text);
+        int[] ram = Image.Format.RAW.read(ByteBuffer.wrap(text.getBytes(StandardCharsets.US_ASCII))).toArray();
+        assertEquals(Simulator.RAM_SIZE, ram.length);
+        assertEquals(0x1235, ram[Simulator.RAM_SIZE - 1]);
+    }
+
+    @Test
+    void rejectsDataOverlappingThePool()
+    {
+        DataSection data = parse(".data\n.space 255");
+        LiteralPool pool = new LiteralPool(0);
+        pool.address(1);
+        pool.address(2);
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class, () -> image(data, pool));
+        assertEquals("RAM is full: 255 data words and 2 literals", e.getMessage());
+    }
+
+    @Test
+    void accessesDataFromInstructions() throws IOException
+    {
+        String program = ".data\nx: .word 7\ny: .space 1\n.text\nLDR R0, x\nADD R1, R0, R0\nSTR R1, y\nLDR R2, y\n";
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        int[] rom = Assembler.assemble(Source.of(program), PatternParser::new, out);
+        Simulator simulator = new Simulator(rom);
+        int[] ram = Image.Format.RAW.read(ByteBuffer.wrap(out.toByteArray())).toArray();
+        System.arraycopy(ram, 0, simulator.getRam(), 0, ram.length);
+        assertEquals(Simulator.Status.HALTED, simulator.run(100));
+        assertEquals(7, simulator.getRegister(0));
+        assertEquals(14, simulator.getRegister(2));
+        assertEquals(14, simulator.getRam()[1]);
+    }
+}
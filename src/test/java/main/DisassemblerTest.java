@@ -0,0 +1,46 @@
+package main;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Decodage des mots et texte reassemblable, en accord avec le {@link Simulator}.
+ */
+class DisassemblerTest
+{
+    @Test
+    void producesReassemblableText()
+    {
+        Image image = Image.of(AssemblerTest.assemble(new SourceGenerator(12).commentNoise(0.2).generate(Simulator.ROM_SIZE)));
+        assertEquals(-1, Disassembler.verify(image));
+    }
+
+    @Test
+    void labelsBranchTargets()
+    {
+        Image image = Image.of(AssemblerTest.assemble("loop: MOV R1, #5\nADD R0, R1, #3\nBNE loop\nB loop\n"));
+        assertEquals("L0: MOV R1, #5\n    ADD R0, R1, #3\n    BNE L0\n    B L0\n", Disassembler.disassemble(image));
+    }
+
+    @Test
+    void leavesUndefinedWordsInComments()
+    {
+        // Condition 15 : indefinie pour le desassembleur comme pour le simulateur
+        Image image = Image.of(new int[]{0x2001, 0xDF00});
+        assertEquals("    MOV R0, #1\n    ; unknown 0xdf00\n", Disassembler.disassemble(image));
+        assertEquals(Instructions.UNKNOWN_INSTRUCTION, Disassembler.instruction(Disassembler.decode(0xDF00)));
+        assertEquals(Simulator.Status.UNDEFINED, new Simulator(image.toArray()).run(10));
+    }
+
+    @Test
+    void agreesWithTheSimulatorOnEveryBranchWord()
+    {
+        for (int word = 0xD000; word <= 0xDFFF; word++)
+        {
+            boolean defined = Disassembler.instruction(Disassembler.decode(word)) != Instructions.UNKNOWN_INSTRUCTION;
+            Simulator simulator = new Simulator(new int[]{word});
+            assertEquals(defined, simulator.run(1) != Simulator.Status.UNDEFINED, Integer.toHexString(word));
+        }
+    }
+}
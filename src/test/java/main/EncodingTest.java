@@ -0,0 +1,87 @@
+package main;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Codage des instructions par decalages et masques.
+ * Les valeurs attendues sont celles des opcodes binaires ecrits sous forme de texte par la premiere version de l'assembleur.
+ */
+class EncodingTest
+{
+    static int encode(String line)
+    {
+        ParsedLine parsed = new ParsedLine();
+        new PatternParser().parse(line, parsed);
+        return Instructions.getEnum(parsed).encode(parsed);
+    }
+
+    @ParameterizedTest
+    @CsvSource(delimiter = '|', value = {
+            "AND R1, R2         | 4011",
+            "EOR R3, R4         | 4063",
+            "LSL R1, R2         | 4091",
+            "LSR R1, R2         | 40D1",
+            "ASR R1, R2         | 4111",
+            "ADC R5, R6         | 4175",
+            "SBC R7, R0         | 4187",
+            "ROR R1, R2         | 41D1",
+            "TST R1, R2         | 4211",
+            "RSB R1, R2, #0     | 4251",
+            "CMP R3, R4         | 42A3",
+            "CMN R3, R4         | 42E3",
+            "ORR R1, R2         | 4311",
+            "MUL R1, R2, R1     | 4351",
+            "BIC R1, R2         | 4391",
+            "MVN R1, R2         | 43D1",
+            "LSL R1, R2, #31    | 07D1",
+            "LSR R1, R2, #1     | 0851",
+            "ASR R3, R4, #7     | 11E3",
+            "ADD R1, R2, R3     | 18D1",
+            "ADD R1, R2, #7     | 1DD1",
+            "SUB R1, R2, R3     | 1AD1",
+            "MOV R7, #255       | 27FF",
+            "STR R1, [R2, #3]   | 9103",
+            "LDR R1, [R2, #3]   | 9903",
+            "B label            | DE00",
+            "BGT label          | DC00",
+    })
+    void encodesLikeTheTextualOpcodes(String line, String expected)
+    {
+        assertEquals(Integer.parseInt(expected, 16), encode(line));
+    }
+
+    @Test
+    void addsTheBranchTarget()
+    {
+        assertEquals(0xD1FF, Encoding.target(encode("BNE loop"), 255));
+        assertThrows(IllegalArgumentException.class, () -> Encoding.target(encode("B loop"), 256));
+        assertThrows(IllegalArgumentException.class, () -> Encoding.target(encode("B loop"), -1));
+    }
+
+    @Test
+    void checksEachField()
+    {
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class, () -> encode("ADD R1, R2, #8"));
+        assertEquals("Value 8 does not fit in 3 bits (group " + Assembler.TWO_OPERAND_OFFSET + ")", e.getMessage());
+        assertThrows(IllegalArgumentException.class, () -> encode("LSL R1, R2, #32"));
+        assertThrows(IllegalArgumentException.class, () -> encode("MOV R1, #256"));
+        assertThrows(IllegalArgumentException.class, () -> encode("AND R8, R1"));
+    }
+
+    @Test
+    void decodesTheFieldsItEncodes()
+    {
+        Encoding encoding = Instructions.ADD_I.getEncoding();
+        int word = encoding.encode(5, 6, 7);
+        assertEquals(word & encoding.getMask(), encoding.getOpcode());
+        Encoding.Field[] fields = encoding.getFields();
+        assertEquals(5, fields[0].decode(word));
+        assertEquals(6, fields[1].decode(word));
+        assertEquals(7, fields[2].decode(word));
+    }
+}
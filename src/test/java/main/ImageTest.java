@@ -0,0 +1,99 @@
+package main;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.SplittableRandom;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Ecriture et relecture des images dans chaque format.
+ */
+class ImageTest
+{
+    @TempDir
+    Path directory;
+
+    @ParameterizedTest
+    @EnumSource(Image.Format.class)
+    void roundTrips(Image.Format format) throws IOException
+    {
+        // Plus de 64 Ko pour les enregistrements d'adresse etendue du format Intel HEX
+        int[] program = new int[40_000];
+        SplittableRandom random = new SplittableRandom(3);
+        for (int i = 0; i < program.length; i++)
+            program[i] = random.nextInt(8) == 0 ? 0 : random.nextInt(1 << 16);
+        Path path = directory.resolve("rom." + format.getExtension());
+        Image.of(program).write(path, format);
+        assertEquals(format, Image.Format.of(path));
+        assertArrayEquals(program, Image.read(path).toArray());
+    }
+
+    @Test
+    void writesRunsInLogisimImages() throws IOException
+    {
+        Path path = directory.resolve("rom.ini");
+        Image.of(new int[]{0x2105, 0, 0, 0, 0, 0xDE03}).write(path, Image.Format.RAW);
+        assertEquals("v2.0 raw\n2105 4*0 de03", Files.readString(path, StandardCharsets.US_ASCII).trim());
+    }
+
+    @Test
+    void readsLogisimValues()
+    {
+        assertArrayEquals(new int[]{0x2105, 7, 7, 7, 0xFFFF}, Image.values("2105 # commentaire\n3*7\tffff\n"));
+        assertThrows(IllegalArgumentException.class, () -> Image.values("12g4"));
+        assertArrayEquals(new int[]{0x12345678, 0x12345678}, Image.values("2*12345678"));
+        assertThrows(IllegalArgumentException.class, () -> Image.values("123456789"));
+    }
+
+    @Test
+    void keepsTheLowSixteenBits()
+    {
+        assertEquals(0xBEEF, Image.of(new int[]{0x1BEEF}).get(0));
+    }
+
+    @Test
+    void rejectsMalformedFiles() throws IOException
+    {
+        Path raw = Files.writeString(directory.resolve("rom.ini"), "2105 de03");
+        assertThrows(IOException.class, () -> Image.read(raw));
+        Path binary = Files.write(directory.resolve("rom.bin"), new byte[]{1, 2, 3});
+        assertThrows(IOException.class, () -> Image.read(binary));
+        Path hex = Files.writeString(directory.resolve("rom.hex"), ":020000000102FB\n");
+        assertThrows(IOException.class, () -> Image.read(hex));
+    }
+
+    @Test
+    void rejectsWordsWiderThanSixteenBits() throws IOException
+    {
+        for (String values : new String[]{"12345", "3*10000"})
+        {
+            Path raw = Files.writeString(directory.resolve("rom.ini"), Image.HEADER + "\n2105 " + values + "\n");
+            IOException e = assertThrows(IOException.class, () -> Image.read(raw));
+            assertEquals("Value does not fit in 16 bits: " + values, e.getMessage());
+        }
+    }
+
+    @Test
+    void rejectsShortAddressRecords() throws IOException
+    {
+        // Enregistrements de type 02 et 04 avec 0 ou 1 octet de donnees, sommes de controle valides
+        for (String record : new String[]{":00000002FE", ":0100000212EB", ":00000004FC", ":0100000412E9"})
+        {
+            Path hex = Files.writeString(directory.resolve("rom.hex"), record + "\n:00000001FF\n");
+            IOException e = assertThrows(IOException.class, () -> Image.read(hex));
+            assertEquals("Malformed HEX record: " + record, e.getMessage());
+        }
+        Path negative = Files.writeString(directory.resolve("rom.hex"), ":0200000480007A\n:020000002105D8\n:00000001FF\n");
+        assertThrows(IOException.class, () -> Image.read(negative));
+    }
+}
@@ -0,0 +1,130 @@
+package main;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+import static main.Assembler.*;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+/**
+ * Recherche des instructions dans la table de dispatch, par nom et groupes reconnus, et texte de leur opcode.
+ */
+class InstructionsTest
+{
+    @ParameterizedTest
+    @CsvSource(delimiter = '|', value = {
+            "AND R1, R2             | AND",
+            "lsl r1, r2             | LSL_R",
+            "LSL R1, R2, #3         | LSL_I",
+            "LsR R1, R2, #3         | LSR_I",
+            "ASR R1, R2             | ASR_R",
+            "ADD R1, R2, R3         | ADD_R",
+            "ADD R1, R2, #3         | ADD_I",
+            "SUB R1, R2, R3         | SUB",
+            "MUL R1, R2, R1         | MUL",
+            "RSB R1, R2, #0         | RSB",
+            "MVN R1, R2             | MVN",
+            "MOV R1, #3             | MOV",
+            "STR R1, #3             | STR_I",
+            "LDR R1, #3             | LDR_I",
+            "LDR R1, [R2, #3]       | LDR_R",
+            "STR R1, [R2, #3]       | STR_R",
+            "B loop                 | B",
+            "BEQ loop               | BC",
+            "bne loop               | BC",
+            "MOV R1, R2             | UNKNOWN_INSTRUCTION",
+            "ADD R1, R2             | UNKNOWN_INSTRUCTION",
+            "CMP R1, R2, R3         | UNKNOWN_INSTRUCTION",
+            "LDR R1, [R2, R3, #3]   | UNKNOWN_INSTRUCTION",
+    })
+    void dispatchesOnNameAndGroups(String line, Instructions expected)
+    {
+        ParsedLine parsed = new ParsedLine();
+        new PatternParser().parse(line, parsed);
+        assertSame(expected, Instructions.getEnum(parsed));
+    }
+
+    @Test
+    void everyInstructionIsFoundByItsNameAndGroups()
+    {
+        assertSame(Instructions.ADC, Instructions.getEnum("ADC", INSTRUCTION_GROUP, FIRST_OPERAND_GROUP, SECOND_OPERAND_GROUP));
+        assertSame(Instructions.BC, Instructions.getEnum("b", INSTRUCTION_GROUP, CONDITION_GROUP, BRANCH_LABEL_GROUP));
+        for (Instructions instruction : Instructions.values())
+        {
+            if (instruction == Instructions.UNKNOWN_INSTRUCTION)
+                continue;
+            assertSame(instruction, Instructions.getEnum(instruction.toString().toLowerCase(), groupsOf(instruction)));
+            int groups = 0;
+            for (int group : groupsOf(instruction))
+                groups |= 1 << group;
+            ParsedLine parsed = new ParsedLine();
+            parsed.reset("  " + instruction + "  ");
+            parsed.set(INSTRUCTION_GROUP, 2, 2 + instruction.toString().length());
+            for (int group : groupsOf(instruction))
+            {
+                if (group != INSTRUCTION_GROUP)
+                    parsed.set(group, 0, 1);
+            }
+            assertEquals(groups, parsed.getGroups());
+            assertSame(instruction, Instructions.getEnum(parsed));
+        }
+    }
+
+    @Test
+    void unknownNamesAreNotFound()
+    {
+        assertSame(Instructions.UNKNOWN_INSTRUCTION, Instructions.getEnum("NOP", INSTRUCTION_GROUP));
+        assertSame(Instructions.UNKNOWN_INSTRUCTION, Instructions.getEnum("ADDS", INSTRUCTION_GROUP, FIRST_OPERAND_GROUP, SECOND_OPERAND_GROUP));
+        assertSame(Instructions.UNKNOWN_INSTRUCTION, Instructions.getEnum("", INSTRUCTION_GROUP));
+    }
+
+    @ParameterizedTest
+    @CsvSource(delimiter = '|', value = {
+            "MOV R1, #5             | 0010000100000101",
+            "ADD R0, R1, #3         | 0001110011001000",
+            "MUL R1, R2, R1         | 0100001101010001",
+            "B end                  | 1101111000000000",
+            "MOV R1, R2             | 0000000000000000",
+    })
+    void writesTheOpcodeAsText(String line, String expected)
+    {
+        ParsedLine parsed = new ParsedLine();
+        new PatternParser().parse(line, parsed);
+        Instructions instruction = Instructions.getEnum(parsed);
+        assertEquals(expected, instruction.getOpcode(parsed));
+        assertEquals(instruction.encode(parsed), Integer.parseInt(expected, 2));
+    }
+
+    @Test
+    void groupsInstructionsByType()
+    {
+        assertEquals(7, Instructions.ofType(InstructionType.SHIFT).length);
+        assertEquals(2, Instructions.ofType(InstructionType.BRANCH).length);
+    }
+
+    /**
+     * @return les groupes requis d'une instruction
+     */
+    private static int[] groupsOf(Instructions instruction)
+    {
+        switch (instruction)
+        {
+            case LSL_I: case LSR_I: case ASR_I: case ADD_I: case RSB:
+                return new int[]{INSTRUCTION_GROUP, FIRST_OPERAND_GROUP, SECOND_OPERAND_GROUP, TWO_OPERAND_OFFSET};
+            case ADD_R: case SUB: case MUL:
+                return new int[]{INSTRUCTION_GROUP, FIRST_OPERAND_GROUP, SECOND_OPERAND_GROUP, THIRD_OPERAND};
+            case MOV: case STR_I: case LDR_I:
+                return new int[]{INSTRUCTION_GROUP, FIRST_OPERAND_GROUP, ADDRESSING_OFFSET};
+            case STR_R: case LDR_R:
+                return new int[]{INSTRUCTION_GROUP, FIRST_OPERAND_GROUP, ADDRESSING_REGISTER, ADDRESSING_OFFSET_REGISTER};
+            case B:
+                return new int[]{INSTRUCTION_GROUP, BRANCH_LABEL_GROUP};
+            case BC:
+                return new int[]{INSTRUCTION_GROUP, CONDITION_GROUP, BRANCH_LABEL_GROUP};
+            default:
+                return new int[]{INSTRUCTION_GROUP, FIRST_OPERAND_GROUP, SECOND_OPERAND_GROUP};
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package main;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Edition des liens : labels locaux a chaque fichier, labels exportes par <tt>.global</tt> et fichiers objets.
+ */
+class LinkerTest
+{
+    private static final String FIRST = "MOV R0, #3\nMOV R6, #1\nloop: SUB R0, R0, R6\nCMP R0, R7\nBNE loop\nLDR R2, value\nB next\n"
+            + ".data\nvalue: .word 5\n";
+    private static final String SECOND = ".global next\nnext: MOV R1, #2\nloop: SUB R1, R1, R6\nCMP R1, R7\nBNE loop\nLDR R3, value\nend: B end\n"
+            + ".data\nvalue: .word 7\n";
+
+    private static ObjectFile compile(String program)
+    {
+        return Assembler.compile(Source.of(program), PatternParser::new);
+    }
+
+    @Test
+    void keepsLocalLabelsInTheirFile()
+    {
+        ObjectFile first = compile(FIRST);
+        ObjectFile second = compile(SECOND);
+        Linker linker = new Linker().add(first).add(second);
+        int[] program = linker.link();
+
+        // Chaque fichier boucle sur son propre label, et lit sa propre donnee
+        int base = first.getWords().length;
+        assertEquals(2, Encoding.TARGET.decode(program[4]));
+        assertEquals(base + 1, Encoding.TARGET.decode(program[base + 3]));
+        assertEquals(LiteralPool.relocate(first.getWords()[5], 0), program[5]);
+        assertEquals(LiteralPool.relocate(second.getWords()[4], 1), program[base + 4]);
+        assertEquals(2, linker.getData().size());
+
+        Simulator simulator = new Simulator(program);
+        assertEquals(Simulator.Status.LOOP, simulator.run(1_000));
+        assertEquals(base + 5, simulator.getProgramCounter());
+        assertEquals(0, simulator.getRegister(0));
+        assertEquals(0, simulator.getRegister(1));
+        assertEquals(2 + 3 * 3 + 2 + 1 + 3 * 2 + 2, simulator.getExecuted());
+    }
+
+    @Test
+    void rejectsLabelsExportedTwice()
+    {
+        Linker linker = new Linker().add(compile(SECOND)).add(compile(SECOND));
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class, linker::link);
+        assertEquals("Duplicate label: next", e.getMessage());
+    }
+
+    @Test
+    void hidesLabelsThatAreNotExported()
+    {
+        Linker linker = new Linker().add(compile(FIRST)).add(compile(SECOND.replace(".global next\n", "")));
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class, linker::link);
+        assertEquals("Label not found: next", e.getMessage());
+    }
+
+    @Test
+    void exportsDataLabels()
+    {
+        ObjectFile table = compile(".data\n.global table\ntable: .word 1, 2\nlocal: .word 3\n");
+        Linker linker = new Linker().add(compile("LDR R0, table\n")).add(table);
+        assertEquals(LiteralPool.relocate(compile("LDR R0, table\n").getWords()[0], 0), linker.link()[0]);
+
+        Linker hidden = new Linker().add(compile("LDR R0, local\n")).add(table);
+        assertThrows(IllegalArgumentException.class, hidden::link);
+    }
+
+    @Test
+    void rejectsUndefinedExports()
+    {
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class, () -> compile(".global nowhere\nMOV R0, #1\n"));
+        assertEquals("Label not found: nowhere", e.getMessage());
+    }
+
+    @Test
+    void rejectsProgramsLargerThanTheRom()
+    {
+        ObjectFile half = compile("MOV R0, #1\n".repeat(Simulator.ROM_SIZE / 2));
+        assertEquals(Simulator.ROM_SIZE, new Linker().add(half).add(half).link().length);
+        Linker linker = new Linker().add(half).add(half).add(compile(".global end\nend: B end\n"));
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class, linker::link);
+        assertEquals("Program does not fit in ROM: 257 instructions", e.getMessage());
+    }
+
+    @Test
+    void readsWrittenObjectFiles(@TempDir Path directory) throws IOException
+    {
+        ObjectFile object = compile(SECOND);
+        Path file = directory.resolve("second.o");
+        object.write(file);
+        ObjectFile read = ObjectFile.read(file);
+        assertArrayEquals(object.getWords(), read.getWords());
+        assertEquals(object.getSymbols(), read.getSymbols());
+        assertEquals(Set.of("next"), read.getExported());
+        assertEquals(object.getData().getLabels(), read.getData().getLabels());
+    }
+}
@@ -0,0 +1,101 @@
+package main;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.SplittableRandom;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Suites d'instructions chargeant une constante, executees par le {@link Simulator}, et reserve des constantes en RAM.
+ */
+class LiteralPoolTest
+{
+    private static int execute(int[] words, int register)
+    {
+        Simulator simulator = new Simulator(words);
+        assertEquals(Simulator.Status.HALTED, simulator.run(100));
+        return simulator.getRegister(register);
+    }
+
+    @Test
+    void buildsEverySixteenBitValue()
+    {
+        for (int value = 0; value < 1 << 16; value++)
+        {
+            int[] sequence = LiteralPool.sequence(3, value);
+            assertEquals(value, execute(sequence, 3), "Value " + value);
+        }
+    }
+
+    @Test
+    void buildsShiftedAndInvertedValues()
+    {
+        SplittableRandom random = new SplittableRandom(5);
+        for (int i = 0; i < 20_000; i++)
+        {
+            int value = random.nextBoolean() ? random.nextInt(1 << 16) << random.nextInt(17) : ~random.nextInt(1 << 16);
+            int[] sequence = LiteralPool.sequence(1, value);
+            assertEquals(value, execute(sequence, 1), () -> "Value " + Integer.toHexString(value));
+        }
+        // Ni decalage ni complement d'une valeur de 16 bits
+        assertNull(LiteralPool.sequence(1, 0x12345678));
+    }
+
+    @Test
+    void sharesValuesInThePool()
+    {
+        LiteralPool pool = new LiteralPool(0);
+        assertArrayEquals(new int[]{LiteralPool.load(2, Simulator.RAM_SIZE - 1)}, pool.expand(2, 1));
+        assertEquals(Simulator.RAM_SIZE - 2, pool.address(0x12345678));
+        assertEquals(Simulator.RAM_SIZE - 1, pool.address(1));
+        assertEquals(2, pool.size());
+        assertEquals(0x12345678, pool.ram()[Simulator.RAM_SIZE - 2]);
+    }
+
+    @Test
+    void inlinesShortSequencesOnly()
+    {
+        LiteralPool pool = new LiteralPool();
+        assertEquals(1, pool.expand(0, 200).length);
+        assertTrue(pool.isEmpty());
+        assertEquals(1, pool.expand(0, 0x12345678).length);
+        assertEquals(1, pool.size());
+    }
+
+    @Test
+    void rejectsAFullPool()
+    {
+        LiteralPool pool = new LiteralPool(0);
+        for (int value = 0; value < Simulator.RAM_SIZE; value++)
+            pool.address(value);
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class, () -> pool.address(-1));
+        assertEquals("Literal pool is full", e.getMessage());
+    }
+
+    @Test
+    void loadsFromTheRamImage() throws IOException
+    {
+        // Une image lue ne garde que 16 bits par mot : 0x1235 tient sur 16 bits mais sa suite est trop longue
+        String program = "LDR R0, =0x1235\nLDR R1, =0x1000\nLDR R2, =0x1235\n";
+        ByteArrayOutputStream ram = new ByteArrayOutputStream();
+        int[] rom = Assembler.assemble(Source.of(program), PatternParser::new, ram);
+        assertNotEquals(0, ram.size());
+
+        Simulator simulator = new Simulator(rom);
+        int[] memory = Image.Format.RAW.read(ByteBuffer.wrap(ram.toByteArray())).toArray();
+        System.arraycopy(memory, 0, simulator.getRam(), 0, memory.length);
+        assertEquals(Simulator.Status.HALTED, simulator.run(100));
+        assertEquals(0x1235, simulator.getRegister(0));
+        assertEquals(0x1000, simulator.getRegister(1));
+        assertEquals(0x1235, simulator.getRegister(2));
+    }
+}
@@ -0,0 +1,108 @@
+package main;
+
+import main.Metrics.Counter;
+import main.Metrics.Phase;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Compteurs et temps des phases, y compris reunis depuis plusieurs threads.
+ */
+class MetricsTest
+{
+    @TempDir
+    Path directory;
+
+    @Test
+    void disabledMetricsCountNothing()
+    {
+        Metrics metrics = Metrics.DISABLED;
+        metrics.count(Counter.LINES_READ);
+        metrics.add(Counter.INSTRUCTIONS, 5);
+        assertEquals(0, metrics.stop(Phase.PARSE, metrics.start()));
+        assertEquals(0, metrics.get(Counter.LINES_READ));
+        assertEquals(0, metrics.get(Counter.INSTRUCTIONS));
+        assertEquals(0, metrics.time(Phase.PARSE));
+        assertFalse(metrics.fork().isEnabled());
+    }
+
+    @Test
+    void mergesForkedMetrics()
+    {
+        Metrics metrics = new Metrics();
+        Metrics part = metrics.fork();
+        part.count(Counter.LABEL_HITS);
+        part.add(Counter.INSTRUCTIONS, 7);
+        part.stop(Phase.ENCODE, part.start() - 1_000);
+        metrics.count(Counter.LABEL_HITS);
+        metrics.merge(part);
+        assertEquals(2, metrics.get(Counter.LABEL_HITS));
+        assertEquals(7, metrics.get(Counter.INSTRUCTIONS));
+        assertTrue(metrics.time(Phase.ENCODE) >= 1_000);
+    }
+
+    @Test
+    void summarizesEveryCounterAndPhase()
+    {
+        Metrics metrics = new Metrics();
+        metrics.begin();
+        metrics.add(Counter.LINES_READ, 3);
+        metrics.end();
+        String summary = metrics.summary();
+        assertTrue(summary.contains(String.format("%-24s %d%n", "lines read", 3)), summary);
+        for (Phase phase : Phase.values())
+            assertTrue(summary.contains(phase.name().toLowerCase()), summary);
+        assertTrue(summary.contains("total"), summary);
+    }
+
+    @Test
+    void countsTheSameLinesSequentiallyAndInParallel() throws IOException
+    {
+        Path source = Files.writeString(directory.resolve("program.s"), new SourceGenerator(6).commentNoise(0.4).generate(Simulator.ROM_SIZE));
+        Map<String, Long> sequential = counters(source, "--parallel=1");
+        Map<String, Long> parallel = counters(source, "--parallel=3");
+        assertEquals(Simulator.ROM_SIZE, sequential.get("instructions emitted"));
+        for (String counter : new String[]{"lines read", "lines matched", "instructions emitted", "bytes written"})
+            assertEquals(sequential.get(counter), parallel.get(counter), counter);
+        // Les parties resolvent leurs branchements une fois tous les labels connus : seul le total est le meme
+        assertEquals(sequential.get("label hits") + sequential.get("label misses"), parallel.get("label hits") + parallel.get("label misses"));
+    }
+
+    /**
+     * @return la valeur de chaque compteur affiche par <tt>--stats</tt>
+     */
+    private Map<String, Long> counters(Path source, String parallel) throws IOException
+    {
+        PrintStream out = System.out;
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        System.setOut(new PrintStream(bytes, true, StandardCharsets.UTF_8));
+        try
+        {
+            Assembler.main(new String[]{"--stats", parallel, "--output=" + directory.resolve("rom.ini"), source.toString()});
+        }
+        finally
+        {
+            System.setOut(out);
+        }
+        Map<String, Long> counters = new HashMap<>();
+        for (String line : bytes.toString(StandardCharsets.UTF_8).split("\\R"))
+        {
+            if (line.matches("[a-z ]+ \\d+"))
+                counters.put(line.substring(0, 24).trim(), Long.parseLong(line.substring(24).trim()));
+        }
+        return counters;
+    }
+}
@@ -0,0 +1,134 @@
+package main;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.SplittableRandom;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Un programme optimise calcule les memes registres et la meme RAM que le programme d'origine,
+ * en executant au plus autant d'instructions.
+ */
+class OptimizerTest
+{
+    private static final String[] CONDITIONS = {"EQ", "NE", "CS", "CC", "MI", "PL", "GE", "LT", "GT", "LE", "HI", "LS"};
+
+    @TempDir
+    Path directory;
+
+    /**
+     * Assemble un programme avec ou sans <tt>--optimize</tt>, le rapport de l'optimiseur n'etant pas affiche.
+     */
+    private int[] assemble(String program, boolean optimize) throws IOException
+    {
+        Path source = Files.writeString(directory.resolve("program.s"), program);
+        Path output = directory.resolve(optimize ? "optimized.ini" : "rom.ini");
+        PrintStream out = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        try
+        {
+            if (optimize)
+                Assembler.main(new String[]{"--optimize", "--output=" + output, source.toString()});
+            else
+                Assembler.main(new String[]{"--output=" + output, source.toString()});
+        }
+        finally
+        {
+            System.setOut(out);
+        }
+        return Image.read(output).toArray();
+    }
+
+    private static String register(SplittableRandom random)
+    {
+        return "R" + random.nextInt(4);
+    }
+
+    /**
+     * Petit programme aleatoire, riche en constantes, en multiplications et en branchements.
+     */
+    private static String program(SplittableRandom random)
+    {
+        int length = 5 + random.nextInt(25);
+        StringBuilder program = new StringBuilder();
+        for (int i = 0; i < length; i++)
+        {
+            program.append('L').append(i).append(' ');
+            switch (random.nextInt(12))
+            {
+                case 0:
+                case 1: program.append("MOV ").append(register(random)).append(", #").append(random.nextBoolean() ? random.nextInt(4) : 1 << random.nextInt(5)); break;
+                case 2: program.append("MUL ").append(register(random)).append(", ").append(register(random)).append(", ").append(register(random)); break;
+                case 3: program.append("CMP ").append(register(random)).append(", ").append(register(random)); break;
+                case 4: program.append("ADD ").append(register(random)).append(", ").append(register(random)).append(", #").append(random.nextInt(3)); break;
+                case 5: program.append("SUB ").append(register(random)).append(", ").append(register(random)).append(", ").append(register(random)); break;
+                case 6: program.append("LSL ").append(register(random)).append(", ").append(register(random)).append(", #").append(random.nextInt(3)); break;
+                case 7: program.append('B').append(random.nextBoolean() ? CONDITIONS[random.nextInt(CONDITIONS.length)] : "").append(" L").append(random.nextInt(length)); break;
+                case 8: program.append("STR ").append(register(random)).append(", [R7, #").append(random.nextInt(4)).append(']'); break;
+                case 9: program.append("LDR ").append(register(random)).append(", [R7, #").append(random.nextInt(4)).append(']'); break;
+                case 10: program.append("ADC ").append(register(random)).append(", ").append(register(random)); break;
+                default: program.append("MVN ").append(register(random)).append(", ").append(register(random)); break;
+            }
+            program.append('\n');
+        }
+        return program.toString();
+    }
+
+    @Test
+    void preservesTheResultOfRandomPrograms() throws IOException
+    {
+        SplittableRandom random = new SplittableRandom(15);
+        int compared = 0;
+        for (int i = 0; i < 400; i++)
+        {
+            String program = program(random);
+            Simulator original = new Simulator(assemble(program, false));
+            if (original.run(100_000) == Simulator.Status.LIMIT)
+                continue;
+            Simulator optimized = new Simulator(assemble(program, true));
+            assertTrue(optimized.run(100_000) != Simulator.Status.LIMIT, program);
+            for (int register = 0; register < Simulator.REGISTERS; register++)
+                assertEquals(original.getRegister(register), optimized.getRegister(register), program);
+            assertArrayEquals(original.getRam(), optimized.getRam(), program);
+            assertTrue(optimized.getExecuted() <= original.getExecuted(), program);
+            compared += 1;
+        }
+        assertTrue(compared > 200, "Only " + compared + " programs stopped");
+    }
+
+    @Test
+    void reducesMultiplicationsByPowersOfTwo() throws IOException
+    {
+        int[] program = assemble("MOV R1, #8\nMOV R0, #3\nMUL R0, R1, R0\nSTR R0, [R7, #0]\nSTR R1, [R7, #1]\n", true);
+        assertEquals(Instructions.LSL_I, Disassembler.instruction(Disassembler.decode(program[2])));
+    }
+
+    @Test
+    void removesBranchesToTheNextInstructionAndDeadCode() throws IOException
+    {
+        int[] program = assemble("MOV R0, #1\nB next\nnext: MOV R1, #2\nB end\nMOV R2, #3\nend: B end\n", true);
+        assertArrayEquals(assemble("MOV R0, #1\nMOV R1, #2\nend: B end\n", false), program);
+    }
+
+    @Test
+    void checksTheLengthOfTheOptimizedProgram() throws IOException
+    {
+        // Le code mort retire, le programme tient dans la ROM
+        String dead = "B end\n" + "MOV R0, #1\n".repeat(Simulator.ROM_SIZE) + "end: B end\n";
+        assertEquals(1, assemble(dead, true).length);
+
+        String live = "loop: ADD R0, R0, #1\n" + "STR R0, [R7, #1]\nADD R0, R0, #1\n".repeat(Simulator.ROM_SIZE / 2) + "B loop\n";
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class, () -> assemble(live, true));
+        assertEquals("Program does not fit in ROM: " + (Simulator.ROM_SIZE + 2) + " instructions", e.getMessage());
+    }
+}
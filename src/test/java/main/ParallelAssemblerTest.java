@@ -0,0 +1,63 @@
+package main;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * L'assemblage parallele donne le meme programme que l'assemblage sequentiel, quel que soit le decoupage.
+ */
+class ParallelAssemblerTest
+{
+    @ParameterizedTest
+    @ValueSource(ints = {1, 2, 3, 7, 64})
+    void matchesSequentialAssembly(int parts)
+    {
+        String program = new SourceGenerator(11).commentNoise(0.2).generate(Simulator.ROM_SIZE);
+        int[] expected = Assembler.assemble(Source.of(program), PatternParser::new, 1);
+        ParallelAssembler parallel = new ParallelAssembler(ParallelAssembler.pool(4), PatternParser::new);
+        assertArrayEquals(expected, parallel.assemble(Source.of(program).split(parts)));
+    }
+
+    @Test
+    void resolvesLabelsDefinedSeveralTimes()
+    {
+        String program = "a: MOV R0, #1\nB a\nB b\nb: MOV R0, #2\na: B a\nb: B b\n";
+        int[] expected = Assembler.assemble(Source.of(program), PatternParser::new, 1);
+        for (int parts = 1; parts <= 6; parts++)
+        {
+            ParallelAssembler parallel = new ParallelAssembler(ParallelAssembler.pool(2), PatternParser::new);
+            assertArrayEquals(expected, parallel.assemble(Source.of(program).split(parts)));
+        }
+    }
+
+    @Test
+    void reportsMissingLabels()
+    {
+        ParallelAssembler parallel = new ParallelAssembler(ParallelAssembler.pool(2), PatternParser::new);
+        assertThrows(IllegalArgumentException.class, () -> parallel.assemble(Source.of("MOV R0, #1\nB nowhere\n").split(2)));
+    }
+
+    @Test
+    void rejectsProgramsLargerThanTheRom()
+    {
+        String program = "start: MOV R0, #1\n".repeat(Simulator.ROM_SIZE) + "B start\n";
+        ParallelAssembler parallel = new ParallelAssembler(ParallelAssembler.pool(2), PatternParser::new);
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class, () -> parallel.assemble(Source.of(program).split(3)));
+        assertEquals("Program does not fit in ROM: 257 instructions", e.getMessage());
+    }
+
+    @Test
+    void sharesPools()
+    {
+        assertSame(ParallelAssembler.pool(3), ParallelAssembler.pool(3));
+        assertSame(ForkJoinPool.commonPool(), ParallelAssembler.pool(ForkJoinPool.getCommonPoolParallelism()));
+    }
+}
@@ -0,0 +1,133 @@
+package main;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.util.SplittableRandom;
+
+import static main.Assembler.*;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * L'analyseur par descente et l'analyseur par expression reguliere donnent le meme {@link ParsedLine}
+ * sur des lignes generees et des cas limites, y compris le message d'erreur d'une ligne rejetee.
+ */
+class ParserEquivalenceTest
+{
+    /**
+     * Morceaux de ligne assembles au hasard : instructions, operandes, separateurs, commentaires et fautes.
+     */
+    private static final String[] TOKENS = {
+            "ADD", "add", "ADDS", "B", "BEQ", "beq", "BS", "BSEQ", "LDR", "STR", "MOV", "MUL", "LSL", "LSLS", "CMP",
+            " ", "  ", "\t", ",", ", ", "R1", "r7", "R12", "#3", "#255", "#", "[", "]", "[R1]", "[R2, R3]", "[R2, #4]",
+            "[R2, #4, LSL #2]", "lbl", "L0", ":", ";c", "; x", "=5", "=0x1F", "=-3", "=0x", "=99999999999", "x", "_", "0",
+            "ALS", "BAL", "LSLEQ", "ROR", "BIC", "Bne", "RSB", "ADDEQ", "data", "é"
+    };
+
+    private static final String[] EDGE_CASES = {
+            "", " ", "\t", ";", "; commentaire", "label", "label:", "label: ;", "MOV", "MOV R1", "MOV R1,", "MOV R1, #",
+            "MOV R1, #256", "MOV R8, #1", "MOV R1, #-1", "mov r1, #1", "MOV  R1 ,  #1 ", "MOV\tR1,\t#1", "MOVR1, #1",
+            "ADD R1, R2, #7", "ADD R1, R2, #8", "ADD R1, R2, R3", "ADD R1, R2", "ADDS R1, R2, R3", "ADD R1, R2, R3, R4",
+            "LSL R1, R2, #31", "LSL R1, R2, #32", "LSL R1, R2", "LDR R1, [R2, #3]", "LDR R1, [R2]", "LDR R1, #3",
+            "LDR R1, =5", "LDR R1, =0x1F", "LDR R1, =-3", "LDR R1, =0xFFFFFFFF", "LDR R1, =0x100000000", "LDR R1, =-2147483649",
+            "LDR R1, =", "STR R1, =5", "LDR R1, table", "STR R2, table", "MOV R1, table", "B", "B label", "BEQ label",
+            "BXX label", "BAL label", "beq label", "B label, R1", "loop: B loop", "loop B loop", "loop:B loop",
+            "a: b: MOV R1, #1", "MOV R1, #1 ; commentaire", "MOV R1, #1;commentaire", "  MOV R1, #1", "MOV R1, #1  ",
+            "MOV R1, #99999999999", "R1, #1", "#1", ",", ":", "1abel MOV R1, #1", "_label MOV R1, #1", "label_1: MOV R1, #1",
+            "CMP R1, R2", "CMN R1, R2", "TST R1, R2", "MVN R1, R2", "RSB R1, R2, #0", "RSB R1, R2, #1", "SUB R1, R2, #1",
+            "MUL R1, R2, R1", "MUL R1, R2, R3", "ADC R1, R2", "étiquette: MOV R1, #1", "MOV R1, #1\r"
+    };
+
+    private final Parser pattern = new PatternParser();
+    private final Parser descent = new DescentParser();
+
+    /**
+     * Resume tout ce que l'assembleur tire d'une ligne : groupes et positions, puis le codage ou l'erreur produite.
+     */
+    private static String describe(Parser parser, String line)
+    {
+        ParsedLine parsed = new ParsedLine();
+        StringBuilder description = new StringBuilder();
+        boolean matched = parser.parse(line, parsed);
+        description.append(matched).append(' ').append(Integer.toBinaryString(parsed.getGroups()));
+        if (!matched)
+            return description.toString();
+        for (int group = 1; group < ParsedLine.GROUPS; group++)
+        {
+            if (parsed.has(group))
+                description.append(' ').append(group).append('[').append(parsed.start(group)).append(',').append(parsed.end(group)).append(']');
+        }
+        description.append(" -> ").append(outcome(parsed));
+        return description.toString();
+    }
+
+    /**
+     * Reproduit le traitement d'une ligne reconnue par l'assembleur.
+     */
+    private static String outcome(ParsedLine parsed)
+    {
+        try
+        {
+            if (!parsed.has(INSTRUCTION_GROUP))
+                return "label " + parsed.text(LABEL_GROUP);
+            if (parsed.isLiteral())
+                return "literal " + parsed.literal();
+            Instructions access = parsed.dataAccess();
+            if (access != null)
+                return access + " " + parsed.value(FIRST_OPERAND_GROUP) + " " + parsed.text(DATA_LABEL_GROUP);
+            Instructions instruction = Instructions.getEnum(parsed);
+            String result = instruction.name() + " " + Integer.toHexString(instruction.encode(parsed));
+            if (instruction.getType() == InstructionType.BRANCH)
+                result += " " + parsed.text(BRANCH_LABEL_GROUP);
+            return result;
+        }
+        catch (RuntimeException e)
+        {
+            return e.getClass().getSimpleName() + ": " + e.getMessage();
+        }
+    }
+
+    private void assertSame(String line)
+    {
+        assertEquals(describe(pattern, line), describe(descent, line), () -> "Line: [" + line + "]");
+    }
+
+    @Test
+    void agreesOnEdgeCases()
+    {
+        for (String line : EDGE_CASES)
+            assertSame(line);
+    }
+
+    @Test
+    void agreesOnRandomTokens()
+    {
+        SplittableRandom random = new SplittableRandom(1);
+        for (int i = 0; i < 200_000; i++)
+        {
+            StringBuilder line = new StringBuilder();
+            for (int k = random.nextInt(1, 10); k > 0; k--)
+                line.append(TOKENS[random.nextInt(TOKENS.length)]);
+            assertSame(line.toString());
+        }
+    }
+
+    @ParameterizedTest
+    @ValueSource(longs = {1, 2, 3})
+    void agreesOnGeneratedPrograms(long seed)
+    {
+        String program = new SourceGenerator(seed).commentNoise(0.3).generate(5_000);
+        for (String line : program.split("\n"))
+            assertSame(line);
+    }
+
+    @Test
+    void assemblesTheSameImage()
+    {
+        String program = new SourceGenerator(7).generate(Simulator.ROM_SIZE);
+        int[] expected = Assembler.assemble(Source.of(program), PatternParser::new, 1);
+        assertArrayEquals(expected, Assembler.assemble(Source.of(program), DescentParser::new, 1));
+    }
+}
@@ -0,0 +1,83 @@
+package main;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Execution des instructions, des flags et des branchements, et compteur de programme sur 8 bits.
+ */
+class SimulatorTest
+{
+    private static Simulator run(String program, Simulator.Status expected)
+    {
+        Simulator simulator = new Simulator(AssemblerTest.assemble(program));
+        assertEquals(expected, simulator.run(1_000));
+        return simulator;
+    }
+
+    @Test
+    void computesArithmetic()
+    {
+        Simulator simulator = run("MOV R0, #200\nMOV R1, #3\nMUL R0, R1, R0\nSUB R2, R0, R1\nLSL R3, R1, #4\n", Simulator.Status.HALTED);
+        assertEquals(600, simulator.getRegister(0));
+        assertEquals(597, simulator.getRegister(2));
+        assertEquals(48, simulator.getRegister(3));
+        assertEquals(5, simulator.getProgramCounter());
+    }
+
+    @Test
+    void setsFlags()
+    {
+        assertEquals("-ZC-", run("MOV R0, #1\nMOV R1, #1\nCMP R0, R1\n", Simulator.Status.HALTED).getFlags());
+        assertEquals("N---", run("MOV R0, #1\nMOV R1, #2\nCMP R0, R1\n", Simulator.Status.HALTED).getFlags());
+    }
+
+    @Test
+    void loopsOnConditionalBranches()
+    {
+        Simulator simulator = run("MOV R0, #0\nMOV R1, #10\nloop: ADD R0, R0, #1\nCMP R0, R1\nBNE loop\nend: B end\n", Simulator.Status.LOOP);
+        assertEquals(10, simulator.getRegister(0));
+        assertEquals(5, simulator.getProgramCounter());
+        assertEquals(2 + 3 * 10 + 1, simulator.getExecuted());
+    }
+
+    @Test
+    void storesAndLoads()
+    {
+        Simulator simulator = run("MOV R0, #42\nSTR R0, [R7, #9]\nLDR R1, [R7, #9]\n", Simulator.Status.HALTED);
+        assertEquals(42, simulator.getRam()[9]);
+        assertEquals(42, simulator.getRegister(1));
+    }
+
+    @Test
+    void stopsOnUndefinedCondition()
+    {
+        // Condition 15 : aucune condition ne lui correspond
+        Simulator simulator = new Simulator(new int[]{0x2001, 0xDF00});
+        assertEquals(Simulator.Status.UNDEFINED, simulator.run(10));
+        assertEquals(1, simulator.getProgramCounter());
+    }
+
+    @Test
+    void wrapsTheProgramCounter()
+    {
+        // Une ROM pleine dont la derniere instruction est suivie de la premiere
+        int[] rom = new int[Simulator.ROM_SIZE];
+        Arrays.fill(rom, 0x1C40);
+        rom[0] = 0x2001;
+        Simulator simulator = new Simulator(rom);
+        assertEquals(Simulator.Status.LIMIT, simulator.run(Simulator.ROM_SIZE + 1));
+        assertEquals(1, simulator.getProgramCounter());
+        assertEquals(1, simulator.getRegister(0));
+    }
+
+    @Test
+    void rejectsProgramsLargerThanTheRom()
+    {
+        assertThrows(IllegalArgumentException.class, () -> new Simulator(new int[Simulator.ROM_SIZE + 1]));
+    }
+}
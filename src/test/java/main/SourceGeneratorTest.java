@@ -0,0 +1,72 @@
+package main;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Programmes synthetiques : reproductibles, acceptes par l'assembleur, et respectant les parametres du generateur.
+ */
+class SourceGeneratorTest
+{
+    private static final Pattern BRANCH = Pattern.compile("\\bB[A-Z]* L(\\d+)");
+
+    private static int farthest(String program)
+    {
+        int farthest = -1;
+        for (Matcher matcher = BRANCH.matcher(program); matcher.find(); )
+            farthest = Math.max(farthest, Integer.parseInt(matcher.group(1)));
+        return farthest;
+    }
+
+    @Test
+    void isReproducible()
+    {
+        assertEquals(new SourceGenerator(5).generate(1_000), new SourceGenerator(5).generate(1_000));
+        assertNotEquals(new SourceGenerator(5).generate(1_000), new SourceGenerator(6).generate(1_000));
+    }
+
+    @Test
+    void producesAssemblablePrograms()
+    {
+        String program = new SourceGenerator(9).commentNoise(0.5).generate(Simulator.ROM_SIZE);
+        assertEquals(Simulator.ROM_SIZE, AssemblerTest.assemble(program).length);
+        assertTrue(farthest(program) < SourceGenerator.TARGETS);
+    }
+
+    @Test
+    void followsTheInstructionMix()
+    {
+        SourceGenerator generator = new SourceGenerator(1).commentNoise(0);
+        for (SourceGenerator.Kind kind : SourceGenerator.Kind.values())
+            generator.mix(kind, 0);
+        String program = generator.mix(SourceGenerator.Kind.MOVE, 1).generate(500);
+        for (String line : program.split("\n"))
+            assertTrue(line.trim().replaceFirst("^L\\d+: ", "").startsWith("MOV "), line);
+        assertFalse(program.contains(";"));
+    }
+
+    @Test
+    void keepsTargetsInTheRomOfLongPrograms()
+    {
+        String program = new SourceGenerator(2).mix(SourceGenerator.Kind.BRANCH, 50).generate(5_000);
+        assertTrue(farthest(program) < SourceGenerator.TARGETS);
+        // Les cibles tiennent sur 8 bits, mais le programme ne tient pas dans la ROM
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class, () -> AssemblerTest.assemble(program));
+        assertEquals("Program does not fit in ROM: 5000 instructions", e.getMessage());
+    }
+
+    @Test
+    void rejectsInvalidParameters()
+    {
+        assertThrows(IllegalArgumentException.class, () -> new SourceGenerator(1).commentNoise(1.5));
+        assertThrows(IllegalArgumentException.class, () -> new SourceGenerator(1).mix(SourceGenerator.Kind.DATA, -1));
+    }
+}
@@ -0,0 +1,114 @@
+package main;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Lecture ligne par ligne d'une source, depuis la memoire, un flux ou un fichier.
+ */
+class SourceTest
+{
+    static List<String> lines(Source source)
+    {
+        List<String> lines = new ArrayList<>();
+        for (CharSequence line = source.nextLine(); line != null; line = source.nextLine())
+            lines.add(line.toString());
+        return lines;
+    }
+
+    @Test
+    void keepsIndicesInsideTheLine()
+    {
+        CharSequence line = Source.of("ab\ncd\n").nextLine();
+        assertEquals('b', line.charAt(1));
+        assertThrows(IndexOutOfBoundsException.class, () -> line.charAt(2));
+        assertThrows(IndexOutOfBoundsException.class, () -> line.charAt(-1));
+        assertThrows(IndexOutOfBoundsException.class, () -> line.subSequence(1, 4));
+        assertEquals("b", line.subSequence(1, 2).toString());
+    }
+
+    @Test
+    void splitsLinesOnEveryLineEnding()
+    {
+        assertEquals(Arrays.asList("a", "b", "", "c", "d"), lines(Source.of("a\nb\r\n\rc\rd")));
+        assertEquals(Arrays.asList("a", ""), lines(Source.of("a\n\n")));
+        assertEquals(List.of(), lines(Source.of("")));
+    }
+
+    @Test
+    void linesAreViewsOnTheContent()
+    {
+        Source source = Source.of("MOV R0, #1\nB loop\n");
+        CharSequence line = source.nextLine();
+        assertEquals("R0", line.subSequence(4, 6).toString());
+        assertEquals('#', line.charAt(8));
+        assertEquals("B loop", source.nextLine().toString());
+        assertNull(source.nextLine());
+    }
+
+    @Test
+    void resetRestoresAMarkedPosition()
+    {
+        Source source = Source.of("a\nb\nc\n");
+        source.nextLine();
+        int mark = source.mark();
+        assertEquals("b", source.nextLine().toString());
+        assertEquals("c", source.nextLine().toString());
+        source.reset(mark);
+        assertEquals(Arrays.asList("b", "c"), lines(source));
+    }
+
+    @Test
+    void partsReturnTheSameLinesAsTheSource()
+    {
+        SplittableRandom random = new SplittableRandom(2);
+        String[] endings = {"\n", "\r\n", "\r"};
+        for (int round = 0; round < 200; round++)
+        {
+            StringBuilder program = new StringBuilder();
+            int count = random.nextInt(40);
+            for (int i = 0; i < count; i++)
+            {
+                program.append("x".repeat(random.nextInt(6))).append(endings[random.nextInt(endings.length)]);
+            }
+            List<String> expected = lines(Source.of(program));
+            Source source = Source.of(program);
+            List<String> actual = new ArrayList<>();
+            for (Source part : source.split(1 + random.nextInt(8)))
+                actual.addAll(lines(part));
+            assertEquals(expected, actual, program.toString());
+        }
+    }
+
+    @Test
+    void readsStreamsLongerThanABlock() throws IOException
+    {
+        StringBuilder program = new StringBuilder();
+        for (int i = 0; i < 5000; i++)
+            program.append("etiquette_").append(i).append(" MOV R0, #1 ; é\n");
+        Source source = Source.of(new ByteArrayInputStream(program.toString().getBytes(StandardCharsets.UTF_8)));
+        assertEquals(lines(Source.of(program)), lines(source));
+    }
+
+    @Test
+    void mapsFiles(@TempDir Path directory) throws IOException
+    {
+        Path file = directory.resolve("program.s");
+        Files.write(file, "MOV R0, #1 ; é\r\nB fin\n".getBytes(StandardCharsets.UTF_8));
+        assertEquals(Arrays.asList("MOV R0, #1 ; é", "B fin"), lines(Source.open(file.toString())));
+    }
+}